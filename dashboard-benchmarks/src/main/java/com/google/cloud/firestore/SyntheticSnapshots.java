@@ -0,0 +1,36 @@
+package com.google.cloud.firestore;
+
+import java.util.Map;
+
+import com.google.cloud.NoCredentials;
+
+/**
+ * Tạo DocumentSnapshot thật từ Map dữ liệu mà không cần kết nối Firestore.
+ *
+ * Nằm trong package của SDK vì DocumentSnapshot.fromObject chỉ truy cập được trong package;
+ * snapshot tạo ra được encode sang protobuf Value giống hệt dữ liệu đọc về từ server,
+ * nên getData()/get(FieldPath) chạy đúng đường decode như khi chạy thật.
+ */
+public final class SyntheticSnapshots {
+
+    private final Firestore firestore;
+
+    public SyntheticSnapshots() {
+        // Emulator host giả: không gọi mạng, chỉ để SDK không đi tìm credentials
+        this.firestore = FirestoreOptions.newBuilder()
+                .setProjectId("benchmark")
+                .setEmulatorHost("localhost:0")
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+    }
+
+    public DocumentSnapshot of(String path, Map<String, Object> data) {
+        return DocumentSnapshot.fromObject((FirestoreRpcContext<?>) firestore, firestore.document(path), data,
+                UserDataConverter.NO_DELETES);
+    }
+
+    public void close() throws Exception {
+        firestore.close();
+    }
+}
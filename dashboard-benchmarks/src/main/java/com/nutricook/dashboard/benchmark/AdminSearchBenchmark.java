@@ -0,0 +1,64 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nutricook.dashboard.entity.User;
+import com.nutricook.dashboard.service.AdminFilters;
+
+/**
+ * Lọc người dùng của /admin/search (username, họ tên, email chứa từ khóa) trên {@code size} user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AdminSearchBenchmark {
+
+    private static final String[] FIRST_NAMES = { "An", "Bình", "Chi", "Dũng", "Hà", "Linh", "Minh", "Nam", "Thảo", "Vy" };
+    private static final String[] LAST_NAMES = { "Nguyễn", "Trần", "Lê", "Phạm", "Hoàng" };
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    // Khớp ít (username cụ thể), khớp tất cả (domain email), không khớp
+    @Param({"user123", "@nutricook", "khongco"})
+    public String query;
+
+    private List<User> users;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            User user = new User();
+            user.setUsername("user" + i);
+            user.setFullName(LAST_NAMES[random.nextInt(LAST_NAMES.length)] + " " + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            user.setEmail("user" + i + "@nutricook.vn");
+            users.add(user);
+        }
+    }
+
+    @Benchmark
+    public List<User> searchUsers() {
+        return AdminFilters.searchUsers(users, query);
+    }
+}
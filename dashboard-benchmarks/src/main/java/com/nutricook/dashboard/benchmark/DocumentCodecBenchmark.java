@@ -0,0 +1,186 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.SyntheticSnapshots;
+import com.nutricook.dashboard.service.DocumentCodecs;
+
+/**
+ * So sánh decode DocumentSnapshot -> entity: cách parse cũ (getData() + instanceof) và DocumentCodecs.
+ *
+ * Mỗi lần gọi decode toàn bộ {@code size} document tổng hợp của một loại entity.
+ * Chạy thêm "-prof gc" để xem số byte cấp phát cho mỗi lần decode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DocumentCodecBenchmark {
+
+    @Param({"USER", "FOOD_ITEM", "DAILY_LOG", "USER_RECIPE"})
+    public String entity;
+
+    @Param({"100000"})
+    public int size;
+
+    private SyntheticSnapshots snapshots;
+    private List<DocumentSnapshot> docs;
+    private Function<DocumentSnapshot, Object> legacy;
+    private Function<DocumentSnapshot, Object> codec;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshots = new SyntheticSnapshots();
+        Random random = new Random(42);
+        docs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            switch (entity) {
+                case "USER" -> docs.add(snapshots.of("users/u" + i, user(i, random)));
+                case "FOOD_ITEM" -> docs.add(snapshots.of("foodItems/" + i, foodItem(i, random)));
+                case "DAILY_LOG" -> docs.add(snapshots.of("users/u" + (i % 1000) + "/daily_logs/" + dateId(i), dailyLog(i, random)));
+                case "USER_RECIPE" -> docs.add(snapshots.of("userRecipes/r" + i, userRecipe(i, random)));
+                default -> throw new IllegalArgumentException("Unknown entity: " + entity);
+            }
+        }
+        switch (entity) {
+            case "USER" -> { legacy = LegacyDecoders::toUser; codec = DocumentCodecs.USER::decode; }
+            case "FOOD_ITEM" -> { legacy = LegacyDecoders::toFoodItem; codec = DocumentCodecs.FOOD_ITEM::decode; }
+            case "DAILY_LOG" -> { legacy = LegacyDecoders::toDailyLog; codec = DocumentCodecs.DAILY_LOG::decode; }
+            default -> { legacy = LegacyDecoders::toUserRecipe; codec = DocumentCodecs.USER_RECIPE::decode; }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        snapshots.close();
+    }
+
+    @Benchmark
+    public void legacyParse(Blackhole bh) {
+        for (DocumentSnapshot doc : docs) {
+            bh.consume(legacy.apply(doc));
+        }
+    }
+
+    @Benchmark
+    public void codecDecode(Blackhole bh) {
+        for (DocumentSnapshot doc : docs) {
+            bh.consume(codec.apply(doc));
+        }
+    }
+
+    // ==========================================================
+    // Dữ liệu tổng hợp, cùng cấu trúc field với dữ liệu app ghi lên Firestore
+    // ==========================================================
+
+    private static Timestamp timestamp(Random random) {
+        return Timestamp.ofTimeSecondsAndNanos(1_700_000_000L + random.nextInt(30_000_000), random.nextInt(1_000_000) * 1000);
+    }
+
+    private static String dateId(int i) {
+        return java.time.LocalDate.of(2024, 1, 1).plusDays(i / 1000).toString();
+    }
+
+    private static Map<String, Object> user(int i, Random random) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", (long) i);
+        data.put("username", "user" + i);
+        data.put("password", "$2a$10$" + Integer.toHexString(random.nextInt()));
+        data.put("email", "user" + i + "@nutricook.vn");
+        data.put("fullName", "Người dùng " + i);
+        data.put("avatar", "https://cdn.nutricook.vn/avatars/" + i + ".png");
+        data.put("role", i % 50 == 0 ? "ADMIN" : "USER");
+        data.put("createdAt", timestamp(random));
+        data.put("updatedAt", timestamp(random));
+        return data;
+    }
+
+    private static Map<String, Object> foodItem(int i, Random random) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", (long) i);
+        data.put("name", "Món " + i);
+        data.put("calories", String.valueOf(50 + random.nextInt(800)));
+        data.put("description", "Mô tả món ăn " + i);
+        data.put("imageUrl", "https://cdn.nutricook.vn/foods/" + i + ".jpg");
+        data.put("available", random.nextBoolean());
+        data.put("rating", random.nextDouble() * 5);
+        data.put("reviews", random.nextInt(500));
+        data.put("categoryId", (long) (i % 12));
+        data.put("categoryName", "Danh mục " + (i % 12));
+        data.put("fat", random.nextDouble() * 40);
+        data.put("carbs", random.nextDouble() * 100);
+        data.put("protein", random.nextDouble() * 60);
+        data.put("cholesterol", random.nextDouble() * 200);
+        data.put("sodium", random.nextDouble() * 1500);
+        data.put("vitamin", random.nextDouble() * 10);
+        data.put("unit", "g");
+        return data;
+    }
+
+    private static Map<String, Object> dailyLog(int i, Random random) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("dateId", dateId(i));
+        data.put("calories", 800 + random.nextInt(2000));
+        data.put("protein", random.nextDouble() * 150);
+        data.put("fat", random.nextDouble() * 90);
+        data.put("carb", random.nextDouble() * 300);
+        data.put("updatedAt", timestamp(random));
+        return data;
+    }
+
+    private static Map<String, Object> userRecipe(int i, Random random) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("recipeName", "Công thức " + i);
+        data.put("description", "Mô tả công thức " + i);
+        data.put("estimatedTime", (10 + random.nextInt(80)) + " phút");
+        data.put("servings", String.valueOf(1 + random.nextInt(6)));
+        data.put("notes", "Ghi chú " + i);
+        data.put("tips", "Mẹo " + i);
+        data.put("userId", "u" + (i % 1000));
+        data.put("userEmail", "user" + (i % 1000) + "@nutricook.vn");
+        data.put("imageUrls", List.of("https://cdn.nutricook.vn/recipes/" + i + "/1.jpg", " ", "https://cdn.nutricook.vn/recipes/" + i + "/2.jpg"));
+        List<Map<String, Object>> ingredients = new ArrayList<>();
+        for (int k = 0; k < 5; k++) {
+            ingredients.add(Map.of("name", "Nguyên liệu " + k, "amount", String.valueOf(random.nextInt(500)), "unit", "g"));
+        }
+        data.put("ingredients", ingredients);
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (int k = 0; k < 4; k++) {
+            steps.add(Map.of("step", (long) (k + 1), "description", "Bước " + (k + 1)));
+        }
+        data.put("cookingSteps", steps);
+        data.put("nutritionData", Map.of("calories", (double) random.nextInt(900), "protein", random.nextDouble() * 50));
+        data.put("rating", random.nextDouble() * 5);
+        data.put("reviewCount", (long) random.nextInt(100));
+        data.put("approved", random.nextBoolean());
+        data.put("available", true);
+        data.put("createdAt", timestamp(random));
+        data.put("updatedAt", timestamp(random));
+        return data;
+    }
+}
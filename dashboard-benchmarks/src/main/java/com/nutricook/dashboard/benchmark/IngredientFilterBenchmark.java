@@ -0,0 +1,83 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.service.AdminFilters;
+
+/**
+ * Lọc nguyên liệu của getIngredientsByCategory (/admin/categories/{id}/ingredients): tìm theo từ khóa rồi
+ * lọc mức calories, trong đó mỗi món phải parse chuỗi calories ("120 kcal").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IngredientFilterBenchmark {
+
+    private static final String[] NAMES = { "Thịt gà", "Thịt bò", "Cá hồi", "Rau muống", "Cà rốt", "Đậu phụ", "Trứng gà", "Gạo lứt" };
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"low", "medium", "high"})
+    public String filterCalories;
+
+    // Từ khóa ASCII để tham số truyền sang JVM fork không phụ thuộc encoding
+    @Param({"", "12"})
+    public String search;
+
+    private List<FoodItem> foods;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        foods = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            FoodItem food = new FoodItem();
+            food.setName(NAMES[random.nextInt(NAMES.length)] + " " + i);
+            food.setDescription("Mô tả nguyên liệu " + i);
+            // Dữ liệu thật lẫn vài dạng: "120 kcal", "95.5 kcal", số trần, rỗng
+            int kind = random.nextInt(10);
+            if (kind < 7) {
+                food.setCalories(random.nextInt(400) + " kcal");
+            } else if (kind < 9) {
+                food.setCalories(String.format("%.1f kcal", random.nextDouble() * 400).replace(',', '.'));
+            } else {
+                food.setCalories(random.nextBoolean() ? String.valueOf(random.nextInt(400)) : "");
+            }
+            foods.add(food);
+        }
+    }
+
+    @Benchmark
+    public List<FoodItem> filter() {
+        return AdminFilters.filterByCalories(AdminFilters.searchFoods(foods, search), filterCalories);
+    }
+
+    @Benchmark
+    public void parseCalories(Blackhole bh) {
+        for (FoodItem food : foods) {
+            bh.consume(AdminFilters.parseCalories(food.getCalories()));
+        }
+    }
+}
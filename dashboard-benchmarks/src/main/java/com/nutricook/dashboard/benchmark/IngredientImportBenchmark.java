@@ -0,0 +1,95 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nutricook.dashboard.entity.Category;
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.service.IngredientJsonImport;
+
+/**
+ * Phần parse của importIngredientsJson: đọc file JSON {@code size} nguyên liệu (trộn định dạng snake_case/camelCase,
+ * vitamin lồng nhau/phẳng) rồi chuyển sang FoodItem. Không gồm phần kiểm tra trùng tên và lưu database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IngredientImportBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private byte[] json;
+    private Category category;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        List<Map<String, Object>> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", "Nguyên liệu " + i);
+            item.put("calories", random.nextBoolean() ? (Object) (random.nextInt(400) + " kcal") : (Object) (random.nextDouble() * 400));
+            item.put(random.nextBoolean() ? "unit" : "unit_name", "g");
+            item.put("description", "Mô tả " + i);
+            item.put(random.nextBoolean() ? "image_url" : "imageUrl", "assets/images/ingredients/" + i + ".png");
+            item.put("fat", random.nextDouble() * 40);
+            item.put("carbs", String.valueOf(random.nextDouble() * 100));
+            item.put("protein", random.nextDouble() * 60);
+            item.put("cholesterol", random.nextDouble() * 200);
+            item.put("sodium", random.nextDouble() * 1500);
+            if (random.nextBoolean()) {
+                Map<String, Object> vitamins = new LinkedHashMap<>();
+                vitamins.put("vitamin_a", random.nextDouble());
+                vitamins.put("vitamin_c", random.nextDouble() * 50);
+                vitamins.put("vitamin_d", random.nextDouble());
+                item.put("vitamins", vitamins);
+            } else {
+                item.put("vitaminA", random.nextDouble());
+                item.put("vitaminC", random.nextDouble() * 50);
+            }
+            items.add(item);
+        }
+        json = new ObjectMapper().writeValueAsString(items).getBytes(StandardCharsets.UTF_8);
+        category = new Category();
+        category.setId(1L);
+        category.setName("Thịt");
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> parse() throws Exception {
+        return IngredientJsonImport.parse(json);
+    }
+
+    @Benchmark
+    public void parseAndMap(Blackhole bh) throws Exception {
+        for (Map<String, Object> item : IngredientJsonImport.parse(json)) {
+            String name = IngredientJsonImport.nameOf(item);
+            FoodItem food = IngredientJsonImport.toFoodItem(item, name, category);
+            bh.consume(food);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.nutricook.dashboard.entity.Category;
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.entity.User;
+import com.nutricook.dashboard.entity.UserRecipe;
+
+/**
+ * Bản sao cách parse cũ của FirestoreService (getData() rồi instanceof từng field),
+ * giữ lại làm mốc so sánh cho DocumentCodecBenchmark.
+ */
+final class LegacyDecoders {
+
+    private LegacyDecoders() {}
+
+    static User toUser(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        if (data == null) return null;
+        User u = new User();
+        Object idField = data.get("id");
+        if (idField instanceof Number) {
+            u.setId(((Number) idField).longValue());
+        } else if (idField instanceof String) {
+            try { u.setId(Long.parseLong((String) idField)); } catch (Exception ignored) {}
+        }
+        u.setUsername((String) data.get("username"));
+        u.setPassword((String) data.get("password"));
+        u.setEmail((String) data.get("email"));
+        u.setFullName((String) data.get("fullName"));
+        u.setAvatar((String) data.get("avatar"));
+        Object roleObj = data.get("role");
+        if (roleObj instanceof String) {
+            try {
+                u.setRole(User.UserRole.valueOf((String) roleObj));
+            } catch (Exception ignored) {}
+        }
+        Object created = data.get("createdAt");
+        if (created instanceof Timestamp) {
+            Timestamp ts = (Timestamp) created;
+            u.setCreatedAt(ts.toDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
+        } else if (created instanceof Date) {
+            Date d = (Date) created;
+            u.setCreatedAt(d.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
+        }
+        Object updated = data.get("updatedAt");
+        if (updated instanceof Timestamp) {
+            Timestamp ts = (Timestamp) updated;
+            u.setUpdatedAt(ts.toDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
+        } else if (updated instanceof Date) {
+            Date d = (Date) updated;
+            u.setUpdatedAt(d.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
+        }
+        return u;
+    }
+
+    static FoodItem toFoodItem(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        if (data == null) return null;
+        FoodItem f = new FoodItem();
+        Object idField = data.get("id");
+        if (idField instanceof Number) {
+            f.setId(((Number) idField).longValue());
+        } else if (idField instanceof String) {
+            try { f.setId(Long.parseLong((String) idField)); } catch (Exception ignored) {}
+        }
+        f.setName((String) data.get("name"));
+        f.setCalories((String) data.get("calories"));
+        f.setDescription((String) data.get("description"));
+        f.setImageUrl((String) data.get("imageUrl"));
+        Object availableObj = data.get("available");
+        f.setAvailable(availableObj instanceof Boolean ? (Boolean) availableObj : true);
+        Object ratingObj = data.get("rating");
+        f.setRating(ratingObj instanceof Number ? ((Number) ratingObj).doubleValue() : 0.0);
+        Object reviewsObj = data.get("reviews");
+        f.setReviews(reviewsObj instanceof Number ? ((Number) reviewsObj).intValue() : 0);
+        Object categoryIdObj = data.get("categoryId");
+        if (categoryIdObj != null) {
+            Category cat = new Category();
+            try {
+                cat.setId(Long.parseLong(String.valueOf(categoryIdObj)));
+                if (data.get("categoryName") != null) {
+                    cat.setName((String) data.get("categoryName"));
+                }
+            } catch (Exception ignored) {}
+            f.setCategory(cat);
+        }
+        Object fatObj = data.get("fat");
+        f.setFat(fatObj instanceof Number ? ((Number) fatObj).doubleValue() : 0.0);
+        Object carbsObj = data.get("carbs");
+        f.setCarbs(carbsObj instanceof Number ? ((Number) carbsObj).doubleValue() : 0.0);
+        Object proteinObj = data.get("protein");
+        f.setProtein(proteinObj instanceof Number ? ((Number) proteinObj).doubleValue() : 0.0);
+        Object cholesterolObj = data.get("cholesterol");
+        f.setCholesterol(cholesterolObj instanceof Number ? ((Number) cholesterolObj).doubleValue() : 0.0);
+        Object sodiumObj = data.get("sodium");
+        f.setSodium(sodiumObj instanceof Number ? ((Number) sodiumObj).doubleValue() : 0.0);
+        Object vitaminObj = data.get("vitamin");
+        f.setVitamin(vitaminObj instanceof Number ? ((Number) vitaminObj).doubleValue() : 0.0);
+        Object unitObj = data.get("unit");
+        f.setUnit(unitObj != null ? String.valueOf(unitObj) : "g");
+        return f;
+    }
+
+    static DailyLog toDailyLog(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        if (data == null) return null;
+        DailyLog log = new DailyLog();
+        Object dateIdObj = data.get("dateId");
+        log.setDateId(dateIdObj instanceof String ? (String) dateIdObj : doc.getId());
+        log.setCalories(toFloat(data.get("calories")));
+        log.setProtein(toFloat(data.get("protein")));
+        log.setFat(toFloat(data.get("fat")));
+        log.setCarb(toFloat(data.get("carb")));
+        Object updatedObj = data.get("updatedAt");
+        if (updatedObj instanceof Timestamp) {
+            log.setUpdatedAt(((Timestamp) updatedObj).toDate().getTime());
+        } else if (updatedObj instanceof Number) {
+            log.setUpdatedAt(((Number) updatedObj).longValue());
+        }
+        return log;
+    }
+
+    @SuppressWarnings("unchecked")
+    static UserRecipe toUserRecipe(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        if (data == null) return null;
+        UserRecipe recipe = new UserRecipe();
+        recipe.setDocId(doc.getId());
+        recipe.setRecipeName((String) data.get("recipeName"));
+        recipe.setDescription((String) data.get("description"));
+        recipe.setEstimatedTime((String) data.get("estimatedTime"));
+        recipe.setServings((String) data.get("servings"));
+        recipe.setNotes((String) data.get("notes"));
+        recipe.setTips((String) data.get("tips"));
+        recipe.setUserId((String) data.get("userId"));
+        recipe.setUserEmail((String) data.get("userEmail"));
+        Object imageUrlsObj = data.get("imageUrls");
+        if (imageUrlsObj instanceof List) {
+            List<String> imageUrls = new ArrayList<>();
+            for (Object item : (List<Object>) imageUrlsObj) {
+                if (item == null) continue;
+                String url = item.toString().trim();
+                if (!url.isEmpty()) imageUrls.add(url);
+            }
+            recipe.setImageUrls(imageUrls);
+        }
+        Object ingredientsObj = data.get("ingredients");
+        if (ingredientsObj instanceof List) {
+            recipe.setIngredients((List<Map<String, Object>>) ingredientsObj);
+        }
+        Object cookingStepsObj = data.get("cookingSteps");
+        if (cookingStepsObj instanceof List) {
+            recipe.setCookingSteps((List<Map<String, Object>>) cookingStepsObj);
+        }
+        Object nutritionDataObj = data.get("nutritionData");
+        if (nutritionDataObj instanceof Map) {
+            recipe.setNutritionData((Map<String, Object>) nutritionDataObj);
+        }
+        Object ratingObj = data.get("rating");
+        recipe.setRating(ratingObj instanceof Number ? ((Number) ratingObj).doubleValue() : 0.0);
+        Object reviewCountObj = data.get("reviewCount");
+        recipe.setReviewCount(reviewCountObj instanceof Number ? ((Number) reviewCountObj).intValue() : 0);
+        Object approvedObj = data.get("approved");
+        recipe.setApproved(approvedObj instanceof Boolean ? (Boolean) approvedObj : true);
+        Object availableObj = data.get("available");
+        recipe.setAvailable(availableObj instanceof Boolean ? (Boolean) availableObj : true);
+        Object createdAtObj = data.get("createdAt");
+        if (createdAtObj instanceof Timestamp) {
+            recipe.setCreatedAt(((Timestamp) createdAtObj).toDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
+        } else if (createdAtObj instanceof Date) {
+            recipe.setCreatedAt(((Date) createdAtObj).toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
+        }
+        Object updatedAtObj = data.get("updatedAt");
+        if (updatedAtObj instanceof Timestamp) {
+            recipe.setUpdatedAt(((Timestamp) updatedAtObj).toDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
+        } else if (updatedAtObj instanceof Date) {
+            recipe.setUpdatedAt(((Date) updatedAtObj).toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
+        }
+        return recipe;
+    }
+
+    private static Float toFloat(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        } else if (value instanceof String) {
+            try {
+                return Float.parseFloat((String) value);
+            } catch (Exception ignored) {}
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nutricook.dashboard.service.DocumentQuery;
+import com.nutricook.dashboard.service.FirestoreFutures;
+import com.nutricook.dashboard.service.InMemoryDocumentStore;
+import com.nutricook.dashboard.service.NutritionSketchService;
+import com.nutricook.dashboard.service.StoredDocument;
+import com.nutricook.dashboard.service.SyntheticDataGenerator;
+
+/**
+ * Phân phối p10/p50/p90 calories của {@code users} user trong {@code range} ngày gần nhất.
+ *
+ * sketchDistribution gộp sketch KLL theo ngày của NutritionSketchService (đã dựng sẵn, cache nóng);
+ * exactScan là cách không có sketch: query collectionGroup daily_logs trong khoảng, gom và sắp xếp mọi giá trị.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class NutritionDistributionBenchmark {
+
+    private static final String ZONE = "Asia/Ho_Chi_Minh";
+
+    @Param({"500", "2000"})
+    public int users;
+
+    @Param({"30", "365"})
+    public int range;
+
+    private InMemoryDocumentStore store;
+    private NutritionSketchService sketches;
+    private LocalDate from;
+    private LocalDate to;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        store = new InMemoryDocumentStore();
+        new SyntheticDataGenerator(42, ZoneId.of(ZONE)).populate(store, users, 365, 0, 0, 0);
+        sketches = new NutritionSketchService(store, true, 200, 8, 600, 30, 4, 800, ZONE);
+        to = LocalDate.now(ZoneId.of(ZONE));
+        from = to.minusDays(range - 1L);
+        sketches.rebuild(to.minusDays(364), to);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Benchmark
+    public NutritionSketchService.Distribution sketchDistribution() throws Exception {
+        return sketches.distribution(from, to, NutritionSketchService.Cohort.ALL);
+    }
+
+    @Benchmark
+    public float[] exactScan() throws Exception {
+        List<StoredDocument> docs = FirestoreFutures.await(store.query(DocumentQuery.collectionGroup("daily_logs")
+                .whereGreaterThanOrEqualTo("dateId", from.toString())
+                .whereLessThanOrEqualTo("dateId", to.toString())));
+        float[] values = new float[docs.size()];
+        int n = 0;
+        for (StoredDocument doc : docs) {
+            Object calories = doc.get("calories");
+            if (calories instanceof Number && ((Number) calories).floatValue() > 0) {
+                values[n++] = ((Number) calories).floatValue();
+            }
+        }
+        Arrays.sort(values, 0, n);
+        if (n == 0) return new float[3];
+        return new float[] {values[(int) (0.1 * (n - 1))], values[(int) (0.5 * (n - 1))], values[(int) (0.9 * (n - 1))]};
+    }
+}
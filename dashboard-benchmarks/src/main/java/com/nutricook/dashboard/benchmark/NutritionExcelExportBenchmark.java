@@ -0,0 +1,105 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+import com.nutricook.dashboard.service.NutritionExcelExport;
+import com.nutricook.dashboard.service.NutritionExport;
+
+/**
+ * Tạo file export của exportNutritionToExcel cho {@code size} user. File được ghi vào OutputStream bỏ dữ liệu,
+ * nên chỉ đo phần dựng workbook (SXSSF), độ rộng cột và nén XLSX / ghi CSV, NDJSON.
+ * exportWithDailyLogs thêm sheet log theo ngày, 30 log mỗi user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class NutritionExcelExportBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int size;
+
+    private List<NutritionStats> statsList;
+    private List<DailyLog> dailyLogs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        statsList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            NutritionStats stats = new NutritionStats();
+            stats.setUserId("u" + i);
+            stats.setUserName("Người dùng " + i);
+            stats.setUserEmail("user" + i + "@nutricook.vn");
+            stats.setAverageCalories(1200 + random.nextFloat() * 1500);
+            stats.setCaloriesTarget(1600f + random.nextInt(9) * 100);
+            int days = 1 + random.nextInt(365);
+            int reached = random.nextInt(days + 1);
+            stats.setDaysTracked(days);
+            stats.setDaysReachedGoal(reached);
+            stats.setGoalAchievementRate(reached * 100f / days);
+            statsList.add(stats);
+        }
+        dailyLogs = new ArrayList<>(30);
+        for (int d = 1; d <= 30; d++) {
+            dailyLogs.add(new DailyLog(String.format("2025-01-%02d", d), 1200 + random.nextFloat() * 1500,
+                    random.nextFloat() * 150, random.nextFloat() * 90, random.nextFloat() * 300, 0L));
+        }
+    }
+
+    @Benchmark
+    public void exportNutritionToExcel() throws Exception {
+        NutritionExcelExport.write(statsList, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void exportWithDailyLogs() throws Exception {
+        try (NutritionExport.RowWriter writer = NutritionExport.open(NutritionExport.Format.XLSX, OutputStream.nullOutputStream(), true)) {
+            for (NutritionStats stats : statsList) {
+                writer.stats(stats);
+                for (DailyLog log : dailyLogs) {
+                    writer.dailyLog(stats.getUserId(), log);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void exportCsv() throws Exception {
+        export(NutritionExport.Format.CSV);
+    }
+
+    @Benchmark
+    public void exportNdjson() throws Exception {
+        export(NutritionExport.Format.NDJSON);
+    }
+
+    private void export(NutritionExport.Format format) throws Exception {
+        try (NutritionExport.RowWriter writer = NutritionExport.open(format, OutputStream.nullOutputStream(), false)) {
+            for (NutritionStats stats : statsList) {
+                writer.stats(stats);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nutricook.dashboard.entity.FirestorePage;
+import com.nutricook.dashboard.entity.NutritionStats;
+import com.nutricook.dashboard.service.NutritionPeriod;
+import com.nutricook.dashboard.service.NutritionRanking;
+
+/**
+ * Một trang 50 user của danh sách /admin/nutrition trên {@code size} user (filter "reached", theo calories TB).
+ *
+ * filterAndSort là cách cũ (lọc + sắp xếp toàn bộ danh sách rồi cắt trang); rankingPage đọc trang ở giữa
+ * bảng NutritionRanking theo offset, rankingTop50 là top-K, rankingUpdate là cập nhật thống kê của một user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class NutritionRankingBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<NutritionStats> stats;
+    private NutritionRanking ranking;
+    private Random random;
+    private int middleOffset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(42);
+        stats = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stats.add(randomStats("user" + i));
+        }
+        ranking = new NutritionRanking(NutritionPeriod.ALL, stats);
+        middleOffset = ranking.count(NutritionRanking.Filter.REACHED) / 2;
+    }
+
+    private NutritionStats randomStats(String userId) {
+        NutritionStats s = new NutritionStats();
+        s.setUserId(userId);
+        s.setUserName("Người dùng " + userId);
+        s.setCaloriesTarget(2000f);
+        int days = 1 + random.nextInt(30);
+        int reached = random.nextInt(days + 1);
+        s.setDaysTracked(days);
+        s.setDaysReachedGoal(reached);
+        s.setGoalAchievementRate(reached * 100f / days);
+        s.setAverageCalories(1000f + random.nextFloat() * 2500f);
+        return s;
+    }
+
+    @Benchmark
+    public List<NutritionStats> filterAndSort() {
+        List<NutritionStats> filtered = stats.stream()
+                .filter(s -> s != null && s.getGoalAchievementRate() >= 80f)
+                .collect(Collectors.toList());
+        filtered.sort((a, b) -> Float.compare(b.getAverageCalories(), a.getAverageCalories()));
+        int from = Math.min(middleOffset, filtered.size());
+        return new ArrayList<>(filtered.subList(from, Math.min(filtered.size(), from + PAGE_SIZE)));
+    }
+
+    @Benchmark
+    public FirestorePage<NutritionStats> rankingPage() {
+        return ranking.page(NutritionRanking.Filter.REACHED, NutritionRanking.Sort.CALORIES, middleOffset, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<NutritionStats> rankingTop50() {
+        return ranking.top(NutritionRanking.Filter.REACHED, NutritionRanking.Sort.CALORIES, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public NutritionRanking rankingUpdate() {
+        ranking.update(randomStats("user" + random.nextInt(size)));
+        return ranking;
+    }
+}
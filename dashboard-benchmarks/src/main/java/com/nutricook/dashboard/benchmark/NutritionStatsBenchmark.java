@@ -0,0 +1,134 @@
+package com.nutricook.dashboard.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+import com.nutricook.dashboard.service.DailyLogColumnStore;
+import com.nutricook.dashboard.service.DailyLogSeries;
+import com.nutricook.dashboard.service.FirestoreService;
+import com.nutricook.dashboard.service.InMemoryDocumentStore;
+import com.nutricook.dashboard.service.NutritionAccumulator;
+
+/**
+ * calculateNutritionStats của một user có {@code days} daily log.
+ *
+ * calculateNutritionStats chạy FirestoreService thật trên InMemoryDocumentStore (đọc document user, query
+ * daily_logs, decode, cộng dồn); accumulate chỉ đo phần cộng dồn trên các DailyLog đã decode sẵn.
+ * columnarNutritionStats dùng DailyLogColumnStore (series đã nạp), columnarWindow30 là truy vấn 30 ngày
+ * bằng prefix sum, recent30Logs là danh sách log 30 ngày cho trang theo khoảng thời gian.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class NutritionStatsBenchmark {
+
+    private static final String USER_ID = "bench-user";
+
+    @Param({"30", "365", "1825"})
+    public int days;
+
+    private InMemoryDocumentStore store;
+    private FirestoreService firestoreService;
+    private FirestoreService columnarService;
+    private DailyLogSeries series;
+    private LocalDate lastDay;
+    private List<DailyLog> logs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        store = new InMemoryDocumentStore();
+        Map<String, Object> user = new HashMap<>();
+        user.put("fullName", "Người dùng benchmark");
+        user.put("email", "bench@nutricook.vn");
+        user.put("nutrition", Map.of("caloriesTarget", 2000.0));
+        store.put("users/" + USER_ID, user);
+
+        logs = new ArrayList<>(days);
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < days; i++) {
+            String dateId = start.plusDays(i).toString();
+            Map<String, Object> data = new HashMap<>();
+            data.put("dateId", dateId);
+            data.put("calories", (double) (800 + random.nextInt(2000)));
+            data.put("protein", random.nextDouble() * 150);
+            data.put("fat", random.nextDouble() * 90);
+            data.put("carb", random.nextDouble() * 300);
+            data.put("updatedAt", 1_700_000_000_000L + i * 86_400_000L);
+            store.put("users/" + USER_ID + "/daily_logs/" + dateId, data);
+            logs.add(new DailyLog(dateId, ((Double) data.get("calories")).floatValue(),
+                    ((Double) data.get("protein")).floatValue(), ((Double) data.get("fat")).floatValue(),
+                    ((Double) data.get("carb")).floatValue(), (Long) data.get("updatedAt")));
+        }
+
+        lastDay = start.plusDays(days - 1L);
+
+        // Chỉ các đường đọc qua DocumentStore được dùng, nên không cần Firestore và các service khác
+        DailyLogColumnStore disabled = new DailyLogColumnStore(store, false, 1, 60, 60, 7, "");
+        firestoreService = new FirestoreService(null, false, "", true, null, null, null, null, store, disabled, 1, 500, 10000);
+        // refresh-seconds lớn để đo đúng phần phục vụ từ bộ nhớ
+        DailyLogColumnStore columns = new DailyLogColumnStore(store, true, 10, 3600, 60, 7, "");
+        columnarService = new FirestoreService(null, false, "", true, null, null, null, null, store, columns, 1, 500, 10000);
+        series = columns.series(USER_ID, 2000f);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Benchmark
+    public NutritionStats calculateNutritionStats() throws Exception {
+        return firestoreService.calculateNutritionStats(USER_ID);
+    }
+
+    @Benchmark
+    public NutritionStats columnarNutritionStats() throws Exception {
+        return columnarService.calculateNutritionStats(USER_ID);
+    }
+
+    @Benchmark
+    public DailyLogSeries.Window columnarWindow30() {
+        return series.window(lastDay.minusDays(29), lastDay);
+    }
+
+    @Benchmark
+    public List<DailyLog> recent30Logs() {
+        return series.logs(lastDay.minusDays(29), lastDay);
+    }
+
+    @Benchmark
+    public NutritionStats accumulate() {
+        NutritionAccumulator accumulator = new NutritionAccumulator(2000f);
+        for (DailyLog log : logs) {
+            accumulator.add(log);
+        }
+        NutritionStats stats = new NutritionStats();
+        accumulator.applyTo(stats);
+        return stats;
+    }
+}
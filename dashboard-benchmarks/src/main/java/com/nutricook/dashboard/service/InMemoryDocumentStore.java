@@ -0,0 +1,343 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.FieldValue;
+
+/**
+ * DocumentStore trong bộ nhớ cho benchmark (dashboard-benchmarks): mỗi collection là một ConcurrentSkipListMap theo
+ * document ID (duyệt theo thứ tự ID như Firestore), collection group được tra qua chỉ mục ID collection -> các
+ * đường dẫn. Query được đánh giá trực tiếp (lọc, sắp xếp, limit, projection) với quy tắc so sánh gần với
+ * Firestore: range filter chỉ khớp giá trị cùng kiểu (số với số, thời gian với thời gian, chuỗi với chuỗi).
+ *
+ * Độ trễ giả lập (latencyMillis + ngẫu nhiên [0, jitterMillis]) được áp vào mỗi thao tác mà không chiếm thread:
+ * future hoàn thành trên một scheduler riêng. Độ trễ 0 thì hoàn thành ngay.
+ */
+public class InMemoryDocumentStore implements DocumentStore {
+
+    private final Map<String, ConcurrentSkipListMap<String, Map<String, Object>>> collections = new ConcurrentHashMap<>();
+    // ID collection -> các đường dẫn collection có ID đó (cho collection group)
+    private final Map<String, Set<String>> groups = new ConcurrentHashMap<>();
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final ScheduledExecutorService delayer;
+    private final AtomicLong documentsRead = new AtomicLong();
+    private final AtomicLong documentsWritten = new AtomicLong();
+
+    public InMemoryDocumentStore() {
+        this(0L, 0L);
+    }
+
+    public InMemoryDocumentStore(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = Math.max(0L, latencyMillis);
+        this.jitterMillis = Math.max(0L, jitterMillis);
+        this.delayer = this.latencyMillis > 0 || this.jitterMillis > 0
+                ? Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "in-memory-store-latency");
+                    t.setDaemon(true);
+                    return t;
+                })
+                : null;
+    }
+
+    // ==========================================================
+    // ĐỌC
+    // ==========================================================
+
+    @Override
+    public CompletableFuture<StoredDocument> get(String path) {
+        int slash = path.lastIndexOf('/');
+        Map<String, Map<String, Object>> col = collections.get(path.substring(0, slash));
+        Map<String, Object> data = col != null ? col.get(path.substring(slash + 1)) : null;
+        documentsRead.incrementAndGet();
+        return delayed(new StoredDocument(path, data));
+    }
+
+    @Override
+    public CompletableFuture<List<StoredDocument>> query(DocumentQuery query) {
+        List<StoredDocument> result = evaluate(query);
+        documentsRead.addAndGet(Math.max(1, result.size()));
+        return delayed(result);
+    }
+
+    @Override
+    public CompletableFuture<Long> count(DocumentQuery query) {
+        long count = matching(query).size();
+        documentsRead.addAndGet(Math.max(1L, (count + 999L) / 1000L));
+        return delayed(count);
+    }
+
+    List<StoredDocument> evaluate(DocumentQuery query) {
+        List<StoredDocument> docs = matching(query);
+        if (!query.getOrders().isEmpty()) {
+            docs.sort(comparator(query.getOrders()));
+        }
+        if (query.getLimit() > 0 && docs.size() > query.getLimit()) {
+            docs = new ArrayList<>(docs.subList(0, query.getLimit()));
+        }
+        if (query.getSelect() != null) {
+            List<StoredDocument> projected = new ArrayList<>(docs.size());
+            for (StoredDocument doc : docs) {
+                projected.add(new StoredDocument(doc.getPath(), project(doc.getData(), query.getSelect())));
+            }
+            docs = projected;
+        }
+        return docs;
+    }
+
+    private List<StoredDocument> matching(DocumentQuery query) {
+        List<StoredDocument> docs = new ArrayList<>();
+        for (String path : collectionPaths(query)) {
+            ConcurrentSkipListMap<String, Map<String, Object>> col = collections.get(path);
+            if (col == null) continue;
+            for (Map.Entry<String, Map<String, Object>> entry : col.entrySet()) {
+                StoredDocument doc = new StoredDocument(path + "/" + entry.getKey(), entry.getValue());
+                if (matches(doc, query.getFilters())) docs.add(doc);
+            }
+        }
+        return docs;
+    }
+
+    private List<String> collectionPaths(DocumentQuery query) {
+        if (!query.isCollectionGroup()) return List.of(query.getCollection());
+        List<String> paths = new ArrayList<>(groups.getOrDefault(query.getCollection(), Set.of()));
+        paths.sort(null);
+        return paths;
+    }
+
+    private static boolean matches(StoredDocument doc, List<DocumentQuery.Filter> filters) {
+        for (DocumentQuery.Filter filter : filters) {
+            Object value = value(doc, filter.getField());
+            switch (filter.getOp()) {
+                case EQUAL:
+                    if (value == null ? filter.getValue() != null : !sameValue(value, filter.getValue())) return false;
+                    break;
+                case NOT_NULL:
+                    if (value == null) return false;
+                    break;
+                case IN: {
+                    boolean found = false;
+                    for (Object candidate : (List<?>) filter.getValue()) {
+                        if (value != null && sameValue(value, candidate)) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    if (!found) return false;
+                    break;
+                }
+                default: {
+                    if (value == null || typeRank(value) != typeRank(filter.getValue())) return false;
+                    int cmp = compare(value, filter.getValue());
+                    if (filter.getOp() == DocumentQuery.Op.GREATER_OR_EQUAL && cmp < 0) return false;
+                    if (filter.getOp() == DocumentQuery.Op.LESS_THAN && cmp >= 0) return false;
+                    if (filter.getOp() == DocumentQuery.Op.LESS_OR_EQUAL && cmp > 0) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static Object value(StoredDocument doc, String field) {
+        return DocumentQuery.DOCUMENT_ID.equals(field) ? doc.getId() : doc.get(field);
+    }
+
+    private static Comparator<StoredDocument> comparator(List<DocumentQuery.Order> orders) {
+        Comparator<StoredDocument> comparator = null;
+        for (DocumentQuery.Order order : orders) {
+            Comparator<StoredDocument> next = (a, b) -> {
+                Object va = value(a, order.getField());
+                Object vb = value(b, order.getField());
+                int cmp = typeRank(va) != typeRank(vb) ? Integer.compare(typeRank(va), typeRank(vb)) : compare(va, vb);
+                return order.isDescending() ? -cmp : cmp;
+            };
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        // Giống Firestore: cuối cùng sắp theo đường dẫn document
+        return comparator.thenComparing(StoredDocument::getPath);
+    }
+
+    private static Map<String, Object> project(Map<String, Object> data, List<String> fields) {
+        if (data == null) return null;
+        Map<String, Object> projected = new LinkedHashMap<>();
+        for (String field : fields) {
+            // Field lồng nhau ("author.id"): giữ cả map cấp đầu, đủ cho việc đọc lại bằng đường dẫn
+            String top = field.indexOf('.') < 0 ? field : field.substring(0, field.indexOf('.'));
+            if (data.containsKey(top)) projected.put(top, data.get(top));
+        }
+        return projected;
+    }
+
+    // Thứ tự kiểu giá trị như Firestore: null < boolean < số < thời gian < chuỗi < còn lại
+    private static int typeRank(Object v) {
+        if (v == null) return 0;
+        if (v instanceof Boolean) return 1;
+        if (v instanceof Number) return 2;
+        if (v instanceof Timestamp || v instanceof Date) return 3;
+        if (v instanceof String) return 4;
+        return 5;
+    }
+
+    private static boolean sameValue(Object a, Object b) {
+        return typeRank(a) == typeRank(b) && compare(a, b) == 0;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compare(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (typeRank(a) == 3 && typeRank(b) == 3) {
+            return Long.compare(epochMicros(a), epochMicros(b));
+        }
+        if (a instanceof Comparable && a.getClass().isInstance(b)) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return String.valueOf(a).compareTo(String.valueOf(b));
+    }
+
+    private static long epochMicros(Object v) {
+        if (v instanceof Timestamp) {
+            Timestamp ts = (Timestamp) v;
+            return ts.getSeconds() * 1_000_000L + ts.getNanos() / 1000;
+        }
+        return ((Date) v).getTime() * 1000L;
+    }
+
+    // ==========================================================
+    // GHI
+    // ==========================================================
+
+    @Override
+    public synchronized CompletableFuture<Void> commit(List<DocumentWrite> writes) {
+        if (writes.size() > MAX_BATCH_SIZE) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Batch quá " + MAX_BATCH_SIZE + " thao tác"));
+        }
+        // Kiểm tra trước để batch nguyên tử: update document không tồn tại thì không ghi gì
+        for (DocumentWrite write : writes) {
+            if (write.getKind() == DocumentWrite.Kind.UPDATE && lookup(write.getPath()) == null) {
+                return CompletableFuture.failedFuture(new IllegalStateException("NOT_FOUND: " + write.getPath()));
+            }
+        }
+        for (DocumentWrite write : writes) {
+            apply(write);
+        }
+        documentsWritten.addAndGet(writes.size());
+        return delayed(null);
+    }
+
+    /**
+     * Nạp dữ liệu trực tiếp, không tính độ trễ (dùng khi dựng dataset).
+     */
+    public void put(String path, Map<String, Object> data) {
+        apply(DocumentWrite.set(path, data));
+    }
+
+    /** Chép toàn bộ dữ liệu sang store khác (không tính độ trễ và thống kê). */
+    public void copyTo(InMemoryDocumentStore target) {
+        collections.forEach((path, col) -> col.forEach((id, data) -> target.put(path + "/" + id, data)));
+    }
+
+    private void apply(DocumentWrite write) {
+        String path = write.getPath();
+        int slash = path.lastIndexOf('/');
+        String colPath = path.substring(0, slash);
+        String id = path.substring(slash + 1);
+        switch (write.getKind()) {
+            case SET:
+                collection(colPath).put(id, new HashMap<>(write.getData()));
+                break;
+            case UPDATE: {
+                Map<String, Object> updated = new HashMap<>(collection(colPath).get(id));
+                for (Map.Entry<String, Object> entry : write.getData().entrySet()) {
+                    setField(updated, entry.getKey(), entry.getValue());
+                }
+                collection(colPath).put(id, updated);
+                break;
+            }
+            default: {
+                ConcurrentSkipListMap<String, Map<String, Object>> col = collections.get(colPath);
+                if (col != null) col.remove(id);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void setField(Map<String, Object> data, String field, Object value) {
+        String[] parts = field.split("\\.");
+        Map<String, Object> target = data;
+        for (int i = 0; i < parts.length - 1; i++) {
+            Object child = target.get(parts[i]);
+            Map<String, Object> copy = child instanceof Map ? new HashMap<>((Map<String, Object>) child) : new HashMap<>();
+            target.put(parts[i], copy);
+            target = copy;
+        }
+        String last = parts[parts.length - 1];
+        if (FieldValue.delete().equals(value)) {
+            target.remove(last);
+        } else if (value instanceof FieldValue) {
+            throw new UnsupportedOperationException("FieldValue không được hỗ trợ trong bộ nhớ: " + value);
+        } else {
+            target.put(last, value);
+        }
+    }
+
+    private Map<String, Object> lookup(String path) {
+        int slash = path.lastIndexOf('/');
+        Map<String, Map<String, Object>> col = collections.get(path.substring(0, slash));
+        return col != null ? col.get(path.substring(slash + 1)) : null;
+    }
+
+    private ConcurrentSkipListMap<String, Map<String, Object>> collection(String path) {
+        return collections.computeIfAbsent(path, p -> {
+            groups.computeIfAbsent(p.substring(p.lastIndexOf('/') + 1), id -> ConcurrentHashMap.newKeySet()).add(p);
+            return new ConcurrentSkipListMap<>();
+        });
+    }
+
+    // ==========================================================
+    // ĐỘ TRỄ GIẢ LẬP + THỐNG KÊ
+    // ==========================================================
+
+    private <T> CompletableFuture<T> delayed(T value) {
+        if (delayer == null) return CompletableFuture.completedFuture(value);
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0L);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        delayer.schedule(() -> future.complete(value), delay, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    public void shutdown() {
+        if (delayer != null) delayer.shutdownNow();
+    }
+
+    /** Số document trong một collection (theo đường dẫn). */
+    public int size(String collectionPath) {
+        Map<String, ?> col = collections.get(collectionPath);
+        return col != null ? col.size() : 0;
+    }
+
+    public long getDocumentsRead() {
+        return documentsRead.get();
+    }
+
+    public long getDocumentsWritten() {
+        return documentsWritten.get();
+    }
+}
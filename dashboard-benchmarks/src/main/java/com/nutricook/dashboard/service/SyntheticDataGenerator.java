@@ -0,0 +1,162 @@
+package com.nutricook.dashboard.service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.cloud.Timestamp;
+
+/**
+ * Sinh dataset giả lập có cùng dạng dữ liệu với app mobile (users + daily_logs, posts, reviews, userRecipes)
+ * để chạy benchmark trên InMemoryDocumentStore mà không cần project Firebase.
+ *
+ * Cùng seed luôn cho cùng dataset (so sánh được giữa các lần chạy). Dữ liệu được ghi qua DocumentStore.commit
+ * theo batch tối đa MAX_BATCH_SIZE, nên cũng dùng được với FirestoreDocumentStore trỏ vào emulator.
+ */
+public class SyntheticDataGenerator {
+
+    private static final String[] FIRST_NAMES = { "An", "Bình", "Chi", "Dũng", "Giang", "Hà", "Khánh", "Linh", "Minh", "Nam", "Phương", "Quân", "Thảo", "Trang", "Vy" };
+    private static final String[] LAST_NAMES = { "Nguyễn", "Trần", "Lê", "Phạm", "Hoàng", "Huỳnh", "Võ", "Đặng", "Bùi", "Đỗ" };
+    private static final String[] RECIPES = { "Phở bò", "Bún chả", "Gỏi cuốn", "Cơm tấm", "Salad ức gà", "Cháo yến mạch", "Canh chua", "Bò lúc lắc" };
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final long seed;
+    private final ZoneId zone;
+
+    public SyntheticDataGenerator(long seed) {
+        this(seed, ZoneId.systemDefault());
+    }
+
+    public SyntheticDataGenerator(long seed, ZoneId zone) {
+        this.seed = seed;
+        this.zone = zone;
+    }
+
+    /**
+     * Ghi dataset vào store: {@code users} user, mỗi user tối đa {@code daysPerUser} daily log liên tiếp
+     * (kết thúc ở hôm nay), cùng {@code posts} bài viết, {@code reviews} đánh giá và {@code recipes} công thức.
+     * Trả về danh sách ID user đã tạo.
+     */
+    public List<String> populate(DocumentStore store, int users, int daysPerUser, int posts, int reviews, int recipes) throws Exception {
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+        LocalDate today = LocalDate.now(zone);
+        List<String> userIds = new ArrayList<>(users);
+        Batch batch = new Batch(store);
+
+        for (int i = 0; i < users; i++) {
+            String uid = String.format("user%06d", i);
+            userIds.add(uid);
+            batch.set("users/" + uid, user(random, i, uid, now));
+
+            // Một phần user chỉ dùng app một thời gian ngắn
+            int days = random.nextInt(4) == 0 ? random.nextInt(Math.max(1, daysPerUser / 4) + 1) : daysPerUser;
+            float base = 1500 + random.nextInt(1200);
+            for (int d = days - 1; d >= 0; d--) {
+                if (random.nextInt(10) == 0) continue; // bỏ trống vài ngày như dữ liệu thật
+                LocalDate date = today.minusDays(d);
+                batch.set("users/" + uid + "/daily_logs/" + date, dailyLog(random, date, base));
+            }
+        }
+
+        for (int i = 0; i < posts; i++) {
+            String authorId = userIds.isEmpty() ? "unknown" : userIds.get(random.nextInt(userIds.size()));
+            Map<String, Object> author = new HashMap<>();
+            author.put("id", authorId);
+            author.put("name", name(random));
+            Map<String, Object> post = new HashMap<>();
+            post.put("content", "Bữa hôm nay: " + RECIPES[random.nextInt(RECIPES.length)]);
+            post.put("author", author);
+            post.put("likes", (long) random.nextInt(500));
+            post.put("commentsCount", (long) random.nextInt(50));
+            post.put("createdAt", now - (long) (random.nextDouble() * 180 * DAY_MILLIS));
+            batch.set(String.format("posts/post%07d", i), post);
+        }
+
+        for (int i = 0; i < reviews; i++) {
+            Map<String, Object> review = new HashMap<>();
+            review.put("userId", userIds.isEmpty() ? "unknown" : userIds.get(random.nextInt(userIds.size())));
+            review.put("recipeId", String.format("recipe%06d", random.nextInt(Math.max(1, recipes))));
+            review.put("rating", (long) (1 + random.nextInt(5)));
+            review.put("comment", random.nextBoolean() ? "Ngon, dễ làm" : "Hơi mặn");
+            review.put("createdAt", Timestamp.ofTimeMicroseconds((now - (long) (random.nextDouble() * 180 * DAY_MILLIS)) * 1000L));
+            batch.set(String.format("reviews/review%07d", i), review);
+        }
+
+        for (int i = 0; i < recipes; i++) {
+            Map<String, Object> recipe = new HashMap<>();
+            recipe.put("userId", userIds.isEmpty() ? "unknown" : userIds.get(random.nextInt(userIds.size())));
+            recipe.put("name", RECIPES[random.nextInt(RECIPES.length)] + " #" + i);
+            recipe.put("calories", (double) (150 + random.nextInt(800)));
+            recipe.put("servings", (long) (1 + random.nextInt(4)));
+            recipe.put("createdAt", Timestamp.ofTimeMicroseconds((now - (long) (random.nextDouble() * 365 * DAY_MILLIS)) * 1000L));
+            batch.set(String.format("userRecipes/recipe%06d", i), recipe);
+        }
+
+        batch.flush();
+        return userIds;
+    }
+
+    private Map<String, Object> user(Random random, int index, String uid, long now) {
+        Map<String, Object> user = new HashMap<>();
+        String username = "user" + index;
+        user.put("id", uid);
+        user.put("username", username);
+        user.put("email", username + "@example.com");
+        user.put("fullName", name(random));
+        user.put("role", index % 50 == 0 ? "ADMIN" : "USER");
+        user.put("bio", random.nextInt(3) == 0 ? "Đang giảm cân" : "");
+        long createdAt = now - (long) (random.nextDouble() * 365 * DAY_MILLIS);
+        user.put("createdAt", Timestamp.ofTimeMicroseconds(createdAt * 1000L));
+        user.put("lastActiveAt", Timestamp.ofTimeMicroseconds((createdAt + (long) (random.nextDouble() * (now - createdAt))) * 1000L));
+        if (random.nextInt(10) < 6) {
+            user.put("fcmToken", "token-" + Long.toHexString(random.nextLong()));
+        }
+        Map<String, Object> nutrition = new HashMap<>();
+        nutrition.put("caloriesTarget", (double) (1600 + random.nextInt(9) * 100));
+        user.put("nutrition", nutrition);
+        return user;
+    }
+
+    private Map<String, Object> dailyLog(Random random, LocalDate date, float base) {
+        Map<String, Object> log = new HashMap<>();
+        double calories = Math.max(0, base + random.nextGaussian() * 350);
+        log.put("dateId", date.toString());
+        log.put("calories", Math.round(calories * 10) / 10.0);
+        log.put("protein", Math.round(calories * (0.15 + random.nextDouble() * 0.1) / 4 * 10) / 10.0);
+        log.put("fat", Math.round(calories * (0.2 + random.nextDouble() * 0.15) / 9 * 10) / 10.0);
+        log.put("carb", Math.round(calories * (0.4 + random.nextDouble() * 0.15) / 4 * 10) / 10.0);
+        log.put("updatedAt", Timestamp.ofTimeMicroseconds(
+                (date.atStartOfDay(zone).toInstant().toEpochMilli() + 20 * 60 * 60 * 1000L) * 1000L));
+        return log;
+    }
+
+    private static String name(Random random) {
+        return LAST_NAMES[random.nextInt(LAST_NAMES.length)] + " " + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+    }
+
+    /** Gom các lệnh set thành batch MAX_BATCH_SIZE. */
+    private static final class Batch {
+        private final DocumentStore store;
+        private final List<DocumentWrite> writes = new ArrayList<>(DocumentStore.MAX_BATCH_SIZE);
+
+        Batch(DocumentStore store) {
+            this.store = store;
+        }
+
+        void set(String path, Map<String, Object> data) throws Exception {
+            writes.add(DocumentWrite.set(path, data));
+            if (writes.size() >= DocumentStore.MAX_BATCH_SIZE) flush();
+        }
+
+        void flush() throws Exception {
+            if (writes.isEmpty()) return;
+            FirestoreFutures.await(store.commit(new ArrayList<>(writes)));
+            writes.clear();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.nutricook.dashboard.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.google.cloud.firestore.Firestore;
+import com.nutricook.dashboard.service.DocumentStore;
+import com.nutricook.dashboard.service.FirestoreDocumentStore;
+
+/**
+ * DocumentStore cho các service khi chạy ứng dụng: luôn là Firestore.
+ *
+ * InMemoryDocumentStore + SyntheticDataGenerator nằm trong module dashboard-benchmarks, dựng trực tiếp quanh service
+ * cần đo; ứng dụng không có chế độ chạy trong bộ nhớ vì phần lớn /admin/* vẫn đọc Firestore trực tiếp.
+ */
+@Configuration
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class DocumentStoreConfig {
+
+    @Bean
+    public DocumentStore documentStore(Firestore firestore) {
+        return new FirestoreDocumentStore(firestore);
+    }
+}
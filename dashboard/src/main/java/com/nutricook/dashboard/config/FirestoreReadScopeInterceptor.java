@@ -0,0 +1,98 @@
+package com.nutricook.dashboard.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.nutricook.dashboard.service.FirestoreReadScope;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Mở FirestoreReadScope cho mỗi request: gộp các lần đọc Firestore giống nhau, gắn tên endpoint
+ * (METHOD + URL pattern) cho metric và áp read budget của endpoint.
+ *
+ * Budget: firestore.budget.endpoints dạng "/admin/analytics=2000,/admin/nutrition=20000" (theo URL pattern),
+ * endpoint không có trong danh sách dùng firestore.budget.default-reads (0 = không giới hạn).
+ * firestore.budget.mode: off | log (chỉ cảnh báo) | reject (trả 429 cho các lần đọc sau khi vượt; request đã bị
+ * từ chối đọc thì trả 429 kể cả khi controller bắt lỗi và trả kết quả khác).
+ *
+ * Khi bật debug header, response có X-Firestore-Reads (số lần đọc thật), X-Firestore-Reads-Deduplicated
+ * (số lần đọc được dùng lại) và X-Firestore-Documents-Read (số document đã đọc).
+ */
+public class FirestoreReadScopeInterceptor implements HandlerInterceptor {
+
+    static final String READS_HEADER = "X-Firestore-Reads";
+    static final String DEDUPLICATED_HEADER = "X-Firestore-Reads-Deduplicated";
+    static final String DOCUMENTS_HEADER = "X-Firestore-Documents-Read";
+
+    private final boolean debugHeader;
+    private final String budgetMode;
+    private final long defaultBudget;
+    private final Map<String, Long> endpointBudgets;
+
+    public FirestoreReadScopeInterceptor(boolean debugHeader, String budgetMode, long defaultBudget, String endpointBudgets) {
+        this.debugHeader = debugHeader;
+        this.budgetMode = budgetMode == null ? "off" : budgetMode.trim().toLowerCase();
+        this.defaultBudget = Math.max(0L, defaultBudget);
+        this.endpointBudgets = parseBudgets(endpointBudgets);
+    }
+
+    static Map<String, Long> parseBudgets(String spec) {
+        Map<String, Long> budgets = new HashMap<>();
+        if (spec == null || spec.isBlank()) return budgets;
+        for (String entry : spec.split(",")) {
+            int eq = entry.lastIndexOf('=');
+            if (eq <= 0) continue;
+            try {
+                budgets.put(entry.substring(0, eq).trim(), Long.parseLong(entry.substring(eq + 1).trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("⚠️ Ignoring invalid Firestore read budget: " + entry.trim());
+            }
+        }
+        return budgets;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String path = pattern != null ? pattern.toString() : request.getRequestURI();
+        long budget = "off".equals(budgetMode) ? 0L : endpointBudgets.getOrDefault(path, defaultBudget);
+        FirestoreReadScope.open(request.getMethod() + " " + path, budget, "reject".equals(budgetMode));
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        // Trang Thymeleaf: header phải được đặt trước khi view render (lúc đó response chưa commit)
+        FirestoreReadScope scope = FirestoreReadScope.current();
+        // Controller nuốt mất 429 (catch rồi trả dữ liệu rỗng): vẫn trả 429 nếu chưa kịp gửi response
+        if (scope != null && scope.isRejected() && !response.isCommitted()) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Firestore read budget exceeded for "
+                    + scope.getEndpoint());
+        }
+        if (debugHeader && scope != null && !response.isCommitted()) {
+            response.setHeader(READS_HEADER, String.valueOf(scope.getIssued()));
+            response.setHeader(DEDUPLICATED_HEADER, String.valueOf(scope.getDeduplicated()));
+            response.setHeader(DOCUMENTS_HEADER, String.valueOf(scope.getDocumentsRead()));
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        FirestoreReadScope scope = FirestoreReadScope.current();
+        if (scope != null && scope.isOverBudget()) {
+            System.err.println("⚠️ " + scope.getEndpoint() + " finished over its Firestore read budget: "
+                    + scope.getDocumentsRead() + " documents (budget " + scope.getReadBudget() + "), "
+                    + scope.getDocumentsWritten() + " written, " + scope.getBytesRead() + " bytes");
+        }
+        FirestoreReadScope.close();
+    }
+}
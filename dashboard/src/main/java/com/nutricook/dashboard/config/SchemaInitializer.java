@@ -114,6 +114,37 @@ public class SchemaInitializer {
                     "FOREIGN KEY (food_item_id) REFERENCES food_items(id) ON DELETE CASCADE" +
                     ") ENGINE=InnoDB");
 
+            // Outbox đồng bộ MySQL -> Firestore
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS firestore_outbox (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "aggregate_type VARCHAR(20) NOT NULL, " +
+                    "aggregate_id BIGINT NOT NULL, " +
+                    "operation VARCHAR(10) NOT NULL, " +
+                    "created_at DATETIME, " +
+                    "attempts INT NOT NULL DEFAULT 0, " +
+                    "next_attempt_at DATETIME NOT NULL, " +
+                    "last_error VARCHAR(1024), " +
+                    "INDEX idx_outbox_due (next_attempt_at, id), " +
+                    "INDEX idx_outbox_aggregate (aggregate_type, aggregate_id)" +
+                    ") ENGINE=InnoDB");
+
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS firestore_outbox_state (" +
+                    "name VARCHAR(255) PRIMARY KEY, " +
+                    "high_water_mark BIGINT, " +
+                    "dispatched_count BIGINT, " +
+                    "last_dispatch_at DATETIME" +
+                    ") ENGINE=InnoDB");
+
+            // Hash nội dung lần cuối đã ghi lên Firestore (FirestoreSyncStateStore)
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS firestore_sync_state (" +
+                    "collection_name VARCHAR(64) NOT NULL, " +
+                    "doc_id VARCHAR(255) NOT NULL, " +
+                    "content_hash CHAR(64) NOT NULL, " +
+                    "field_hashes TEXT, " +
+                    "synced_at DATETIME, " +
+                    "PRIMARY KEY (collection_name, doc_id)" +
+                    ") ENGINE=InnoDB");
+
             System.out.println("[SchemaInitializer] Schema ensured.");
         } catch (Exception e) {
             System.err.println("[SchemaInitializer] Failed to ensure schema: " + e.getMessage());
@@ -1,6 +1,8 @@
 package com.nutricook.dashboard.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import java.nio.file.Path;
@@ -9,6 +11,31 @@ import java.nio.file.Paths;
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    @Value("${firestore.read-scope.enabled:true}")
+    private boolean readScopeEnabled;
+
+    @Value("${firestore.read-scope.debug-header:true}")
+    private boolean readScopeDebugHeader;
+
+    @Value("${firestore.budget.mode:log}")
+    private String budgetMode;
+
+    @Value("${firestore.budget.default-reads:0}")
+    private long defaultReadBudget;
+
+    @Value("${firestore.budget.endpoints:}")
+    private String endpointReadBudgets;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Gộp các lần đọc Firestore trùng nhau trong cùng một request, đo số document đọc/ghi theo endpoint
+        if (readScopeEnabled) {
+            registry.addInterceptor(new FirestoreReadScopeInterceptor(readScopeDebugHeader, budgetMode,
+                            defaultReadBudget, endpointReadBudgets))
+                    .addPathPatterns("/admin/**", "/api/**");
+        }
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         // Lấy đường dẫn tuyệt đối đến thư mục 'uploads'
@@ -5,17 +5,14 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
-
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,12 +41,25 @@ import com.nutricook.dashboard.entity.NutritionStats;
 import com.nutricook.dashboard.entity.Post;
 import com.nutricook.dashboard.entity.Review;
 import com.nutricook.dashboard.entity.AnalyticsData;
+import com.nutricook.dashboard.entity.FirestorePage;
+import com.nutricook.dashboard.entity.BulkSyncReport;
 import com.nutricook.dashboard.repository.CategoryRepository;
 import com.nutricook.dashboard.repository.FoodItemRepository;
 import com.nutricook.dashboard.repository.FoodUpdateRepository;
 import com.nutricook.dashboard.repository.UserRepository;
+import com.nutricook.dashboard.service.AdminFilters;
+import com.nutricook.dashboard.service.FirestoreAsyncService;
+import com.nutricook.dashboard.service.FirestoreFutures;
+import com.nutricook.dashboard.service.FirestoreOutboxService;
 import com.nutricook.dashboard.service.FirestoreService;
+import com.nutricook.dashboard.service.IngredientJsonImport;
 import com.nutricook.dashboard.service.NotificationService;
+import com.nutricook.dashboard.service.NutritionExport;
+import com.nutricook.dashboard.service.NutritionPeriod;
+import com.nutricook.dashboard.service.NutritionRanking;
+import com.nutricook.dashboard.service.NutritionRankingService;
+import com.nutricook.dashboard.service.NutritionRollupService;
+import com.nutricook.dashboard.service.NutritionSketchService;
 import com.nutricook.dashboard.service.CloudinaryService;
 
 @Controller
@@ -62,8 +72,20 @@ public class AdminController {
     @Autowired(required = false)
     private FirestoreService firestoreService;
     
+    @Autowired(required = false)
+    private FirestoreAsyncService firestoreAsyncService;
+    
     @Autowired(required = false)
     private NotificationService notificationService;
+
+    @Autowired(required = false)
+    private NutritionRollupService nutritionRollupService;
+
+    @Autowired(required = false)
+    private NutritionSketchService nutritionSketchService;
+
+    @Autowired(required = false)
+    private NutritionRankingService nutritionRankingService;
     
     @Autowired
     private CategoryRepository categoryRepository;
@@ -76,11 +98,17 @@ public class AdminController {
     
     @Autowired
     private FoodUpdateRepository foodUpdateRepository;
+
+    // Ghi MySQL + outbox cùng transaction; FirestoreOutboxDispatcher đồng bộ lên Firestore ở nền
+    @Autowired
+    private FirestoreOutboxService firestoreOutbox;
     
     @Autowired(required = false)
     private CloudinaryService cloudinaryService;
     
     private final String UPLOAD_DIR = "uploads/";
+    // Số user đọc mỗi trang khi export (summary của một trang đọc bằng một getAll)
+    private static final int EXPORT_PAGE_SIZE = 500;
     
     // Initialize some sample data after the application is ready
     @EventListener(ApplicationReadyEvent.class)
@@ -146,9 +174,9 @@ public class AdminController {
                 return;
             }
             
-            List<FoodItem> allFoods = foodItemRepository.findAll();
+            List<FoodItem> allFoods = foodItemRepository.findAllWithCategory();
+            List<FoodItem> toSync = new ArrayList<>();
             int migratedCount = 0;
-            int syncedCount = 0;
             int skippedCount = 0;
             int errorCount = 0;
             
@@ -170,37 +198,19 @@ public class AdminController {
                             String cloudinaryUrl = cloudinaryService.uploadImageFromFile(filePath);
                             food.setImageUrl(cloudinaryUrl);
                             
-                            // Đảm bảo category được load đầy đủ
-                            if (food.getCategory() != null && food.getCategory().getId() != null) {
-                                Category category = categoryRepository.findById(food.getCategory().getId()).orElse(null);
-                                if (category != null) {
-                                    food.setCategory(category);
-                                }
-                            }
-                            
                             // Lưu vào database
                             foodItemRepository.save(food);
-                            
-                            // Sync lên Firestore
-                            firestoreService.saveFood(food);
+                            toSync.add(food);
                             
                             migratedCount++;
-                            syncedCount++;
-                            System.out.println("   ✅ Migrated and synced: " + food.getId());
+                            System.out.println("   ✅ Migrated: " + food.getId());
                         } else {
                             skippedCount++;
                             System.out.println("   ⚠️ File not found for FoodItem ID: " + food.getId());
                         }
                     } else if (imageUrl != null && !imageUrl.isEmpty() && !imageUrl.contains("cloudinary.com")) {
                         // Nếu có URL nhưng không phải Cloudinary và không phải local, chỉ sync lại
-                        if (food.getCategory() != null && food.getCategory().getId() != null) {
-                            Category category = categoryRepository.findById(food.getCategory().getId()).orElse(null);
-                            if (category != null) {
-                                food.setCategory(category);
-                            }
-                        }
-                        firestoreService.saveFood(food);
-                        syncedCount++;
+                        toSync.add(food);
                     }
                     
                 } catch (Exception e) {
@@ -209,10 +219,16 @@ public class AdminController {
                 }
             }
             
+            // Sync lên Firestore một lượt; món không đổi so với lần đồng bộ trước được bỏ qua
+            BulkSyncReport report = FirestoreFutures.await(firestoreService.syncFoodsAsync(toSync));
+            int syncedCount = report.getSucceeded() - report.getSkipped();
+            errorCount += report.getFailed();
+            
             System.out.println("==========================================");
             System.out.println("✅ Auto-migration completed!");
             System.out.println("   Migrated to Cloudinary: " + migratedCount);
             System.out.println("   Synced to Firestore: " + syncedCount);
+            System.out.println("   Unchanged (write skipped): " + report.getSkipped());
             System.out.println("   Skipped (file not found): " + skippedCount);
             System.out.println("   Errors: " + errorCount);
             System.out.println("==========================================");
@@ -229,8 +245,8 @@ public class AdminController {
         long userCount;
         try {
             if (firestoreService != null) {
-                userCount = firestoreService.listUsersAsEntities().size();
-                System.out.println("Loaded user count from Firestore");
+                userCount = firestoreService.countUsers();
+                System.out.println("Loaded user count from Firestore (aggregate count)");
             } else {
                 userCount = userRepository.count();
             }
@@ -250,18 +266,7 @@ public class AdminController {
         } catch (Exception e) {
             System.err.println("❌ Error counting user recipes from Firestore: " + e.getMessage());
             e.printStackTrace();
-            // Thử fallback bằng cách list và count
-            try {
-                if (firestoreService != null) {
-                    System.out.println("🔄 Trying fallback: listing recipes...");
-                    List<com.nutricook.dashboard.entity.UserRecipe> recipes = firestoreService.listUserRecipes();
-                    userRecipeCount = recipes != null ? recipes.size() : 0;
-                    System.out.println("✅ Fallback count: " + userRecipeCount);
-                }
-            } catch (Exception e2) {
-                System.err.println("❌ Fallback also failed: " + e2.getMessage());
-                userRecipeCount = 0;
-            }
+            userRecipeCount = 0;
         }
         
         model.addAttribute("userCount", userCount);
@@ -277,12 +282,29 @@ public class AdminController {
 
     // User Management - Quản lý người dùng
     @GetMapping("/users")
-    public String users(Model model) {
+    public String users(@RequestParam(value = "cursor", required = false) String cursor,
+                        @RequestParam(value = "size", required = false, defaultValue = "50") int size,
+                        Model model) {
+        addUsersPage(cursor, size, model);
+        model.addAttribute("newUser", new User());
+        model.addAttribute("title", "Quản lý người dùng");
+        model.addAttribute("subtitle", "Quản lý tài khoản người dùng");
+        model.addAttribute("activeTab", "users");
+        return "admin/users";
+    }
+
+    /**
+     * Một trang danh sách user (users, cursor, nextCursor, pageSize) cho admin/users, dùng chung cho
+     * trang danh sách và form sửa user.
+     */
+    private void addUsersPage(String cursor, int size, Model model) {
         List<User> users;
         try {
             if (firestoreService != null) {
-                users = firestoreService.listUsersAsEntities();
-                System.out.println("Loaded " + users.size() + " users from Firestore");
+                FirestorePage<User> page = firestoreService.listUsersPage(size, cursor);
+                users = page.getItems();
+                model.addAttribute("nextCursor", page.getNextCursor());
+                System.out.println("Loaded " + users.size() + " users from Firestore (1 page)");
             } else {
                 users = userRepository.findAll();
                 System.out.println("Loaded " + users.size() + " users from H2 database");
@@ -292,11 +314,8 @@ public class AdminController {
             users = userRepository.findAll();
         }
         model.addAttribute("users", users);
-        model.addAttribute("newUser", new User());
-        model.addAttribute("title", "Quản lý người dùng");
-        model.addAttribute("subtitle", "Quản lý tài khoản người dùng");
-        model.addAttribute("activeTab", "users");
-        return "admin/users";
+        model.addAttribute("cursor", cursor);
+        model.addAttribute("pageSize", size);
     }
     
     @PostMapping("/users")
@@ -354,16 +373,15 @@ public class AdminController {
     }
 
     @GetMapping("/users/{id}/edit")
-    public String showEditUserForm(@PathVariable Long id, Model model) {
+    public String showEditUserForm(@PathVariable Long id,
+                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                   @RequestParam(value = "size", required = false, defaultValue = "50") int size,
+                                   Model model) {
         try {
             User user = null;
             if (firestoreService != null) {
                 // Tìm user từ Firestore
-                List<User> users = firestoreService.listUsersAsEntities();
-                user = users.stream()
-                    .filter(u -> u.getId() != null && u.getId().equals(id))
-                    .findFirst()
-                    .orElse(null);
+                user = firestoreService.findUserById(id);
             }
             if (user == null) {
                 user = userRepository.findById(id).orElse(null);
@@ -372,7 +390,8 @@ public class AdminController {
                 return "redirect:/admin/users";
             }
             model.addAttribute("editUser", user);
-            model.addAttribute("users", firestoreService != null ? firestoreService.listUsersAsEntities() : userRepository.findAll());
+            // Cùng trang với danh sách (cursor/size) để bảng không bị cắt còn trang đầu
+            addUsersPage(cursor, size, model);
             model.addAttribute("newUser", new User());
             model.addAttribute("title", "Quản lý người dùng");
             model.addAttribute("subtitle", "Quản lý tài khoản người dùng");
@@ -390,11 +409,7 @@ public class AdminController {
             User existing = null;
             // Tìm user từ Firestore hoặc H2
             if (firestoreService != null) {
-                List<User> users = firestoreService.listUsersAsEntities();
-                existing = users.stream()
-                    .filter(u -> u.getId() != null && u.getId().equals(id))
-                    .findFirst()
-                    .orElse(null);
+                existing = firestoreService.findUserById(id);
             }
             if (existing == null) {
                 existing = userRepository.findById(id).orElse(null);
@@ -516,69 +531,9 @@ public class AdminController {
             ingredients = foodItemRepository.findByCategoryOrderByNameAsc(category);
         }
         
-        // Apply filters
-        List<FoodItem> filteredIngredients = new ArrayList<>(ingredients);
-        
-        // Filter by search
-        if (search != null && !search.trim().isEmpty()) {
-            String searchLower = search.toLowerCase().trim();
-            filteredIngredients = filteredIngredients.stream()
-                .filter(food -> 
-                    (food.getName() != null && food.getName().toLowerCase().contains(searchLower)) ||
-                    (food.getDescription() != null && food.getDescription().toLowerCase().contains(searchLower))
-                )
-                .toList();
-        }
-        
-        // Filter by calories
-        if (filterCalories != null && !filterCalories.isEmpty()) {
-            if ("low".equals(filterCalories)) {
-                filteredIngredients = filteredIngredients.stream()
-                    .filter(food -> {
-                        try {
-                            String calStr = food.getCalories();
-                            if (calStr != null && calStr.contains("kcal")) {
-                                double cal = Double.parseDouble(calStr.replaceAll("[^0-9.]", ""));
-                                return cal < 50;
-                            }
-                            return false;
-                        } catch (Exception e) {
-                            return false;
-                        }
-                    })
-                    .toList();
-            } else if ("medium".equals(filterCalories)) {
-                filteredIngredients = filteredIngredients.stream()
-                    .filter(food -> {
-                        try {
-                            String calStr = food.getCalories();
-                            if (calStr != null && calStr.contains("kcal")) {
-                                double cal = Double.parseDouble(calStr.replaceAll("[^0-9.]", ""));
-                                return cal >= 50 && cal <= 150;
-                            }
-                            return false;
-                        } catch (Exception e) {
-                            return false;
-                        }
-                    })
-                    .toList();
-            } else if ("high".equals(filterCalories)) {
-                filteredIngredients = filteredIngredients.stream()
-                    .filter(food -> {
-                        try {
-                            String calStr = food.getCalories();
-                            if (calStr != null && calStr.contains("kcal")) {
-                                double cal = Double.parseDouble(calStr.replaceAll("[^0-9.]", ""));
-                                return cal > 150;
-                            }
-                            return false;
-                        } catch (Exception e) {
-                            return false;
-                        }
-                    })
-                    .toList();
-            }
-        }
+        // Apply filters (search rồi mức calories)
+        List<FoodItem> filteredIngredients = AdminFilters.filterByCalories(
+                AdminFilters.searchFoods(ingredients, search), filterCalories);
         
         // Lấy tất cả categories để hiển thị trong form thêm nguyên liệu
         List<Category> allCategories;
@@ -611,15 +566,7 @@ public class AdminController {
                 redirectAttributes.addFlashAttribute("error", "Tên danh mục đã tồn tại!");
                 return "redirect:/admin/categories";
             }
-            Category savedCategory = categoryRepository.save(category);
-            try {
-                if (firestoreService != null) {
-                    firestoreService.saveCategory(savedCategory);
-                    System.out.println("Synced new category to Firestore: " + savedCategory.getId());
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to sync new category to Firestore: " + e.getMessage());
-            }
+            firestoreOutbox.saveCategory(category);
             redirectAttributes.addFlashAttribute("success", "Thêm danh mục thành công!");
         } catch (Exception e) {
             redirectAttributes.addFlashAttribute("error", "Lỗi khi thêm danh mục: " + e.getMessage());
@@ -652,16 +599,7 @@ public class AdminController {
                 existingCategory.setColor(category.getColor());
                 existingCategory.setUpdatedAt(LocalDateTime.now());
                 
-                categoryRepository.save(existingCategory);
-
-                try {
-                    if (firestoreService != null) {
-                        firestoreService.saveCategory(existingCategory);
-                        System.out.println("Synced updated category to Firestore: " + existingCategory.getId());
-                    }
-                } catch (Exception e) {
-                    System.err.println("Failed to sync updated category to Firestore: " + e.getMessage());
-                }
+                firestoreOutbox.saveCategory(existingCategory);
                 redirectAttributes.addFlashAttribute("success", "Cập nhật danh mục thành công!");
             }
         } catch (Exception e) {
@@ -685,15 +623,7 @@ public class AdminController {
                     foodsInCategory.size() + " món ăn thuộc danh mục này!");
                 return "redirect:/admin/categories";
             }
-            categoryRepository.deleteById(id);
-            try {
-                if (firestoreService != null) {
-                    firestoreService.deleteCategory(id);
-                    System.out.println("Deleted category from Firestore: " + id);
-                }
-            } catch (Exception e) {
-                 System.err.println("Failed to delete category from Firestore: " + e.getMessage());
-            }
+            firestoreOutbox.deleteCategory(id);
             redirectAttributes.addFlashAttribute("success", "Xóa danh mục '" + category.getName() + "' thành công!");
         } catch (Exception e) {
             redirectAttributes.addFlashAttribute("error", "Lỗi khi xóa danh mục: " + e.getMessage());
@@ -849,18 +779,8 @@ public class AdminController {
             // Tính tổng vitamin (trung bình)
             foodItem.calculateTotalVitamin();
             
-            FoodItem savedFood = foodItemRepository.save(foodItem);
+            FoodItem savedFood = firestoreOutbox.saveFood(foodItem);
             System.out.println("💾 Saved FoodItem to database. ID: " + savedFood.getId() + ", ImageURL: " + savedFood.getImageUrl());
-            try {
-                if (firestoreService != null) {
-                    // Category đã được set rồi, không cần load lại
-                    firestoreService.saveFood(savedFood);
-                    System.out.println("✅ Synced new food to Firestore: " + savedFood.getId() + " with imageUrl: " + savedFood.getImageUrl());
-                }
-            } catch (Exception e) {
-                System.err.println("❌ Failed to sync new food to Firestore: " + e.getMessage());
-                e.printStackTrace();
-            }
             logFoodUpdate(null, savedFood, "CREATE");
             redirectAttributes.addFlashAttribute("success", "Thêm nguyên liệu thành công!");
             if (returnToCategory != null) {
@@ -899,12 +819,7 @@ public class AdminController {
             }
             
             // Parse JSON
-            ObjectMapper objectMapper = new ObjectMapper();
-            String jsonContent = new String(jsonFile.getBytes(), "UTF-8");
-            List<Map<String, Object>> ingredientsList = objectMapper.readValue(
-                jsonContent, 
-                new TypeReference<List<Map<String, Object>>>() {}
-            );
+            List<Map<String, Object>> ingredientsList = IngredientJsonImport.parse(jsonFile.getBytes());
             
             if (ingredientsList == null || ingredientsList.isEmpty()) {
                 redirectAttributes.addFlashAttribute("error", "File JSON không chứa dữ liệu hoặc không đúng định dạng!");
@@ -927,13 +842,12 @@ public class AdminController {
                 Map<String, Object> ingredientData = ingredientsList.get(i);
                 try {
                     // Extract required fields - handle both String and Number types
-                    String name = getStringOrNumberValue(ingredientData, "name");
-                    if (name == null || name.trim().isEmpty()) {
+                    String name = IngredientJsonImport.nameOf(ingredientData);
+                    if (name == null) {
                         errorMessages.add("Dòng " + (i + 1) + ": Thiếu tên nguyên liệu");
                         failCount++;
                         continue;
                     }
-                    name = name.trim();
                     
                     // Check if ingredient already exists
                     if (foodItemRepository.existsByName(name.trim())) {
@@ -942,116 +856,10 @@ public class AdminController {
                         continue;
                     }
                     
-                    // Extract calories - handle both String and Number types
-                    String calories = getStringOrNumberValue(ingredientData, "calories");
-                    if (calories == null || calories.trim().isEmpty()) {
-                        calories = "0 kcal";
-                    } else {
-                        // Remove any whitespace
-                        calories = calories.trim();
-                        // If it's a number (no "kcal"), add "kcal"
-                        if (!calories.toLowerCase().contains("kcal")) {
-                            try {
-                                // Try to parse as number
-                                double calValue = Double.parseDouble(calories);
-                                calories = String.format("%.1f", calValue).replace(".0", "").replace(",", ".") + " kcal";
-                            } catch (NumberFormatException e) {
-                                // If not a number, add "kcal" anyway
-                                calories = calories + " kcal";
-                            }
-                        }
-                    }
-                    
-                    // Extract unit - support both "unit" and "unit_name"
-                    String unit = getStringOrNumberValue(ingredientData, "unit");
-                    if (unit == null || unit.trim().isEmpty()) {
-                        // Try unit_name as fallback
-                        unit = getStringOrNumberValue(ingredientData, "unit_name");
-                        if (unit == null || unit.trim().isEmpty()) {
-                            unit = "g";
-                        }
-                    }
-                    unit = unit.trim();
-                    
-                    // Extract description - handle both String and Number types
-                    String description = getStringOrNumberValue(ingredientData, "description");
-                    if (description == null) {
-                        description = "";
-                    } else {
-                        description = description.trim();
-                    }
-                    
-                    // Extract image URL - support both "image_url" and "imageUrl"
-                    String imageUrl = getStringOrNumberValue(ingredientData, "image_url");
-                    if (imageUrl == null || imageUrl.trim().isEmpty()) {
-                        imageUrl = getStringOrNumberValue(ingredientData, "imageUrl");
-                    }
-                    if (imageUrl != null) {
-                        imageUrl = imageUrl.trim();
-                        // If it's a local path (like "assets/images/..."), keep it as is
-                        // If it's a full URL, use it directly
-                        // System will handle it later when syncing to Firestore
-                    }
-                    
-                    // Create FoodItem
-                    FoodItem foodItem = new FoodItem();
-                    foodItem.setName(name.trim());
-                    foodItem.setCalories(calories);
-                    foodItem.setUnit(unit);
-                    foodItem.setDescription(description);
-                    foodItem.setCategory(category);
-                    foodItem.setAvailable(true);
-                    
-                    // Set image URL if available
-                    if (imageUrl != null && !imageUrl.isEmpty()) {
-                        foodItem.setImageUrl(imageUrl);
-                    }
-                    
-                    // Extract nutrition values
-                    foodItem.setFat(getDoubleValue(ingredientData, "fat", 0.0));
-                    foodItem.setCarbs(getDoubleValue(ingredientData, "carbs", 0.0));
-                    foodItem.setProtein(getDoubleValue(ingredientData, "protein", 0.0));
-                    foodItem.setCholesterol(getDoubleValue(ingredientData, "cholesterol", 0.0));
-                    foodItem.setSodium(getDoubleValue(ingredientData, "sodium", 0.0));
-                    
-                    // Extract vitamin details - support both flat format (vitaminA) and nested format (vitamins.vitamin_a)
-                    Map<String, Object> vitaminsObject = null;
-                    Object vitaminsRaw = ingredientData.get("vitamins");
-                    if (vitaminsRaw instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> temp = (Map<String, Object>) vitaminsRaw;
-                        vitaminsObject = temp;
-                    }
-                    
-                    // Try to get vitamins from nested object first, then flat format
-                    foodItem.setVitaminA(getVitaminValue(ingredientData, vitaminsObject, "vitaminA", "vitamin_a", 0.0));
-                    foodItem.setVitaminB1(getVitaminValue(ingredientData, vitaminsObject, "vitaminB1", "vitamin_b1", 0.0));
-                    foodItem.setVitaminB2(getVitaminValue(ingredientData, vitaminsObject, "vitaminB2", "vitamin_b2", 0.0));
-                    foodItem.setVitaminB3(getVitaminValue(ingredientData, vitaminsObject, "vitaminB3", "vitamin_b3", 0.0));
-                    foodItem.setVitaminB6(getVitaminValue(ingredientData, vitaminsObject, "vitaminB6", "vitamin_b6", 0.0));
-                    foodItem.setVitaminB9(getVitaminValue(ingredientData, vitaminsObject, "vitaminB9", "vitamin_b9", 0.0));
-                    foodItem.setVitaminB12(getVitaminValue(ingredientData, vitaminsObject, "vitaminB12", "vitamin_b12", 0.0));
-                    foodItem.setVitaminC(getVitaminValue(ingredientData, vitaminsObject, "vitaminC", "vitamin_c", 0.0));
-                    foodItem.setVitaminD(getVitaminValue(ingredientData, vitaminsObject, "vitaminD", "vitamin_d", 0.0));
-                    foodItem.setVitaminE(getVitaminValue(ingredientData, vitaminsObject, "vitaminE", "vitamin_e", 0.0));
-                    foodItem.setVitaminK(getVitaminValue(ingredientData, vitaminsObject, "vitaminK", "vitamin_k", 0.0));
-                    
-                    // Calculate total vitamin
-                    foodItem.calculateTotalVitamin();
-                    
-                    // Save to database
-                    FoodItem savedFood = foodItemRepository.save(foodItem);
+                    FoodItem foodItem = IngredientJsonImport.toFoodItem(ingredientData, name, category);
                     
-                    // Sync to Firestore
-                    try {
-                        if (firestoreService != null) {
-                            firestoreService.saveFood(savedFood);
-                            System.out.println("✅ Synced imported food to Firestore: " + savedFood.getId());
-                        }
-                    } catch (Exception e) {
-                        System.err.println("⚠️ Failed to sync imported food to Firestore: " + e.getMessage());
-                        // Continue even if Firestore sync fails
-                    }
+                    // Save to database (Firestore được đồng bộ qua outbox)
+                    FoodItem savedFood = firestoreOutbox.saveFood(foodItem);
                     
                     logFoodUpdate(null, savedFood, "IMPORT");
                     successCount++;
@@ -1098,115 +906,6 @@ public class AdminController {
         return "redirect:/admin/categories/" + categoryId + "/ingredients";
     }
     
-    /**
-     * Helper method to safely extract Double value from Map
-     */
-    private Double getDoubleValue(Map<String, Object> map, String key, Double defaultValue) {
-        try {
-            Object value = map.get(key);
-            if (value == null) {
-                return defaultValue;
-            }
-            if (value instanceof Number) {
-                return ((Number) value).doubleValue();
-            }
-            if (value instanceof String) {
-                String str = ((String) value).trim();
-                if (str.isEmpty()) {
-                    return defaultValue;
-                }
-                return Double.parseDouble(str);
-            }
-            return defaultValue;
-        } catch (Exception e) {
-            return defaultValue;
-        }
-    }
-    
-    /**
-     * Helper method to safely extract Double value from Map (returns null if not found)
-     */
-    private Double getDoubleValue(Map<String, Object> map, String key) {
-        try {
-            Object value = map.get(key);
-            if (value == null) {
-                return null;
-            }
-            if (value instanceof Number) {
-                return ((Number) value).doubleValue();
-            }
-            if (value instanceof String) {
-                String str = ((String) value).trim();
-                if (str.isEmpty()) {
-                    return null;
-                }
-                return Double.parseDouble(str);
-            }
-            return null;
-        } catch (Exception e) {
-            return null;
-        }
-    }
-    
-    /**
-     * Helper method to safely extract String value from Map (handles both String and Number)
-     */
-    private String getStringOrNumberValue(Map<String, Object> map, String key) {
-        try {
-            Object value = map.get(key);
-            if (value == null) {
-                return null;
-            }
-            if (value instanceof String) {
-                return (String) value;
-            }
-            if (value instanceof Number) {
-                // Convert number to string
-                Number num = (Number) value;
-                // Remove trailing zeros if it's a whole number
-                if (num.doubleValue() == num.longValue()) {
-                    return String.valueOf(num.longValue());
-                } else {
-                    return String.valueOf(num.doubleValue());
-                }
-            }
-            // For other types, convert to string
-            return String.valueOf(value);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-    
-    /**
-     * Helper method to extract vitamin value from either flat format or nested vitamins object
-     */
-    private Double getVitaminValue(Map<String, Object> ingredientData, Map<String, Object> vitaminsObject, 
-                                   String flatKey, String nestedKey, Double defaultValue) {
-        // Try nested format first (vitamins.vitamin_a)
-        if (vitaminsObject != null) {
-            Double nestedValue = getDoubleValue(vitaminsObject, nestedKey);
-            if (nestedValue != null) {
-                return nestedValue;
-            }
-        }
-        
-        // Try flat format (vitaminA)
-        Double flatValue = getDoubleValue(ingredientData, flatKey);
-        if (flatValue != null) {
-            return flatValue;
-        }
-        
-        // Try nested format with flat key name (vitamins.vitaminA)
-        if (vitaminsObject != null) {
-            Double nestedFlatValue = getDoubleValue(vitaminsObject, flatKey);
-            if (nestedFlatValue != null) {
-                return nestedFlatValue;
-            }
-        }
-        
-        return defaultValue != null ? defaultValue : 0.0;
-    }
-
     @PostMapping("/api/foods/upload")
     @ResponseBody
     public ResponseEntity<String> uploadFood(
@@ -1249,16 +948,7 @@ public class AdminController {
                     foodItem.setImageUrl("/uploads/" + fileName);
                 }
             }
-            FoodItem savedFood = foodItemRepository.save(foodItem);
-            try {
-                 if (firestoreService != null) {
-                    savedFood.setCategory(category); 
-                    firestoreService.saveFood(savedFood);
-                    System.out.println("Synced new food (from API) to Firestore: " + savedFood.getId());
-                 }
-            } catch (Exception e) {
-                 System.err.println("Failed to sync new food (from API) to Firestore: " + e.getMessage());
-            }
+            FoodItem savedFood = firestoreOutbox.saveFood(foodItem);
             logFoodUpdate(null, savedFood, "CREATE");
             return ResponseEntity.ok("Food uploaded successfully");
         } catch (Exception e) {
@@ -1398,22 +1088,10 @@ public class AdminController {
                     }
                 }
                 
-                // 3. Lưu vào H2
-                foodItemRepository.save(existingFood);
+                // 3. Lưu vào H2 (Firestore được đồng bộ qua outbox)
+                firestoreOutbox.saveFood(existingFood);
                 System.out.println("💾 Updated FoodItem in database. ID: " + existingFood.getId() + ", ImageURL: " + existingFood.getImageUrl());
                 
-                // 4. Đồng bộ lên Firestore
-                try {
-                    if (firestoreService != null) {
-                        // "existingFood" BÂY GIỜ đã có category đầy đủ
-                        firestoreService.saveFood(existingFood);
-                        System.out.println("✅ Synced updated food to Firestore: " + existingFood.getId() + " with imageUrl: " + existingFood.getImageUrl());
-                    }
-                } catch (Exception e) {
-                    System.err.println("❌ Failed to sync updated food to Firestore: " + e.getMessage());
-                    e.printStackTrace();
-                }
-                
                 logFoodUpdate(oldFood, existingFood, "UPDATE");
                 redirectAttributes.addFlashAttribute("success", "Cập nhật nguyên liệu thành công!");
                 if (returnToCategory != null) {
@@ -1446,19 +1124,7 @@ public class AdminController {
                     ? foodItem.getCategory().getId() 
                     : returnToCategory;
                 
-                List<FoodUpdate> updatesToDelete = foodUpdateRepository.findByFoodItem(foodItem);
-                if (!updatesToDelete.isEmpty()) {
-                    foodUpdateRepository.deleteAll(updatesToDelete);
-                }
-                foodItemRepository.deleteById(id);
-                try {
-                    if (firestoreService != null) {
-                        firestoreService.deleteFood(id);
-                        System.out.println("Deleted food from Firestore: " + id);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Failed to delete food from Firestore: " + e.getMessage());
-                }
+                firestoreOutbox.deleteFood(foodItem);
                 redirectAttributes.addFlashAttribute("success", "Xóa nguyên liệu thành công!");
                 
                 // Redirect về trang category-ingredients nếu có returnToCategory hoặc categoryId
@@ -1492,18 +1158,7 @@ public class AdminController {
                 foodItem.setAvailable(!foodItem.getAvailable());
                 foodItem.setUpdatedAt(LocalDateTime.now());
                 
-                foodItemRepository.save(foodItem);
-
-                try {
-                    if (firestoreService != null) {
-                        Category cat = categoryRepository.findById(foodItem.getCategory().getId()).orElse(null);
-                        foodItem.setCategory(cat);
-                        firestoreService.saveFood(foodItem); 
-                        System.out.println("Synced toggle food to Firestore: " + foodItem.getId());
-                    }
-                } catch (Exception e) {
-                    System.err.println("Failed to sync toggle food to Firestore: " + e.getMessage());
-                }
+                firestoreOutbox.saveFood(foodItem);
 
                 String status = foodItem.getAvailable() ? "kích hoạt" : "vô hiệu hóa";
                 redirectAttributes.addFlashAttribute("success", 
@@ -1531,30 +1186,22 @@ public class AdminController {
     public String userUploadedFoods(
             @RequestParam(value = "search", required = false) String search,
             @RequestParam(value = "filter", required = false) String filter,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false, defaultValue = "50") int size,
             Model model) {
         List<com.nutricook.dashboard.entity.UserRecipe> userRecipes = new ArrayList<>();
         
-        // Debug: Kiểm tra FirestoreService
         if (firestoreService == null) {
             System.err.println("⚠️ WARNING: FirestoreService is NULL! Firebase may not be enabled or configured.");
             model.addAttribute("error", "Firestore service không khả dụng. Vui lòng kiểm tra cấu hình Firebase trong application.properties (firebase.enabled=true)");
         } else {
-            System.out.println("✅ FirestoreService is available. Loading user recipes...");
             try {
-                userRecipes = firestoreService.listUserRecipes();
-                System.out.println("✅ Loaded " + userRecipes.size() + " user recipes from Firestore");
-                
-                // Debug: In ra một vài recipe để kiểm tra
-                if (!userRecipes.isEmpty()) {
-                    com.nutricook.dashboard.entity.UserRecipe sample = userRecipes.get(0);
-                    System.out.println("📋 Sample recipe: " + sample.getRecipeName() + " by " + sample.getUserEmail());
-                    System.out.println("   ImageUrls: " + (sample.getImageUrls() != null ? sample.getImageUrls().size() + " items" : "null"));
-                    if (sample.getImageUrls() != null && !sample.getImageUrls().isEmpty()) {
-                        System.out.println("   First image URL: " + sample.getFirstImageUrl());
-                    } else {
-                        System.out.println("   ⚠️ No image URLs found!");
-                    }
-                }
+                // Search/filter được áp dụng trong lúc đọc từng trang để mỗi request chỉ giữ một trang
+                FirestorePage<com.nutricook.dashboard.entity.UserRecipe> page =
+                        firestoreService.listUserRecipesPage(size, cursor, userRecipeFilter(search, filter));
+                userRecipes = page.getItems();
+                model.addAttribute("nextCursor", page.getNextCursor());
+                System.out.println("✅ Loaded " + userRecipes.size() + " user recipes from Firestore (1 page)");
             } catch (Exception e) {
                 System.err.println("❌ Error loading user recipes: " + e.getMessage());
                 e.printStackTrace();
@@ -1562,46 +1209,43 @@ public class AdminController {
             }
         }
         
-        // Lọc theo search query
+        model.addAttribute("recipes", userRecipes);
+        model.addAttribute("search", search != null ? search : "");
+        model.addAttribute("filter", filter != null ? filter : "");
+        model.addAttribute("cursor", cursor);
+        model.addAttribute("pageSize", size);
+        model.addAttribute("title", "Món ăn người dùng upload");
+        model.addAttribute("subtitle", "Quản lý các món ăn được người dùng đăng tải");
+        model.addAttribute("activeTab", "userUploadedFoods");
+        return "admin/user-uploaded-foods";
+    }
+    
+    // Điều kiện lọc của trang user-uploaded-foods (search theo tên/email/mô tả + trạng thái)
+    private java.util.function.Predicate<com.nutricook.dashboard.entity.UserRecipe> userRecipeFilter(String search, String filter) {
+        java.util.function.Predicate<com.nutricook.dashboard.entity.UserRecipe> predicate = null;
         if (search != null && !search.trim().isEmpty()) {
             String searchLower = search.toLowerCase();
-            userRecipes = userRecipes.stream()
-                .filter(recipe -> 
-                    (recipe.getRecipeName() != null && recipe.getRecipeName().toLowerCase().contains(searchLower)) ||
-                    (recipe.getUserEmail() != null && recipe.getUserEmail().toLowerCase().contains(searchLower)) ||
-                    (recipe.getDescription() != null && recipe.getDescription().toLowerCase().contains(searchLower))
-                )
-                .toList();
+            predicate = recipe ->
+                (recipe.getRecipeName() != null && recipe.getRecipeName().toLowerCase().contains(searchLower)) ||
+                (recipe.getUserEmail() != null && recipe.getUserEmail().toLowerCase().contains(searchLower)) ||
+                (recipe.getDescription() != null && recipe.getDescription().toLowerCase().contains(searchLower));
         }
-        
-        // Lọc theo filter (approved, pending, hidden)
+        java.util.function.Predicate<com.nutricook.dashboard.entity.UserRecipe> status = null;
         if (filter != null && !filter.isEmpty()) {
             switch (filter) {
                 case "approved":
-                    userRecipes = userRecipes.stream()
-                        .filter(recipe -> recipe.getApproved() != null && recipe.getApproved())
-                        .toList();
+                    status = recipe -> recipe.getApproved() != null && recipe.getApproved();
                     break;
                 case "pending":
-                    userRecipes = userRecipes.stream()
-                        .filter(recipe -> recipe.getApproved() == null || !recipe.getApproved())
-                        .toList();
+                    status = recipe -> recipe.getApproved() == null || !recipe.getApproved();
                     break;
                 case "hidden":
-                    userRecipes = userRecipes.stream()
-                        .filter(recipe -> recipe.getAvailable() != null && !recipe.getAvailable())
-                        .toList();
+                    status = recipe -> recipe.getAvailable() != null && !recipe.getAvailable();
                     break;
             }
         }
-        
-        model.addAttribute("recipes", userRecipes);
-        model.addAttribute("search", search != null ? search : "");
-        model.addAttribute("filter", filter != null ? filter : "");
-        model.addAttribute("title", "Món ăn người dùng upload");
-        model.addAttribute("subtitle", "Quản lý các món ăn được người dùng đăng tải");
-        model.addAttribute("activeTab", "userUploadedFoods");
-        return "admin/user-uploaded-foods";
+        if (predicate == null) return status;
+        return status == null ? predicate : predicate.and(status);
     }
     
     // Xóa user recipe
@@ -1632,11 +1276,7 @@ public class AdminController {
         try {
             if (firestoreService != null) {
                 // Lấy recipe hiện tại để xem trạng thái
-                List<com.nutricook.dashboard.entity.UserRecipe> recipes = firestoreService.listUserRecipes();
-                com.nutricook.dashboard.entity.UserRecipe recipe = recipes.stream()
-                    .filter(r -> r.getDocId().equals(docId))
-                    .findFirst()
-                    .orElse(null);
+                com.nutricook.dashboard.entity.UserRecipe recipe = firestoreService.getUserRecipe(docId);
                 
                 if (recipe != null) {
                     boolean newApproved = !(recipe.getApproved() != null && recipe.getApproved());
@@ -1665,11 +1305,7 @@ public class AdminController {
         try {
             if (firestoreService != null) {
                 // Lấy recipe hiện tại để xem trạng thái
-                List<com.nutricook.dashboard.entity.UserRecipe> recipes = firestoreService.listUserRecipes();
-                com.nutricook.dashboard.entity.UserRecipe recipe = recipes.stream()
-                    .filter(r -> r.getDocId().equals(docId))
-                    .findFirst()
-                    .orElse(null);
+                com.nutricook.dashboard.entity.UserRecipe recipe = firestoreService.getUserRecipe(docId);
                 
                 if (recipe != null) {
                     boolean newAvailable = !(recipe.getAvailable() != null && recipe.getAvailable());
@@ -1734,11 +1370,7 @@ public class AdminController {
     @GetMapping("/search")
     public String search(@RequestParam String query, Model model) {
         List<FoodItem> foodResults = foodItemRepository.findByNameContainingIgnoreCase(query);
-        List<User> userResults = userRepository.findAll().stream()
-                .filter(user -> user.getUsername().toLowerCase().contains(query.toLowerCase()) ||
-                               user.getFullName().toLowerCase().contains(query.toLowerCase()) ||
-                               user.getEmail().toLowerCase().contains(query.toLowerCase()))
-                .toList();
+        List<User> userResults = AdminFilters.searchUsers(userRepository.findAll(), query);
         
         model.addAttribute("foodResults", foodResults);
         model.addAttribute("userResults", userResults);
@@ -1798,14 +1430,52 @@ public class AdminController {
     // NUTRITION MANAGEMENT - Quản lý Calories người dùng
     // ==========================================================
     
+    /**
+     * Thống kê trong khoảng thời gian: tuần/tháng/quý/năm lấy từ bucket của rollup nếu có.
+     */
+    private NutritionStats nutritionStatsFor(String userId, NutritionPeriod period) throws Exception {
+        return nutritionRollupService != null
+                ? nutritionRollupService.getNutritionStats(userId, period)
+                : firestoreService.calculateNutritionStats(userId, period);
+    }
+    
+    private List<NutritionStats> allUsersNutritionStats(NutritionPeriod period) {
+        return nutritionRollupService != null
+                ? nutritionRollupService.getAllUsersNutritionStats(period)
+                : firestoreService.getAllUsersNutritionStats(period);
+    }
+    
+    /**
+     * Bảng xếp hạng của khoảng: giữ sẵn trong NutritionRankingService nếu có, không thì dựng tạm cho request này.
+     */
+    private NutritionRanking nutritionRankingFor(NutritionPeriod period) throws Exception {
+        return nutritionRankingService != null
+                ? nutritionRankingService.ranking(period)
+                : new NutritionRanking(period, allUsersNutritionStats(period));
+    }
+    
     @GetMapping("/nutrition")
     public String nutrition(
             @RequestParam(value = "userId", required = false) String userId,
             @RequestParam(value = "filter", required = false, defaultValue = "all") String filter,
             @RequestParam(value = "period", required = false, defaultValue = "week") String period,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "sort", required = false, defaultValue = "calories") String sort,
+            @RequestParam(value = "page", required = false, defaultValue = "1") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "50") int size,
+            @RequestParam(value = "cursor", required = false) String cursor,
             Model model) {
         List<NutritionStats> allStats = new ArrayList<>();
+        NutritionRanking.Filter rankFilter = NutritionRanking.Filter.of(filter);
+        NutritionRanking.Sort rankSort = NutritionRanking.Sort.of(sort);
+        int pageSize = Math.max(1, Math.min(size, 500));
+        int pageNumber = Math.max(1, page);
+        int rankOffset = (pageNumber - 1) * pageSize;
+        int total = 0;
         String errorMessage = null;
+        NutritionPeriod range = NutritionPeriod.resolve(period, from, to, LocalDate.now(
+                firestoreService != null ? firestoreService.analyticsZone() : java.time.ZoneId.systemDefault()));
         
         try {
             if (firestoreService != null) {
@@ -1817,7 +1487,7 @@ public class AdminController {
                         List<DailyLog> allLogs = new ArrayList<>();
                         
                         try {
-                            stats = firestoreService.calculateNutritionStats(userId);
+                            stats = nutritionStatsFor(userId, range);
                         } catch (Exception e) {
                             System.err.println("Error calculating nutrition stats: " + e.getMessage());
                             e.printStackTrace();
@@ -1826,23 +1496,25 @@ public class AdminController {
                         }
                         
                         try {
-                            weeklyLogs = firestoreService.getUserDailyLogs(userId, 7);
-                            if (weeklyLogs == null) {
-                                weeklyLogs = new ArrayList<>();
+                            // Lịch sử chỉ đọc trong khoảng thời gian đang xem ("all" mới đọc toàn bộ)
+                            allLogs = firestoreService.getUserDailyLogs(userId, range.getFrom(), range.getTo());
+                            if (allLogs == null) {
+                                allLogs = new ArrayList<>();
                             }
                         } catch (Exception e) {
-                            System.err.println("Error loading weekly logs: " + e.getMessage());
-                            weeklyLogs = new ArrayList<>();
+                            System.err.println("Error loading all logs: " + e.getMessage());
+                            allLogs = new ArrayList<>();
                         }
                         
                         try {
-                            allLogs = firestoreService.getAllUserDailyLogs(userId);
-                            if (allLogs == null) {
-                                allLogs = new ArrayList<>();
+                            // Đọc sau lịch sử: nếu request đã đọc toàn bộ daily_logs thì 7 ngày cuối lấy lại từ đó
+                            weeklyLogs = firestoreService.getUserDailyLogs(userId, 7);
+                            if (weeklyLogs == null) {
+                                weeklyLogs = new ArrayList<>();
                             }
                         } catch (Exception e) {
-                            System.err.println("Error loading all logs: " + e.getMessage());
-                            allLogs = new ArrayList<>();
+                            System.err.println("Error loading weekly logs: " + e.getMessage());
+                            weeklyLogs = new ArrayList<>();
                         }
                         
                         if (stats != null) {
@@ -1850,47 +1522,38 @@ public class AdminController {
                         }
                         model.addAttribute("weeklyLogs", weeklyLogs);
                         model.addAttribute("allLogs", allLogs);
+                        
+                        try {
+                            // Biểu đồ theo khoảng đang xem: theo ngày, tuần hoặc tháng tùy độ dài khoảng
+                            Map<String, Float> chart = firestoreService.getCaloriesChart(userId, range);
+                            model.addAttribute("chartLabels", String.join(",", chart.keySet()));
+                            model.addAttribute("chartCalories", chart.values().stream().map(String::valueOf).collect(java.util.stream.Collectors.joining(",")));
+                            model.addAttribute("chartResolution", range.chartResolution().name().toLowerCase());
+                        } catch (Exception e) {
+                            System.err.println("Error loading calories chart: " + e.getMessage());
+                        }
                     } else {
-                        // Danh sách tất cả users
+                        // Danh sách theo bảng xếp hạng: chỉ lấy đúng trang đang xem, không lọc/sắp xếp toàn bộ user
                         try {
-                            allStats = firestoreService.getAllUsersNutritionStats();
-                            if (allStats == null) {
-                                allStats = new ArrayList<>();
+                            NutritionRanking ranking = nutritionRankingFor(range);
+                            FirestorePage<NutritionStats> statsPage;
+                            if (cursor != null && !cursor.isBlank()) {
+                                rankOffset = ranking.rankAfter(rankFilter, rankSort, cursor);
+                                statsPage = ranking.after(rankFilter, rankSort, cursor, pageSize);
+                            } else {
+                                statsPage = ranking.page(rankFilter, rankSort, rankOffset, pageSize);
                             }
+                            allStats = new ArrayList<>(statsPage.getItems());
+                            total = ranking.count(rankFilter);
+                            model.addAttribute("nextCursor", statsPage.getNextCursor());
+                        } catch (IllegalArgumentException e) {
+                            errorMessage = e.getMessage();
                         } catch (Exception e) {
                             System.err.println("Error loading all users nutrition stats: " + e.getMessage());
                             e.printStackTrace();
                             errorMessage = "Không thể tải danh sách người dùng: " + e.getMessage();
                             allStats = new ArrayList<>();
                         }
-                        
-                        // Áp dụng filter
-                        if (!allStats.isEmpty()) {
-                            try {
-                                if ("high".equals(filter)) {
-                                    allStats = allStats.stream()
-                                        .filter(s -> s != null && s.getAverageCalories() > 2500f)
-                                        .collect(java.util.stream.Collectors.toList());
-                                } else if ("low".equals(filter)) {
-                                    allStats = allStats.stream()
-                                        .filter(s -> s != null && s.getAverageCalories() > 0f && s.getAverageCalories() < 1500f)
-                                        .collect(java.util.stream.Collectors.toList());
-                                } else if ("reached".equals(filter)) {
-                                    allStats = allStats.stream()
-                                        .filter(s -> s != null && s.getGoalAchievementRate() >= 80f)
-                                        .collect(java.util.stream.Collectors.toList());
-                                } else if ("not-reached".equals(filter)) {
-                                    allStats = allStats.stream()
-                                        .filter(s -> s != null && s.getGoalAchievementRate() < 80f && s.getDaysTracked() > 0)
-                                        .collect(java.util.stream.Collectors.toList());
-                                }
-                                
-                                // Sắp xếp theo calories trung bình
-                                allStats.sort((a, b) -> Float.compare(b.getAverageCalories(), a.getAverageCalories()));
-                            } catch (Exception e) {
-                                System.err.println("Error filtering stats: " + e.getMessage());
-                            }
-                        }
                     }
                 } catch (Exception e) {
                     System.err.println("Error in FirestoreService: " + e.getMessage());
@@ -1910,8 +1573,18 @@ public class AdminController {
         // Đảm bảo tất cả attributes đều có giá trị, không null
         model.addAttribute("statsList", allStats != null ? allStats : new ArrayList<>());
         model.addAttribute("selectedUserId", userId != null ? userId : "");
-        model.addAttribute("filter", filter != null ? filter : "all");
-        model.addAttribute("period", period != null ? period : "week");
+        model.addAttribute("filter", rankFilter.getKey());
+        model.addAttribute("sort", rankSort.getKey());
+        model.addAttribute("sorts", NutritionRanking.Sort.values());
+        model.addAttribute("totalUsers", total);
+        model.addAttribute("rankOffset", rankOffset);
+        model.addAttribute("page", pageNumber);
+        model.addAttribute("pageSize", pageSize);
+        model.addAttribute("totalPages", Math.max(1, (total + pageSize - 1) / pageSize));
+        model.addAttribute("period", range.getName());
+        model.addAttribute("periodLabel", range.getLabel());
+        model.addAttribute("periodFrom", range.getFrom() != null ? range.getFrom().toString() : "");
+        model.addAttribute("periodTo", range.getTo() != null ? range.getTo().toString() : "");
         model.addAttribute("title", "Quản lý Calories");
         model.addAttribute("subtitle", "Theo dõi và phân tích calories người dùng");
         model.addAttribute("activeTab", "nutrition");
@@ -1935,7 +1608,7 @@ public class AdminController {
     
     @GetMapping("/nutrition/{userId}")
     public String nutritionDetail(@PathVariable String userId, Model model) {
-        return nutrition(userId, "all", "week", model);
+        return nutrition(userId, "all", "week", null, null, "calories", 1, 50, null, model);
     }
     
     // ==========================================================
@@ -1943,18 +1616,25 @@ public class AdminController {
     // ==========================================================
     
     @GetMapping("/posts")
-    public String posts(Model model) {
+    public String posts(@RequestParam(value = "cursor", required = false) String cursor,
+                        @RequestParam(value = "size", required = false, defaultValue = "50") int size,
+                        Model model) {
         List<Post> posts = new ArrayList<>();
         try {
             if (firestoreService != null) {
-                posts = firestoreService.getAllPosts();
+                FirestorePage<Post> page = firestoreService.getPostsPage(size, cursor);
+                posts = page.getItems();
+                model.addAttribute("nextCursor", page.getNextCursor());
             }
         } catch (Exception e) {
             System.err.println("Error loading posts: " + e.getMessage());
             e.printStackTrace();
+            model.addAttribute("error", "Lỗi khi tải bài viết: " + e.getMessage());
         }
         
         model.addAttribute("posts", posts != null ? posts : new ArrayList<>());
+        model.addAttribute("cursor", cursor);
+        model.addAttribute("pageSize", size);
         model.addAttribute("title", "Quản lý Posts");
         model.addAttribute("subtitle", "Quản lý bài viết từ người dùng");
         model.addAttribute("activeTab", "posts");
@@ -1983,18 +1663,25 @@ public class AdminController {
     // ==========================================================
     
     @GetMapping("/reviews")
-    public String reviews(Model model) {
+    public String reviews(@RequestParam(value = "cursor", required = false) String cursor,
+                          @RequestParam(value = "size", required = false, defaultValue = "50") int size,
+                          Model model) {
         List<Review> reviews = new ArrayList<>();
         try {
             if (firestoreService != null) {
-                reviews = firestoreService.getAllReviews();
+                FirestorePage<Review> page = firestoreService.getReviewsPage(size, cursor);
+                reviews = page.getItems();
+                model.addAttribute("nextCursor", page.getNextCursor());
             }
         } catch (Exception e) {
             System.err.println("Error loading reviews: " + e.getMessage());
             e.printStackTrace();
+            model.addAttribute("error", "Lỗi khi tải đánh giá: " + e.getMessage());
         }
         
         model.addAttribute("reviews", reviews != null ? reviews : new ArrayList<>());
+        model.addAttribute("cursor", cursor);
+        model.addAttribute("pageSize", size);
         model.addAttribute("title", "Quản lý Reviews");
         model.addAttribute("subtitle", "Quản lý đánh giá món ăn");
         model.addAttribute("activeTab", "reviews");
@@ -2023,80 +1710,55 @@ public class AdminController {
     // ==========================================================
     
     @GetMapping("/analytics")
-    public String analytics(@RequestParam(required = false, defaultValue = "7") int days, Model model) {
+    public String analytics(@RequestParam(required = false, defaultValue = "7") int days,
+                            @RequestParam(value = "cohort", required = false, defaultValue = "all") String cohort,
+                            @RequestParam(value = "distFrom", required = false) String distFrom,
+                            @RequestParam(value = "distTo", required = false) String distTo,
+                            Model model) {
         AnalyticsData analytics = new AnalyticsData();
         
         try {
-            if (firestoreService != null) {
-                // Lấy tổng số users
-                try {
-                    List<User> users = firestoreService.listUsersAsEntities();
-                    analytics.setTotalUsers((long) users.size());
-                } catch (Exception e) {
-                    analytics.setTotalUsers(userRepository.count());
-                }
-                
-                // Lấy tổng số posts
-                try {
-                    List<Post> posts = firestoreService.getAllPosts();
-                    analytics.setTotalPosts((long) posts.size());
-                } catch (Exception e) {
-                    analytics.setTotalPosts(0L);
-                }
-                
-                // Lấy tổng số reviews
-                try {
-                    List<Review> reviews = firestoreService.getAllReviews();
-                    analytics.setTotalReviews((long) reviews.size());
-                    
-                    // Tính average rating
-                    if (!reviews.isEmpty()) {
-                        double totalRating = reviews.stream()
-                            .mapToInt(r -> r.getRating())
-                            .sum();
-                        analytics.setAverageRating(totalRating / reviews.size());
-                    }
-                } catch (Exception e) {
-                    analytics.setTotalReviews(0L);
-                }
+            if (firestoreService != null && firestoreAsyncService != null) {
+                // Gửi tất cả truy vấn cùng lúc; thời gian trang ~ truy vấn chậm nhất thay vì tổng
+                long fallbackUsers = userRepository.count();
+                CompletableFuture<Long> totalUsers = firestoreAsyncService.countUsers()
+                    .exceptionally(e -> fallbackUsers);
+                CompletableFuture<Long> totalPosts = firestoreAsyncService.countPosts()
+                    .exceptionally(e -> 0L);
+                CompletableFuture<Long> totalReviews = firestoreAsyncService.countReviews()
+                    .exceptionally(e -> 0L);
+                CompletableFuture<Double> averageRating = firestoreAsyncService.averageReviewRating()
+                    .exceptionally(e -> null);
+                CompletableFuture<Long> totalCalories = firestoreAsyncService.totalCaloriesTracked()
+                    .exceptionally(e -> 0L);
+                CompletableFuture<Long> activeUsers = firestoreAsyncService.activeUsersCount()
+                    .exceptionally(e -> 0L);
+                CompletableFuture<List<AnalyticsData.DailyStats>> dailyStatsFuture = firestoreAsyncService.dailyStats(days)
+                    .exceptionally(e -> new ArrayList<>());
                 
-                // Lấy tổng số food items
+                // Lấy tổng số food items (MySQL) trong lúc chờ Firestore
                 analytics.setTotalFoodItems(foodItemRepository.count());
                 
-                // Tính tổng calories tracked
-                try {
-                    Long totalCalories = firestoreService.getTotalCaloriesTracked();
-                    analytics.setTotalCaloriesTracked(totalCalories != null ? totalCalories : 0L);
-                } catch (Exception e) {
-                    analytics.setTotalCaloriesTracked(0L);
-                }
-                
-                // Lấy active users
-                try {
-                    Long activeUsers = firestoreService.getActiveUsersCount();
-                    analytics.setActiveUsers(activeUsers != null ? activeUsers : 0L);
-                } catch (Exception e) {
-                    analytics.setActiveUsers(0L);
+                analytics.setTotalUsers(totalUsers.join());
+                analytics.setTotalPosts(totalPosts.join());
+                analytics.setTotalReviews(totalReviews.join());
+                if (averageRating.join() != null) {
+                    analytics.setAverageRating(averageRating.join());
                 }
+                analytics.setTotalCaloriesTracked(totalCalories.join() != null ? totalCalories.join() : 0L);
+                analytics.setActiveUsers(activeUsers.join() != null ? activeUsers.join() : 0L);
                 
                 // Lấy thống kê theo số ngày được chọn
-                try {
-                    List<AnalyticsData.DailyStats> dailyStats = firestoreService.getDailyStats(days);
-                    analytics.setDailyStats(dailyStats);
-                    
-                    // Tính toán giá trị hôm nay (phần tử đầu tiên trong list)
-                    if (dailyStats != null && !dailyStats.isEmpty()) {
-                        AnalyticsData.DailyStats todayStats = dailyStats.get(0);
-                        model.addAttribute("todayNewUsers", todayStats.getNewUsers());
-                        model.addAttribute("todayNewPosts", todayStats.getNewPosts());
-                        model.addAttribute("todayNewReviews", todayStats.getNewReviews());
-                    } else {
-                        model.addAttribute("todayNewUsers", 0L);
-                        model.addAttribute("todayNewPosts", 0L);
-                        model.addAttribute("todayNewReviews", 0L);
-                    }
-                } catch (Exception e) {
-                    analytics.setDailyStats(new ArrayList<>());
+                List<AnalyticsData.DailyStats> dailyStats = dailyStatsFuture.join();
+                analytics.setDailyStats(dailyStats);
+                
+                // Tính toán giá trị hôm nay (phần tử cuối cùng trong list, list sắp từ cũ tới mới)
+                if (dailyStats != null && !dailyStats.isEmpty()) {
+                    AnalyticsData.DailyStats todayStats = dailyStats.get(dailyStats.size() - 1);
+                    model.addAttribute("todayNewUsers", todayStats.getNewUsers());
+                    model.addAttribute("todayNewPosts", todayStats.getNewPosts());
+                    model.addAttribute("todayNewReviews", todayStats.getNewReviews());
+                } else {
                     model.addAttribute("todayNewUsers", 0L);
                     model.addAttribute("todayNewPosts", 0L);
                     model.addAttribute("todayNewReviews", 0L);
@@ -2137,6 +1799,25 @@ public class AdminController {
             e.printStackTrace();
         }
         
+        // Phân phối calories/macro: gộp sketch theo ngày, mặc định cùng khoảng `days` ngày của trang
+        if (nutritionSketchService != null && nutritionSketchService.isEnabled()) {
+            NutritionSketchService.Cohort selectedCohort = NutritionSketchService.Cohort.of(cohort);
+            LocalDate distEnd = LocalDate.now(nutritionSketchService.zone());
+            LocalDate distStart = distEnd.minusDays(Math.max(1, days) - 1L);
+            try {
+                if (distTo != null && !distTo.isBlank()) distEnd = LocalDate.parse(distTo);
+                if (distFrom != null && !distFrom.isBlank()) distStart = LocalDate.parse(distFrom);
+                model.addAttribute("distribution", nutritionSketchService.distribution(distStart, distEnd, selectedCohort));
+            } catch (Exception e) {
+                System.err.println("Error loading nutrition distribution: " + e.getMessage());
+                model.addAttribute("distributionError", "Không thể tải phân phối calories: " + e.getMessage());
+            }
+            model.addAttribute("cohort", selectedCohort.getKey());
+            model.addAttribute("cohorts", NutritionSketchService.Cohort.values());
+            model.addAttribute("distFrom", distStart.toString());
+            model.addAttribute("distTo", distEnd.toString());
+        }
+        
         model.addAttribute("analytics", analytics);
         model.addAttribute("days", days);
         model.addAttribute("title", "Analytics & Reports");
@@ -2216,72 +1897,81 @@ public class AdminController {
     // EXPORT EXCEL - Xuất dữ liệu ra Excel
     // ==========================================================
     
+    /**
+     * Export thống kê calories theo dạng luồng (xlsx | csv | ndjson): từng dòng được ghi ngay khi tính xong,
+     * không gom danh sách user. details=true thêm log theo ngày trong khoảng (sheet riêng với xlsx).
+     */
     @GetMapping("/nutrition/export")
     public void exportNutritionToExcel(
             @RequestParam(value = "userId", required = false) String userId,
-            HttpServletResponse response) throws IOException {
-        
-        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-        response.setHeader("Content-Disposition", "attachment; filename=nutrition_data.xlsx");
-        
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Nutrition Data");
+            @RequestParam(value = "period", required = false, defaultValue = "all") String period,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "format", required = false, defaultValue = "xlsx") String format,
+            @RequestParam(value = "details", required = false, defaultValue = "false") boolean details,
+            HttpServletResponse response) throws Exception {
+        NutritionExport.Format exportFormat = NutritionExport.Format.of(format);
+        response.setContentType(exportFormat.getContentType());
+        response.setHeader("Content-Disposition", "attachment; filename=nutrition_data." + exportFormat.getExtension());
+        NutritionPeriod range = NutritionPeriod.resolve(period, from, to, LocalDate.now(
+                firestoreService != null ? firestoreService.analyticsZone() : java.time.ZoneId.systemDefault()));
         
-        // Create header row
-        Row headerRow = sheet.createRow(0);
-        String[] headers = {"Người dùng", "Email", "Calories TB", "Mục tiêu", "Số ngày", "Đạt mục tiêu", "Tỉ lệ %"};
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-        headerStyle.setFillForegroundColor(IndexedColors.GREEN.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
-        }
-        
-        // Get data
-        List<NutritionStats> statsList = new ArrayList<>();
+        OutputStream outputStream = response.getOutputStream();
+        long started = System.currentTimeMillis();
+        long[] rows = new long[2];
+        NutritionExport.RowWriter writer = NutritionExport.open(exportFormat, outputStream, details);
         try {
             if (firestoreService != null) {
                 if (userId != null && !userId.isEmpty()) {
-                    NutritionStats stats = firestoreService.calculateNutritionStats(userId);
-                    if (stats != null) {
-                        statsList.add(stats);
+                    if (exportFormat.includesSummary(details)) {
+                        NutritionStats stats = nutritionStatsFor(userId, range);
+                        if (stats != null) {
+                            writer.stats(stats);
+                            rows[0]++;
+                        }
+                    }
+                    if (details) {
+                        for (DailyLog log : firestoreService.getUserDailyLogs(userId, range.getFrom(), range.getTo())) {
+                            writer.dailyLog(userId, log);
+                            rows[1]++;
+                        }
                     }
                 } else {
-                    statsList = firestoreService.getAllUsersNutritionStats();
+                    if (exportFormat.includesSummary(details)) {
+                        java.util.function.Consumer<NutritionStats> sink = stats -> {
+                            writer.stats(stats);
+                            rows[0]++;
+                        };
+                        if (nutritionRollupService != null) {
+                            nutritionRollupService.forEachNutritionStats(range, EXPORT_PAGE_SIZE, sink);
+                        } else {
+                            firestoreService.forEachUserNutritionStats(range, EXPORT_PAGE_SIZE, sink);
+                        }
+                    }
+                    if (details) {
+                        firestoreService.streamDailyLogs(range, (logUserId, log) -> {
+                            writer.dailyLog(logUserId, log);
+                            rows[1]++;
+                        });
+                    }
                 }
             }
         } catch (Exception e) {
-            System.err.println("Error loading nutrition data for export: " + e.getMessage());
-        }
-        
-        // Write data rows
-        int rowNum = 1;
-        for (NutritionStats stats : statsList) {
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(stats.getUserName() != null ? stats.getUserName() : "N/A");
-            row.createCell(1).setCellValue(stats.getUserEmail() != null ? stats.getUserEmail() : "N/A");
-            row.createCell(2).setCellValue(stats.getAverageCalories());
-            row.createCell(3).setCellValue(stats.getCaloriesTarget());
-            row.createCell(4).setCellValue(stats.getDaysTracked());
-            row.createCell(5).setCellValue(stats.getDaysReachedGoal());
-            row.createCell(6).setCellValue(stats.getGoalAchievementRate());
-        }
-        
-        // Auto-size columns
-        for (int i = 0; i < headers.length; i++) {
-            sheet.autoSizeColumn(i);
+            Exception cause = e instanceof java.io.UncheckedIOException ? ((java.io.UncheckedIOException) e).getCause() : e;
+            System.err.println("❌ Nutrition export (" + exportFormat.getExtension() + ", " + range + ") failed after "
+                    + rows[0] + " users, " + rows[1] + " daily logs: " + cause.getMessage());
+            cause.printStackTrace();
+            // Ghi dấu lỗi (CSV/NDJSON) rồi ném tiếp để response bị hủy thay vì kết thúc như một file đầy đủ
+            try {
+                writer.abort(cause);
+            } catch (IOException abortFailure) {
+                cause.addSuppressed(abortFailure);
+            }
+            throw cause;
         }
-        
-        // Write to response
-        OutputStream outputStream = response.getOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
+        writer.close();
+        System.out.println("✅ Nutrition export (" + exportFormat.getExtension() + ", " + range + "): " + rows[0]
+                + " users, " + rows[1] + " daily logs in " + (System.currentTimeMillis() - started) + " ms");
         outputStream.close();
     }
     
@@ -2294,80 +1984,56 @@ public class AdminController {
      * Đảm bảo imageUrl Cloudinary được cập nhật đầy đủ
      */
     @GetMapping("/admin/sync/foods")
-    public String syncAllFoodsToFirestore(RedirectAttributes redirectAttributes) {
+    public String syncAllFoodsToFirestore(@RequestParam(value = "force", defaultValue = "false") boolean force,
+                                          RedirectAttributes redirectAttributes) {
         try {
             if (firestoreService == null) {
                 redirectAttributes.addFlashAttribute("error", "FirestoreService không khả dụng!");
                 return "redirect:/admin/categories";
             }
             
-            // Lấy tất cả FoodItems từ database
-            List<FoodItem> allFoods = foodItemRepository.findAll();
-            int successCount = 0;
-            int failCount = 0;
+            // Lấy tất cả FoodItems kèm category/user trong một query
+            List<FoodItem> allFoods = foodItemRepository.findAllWithCategory();
             int cloudinaryCount = 0;
             int localUrlCount = 0;
             List<Long> localUrlFoodIds = new ArrayList<>();
             
             System.out.println("🔄 Bắt đầu đồng bộ " + allFoods.size() + " FoodItems lên Firestore...");
-            System.out.println("==========================================");
             
             for (FoodItem food : allFoods) {
-                try {
-                    // Đảm bảo category được load đầy đủ
-                    if (food.getCategory() != null && food.getCategory().getId() != null) {
-                        Category category = categoryRepository.findById(food.getCategory().getId()).orElse(null);
-                        if (category != null) {
-                            food.setCategory(category);
-                        }
-                    }
-                    
-                    // Kiểm tra imageUrl từ database
-                    String imageUrl = food.getImageUrl();
-                    System.out.println("🔍 Checking FoodItem ID: " + food.getId() + " (" + food.getName() + ")");
-                    System.out.println("   ImageURL from Database: " + imageUrl);
-                    
-                    if (imageUrl != null && !imageUrl.isEmpty()) {
-                        if (imageUrl.contains("cloudinary.com")) {
-                            cloudinaryCount++;
-                            System.out.println("   ✅ Có Cloudinary URL - sẽ sync lên Firestore");
-                        } else if (imageUrl.startsWith("/uploads/")) {
-                            localUrlCount++;
-                            localUrlFoodIds.add(food.getId());
-                            System.out.println("   ⚠️ WARNING: Có local URL (" + imageUrl + ") - Cần upload lại lên Cloudinary!");
-                            System.out.println("   💡 Vui lòng cập nhật hình ảnh cho FoodItem ID " + food.getId() + " (" + food.getName() + ") trong dashboard để migrate sang Cloudinary");
-                        } else {
-                            System.out.println("   ⚠️ FoodItem có URL không chuẩn: " + imageUrl);
-                        }
-                    } else {
-                        System.out.println("   ⚠️ FoodItem không có imageUrl");
-                    }
-                    
-                    // Sync lên Firestore (sync bất kể URL là gì để đảm bảo dữ liệu đồng bộ)
-                    firestoreService.saveFood(food);
-                    successCount++;
-                    System.out.println("   ✅ Đã sync FoodItem ID: " + food.getId() + " lên Firestore với imageUrl: " + imageUrl);
-                    System.out.println("   ---");
-                    
-                } catch (Exception e) {
-                    failCount++;
-                    System.err.println("❌ Lỗi khi sync FoodItem ID: " + food.getId() + " (" + food.getName() + ") - " + e.getMessage());
-                    e.printStackTrace();
+                // Kiểm tra imageUrl từ database
+                String imageUrl = food.getImageUrl();
+                if (imageUrl != null && imageUrl.contains("cloudinary.com")) {
+                    cloudinaryCount++;
+                } else if (imageUrl != null && imageUrl.startsWith("/uploads/")) {
+                    localUrlCount++;
+                    localUrlFoodIds.add(food.getId());
+                }
+            }
+            
+            // Sync lên Firestore (sync bất kể URL là gì để đảm bảo dữ liệu đồng bộ)
+            // Món không đổi từ lần đồng bộ trước được bỏ qua (force=true để ghi lại tất cả)
+            BulkSyncReport report = FirestoreFutures.await(firestoreService.syncFoodsAsync(allFoods, force));
+            int successCount = report.getSucceeded();
+            int failCount = report.getFailed();
+            for (BulkSyncReport.ItemResult item : report.getItems()) {
+                if (!item.isSuccess()) {
+                    System.err.println("❌ Lỗi khi sync FoodItem ID: " + item.getId() + " - " + item.getError());
                 }
             }
             
             String message;
             if (localUrlCount > 0) {
                 message = String.format(
-                    "Đồng bộ hoàn tất! Thành công: %d, Thất bại: %d, Có Cloudinary URL: %d, ⚠️ CÓ LOCAL URL (cần migrate): %d",
-                    successCount, failCount, cloudinaryCount, localUrlCount
+                    "Đồng bộ hoàn tất! Thành công: %d (không đổi, bỏ qua: %d), Thất bại: %d, Có Cloudinary URL: %d, ⚠️ CÓ LOCAL URL (cần migrate): %d",
+                    successCount, report.getSkipped(), failCount, cloudinaryCount, localUrlCount
                 );
                 redirectAttributes.addFlashAttribute("warning", 
                     message + " | Các FoodItem có local URL: " + localUrlFoodIds.toString() + " - Vui lòng cập nhật hình ảnh để migrate sang Cloudinary!");
             } else {
                 message = String.format(
-                    "Đồng bộ hoàn tất! Thành công: %d, Thất bại: %d, Có Cloudinary URL: %d",
-                    successCount, failCount, cloudinaryCount
+                    "Đồng bộ hoàn tất! Thành công: %d (không đổi, bỏ qua: %d), Thất bại: %d, Có Cloudinary URL: %d",
+                    successCount, report.getSkipped(), failCount, cloudinaryCount
                 );
                 redirectAttributes.addFlashAttribute("success", message);
             }
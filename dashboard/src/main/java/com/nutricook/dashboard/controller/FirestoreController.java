@@ -1,6 +1,16 @@
 package com.nutricook.dashboard.controller;
 
+import com.nutricook.dashboard.service.CascadeDeleteService;
+import com.nutricook.dashboard.service.DailyLogColumnStore;
+import com.nutricook.dashboard.service.FirestoreCache;
+import com.nutricook.dashboard.service.FirestoreOutboxDispatcher;
 import com.nutricook.dashboard.service.FirestoreService;
+import com.nutricook.dashboard.service.NutritionPeriod;
+import com.nutricook.dashboard.service.NutritionRanking;
+import com.nutricook.dashboard.service.NutritionRankingService;
+import com.nutricook.dashboard.service.NutritionRollupService;
+import com.nutricook.dashboard.service.NutritionSketchService;
+import com.nutricook.dashboard.service.ShardedCounterService;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -8,10 +18,15 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.PutMapping;
 
+import com.nutricook.dashboard.entity.FirestorePage;
+import com.nutricook.dashboard.entity.NutritionStats;
 import com.nutricook.dashboard.entity.User;
 
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,9 +36,29 @@ import java.util.Map;
 public class FirestoreController {
 
     private final FirestoreService firestoreService;
+    private final NutritionRollupService nutritionRollupService;
+    private final ShardedCounterService counterService;
+    private final CascadeDeleteService cascadeDeleteService;
+    private final FirestoreOutboxDispatcher outboxDispatcher;
+    private final FirestoreCache firestoreCache;
+    private final DailyLogColumnStore dailyLogColumns;
+    private final NutritionSketchService nutritionSketches;
+    private final NutritionRankingService nutritionRanking;
 
-    public FirestoreController(FirestoreService firestoreService) {
+    public FirestoreController(FirestoreService firestoreService, NutritionRollupService nutritionRollupService,
+                               ShardedCounterService counterService, CascadeDeleteService cascadeDeleteService,
+                               FirestoreOutboxDispatcher outboxDispatcher, FirestoreCache firestoreCache,
+                               DailyLogColumnStore dailyLogColumns, NutritionSketchService nutritionSketches,
+                               NutritionRankingService nutritionRanking) {
         this.firestoreService = firestoreService;
+        this.nutritionRollupService = nutritionRollupService;
+        this.counterService = counterService;
+        this.cascadeDeleteService = cascadeDeleteService;
+        this.outboxDispatcher = outboxDispatcher;
+        this.firestoreCache = firestoreCache;
+        this.dailyLogColumns = dailyLogColumns;
+        this.nutritionSketches = nutritionSketches;
+        this.nutritionRanking = nutritionRanking;
     }
 
     @GetMapping("/users")
@@ -86,4 +121,225 @@ public class FirestoreController {
             return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
         }
     }
+
+    @GetMapping("/mirror/status")
+    public ResponseEntity<?> mirrorStatus() {
+        return ResponseEntity.ok(firestoreService.getMirrorStatus());
+    }
+
+    @GetMapping("/counters/status")
+    public ResponseEntity<?> counterStatus() {
+        return ResponseEntity.ok(counterService.status());
+    }
+
+    /**
+     * Đếm lại các bộ đếm tổng từ dữ liệu gốc (aggregate count/sum).
+     */
+    @PostMapping("/counters/recount")
+    public ResponseEntity<?> recountCounters() {
+        try {
+            return ResponseEntity.ok(counterService.recountAll());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/nutrition-rollups/status")
+    public ResponseEntity<?> nutritionRollupStatus() {
+        return ResponseEntity.ok(nutritionRollupService.status());
+    }
+
+    @GetMapping("/nutrition-rollups/{userId}")
+    public ResponseEntity<?> nutritionRollup(@org.springframework.web.bind.annotation.PathVariable("userId") String userId) {
+        try {
+            return ResponseEntity.ok(nutritionRollupService.getNutritionStats(userId));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Tính lại rollup từ daily_logs: một user (userId) hoặc toàn bộ.
+     */
+    @PostMapping("/nutrition-rollups/rebuild")
+    public ResponseEntity<?> rebuildNutritionRollups(@RequestParam(value = "userId", required = false) String userId) {
+        try {
+            if (userId != null && !userId.isEmpty()) {
+                nutritionRollupService.rebuildUser(userId);
+                return ResponseEntity.ok(Map.of("rebuilt", userId));
+            }
+            return ResponseEntity.ok(nutritionRollupService.rebuildAll());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * So rollup với daily_logs gốc; repair=true để sửa luôn các rollup lệch.
+     */
+    @PostMapping("/nutrition-rollups/check")
+    public ResponseEntity<?> checkNutritionRollups(@RequestParam(value = "repair", defaultValue = "false") boolean repair) {
+        try {
+            return ResponseEntity.ok(nutritionRollupService.checkConsistency(repair));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/cascade-deletes/status")
+    public ResponseEntity<?> cascadeDeleteStatus() {
+        return ResponseEntity.ok(cascadeDeleteService.status());
+    }
+
+    @GetMapping("/cascade-deletes/{userId}")
+    public ResponseEntity<?> cascadeDeleteJob(@org.springframework.web.bind.annotation.PathVariable("userId") String userId) {
+        try {
+            Map<String, Object> job = cascadeDeleteService.getJob(userId);
+            if (job == null) return ResponseEntity.status(404).body(Map.of("error", "not_found"));
+            return ResponseEntity.ok(job);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Bắt đầu hoặc chạy tiếp việc xóa cascade một user (không chờ xong; theo dõi qua GET /cascade-deletes/{userId}).
+     */
+    @PostMapping("/cascade-deletes/{userId}")
+    public ResponseEntity<?> startCascadeDelete(@org.springframework.web.bind.annotation.PathVariable("userId") String userId) {
+        cascadeDeleteService.start(userId);
+        return ResponseEntity.accepted().body(Map.of("userId", userId, "status", CascadeDeleteService.STATUS_RUNNING));
+    }
+
+    @GetMapping("/outbox/status")
+    public ResponseEntity<?> outboxStatus() {
+        return ResponseEntity.ok(outboxDispatcher.status());
+    }
+
+    /**
+     * Gửi ngay các event outbox đang đến hạn thay vì chờ lượt quét kế tiếp.
+     */
+    @PostMapping("/outbox/drain")
+    public ResponseEntity<?> drainOutbox() {
+        try {
+            return ResponseEntity.ok(Map.of("dispatched", outboxDispatcher.drain()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/cache/status")
+    public ResponseEntity<?> cacheStatus() {
+        return ResponseEntity.ok(firestoreCache.status());
+    }
+
+    /**
+     * Xóa toàn bộ cache đọc (ví dụ sau khi sửa dữ liệu trực tiếp trên Firebase console).
+     */
+    @PostMapping("/cache/invalidate")
+    public ResponseEntity<?> invalidateCache() {
+        firestoreCache.invalidateAll();
+        return ResponseEntity.ok(firestoreCache.status());
+    }
+
+    /**
+     * Số user/ngày đang giữ trong DailyLogColumnStore và heap ước lượng trên mỗi user-day.
+     */
+    @GetMapping("/daily-logs/columnar/status")
+    public ResponseEntity<?> dailyLogColumnsStatus() {
+        return ResponseEntity.ok(dailyLogColumns.status());
+    }
+
+    @PostMapping("/daily-logs/columnar/invalidate")
+    public ResponseEntity<?> invalidateDailyLogColumns() {
+        dailyLogColumns.invalidateAll();
+        return ResponseEntity.ok(dailyLogColumns.status());
+    }
+
+    @GetMapping("/nutrition-sketches/status")
+    public ResponseEntity<?> nutritionSketchStatus() {
+        return ResponseEntity.ok(nutritionSketches.status());
+    }
+
+    /**
+     * Dựng lại sketch phân phối theo ngày trong [from, to] (yyyy-MM-dd); không truyền thì dựng các ngày gần nhất
+     * theo nutrition.sketches.refresh-days. Dùng để dựng lịch sử lần đầu hoặc sau khi sửa log cũ.
+     */
+    @PostMapping("/nutrition-sketches/rebuild")
+    public ResponseEntity<?> rebuildNutritionSketches(@RequestParam(value = "from", required = false) String from,
+                                                      @RequestParam(value = "to", required = false) String to) {
+        try {
+            if (from == null || from.isBlank()) {
+                return ResponseEntity.ok(nutritionSketches.refreshRecent());
+            }
+            LocalDate end = to == null || to.isBlank() ? LocalDate.now(nutritionSketches.zone()) : LocalDate.parse(to);
+            return ResponseEntity.ok(nutritionSketches.rebuild(LocalDate.parse(from), end));
+        } catch (java.time.format.DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Ngày không hợp lệ: " + e.getParsedString()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Phân phối p10/p50/p90 của một nhóm (all | new | active) trong [from, to].
+     */
+    @GetMapping("/nutrition-sketches/distribution")
+    public ResponseEntity<?> nutritionDistribution(@RequestParam("from") String from,
+                                                   @RequestParam("to") String to,
+                                                   @RequestParam(value = "cohort", defaultValue = "all") String cohort) {
+        try {
+            return ResponseEntity.ok(nutritionSketches.distribution(LocalDate.parse(from), LocalDate.parse(to),
+                    NutritionSketchService.Cohort.of(cohort)));
+        } catch (java.time.format.DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Ngày không hợp lệ: " + e.getParsedString()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/nutrition-ranking/status")
+    public ResponseEntity<?> nutritionRankingStatus() {
+        return ResponseEntity.ok(nutritionRanking.status());
+    }
+
+    /**
+     * Một trang của bảng xếp hạng nutrition (period/from/to như /admin/nutrition, filter, sort=calories|goal).
+     * Có cursor (nextCursor của trang trước) thì đọc theo keyset, không thì theo offset; top-K là offset=0&size=K.
+     */
+    @GetMapping("/nutrition-ranking")
+    public ResponseEntity<?> nutritionRanking(@RequestParam(value = "period", defaultValue = "week") String period,
+                                              @RequestParam(value = "from", required = false) String from,
+                                              @RequestParam(value = "to", required = false) String to,
+                                              @RequestParam(value = "filter", defaultValue = "all") String filter,
+                                              @RequestParam(value = "sort", defaultValue = "calories") String sort,
+                                              @RequestParam(value = "size", defaultValue = "50") int size,
+                                              @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                              @RequestParam(value = "cursor", required = false) String cursor) {
+        try {
+            NutritionPeriod range = NutritionPeriod.resolve(period, from, to, LocalDate.now(firestoreService.analyticsZone()));
+            NutritionRanking ranking = nutritionRanking.ranking(range);
+            NutritionRanking.Filter rankFilter = NutritionRanking.Filter.of(filter);
+            NutritionRanking.Sort rankSort = NutritionRanking.Sort.of(sort);
+            int pageSize = Math.max(1, Math.min(size, 500));
+            boolean keyset = cursor != null && !cursor.isBlank();
+            FirestorePage<NutritionStats> page = keyset
+                    ? ranking.after(rankFilter, rankSort, cursor, pageSize)
+                    : ranking.page(rankFilter, rankSort, offset, pageSize);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("period", range.toString());
+            result.put("filter", rankFilter.getKey());
+            result.put("sort", rankSort.getKey());
+            result.put("total", ranking.count(rankFilter));
+            result.put("offset", keyset ? ranking.rankAfter(rankFilter, rankSort, cursor) : Math.max(0, offset));
+            result.put("items", page.getItems());
+            result.put("nextCursor", page.getNextCursor());
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
 }
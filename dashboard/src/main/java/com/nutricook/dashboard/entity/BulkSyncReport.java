@@ -0,0 +1,95 @@
+package com.nutricook.dashboard.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Kết quả một lần ghi hàng loạt lên Firestore: kết quả từng document và số liệu tổng.
+ */
+public class BulkSyncReport {
+
+    /**
+     * Kết quả ghi một document (error = null khi thành công).
+     * action: SET (ghi cả document), UPDATE (chỉ các field đổi), SKIPPED (không đổi, không ghi), DELETE.
+     */
+    public static class ItemResult {
+        public static final String SET = "SET";
+        public static final String UPDATE = "UPDATE";
+        public static final String SKIPPED = "SKIPPED";
+        public static final String DELETE = "DELETE";
+
+        private final String id;
+        private final String action;
+        private final String error;
+
+        public ItemResult(String id, String action, String error) {
+            this.id = id;
+            this.action = action;
+            this.error = error;
+        }
+
+        public static ItemResult ok(String id, String action) {
+            return new ItemResult(id, action, null);
+        }
+
+        public static ItemResult failed(String id, String action, Throwable error) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            return new ItemResult(id, action, cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+        }
+
+        public String getId() { return id; }
+
+        public String getAction() { return action; }
+
+        public String getError() { return error; }
+
+        public boolean isSuccess() { return error == null; }
+
+        public boolean isSkipped() { return SKIPPED.equals(action); }
+    }
+
+    private final String collection;
+    private final List<ItemResult> items;
+    private final long elapsedMillis;
+
+    public BulkSyncReport(String collection, List<ItemResult> items, long elapsedMillis) {
+        this.collection = collection;
+        this.items = items != null ? items : Collections.emptyList();
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getCollection() { return collection; }
+
+    public List<ItemResult> getItems() { return items; }
+
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    public int getTotal() { return items.size(); }
+
+    public int getSucceeded() {
+        return (int) items.stream().filter(ItemResult::isSuccess).count();
+    }
+
+    public int getFailed() {
+        return getTotal() - getSucceeded();
+    }
+
+    /** Số document không cần ghi vì nội dung không đổi so với lần đồng bộ trước. */
+    public int getSkipped() {
+        return (int) items.stream().filter(ItemResult::isSkipped).count();
+    }
+
+    /** Số document chỉ ghi các field thay đổi. */
+    public int getPartialUpdates() {
+        return (int) items.stream().filter(item -> item.isSuccess() && ItemResult.UPDATE.equals(item.getAction())).count();
+    }
+
+    public List<String> getFailedIds() {
+        List<String> ids = new ArrayList<>();
+        for (ItemResult item : items) {
+            if (!item.isSuccess()) ids.add(item.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,42 @@
+package com.nutricook.dashboard.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Tiến độ của dispatcher outbox: mọi event có id <= highWaterMark đã được đồng bộ lên Firestore.
+ */
+@Entity
+@Table(name = "firestore_outbox_state")
+public class FirestoreOutboxState {
+    @Id
+    private String name;
+
+    private Long highWaterMark = 0L;
+    private Long dispatchedCount = 0L;
+    private LocalDateTime lastDispatchAt;
+
+    // Constructors
+    public FirestoreOutboxState() {
+    }
+
+    public FirestoreOutboxState(String name) {
+        this.name = name;
+    }
+
+    // Getters and Setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public Long getHighWaterMark() { return highWaterMark; }
+    public void setHighWaterMark(Long highWaterMark) { this.highWaterMark = highWaterMark; }
+
+    public Long getDispatchedCount() { return dispatchedCount; }
+    public void setDispatchedCount(Long dispatchedCount) { this.dispatchedCount = dispatchedCount; }
+
+    public LocalDateTime getLastDispatchAt() { return lastDispatchAt; }
+    public void setLastDispatchAt(LocalDateTime lastDispatchAt) { this.lastDispatchAt = lastDispatchAt; }
+}
@@ -0,0 +1,55 @@
+package com.nutricook.dashboard.entity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Một trang kết quả đọc từ Firestore (hoặc từ mirror) kèm cursor để lấy trang tiếp theo.
+ *
+ * Cursor là chuỗi opaque (base64 của document ID cuối cùng đã duyệt), có thể đặt thẳng lên URL.
+ * nextCursor = null nghĩa là đã hết dữ liệu.
+ */
+public class FirestorePage<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    public FirestorePage(List<T> items, String nextCursor) {
+        this.items = items != null ? items : Collections.emptyList();
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Tạo trang với cursor trỏ sau document lastDocId (null nếu không còn trang sau).
+     */
+    public static <T> FirestorePage<T> of(List<T> items, String lastDocId) {
+        return new FirestorePage<>(items, encodeCursor(lastDocId));
+    }
+
+    public static <T> FirestorePage<T> empty() {
+        return new FirestorePage<>(Collections.emptyList(), null);
+    }
+
+    public static String encodeCursor(String docId) {
+        if (docId == null) return null;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(docId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ: " + cursor);
+        }
+    }
+
+    public List<T> getItems() { return items; }
+
+    public String getNextCursor() { return nextCursor; }
+
+    public boolean isHasNext() { return nextCursor != null; }
+
+    public int getSize() { return items.size(); }
+}
@@ -0,0 +1,32 @@
+package com.nutricook.dashboard.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.nutricook.dashboard.entity.FirestoreOutboxEvent;
+
+@Repository
+public interface FirestoreOutboxRepository extends JpaRepository<FirestoreOutboxEvent, Long> {
+
+    // Các event đến hạn gửi, cũ nhất trước
+    @Query("SELECT e FROM FirestoreOutboxEvent e WHERE e.nextAttemptAt <= :now ORDER BY e.id ASC")
+    List<FirestoreOutboxEvent> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    long countByNextAttemptAtLessThanEqual(LocalDateTime now);
+
+    FirestoreOutboxEvent findFirstByOrderByIdAsc();
+
+    // Xóa mọi event của cùng một entity đã được gộp vào lần gửi (id <= maxId)
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM FirestoreOutboxEvent e WHERE e.aggregateType = :type AND e.aggregateId = :aggregateId AND e.id <= :maxId")
+    int deleteDispatched(@Param("type") String type, @Param("aggregateId") Long aggregateId, @Param("maxId") Long maxId);
+}
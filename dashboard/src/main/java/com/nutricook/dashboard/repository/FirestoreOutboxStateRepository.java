@@ -0,0 +1,10 @@
+package com.nutricook.dashboard.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.nutricook.dashboard.entity.FirestoreOutboxState;
+
+@Repository
+public interface FirestoreOutboxStateRepository extends JpaRepository<FirestoreOutboxState, String> {
+}
@@ -1,5 +1,6 @@
 package com.nutricook.dashboard.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -39,6 +40,13 @@ public interface FoodItemRepository extends JpaRepository<FoodItem, Long> {
     // Check if food name exists
     boolean existsByName(String name);
 
+    // Toàn bộ món ăn kèm category và user trong một query (dùng khi đồng bộ cả catalog, tránh N+1)
+    @Query("SELECT f FROM FoodItem f LEFT JOIN FETCH f.category LEFT JOIN FETCH f.user")
+    List<FoodItem> findAllWithCategory();
+
+    @Query("SELECT f FROM FoodItem f LEFT JOIN FETCH f.category LEFT JOIN FETCH f.user WHERE f.id IN :ids")
+    List<FoodItem> findAllWithCategoryByIdIn(@Param("ids") Collection<Long> ids);
+
    List<FoodItem> findByUser(User user);
 List<FoodItem> findByUserOrderByCreatedAtDesc(User user);
 
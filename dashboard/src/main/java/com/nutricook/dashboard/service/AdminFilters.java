@@ -0,0 +1,84 @@
+package com.nutricook.dashboard.service;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.entity.User;
+
+/**
+ * Lọc danh sách trong bộ nhớ cho các trang admin: nguyên liệu theo từ khóa/mức calories
+ * (/admin/categories/{id}/ingredients) và người dùng theo từ khóa (/admin/search).
+ */
+public final class AdminFilters {
+
+    private static final Pattern NON_NUMERIC = Pattern.compile("[^0-9.]");
+
+    private AdminFilters() {
+    }
+
+    /** Nguyên liệu có tên hoặc mô tả chứa từ khóa (không phân biệt hoa thường); từ khóa rỗng thì giữ nguyên. */
+    public static List<FoodItem> searchFoods(List<FoodItem> foods, String search) {
+        if (search == null || search.trim().isEmpty()) {
+            return foods;
+        }
+        String searchLower = search.toLowerCase().trim();
+        return foods.stream()
+            .filter(food ->
+                (food.getName() != null && food.getName().toLowerCase().contains(searchLower)) ||
+                (food.getDescription() != null && food.getDescription().toLowerCase().contains(searchLower))
+            )
+            .toList();
+    }
+
+    /**
+     * Lọc theo mức calories: low (&lt; 50), medium (50-150), high (&gt; 150) kcal. Món không ghi calories dạng
+     * "... kcal" bị loại; giá trị filter khác thì giữ nguyên danh sách.
+     */
+    public static List<FoodItem> filterByCalories(List<FoodItem> foods, String filterCalories) {
+        if (filterCalories == null || filterCalories.isEmpty()) {
+            return foods;
+        }
+        switch (filterCalories) {
+            case "low":
+                return foods.stream().filter(food -> {
+                    Double cal = parseCalories(food.getCalories());
+                    return cal != null && cal < 50;
+                }).toList();
+            case "medium":
+                return foods.stream().filter(food -> {
+                    Double cal = parseCalories(food.getCalories());
+                    return cal != null && cal >= 50 && cal <= 150;
+                }).toList();
+            case "high":
+                return foods.stream().filter(food -> {
+                    Double cal = parseCalories(food.getCalories());
+                    return cal != null && cal > 150;
+                }).toList();
+            default:
+                return foods;
+        }
+    }
+
+    /** Số kcal trong chuỗi calories dạng "120 kcal"; null nếu không có "kcal" hoặc không parse được. */
+    public static Double parseCalories(String calStr) {
+        if (calStr == null || !calStr.contains("kcal")) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(NON_NUMERIC.matcher(calStr).replaceAll(""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Người dùng có username, họ tên hoặc email chứa từ khóa (không phân biệt hoa thường). */
+    public static List<User> searchUsers(List<User> users, String query) {
+        String queryLower = query.toLowerCase();
+        return users.stream()
+                .filter(user -> user.getUsername().toLowerCase().contains(queryLower) ||
+                               user.getFullName().toLowerCase().contains(queryLower) ||
+                               user.getEmail().toLowerCase().contains(queryLower))
+                .toList();
+    }
+}
@@ -0,0 +1,372 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.BulkWriterOptions;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteResult;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Xóa một user cùng toàn bộ dữ liệu liên quan: users/{uid}/daily_logs, userRecipes, foodItems, foodUpdates
+ * (lọc theo userId), rollup dinh dưỡng và cuối cùng là document users/{uid}.
+ *
+ * Mỗi nhóm dữ liệu được đọc theo trang (chỉ lấy document id) và xóa qua một BulkWriter chung, các nhóm chạy
+ * song song trên một pool giới hạn (cascade-delete.max-concurrency). Tiến độ được ghi vào
+ * cascade_delete_jobs/{uid} sau mỗi trang. Khi khởi động lại, job đang chạy dở (RUNNING) và job lỗi (FAILED)
+ * được chạy tiếp, job lỗi chỉ tới khi đã chạy cascade-delete.max-attempts lần (số lần lưu trong job); gọi xóa
+ * lần nữa thì luôn chạy tiếp. Xóa là idempotent nên chạy lại không sao, chỉ các nhóm đã xong là được bỏ qua.
+ */
+@Service
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class CascadeDeleteService {
+
+    public static final String COLLECTION = "cascade_delete_jobs";
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    enum Target {
+        DAILY_LOGS("dailyLogs"),
+        USER_RECIPES("userRecipes"),
+        FOOD_ITEMS("foodItems"),
+        FOOD_UPDATES("foodUpdates");
+
+        private final String id;
+
+        Target(String id) {
+            this.id = id;
+        }
+    }
+
+    private final Firestore firestore;
+    private final int pageSize;
+    private final int maxOpsPerSecond;
+    private final int maxAttempts;
+    // Điều phối từng job (tuần tự) và pool xóa song song các nhóm dữ liệu
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Map<String, Object>>> running = new ConcurrentHashMap<>();
+    private volatile String lastError;
+
+    public CascadeDeleteService(Firestore firestore,
+                                @Value("${cascade-delete.page-size:500}") int pageSize,
+                                @Value("${cascade-delete.max-concurrency:4}") int maxConcurrency,
+                                @Value("${cascade-delete.max-ops-per-second:2000}") int maxOpsPerSecond,
+                                @Value("${cascade-delete.max-attempts:5}") int maxAttempts) {
+        this.firestore = firestore;
+        // Một trang không vượt giới hạn 500 thao tác của Firestore
+        this.pageSize = Math.max(1, Math.min(500, pageSize));
+        this.maxOpsPerSecond = Math.max(1, maxOpsPerSecond);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.coordinator = Executors.newSingleThreadExecutor(daemon("cascade-delete"));
+        this.workers = Executors.newFixedThreadPool(Math.max(1, maxConcurrency), daemon("cascade-delete-worker"));
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    @PostConstruct
+    void resumePending() {
+        if (firestore == null) return;
+        coordinator.submit(() -> {
+            try {
+                List<QueryDocumentSnapshot> pending = FirestoreReadScope.get(firestore.collection(COLLECTION)
+                        .whereIn("status", List.of(STATUS_RUNNING, STATUS_FAILED))).get().getDocuments();
+                for (QueryDocumentSnapshot doc : pending) {
+                    long attempts = Job.attempts(doc);
+                    if (STATUS_FAILED.equals(doc.getString("status")) && attempts >= maxAttempts) {
+                        System.err.println("⚠️ Not resuming cascade delete for user " + doc.getId() + ": failed "
+                                + attempts + " times (" + doc.getString("error") + ")");
+                        continue;
+                    }
+                    System.out.println("🔄 Resuming cascade delete for user " + doc.getId()
+                            + " (" + doc.getString("status") + ", attempt " + (attempts + 1) + ")");
+                    start(doc.getId());
+                }
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                System.err.println("❌ Could not resume cascade deletes: " + e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Bắt đầu (hoặc chạy tiếp) việc xóa cascade cho một user. Gọi lại khi job đang chạy trả về cùng future.
+     */
+    public CompletableFuture<Map<String, Object>> start(String userId) {
+        return running.computeIfAbsent(userId, id -> {
+            CompletableFuture<Map<String, Object>> future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return run(id);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Cascade delete failed for user " + id + ": " + e.getMessage(), e);
+                }
+            }, coordinator);
+            future.whenComplete((result, error) -> running.remove(id));
+            return future;
+        });
+    }
+
+    /**
+     * Xóa cascade và chờ đến khi xong.
+     */
+    public Map<String, Object> deleteUser(String userId) throws Exception {
+        return FirestoreFutures.await(start(userId));
+    }
+
+    private Map<String, Object> run(String userId) throws Exception {
+        DocumentReference jobRef = firestore.collection(COLLECTION).document(userId);
+        Job job = Job.resume(userId, FirestoreReadScope.get(jobRef).get());
+        job.attempts++;
+        jobs.put(userId, job);
+        jobRef.set(job.toDocument(STATUS_RUNNING, null), SetOptions.merge()).get();
+        System.out.println("🔄 Cascade deleting user " + userId
+                + (job.completed.isEmpty() ? "" : " (resume, done: " + job.completed + ")"));
+
+        BulkWriter writer = firestore.bulkWriter(BulkWriterOptions.builder()
+                .setInitialOpsPerSecond(Math.min(500, maxOpsPerSecond))
+                .setMaxOpsPerSecond(maxOpsPerSecond)
+                .build());
+        try {
+            List<CompletableFuture<Void>> phases = new ArrayList<>();
+            for (Target target : Target.values()) {
+                if (job.completed.contains(target.id)) continue;
+                phases.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        deleteAll(writer, jobRef, job, target);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(target.id + ": " + e.getMessage(), e);
+                    }
+                }, workers));
+            }
+            FirestoreFutures.await(CompletableFuture.allOf(phases.toArray(new CompletableFuture<?>[0])));
+
+            // Document gốc xóa sau cùng: job dở dang vẫn còn user để chạy lại
+            DocumentReference rollupRef = firestore.collection(NutritionRollup.COLLECTION).document(userId);
+            List<ApiFuture<WriteResult>> writes = new ArrayList<>();
+            writes.add(writer.delete(rollupRef.collection(NutritionRollup.LEDGER_COLLECTION).document(NutritionRollup.LEDGER_DOC)));
+            writes.add(writer.delete(rollupRef));
+            writes.add(writer.delete(firestore.collection("users").document(userId)));
+            writer.flush().get();
+            for (ApiFuture<WriteResult> write : writes) {
+                write.get();
+            }
+
+            jobRef.set(job.toDocument(STATUS_DONE, null), SetOptions.merge()).get();
+            System.out.println("✅ Cascade deleted user " + userId + ": " + job.deletedCounts());
+            return job.toStatus(STATUS_DONE);
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            System.err.println("❌ Cascade delete for user " + userId + " stopped: " + e.getMessage());
+            try {
+                jobRef.set(job.toDocument(STATUS_FAILED, e.getMessage()), SetOptions.merge()).get();
+            } catch (Exception ignored) {
+            }
+            throw e;
+        } finally {
+            try {
+                writer.close();
+            } catch (Exception ignored) {
+            }
+            jobs.remove(userId);
+        }
+    }
+
+    /**
+     * Xóa từng trang của một nhóm dữ liệu, ghi tiến độ sau mỗi trang.
+     */
+    private void deleteAll(BulkWriter writer, DocumentReference jobRef, Job job, Target target) throws Exception {
+        Query query = query(job.userId, target).select(FieldPath.documentId()).orderBy(FieldPath.documentId()).limit(pageSize);
+        DocumentSnapshot last = null;
+        while (true) {
+            Query page = last != null ? query.startAfter(last) : query;
+            List<QueryDocumentSnapshot> docs = FirestoreReadScope.getPage(page).get().getDocuments();
+            if (docs.isEmpty()) break;
+
+            List<ApiFuture<WriteResult>> writes = new ArrayList<>(docs.size());
+            for (QueryDocumentSnapshot doc : docs) {
+                writes.add(writer.delete(doc.getReference()));
+            }
+            writer.flush().get();
+            // BulkWriter đã tự retry lỗi tạm thời; lỗi còn lại làm dừng nhóm này
+            for (ApiFuture<WriteResult> write : writes) {
+                write.get();
+            }
+
+            long deleted = job.deleted.get(target.id).addAndGet(docs.size());
+            jobRef.update("deleted." + target.id, deleted, "updatedAt", Timestamp.now()).get();
+
+            if (docs.size() < pageSize) break;
+            last = docs.get(docs.size() - 1);
+        }
+        job.completed.add(target.id);
+        jobRef.update("completed", new ArrayList<>(job.completed), "updatedAt", Timestamp.now()).get();
+    }
+
+    private Query query(String userId, Target target) {
+        switch (target) {
+            case DAILY_LOGS:
+                return firestore.collection("users").document(userId).collection("daily_logs");
+            case USER_RECIPES:
+                return firestore.collection("userRecipes").whereEqualTo("userId", userId);
+            case FOOD_ITEMS:
+                return firestore.collection("foodItems").whereEqualTo("userId", userId);
+            case FOOD_UPDATES:
+                return firestore.collection("foodUpdates").whereEqualTo("userId", userId);
+            default:
+                throw new IllegalArgumentException("Unknown target: " + target);
+        }
+    }
+
+    /**
+     * Trạng thái job đã lưu của một user (null nếu chưa từng xóa).
+     */
+    public Map<String, Object> getJob(String userId) throws Exception {
+        Job active = jobs.get(userId);
+        if (active != null) return active.toStatus(STATUS_RUNNING);
+        DocumentSnapshot doc = FirestoreReadScope.get(firestore.collection(COLLECTION).document(userId)).get();
+        if (!doc.exists()) return null;
+        Map<String, Object> data = new LinkedHashMap<>(doc.getData());
+        data.put("userId", userId);
+        return data;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("pageSize", pageSize);
+        status.put("maxOpsPerSecond", maxOpsPerSecond);
+        status.put("maxAttempts", maxAttempts);
+        List<Map<String, Object>> active = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            active.add(job.toStatus(STATUS_RUNNING));
+        }
+        status.put("running", active);
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    /**
+     * Tiến độ một job: số document đã xóa theo từng nhóm và các nhóm đã xong.
+     */
+    private static final class Job {
+        final String userId;
+        final Map<String, AtomicLong> deleted = new LinkedHashMap<>();
+        final Set<String> completed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        Object startedAt;
+        // Số lần đã chạy job này (kể cả lần đang chạy)
+        long attempts;
+
+        Job(String userId) {
+            this.userId = userId;
+            for (Target target : Target.values()) {
+                deleted.put(target.id, new AtomicLong());
+            }
+        }
+
+        static Job resume(String userId, DocumentSnapshot doc) {
+            Job job = new Job(userId);
+            if (!doc.exists() || STATUS_DONE.equals(doc.getString("status"))) {
+                // Chưa có job hoặc job cũ đã xong (user được tạo lại): bắt đầu lại từ đầu
+                job.startedAt = Timestamp.now();
+                return job;
+            }
+            job.startedAt = doc.get("startedAt") != null ? doc.get("startedAt") : Timestamp.now();
+            job.attempts = attempts(doc);
+            Object counts = doc.get("deleted");
+            if (counts instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) counts).entrySet()) {
+                    AtomicLong counter = job.deleted.get(String.valueOf(entry.getKey()));
+                    if (counter != null && entry.getValue() instanceof Number) {
+                        counter.set(((Number) entry.getValue()).longValue());
+                    }
+                }
+            }
+            Object done = doc.get("completed");
+            if (done instanceof List) {
+                for (Object id : (List<?>) done) {
+                    job.completed.add(String.valueOf(id));
+                }
+            }
+            return job;
+        }
+
+        static long attempts(DocumentSnapshot doc) {
+            Object value = doc.get("attempts");
+            return value instanceof Number ? ((Number) value).longValue() : 0L;
+        }
+
+        Map<String, Long> deletedCounts() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            deleted.forEach((id, value) -> counts.put(id, value.get()));
+            return counts;
+        }
+
+        Map<String, Object> toDocument(String status, String error) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("userId", userId);
+            data.put("status", status);
+            data.put("deleted", deletedCounts());
+            data.put("completed", new ArrayList<>(completed));
+            data.put("startedAt", startedAt);
+            data.put("attempts", attempts);
+            data.put("updatedAt", Timestamp.now());
+            data.put("finishedAt", STATUS_DONE.equals(status) ? Timestamp.now() : null);
+            data.put("error", error);
+            return data;
+        }
+
+        Map<String, Object> toStatus(String status) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("userId", userId);
+            data.put("status", status);
+            data.put("deleted", deletedCounts());
+            data.put("completed", new ArrayList<>(completed));
+            data.put("attempts", attempts);
+            return data;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.nutricook.dashboard.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.cloud.Timestamp;
+
+/**
+ * Hash nội dung của một payload Firestore: hash toàn document và hash từng field.
+ *
+ * Dùng để biết lần đồng bộ này có gì khác lần trước: cùng contentHash thì bỏ qua lần ghi, khác thì chỉ
+ * update các field có hash thay đổi. Giá trị được chuẩn hóa (map theo thứ tự key, Date/Timestamp theo millis,
+ * kèm kiểu số) nên hash ổn định giữa các lần chạy. Các field trong VOLATILE_FIELDS (vd. updatedAt luôn là
+ * "bây giờ") không tính vào hash nhưng vẫn được ghi kèm khi có field khác thay đổi.
+ */
+public final class ContentHashes {
+
+    static final Set<String> VOLATILE_FIELDS = Set.of("updatedAt");
+
+    private final String contentHash;
+    private final Map<String, String> fieldHashes;
+
+    private ContentHashes(String contentHash, Map<String, String> fieldHashes) {
+        this.contentHash = contentHash;
+        this.fieldHashes = fieldHashes;
+    }
+
+    public static ContentHashes of(Map<String, Object> data) {
+        Map<String, String> fields = new TreeMap<>();
+        StringBuilder all = new StringBuilder();
+        for (Map.Entry<String, Object> entry : new TreeMap<>(data).entrySet()) {
+            if (VOLATILE_FIELDS.contains(entry.getKey())) continue;
+            StringBuilder canonical = new StringBuilder();
+            canonicalize(entry.getValue(), canonical);
+            String value = canonical.toString();
+            // 64 bit đầu của SHA-256 là đủ để phát hiện thay đổi của một field
+            fields.put(entry.getKey(), sha256(value).substring(0, 16));
+            all.append(entry.getKey()).append('=').append(value).append('\n');
+        }
+        return new ContentHashes(sha256(all.toString()), fields);
+    }
+
+    /**
+     * Đọc lại từ dạng đã lưu (xem {@link #serializeFields()}).
+     */
+    public static ContentHashes parse(String contentHash, String serializedFields) {
+        Map<String, String> fields = new TreeMap<>();
+        if (serializedFields != null) {
+            for (String line : serializedFields.split("\n")) {
+                int eq = line.indexOf('=');
+                if (eq > 0) fields.put(line.substring(0, eq), line.substring(eq + 1));
+            }
+        }
+        return new ContentHashes(contentHash, fields);
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String serializeFields() {
+        StringBuilder out = new StringBuilder();
+        fieldHashes.forEach((field, hash) -> out.append(field).append('=').append(hash).append('\n'));
+        return out.toString();
+    }
+
+    public boolean sameContent(ContentHashes previous) {
+        return previous != null && contentHash.equals(previous.contentHash);
+    }
+
+    /**
+     * Các field mới hoặc có giá trị khác so với lần trước.
+     */
+    public Set<String> changedFields(ContentHashes previous) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> entry : fieldHashes.entrySet()) {
+            if (previous == null || !entry.getValue().equals(previous.fieldHashes.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Các field có ở lần trước nhưng không còn trong payload hiện tại.
+     */
+    public Set<String> removedFields(ContentHashes previous) {
+        Set<String> removed = new HashSet<>();
+        if (previous == null) return removed;
+        for (String field : previous.fieldHashes.keySet()) {
+            if (!fieldHashes.containsKey(field)) removed.add(field);
+        }
+        return removed;
+    }
+
+    private static void canonicalize(Object value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> sorted.put(String.valueOf(k), v));
+            out.append('{');
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                out.append(entry.getKey()).append(':');
+                canonicalize(entry.getValue(), out);
+                out.append(',');
+            }
+            out.append('}');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            for (Object item : (Collection<?>) value) {
+                canonicalize(item, out);
+                out.append(',');
+            }
+            out.append(']');
+        } else if (value instanceof Date) {
+            out.append("date:").append(((Date) value).getTime());
+        } else if (value instanceof Timestamp) {
+            out.append("date:").append(((Timestamp) value).toDate().getTime());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            // Giữ kiểu để 0 (Integer) và 0.0 (Double) - hai giá trị khác nhau trên Firestore - không trùng hash
+            out.append(value.getClass().getSimpleName()).append(':').append(value);
+        } else {
+            String text = value.toString();
+            out.append("s").append(text.length()).append(':').append(text);
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.nutricook.dashboard.service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.nutricook.dashboard.entity.DailyLog;
+
+/**
+ * Giữ lịch sử daily log của các user hay xem dưới dạng cột (DailyLogSeries) để thống kê nutrition,
+ * biểu đồ 7 ngày và các trang theo khoảng thời gian không phải đọc lại, decode lại và sắp xếp lại
+ * List&lt;DailyLog&gt; ở mỗi request.
+ *
+ * - Lần đầu xem một user: đọc toàn bộ daily_logs (theo documentId, đã sắp sẵn) và append vào series.
+ * - Sau refresh-seconds: chỉ đọc lại tail-days ngày gần nhất (nơi app ghi) rồi ghi đè/xóa các ngày đó.
+ * - Sau reload-minutes: nạp lại toàn bộ, bắt được cả log cũ bị sửa/xóa.
+ *
+ * Số user giữ trong bộ nhớ có giới hạn (LRU theo lần truy cập).
+ */
+@Service
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class DailyLogColumnStore {
+
+    // Chừa sẵn chỗ cho khoảng một tháng log mới sau khi nạp, tránh cấp phát lại mảng ngay
+    private static final int TRIM_HEADROOM_DAYS = 32;
+
+    private final DocumentStore store;
+    private final boolean enabled;
+    private final long refreshMillis;
+    private final long reloadMillis;
+    private final int tailDays;
+    private final ZoneId zone;
+    private final Cache<String, Entry> series;
+
+    public DailyLogColumnStore(DocumentStore store,
+                               @Value("${nutrition.columnar.enabled:true}") boolean enabled,
+                               @Value("${nutrition.columnar.max-users:5000}") long maxUsers,
+                               @Value("${nutrition.columnar.refresh-seconds:60}") long refreshSeconds,
+                               @Value("${nutrition.columnar.reload-minutes:60}") long reloadMinutes,
+                               @Value("${nutrition.columnar.tail-days:7}") int tailDays,
+                               @Value("${analytics.timezone:}") String analyticsTimezone) {
+        this.store = store;
+        this.enabled = enabled;
+        this.refreshMillis = TimeUnit.SECONDS.toMillis(Math.max(0L, refreshSeconds));
+        this.reloadMillis = TimeUnit.MINUTES.toMillis(Math.max(1L, reloadMinutes));
+        this.tailDays = Math.max(1, tailDays);
+        this.zone = analyticsTimezone == null || analyticsTimezone.isBlank()
+                ? ZoneId.systemDefault() : ZoneId.of(analyticsTimezone.trim());
+        this.series = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1L, maxUsers))
+                .expireAfterWrite(reloadMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Series của user (chỉ dùng để lấy log, không quan tâm mục tiêu calories).
+     */
+    public DailyLogSeries series(String userId) throws Exception {
+        return series(userId, null);
+    }
+
+    /**
+     * Series của user với mục tiêu calories {@code target} (null = giữ mục tiêu hiện có),
+     * đã được làm mới theo refresh-seconds.
+     */
+    public DailyLogSeries series(String userId, Float target) throws Exception {
+        Entry entry;
+        try {
+            entry = series.get(userId, () -> load(userId, target != null ? target : FirestoreService.DEFAULT_CALORIES_TARGET));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        if (target != null) entry.series.setTarget(target);
+        if (System.currentTimeMillis() - entry.refreshedAt >= refreshMillis) {
+            synchronized (entry) {
+                if (System.currentTimeMillis() - entry.refreshedAt >= refreshMillis) {
+                    refreshTail(userId, entry);
+                }
+            }
+        }
+        return entry.series;
+    }
+
+    public void invalidate(String userId) {
+        series.invalidate(userId);
+    }
+
+    public void invalidateAll() {
+        series.invalidateAll();
+    }
+
+    private Entry load(String userId, float target) throws Exception {
+        DailyLogSeries loaded = new DailyLogSeries(target);
+        List<StoredDocument> docs = FirestoreFutures.await(store.query(DocumentQuery.collection(dailyLogsPath(userId))
+                .orderBy(DocumentQuery.DOCUMENT_ID)));
+        for (StoredDocument doc : docs) {
+            put(loaded, doc);
+        }
+        loaded.trim(TRIM_HEADROOM_DAYS);
+        return new Entry(loaded);
+    }
+
+    private void refreshTail(String userId, Entry entry) throws Exception {
+        LocalDate today = LocalDate.now(zone);
+        LocalDate from = today.minusDays(tailDays - 1L);
+        List<StoredDocument> docs = FirestoreFutures.await(store.query(DocumentQuery.collection(dailyLogsPath(userId))
+                .whereGreaterThanOrEqualTo(DocumentQuery.DOCUMENT_ID, from.toString())
+                .orderBy(DocumentQuery.DOCUMENT_ID)));
+        Set<LocalDate> seen = new HashSet<>();
+        for (StoredDocument doc : docs) {
+            LocalDate date = put(entry.series, doc);
+            if (date != null) seen.add(date);
+        }
+        // Ngày trong cửa sổ không còn document thì đã bị xóa
+        for (LocalDate date = from; !date.isAfter(today); date = date.plusDays(1)) {
+            if (!seen.contains(date)) entry.series.remove(date);
+        }
+        entry.refreshedAt = System.currentTimeMillis();
+    }
+
+    private static LocalDate put(DailyLogSeries target, StoredDocument doc) {
+        DailyLog log = DocumentCodecs.DAILY_LOG.decode(doc.getId(), doc.getData());
+        if (log == null) return null;
+        String dateId = log.getDateId() != null ? log.getDateId() : doc.getId();
+        LocalDate date;
+        try {
+            date = LocalDate.parse(dateId);
+        } catch (DateTimeParseException e) {
+            return null; // document không theo định dạng yyyy-MM-dd
+        }
+        target.put(date, value(log.getCalories()), value(log.getProtein()), value(log.getFat()), value(log.getCarb()));
+        return date;
+    }
+
+    private static float value(Float v) {
+        return v != null ? v : 0f;
+    }
+
+    private static String dailyLogsPath(String userId) {
+        return "users/" + userId + "/daily_logs";
+    }
+
+    /**
+     * Số user/ngày đang giữ và heap ước lượng (tổng và trên mỗi user-day).
+     */
+    public Map<String, Object> status() {
+        long bytes = 0L;
+        long days = 0L;
+        long logs = 0L;
+        for (Entry entry : series.asMap().values()) {
+            bytes += entry.series.estimatedBytes();
+            days += entry.series.getDays();
+            logs += entry.series.getLogCount();
+        }
+        CacheStats stats = series.stats();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("users", series.size());
+        status.put("days", days);
+        status.put("logs", logs);
+        status.put("estimatedBytes", bytes);
+        status.put("bytesPerUserDay", days > 0 ? Math.round(bytes * 10.0 / days) / 10.0 : 0);
+        status.put("hitRate", Math.round(stats.hitRate() * 1000) / 1000.0);
+        status.put("loads", stats.loadCount());
+        status.put("evictions", stats.evictionCount());
+        return status;
+    }
+
+    private static final class Entry {
+        final DailyLogSeries series;
+        volatile long refreshedAt;
+
+        Entry(DailyLogSeries series) {
+            this.series = series;
+            this.refreshedAt = System.currentTimeMillis();
+        }
+    }
+}
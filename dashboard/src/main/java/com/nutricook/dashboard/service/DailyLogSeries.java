@@ -0,0 +1,398 @@
+package com.nutricook.dashboard.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * Lịch sử daily log của một user dạng cột: mỗi chỉ số là một float[] đánh chỉ số theo epoch-day
+ * (ô i là ngày {@code base + i}), ngày không có log là ô 0 và bit present = 0.
+ *
+ * Truy vấn cửa sổ (tổng, trung bình, số ngày, số ngày đạt mục tiêu) dùng prefix sum theo block 16 ngày:
+ * cum[k] = tổng các ô [0, 16k), nên tổng [a, b) = prefix(b) - prefix(a) với prefix(i) = cum[i/16] + tối đa 15 ô.
+ * Chi phí mỗi truy vấn là hằng số, bộ nhớ prefix chỉ khoảng 2.5 byte/ngày (prefix theo từng ngày sẽ tốn thêm
+ * 48 byte/ngày). Ghi ngày mới nhất là append O(1) (khi đóng một block thì cộng 16 ô); sửa ngày cũ cập nhật
+ * cum của các block sau, O(n/16).
+ *
+ * Quy tắc tính giống NutritionAccumulator: chỉ ngày có calories > 0 được tính, đạt mục tiêu khi
+ * calories >= 95% target. Mọi method đều synchronized.
+ */
+public class DailyLogSeries {
+
+    private static final int SHIFT = 4;
+    private static final int BLOCK = 1 << SHIFT;
+    private static final int WEEKLY_DAYS = 7;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long base;
+    private int size;
+    private float[] calories = new float[0];
+    private float[] protein = new float[0];
+    private float[] fat = new float[0];
+    private float[] carb = new float[0];
+    private long[] present = new long[0];
+    private int logCount;
+
+    // Prefix theo block (độ dài >= size/16 + 1)
+    private double[] cumCalories = new double[1];
+    private double[] cumProtein = new double[1];
+    private double[] cumFat = new double[1];
+    private double[] cumCarb = new double[1];
+    private int[] cumDays = new int[1];
+    private int[] cumReached = new int[1];
+
+    private float target;
+    private float reachThreshold;
+
+    public DailyLogSeries(float target) {
+        this.target = target;
+        this.reachThreshold = target * 0.95f;
+    }
+
+    // ==========================================================
+    // GHI
+    // ==========================================================
+
+    public synchronized void put(LocalDate date, float cal, float pro, float f, float c) {
+        long day = date.toEpochDay();
+        if (size == 0) {
+            base = day;
+        } else if (day < base) {
+            prepend((int) (base - day));
+        }
+        long offset = day - base;
+        if (offset >= Integer.MAX_VALUE) throw new IllegalArgumentException("Ngày quá xa: " + date);
+        int i = (int) offset;
+        if (i >= size) {
+            ensureCapacity(i + 1);
+            // Ngày trống ở giữa là ô 0: chỉ cần đóng các block đi qua
+            while (size < i) {
+                size++;
+                if ((size & (BLOCK - 1)) == 0) closeBlock();
+            }
+            set(i, cal, pro, f, c);
+            size++;
+            if ((size & (BLOCK - 1)) == 0) closeBlock();
+        } else {
+            Contribution before = contribution(i);
+            set(i, cal, pro, f, c);
+            shiftBlocksAfter(i, before, contribution(i));
+        }
+    }
+
+    public synchronized void remove(LocalDate date) {
+        long offset = date.toEpochDay() - base;
+        if (size == 0 || offset < 0 || offset >= size) return;
+        int i = (int) offset;
+        if (!isPresent(i)) return;
+        Contribution before = contribution(i);
+        calories[i] = protein[i] = fat[i] = carb[i] = 0f;
+        present[i >>> 6] &= ~(1L << i);
+        logCount--;
+        shiftBlocksAfter(i, before, Contribution.NONE);
+    }
+
+    /** Đổi mục tiêu calories; số ngày đạt mục tiêu được tính lại (O(n)). */
+    public synchronized void setTarget(float newTarget) {
+        if (Float.compare(newTarget, target) == 0) return;
+        target = newTarget;
+        reachThreshold = newTarget * 0.95f;
+        rebuildPrefix();
+    }
+
+    public synchronized float getTarget() {
+        return target;
+    }
+
+    /** Thu gọn mảng về {@code size + headroom} ô (sau khi nạp toàn bộ lịch sử). */
+    public synchronized void trim(int headroom) {
+        resize(size + Math.max(0, headroom));
+    }
+
+    private void set(int i, float cal, float pro, float f, float c) {
+        if (!isPresent(i)) {
+            present[i >>> 6] |= 1L << i;
+            logCount++;
+        }
+        calories[i] = cal;
+        protein[i] = pro;
+        fat[i] = f;
+        carb[i] = c;
+    }
+
+    private void closeBlock() {
+        int k = size >>> SHIFT;
+        Window w = new Window();
+        addCells((k - 1) << SHIFT, k << SHIFT, w, 1);
+        cumCalories[k] = cumCalories[k - 1] + w.calories;
+        cumProtein[k] = cumProtein[k - 1] + w.protein;
+        cumFat[k] = cumFat[k - 1] + w.fat;
+        cumCarb[k] = cumCarb[k - 1] + w.carb;
+        cumDays[k] = cumDays[k - 1] + w.days;
+        cumReached[k] = cumReached[k - 1] + w.reached;
+    }
+
+    private void shiftBlocksAfter(int i, Contribution before, Contribution after) {
+        double dCal = after.calories - before.calories;
+        double dPro = after.protein - before.protein;
+        double dFat = after.fat - before.fat;
+        double dCarb = after.carb - before.carb;
+        int dDays = after.days - before.days;
+        int dReached = after.reached - before.reached;
+        if (dCal == 0 && dPro == 0 && dFat == 0 && dCarb == 0 && dDays == 0 && dReached == 0) return;
+        for (int k = (i >>> SHIFT) + 1, last = size >>> SHIFT; k <= last; k++) {
+            cumCalories[k] += dCal;
+            cumProtein[k] += dPro;
+            cumFat[k] += dFat;
+            cumCarb[k] += dCarb;
+            cumDays[k] += dDays;
+            cumReached[k] += dReached;
+        }
+    }
+
+    private void prepend(int days) {
+        int newSize = size + days;
+        calories = shifted(calories, days, newSize);
+        protein = shifted(protein, days, newSize);
+        fat = shifted(fat, days, newSize);
+        carb = shifted(carb, days, newSize);
+        long[] bits = new long[words(newSize)];
+        for (int i = 0; i < size; i++) {
+            if (isPresent(i)) bits[(i + days) >>> 6] |= 1L << (i + days);
+        }
+        present = bits;
+        base -= days;
+        size = newSize;
+        rebuildPrefix();
+    }
+
+    private static float[] shifted(float[] column, int days, int newSize) {
+        float[] out = new float[newSize];
+        System.arraycopy(column, 0, out, days, newSize - days);
+        return out;
+    }
+
+    private void rebuildPrefix() {
+        int blocks = (size >>> SHIFT) + 1;
+        cumCalories = new double[Math.max(blocks, cumCalories.length)];
+        cumProtein = new double[cumCalories.length];
+        cumFat = new double[cumCalories.length];
+        cumCarb = new double[cumCalories.length];
+        cumDays = new int[cumCalories.length];
+        cumReached = new int[cumCalories.length];
+        int fullSize = size;
+        for (size = BLOCK; size <= fullSize; size += BLOCK) {
+            closeBlock();
+        }
+        size = fullSize;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= calories.length) return;
+        // Tăng 1.5 lần để phần dư không quá nửa mảng
+        resize(Math.max(needed, Math.max(INITIAL_CAPACITY, calories.length + (calories.length >> 1))));
+    }
+
+    private void resize(int capacity) {
+        calories = Arrays.copyOf(calories, capacity);
+        protein = Arrays.copyOf(protein, capacity);
+        fat = Arrays.copyOf(fat, capacity);
+        carb = Arrays.copyOf(carb, capacity);
+        present = Arrays.copyOf(present, words(capacity));
+        int blocks = (capacity >>> SHIFT) + 1;
+        cumCalories = Arrays.copyOf(cumCalories, blocks);
+        cumProtein = Arrays.copyOf(cumProtein, blocks);
+        cumFat = Arrays.copyOf(cumFat, blocks);
+        cumCarb = Arrays.copyOf(cumCarb, blocks);
+        cumDays = Arrays.copyOf(cumDays, blocks);
+        cumReached = Arrays.copyOf(cumReached, blocks);
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    // ==========================================================
+    // ĐỌC
+    // ==========================================================
+
+    /**
+     * Tổng hợp các ngày trong [from, to] (bao gồm hai đầu, null = không giới hạn).
+     */
+    public synchronized Window window(LocalDate from, LocalDate to) {
+        Window w = new Window();
+        int a = clampIndex(from != null ? from.toEpochDay() : Long.MIN_VALUE);
+        int b = clampIndex(to != null ? to.toEpochDay() + 1 : Long.MAX_VALUE);
+        if (a >= b) return w;
+        addPrefix(b, w, 1);
+        addPrefix(a, w, -1);
+        return w;
+    }
+
+    private void addPrefix(int i, Window w, int sign) {
+        int k = i >>> SHIFT;
+        w.calories += sign * cumCalories[k];
+        w.protein += sign * cumProtein[k];
+        w.fat += sign * cumFat[k];
+        w.carb += sign * cumCarb[k];
+        w.days += sign * cumDays[k];
+        w.reached += sign * cumReached[k];
+        addCells(k << SHIFT, i, w, sign);
+    }
+
+    private void addCells(int from, int to, Window w, int sign) {
+        for (int j = from; j < to; j++) {
+            float cal = calories[j];
+            if (cal > 0) {
+                w.calories += sign * cal;
+                w.protein += sign * protein[j];
+                w.fat += sign * fat[j];
+                w.carb += sign * carb[j];
+                w.days += sign;
+                if (cal >= reachThreshold) w.reached += sign;
+            }
+        }
+    }
+
+    private Contribution contribution(int i) {
+        float cal = calories[i];
+        if (!(cal > 0)) return Contribution.NONE;
+        return new Contribution(cal, protein[i], fat[i], carb[i], cal >= reachThreshold ? 1 : 0);
+    }
+
+    /** Chỉ số ô ứng với epoch-day, kẹp vào [0, size]. */
+    private int clampIndex(long epochDay) {
+        if (size == 0) return 0;
+        if (epochDay <= base) return 0;
+        long offset = epochDay - base;
+        return offset >= size ? size : (int) offset;
+    }
+
+    private boolean isPresent(int i) {
+        return (present[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /** DailyLog của các ngày có log trong [from, to] (null = không giới hạn), cũ -> mới. */
+    public synchronized List<DailyLog> logs(LocalDate from, LocalDate to) {
+        int a = clampIndex(from != null ? from.toEpochDay() : Long.MIN_VALUE);
+        int b = clampIndex(to != null ? to.toEpochDay() + 1 : Long.MAX_VALUE);
+        List<DailyLog> out = new ArrayList<>(Math.max(0, b - a));
+        for (int i = a; i < b; i++) {
+            if (isPresent(i)) out.add(toLog(i));
+        }
+        return out;
+    }
+
+    /** {@code limit} log mới nhất, cũ -> mới. */
+    public synchronized List<DailyLog> latest(int limit) {
+        List<DailyLog> out = new ArrayList<>(Math.min(limit, logCount));
+        for (int i = size - 1; i >= 0 && out.size() < limit; i--) {
+            if (isPresent(i)) out.add(toLog(i));
+        }
+        java.util.Collections.reverse(out);
+        return out;
+    }
+
+    /** Calories của {@code days} ngày liên tiếp kết thúc ở {@code to} (ngày không có log = 0), cũ -> mới. */
+    public synchronized float[] dailyCalories(LocalDate to, int days) {
+        float[] out = new float[days];
+        long first = to.toEpochDay() - days + 1;
+        for (int d = 0; d < days; d++) {
+            long offset = first + d - base;
+            if (size > 0 && offset >= 0 && offset < size) out[d] = calories[(int) offset];
+        }
+        return out;
+    }
+
+    private DailyLog toLog(int i) {
+        return new DailyLog(LocalDate.ofEpochDay(base + i).toString(), calories[i], protein[i], fat[i], carb[i], null);
+    }
+
+    /**
+     * Thống kê toàn bộ lịch sử theo quy tắc của NutritionAccumulator (weeklyLogs = 7 log mới nhất).
+     */
+    public synchronized void applyTo(NutritionStats stats) {
+        stats.setCaloriesTarget(target);
+        if (logCount == 0) return;
+        stats.setWeeklyLogs(latest(WEEKLY_DAYS));
+        Window all = window(null, null);
+        if (all.days > 0) {
+            all.applyTo(stats);
+        }
+    }
+
+    public synchronized int getLogCount() {
+        return logCount;
+    }
+
+    /** Số ngày từ log đầu tiên đến log cuối cùng (kể cả ngày trống). */
+    public synchronized int getDays() {
+        return size;
+    }
+
+    /**
+     * Ước lượng heap đang dùng (object + các mảng theo capacity, header mảng 16 byte).
+     */
+    public synchronized long estimatedBytes() {
+        long bytes = 64;
+        bytes += 4 * (16L + 4L * calories.length);
+        bytes += 16L + 8L * present.length;
+        bytes += 4 * (16L + 8L * cumCalories.length);
+        bytes += 2 * (16L + 4L * cumDays.length);
+        return bytes;
+    }
+
+    /**
+     * Kết quả tổng hợp một cửa sổ ngày.
+     */
+    public static final class Window {
+        private double calories, protein, fat, carb;
+        private int days, reached;
+
+        public int getDays() { return days; }
+
+        public int getDaysReachedGoal() { return reached; }
+
+        public double getTotalCalories() { return calories; }
+
+        public double getTotalProtein() { return protein; }
+
+        public double getTotalFat() { return fat; }
+
+        public double getTotalCarb() { return carb; }
+
+        public float getAverageCalories() { return days > 0 ? (float) (calories / days) : 0f; }
+
+        /** Ghi trung bình, số ngày và tỉ lệ đạt mục tiêu vào stats. */
+        public void applyTo(NutritionStats stats) {
+            if (days == 0) return;
+            stats.setAverageCalories((float) (calories / days));
+            stats.setAverageProtein((float) (protein / days));
+            stats.setAverageFat((float) (fat / days));
+            stats.setAverageCarb((float) (carb / days));
+            stats.setDaysTracked(days);
+            stats.setDaysReachedGoal(reached);
+            stats.setGoalAchievementRate((reached * 100f) / days);
+        }
+    }
+
+    private static final class Contribution {
+        static final Contribution NONE = new Contribution(0f, 0f, 0f, 0f, 0);
+
+        final double calories, protein, fat, carb;
+        final int days, reached;
+
+        Contribution(float calories, float protein, float fat, float carb, int reached) {
+            this.calories = calories;
+            this.protein = protein;
+            this.fat = fat;
+            this.carb = carb;
+            this.days = calories > 0 ? 1 : 0;
+            this.reached = reached;
+        }
+    }
+}
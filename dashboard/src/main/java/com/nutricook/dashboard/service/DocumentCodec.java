@@ -0,0 +1,258 @@
+package com.nutricook.dashboard.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+
+/**
+ * Bộ decode document Firestore -> entity, khai báo mapping field một lần cho mỗi entity.
+ *
+ * Mapping được "biên dịch" sẵn thành mảng FieldPath + binding, nên mỗi lần decode chỉ là một vòng
+ * lặp qua mảng: đọc thẳng từng field từ DocumentSnapshot (không dựng lại cả Map bằng getData())
+ * và không phải parse lại đường dẫn field. Thời gian được đổi sang LocalDateTime bằng ZoneId đã cache.
+ *
+ * Có thể decode từ DocumentSnapshot hoặc từ (id, Map) cho dữ liệu đã có sẵn dạng Map.
+ */
+public final class DocumentCodec<T> {
+
+    // Đồng nhất với cách cũ (ZoneId.systemDefault()), nhưng chỉ tính một lần
+    static final ZoneId ZONE = ZoneId.systemDefault();
+
+    @FunctionalInterface
+    public interface Binding<T> {
+        /** value có thể null khi document không có field. */
+        void apply(T target, Object value);
+    }
+
+    private final Supplier<T> factory;
+    private final BiConsumer<T, String> idSetter;
+    private final String[] names;
+    private final FieldPath[] paths;
+    private final Binding<T>[] bindings;
+
+    private DocumentCodec(Builder<T> builder) {
+        this.factory = builder.factory;
+        this.idSetter = builder.idSetter;
+        int n = builder.names.size();
+        this.names = builder.names.toArray(new String[0]);
+        this.paths = new FieldPath[n];
+        for (int i = 0; i < n; i++) {
+            paths[i] = FieldPath.of(names[i].split("\\."));
+        }
+        @SuppressWarnings("unchecked")
+        Binding<T>[] array = builder.bindings.toArray(new Binding[0]);
+        this.bindings = array;
+    }
+
+    public static <T> Builder<T> builder(Supplier<T> factory) {
+        return new Builder<>(factory);
+    }
+
+    /**
+     * Decode trực tiếp từ snapshot; null nếu document không tồn tại.
+     */
+    public T decode(DocumentSnapshot doc) {
+        if (doc == null || !doc.exists()) return null;
+        T target = factory.get();
+        if (idSetter != null) idSetter.accept(target, doc.getId());
+        for (int i = 0; i < bindings.length; i++) {
+            bindings[i].apply(target, doc.get(paths[i]));
+        }
+        return target;
+    }
+
+    /**
+     * Decode từ Map dữ liệu (ví dụ dữ liệu đã có từ getData() hoặc dữ liệu tổng hợp); null nếu data null.
+     */
+    public T decode(String docId, Map<String, Object> data) {
+        if (data == null) return null;
+        T target = factory.get();
+        if (idSetter != null) idSetter.accept(target, docId);
+        for (int i = 0; i < bindings.length; i++) {
+            bindings[i].apply(target, lookup(data, names[i]));
+        }
+        return target;
+    }
+
+    /**
+     * Các field mà codec đọc, để query chỉ tải đúng những field này (Query.select).
+     */
+    public FieldPath[] fieldPaths() {
+        return paths.clone();
+    }
+
+    public List<T> decodeAll(Iterable<? extends DocumentSnapshot> docs) {
+        List<T> out = new ArrayList<>();
+        for (DocumentSnapshot doc : docs) {
+            T entity = decode(doc);
+            if (entity != null) out.add(entity);
+        }
+        return out;
+    }
+
+    private static Object lookup(Map<String, Object> data, String name) {
+        if (name.indexOf('.') < 0) return data.get(name);
+        Object current = data;
+        for (String part : name.split("\\.")) {
+            if (!(current instanceof Map)) return null;
+            current = ((Map<?, ?>) current).get(part);
+        }
+        return current;
+    }
+
+    // ==========================================================
+    // Chuyển đổi giá trị (dùng chung cho các binding)
+    // ==========================================================
+
+    static Long toLong(Object value) {
+        if (value instanceof Number) return ((Number) value).longValue();
+        if (value instanceof String) {
+            try { return Long.parseLong((String) value); } catch (NumberFormatException ignored) {}
+        }
+        return null;
+    }
+
+    static Float toFloat(Object value) {
+        if (value instanceof Number) return ((Number) value).floatValue();
+        if (value instanceof String) {
+            try { return Float.parseFloat((String) value); } catch (NumberFormatException ignored) {}
+        }
+        return null;
+    }
+
+    static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp) {
+            Timestamp ts = (Timestamp) value;
+            return LocalDateTime.ofInstant(Instant.ofEpochSecond(ts.getSeconds(), ts.getNanos()), ZONE);
+        } else if (value instanceof Date) {
+            return LocalDateTime.ofInstant(((Date) value).toInstant(), ZONE);
+        }
+        return null;
+    }
+
+    static Long toEpochMillis(Object value) {
+        if (value instanceof Timestamp) {
+            Timestamp ts = (Timestamp) value;
+            return ts.getSeconds() * 1000L + ts.getNanos() / 1_000_000;
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return null;
+    }
+
+    public static final class Builder<T> {
+        private final Supplier<T> factory;
+        private BiConsumer<T, String> idSetter;
+        private final List<String> names = new ArrayList<>();
+        private final List<Binding<T>> bindings = new ArrayList<>();
+
+        private Builder(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        /** Gán document ID (được gọi trước tất cả field khác). */
+        public Builder<T> docId(BiConsumer<T, String> setter) {
+            this.idSetter = setter;
+            return this;
+        }
+
+        /** Binding tuỳ ý; name có thể là đường dẫn lồng dạng "a.b". */
+        public Builder<T> field(String name, Binding<T> binding) {
+            names.add(name);
+            bindings.add(binding);
+            return this;
+        }
+
+        /** Chỉ nhận giá trị String. */
+        public Builder<T> string(String name, BiConsumer<T, String> setter) {
+            return field(name, (t, v) -> setter.accept(t, v instanceof String ? (String) v : null));
+        }
+
+        /** Giá trị bất kỳ khác null được chuyển bằng toString(). */
+        public Builder<T> text(String name, BiConsumer<T, String> setter) {
+            return field(name, (t, v) -> {
+                if (v != null) setter.accept(t, v.toString());
+            });
+        }
+
+        /** Số hoặc chuỗi số; chỉ gọi setter khi đọc được. */
+        public Builder<T> longValue(String name, BiConsumer<T, Long> setter) {
+            return field(name, (t, v) -> {
+                Long value = toLong(v);
+                if (value != null) setter.accept(t, value);
+            });
+        }
+
+        /** Số hoặc chuỗi số; chỉ gọi setter khi đọc được. */
+        public Builder<T> floatValue(String name, BiConsumer<T, Float> setter) {
+            return field(name, (t, v) -> {
+                Float value = toFloat(v);
+                if (value != null) setter.accept(t, value);
+            });
+        }
+
+        public Builder<T> doubleOr(String name, BiConsumer<T, Double> setter, double defaultValue) {
+            return field(name, (t, v) -> setter.accept(t, v instanceof Number ? ((Number) v).doubleValue() : defaultValue));
+        }
+
+        public Builder<T> intValue(String name, BiConsumer<T, Integer> setter) {
+            return field(name, (t, v) -> {
+                if (v instanceof Number) setter.accept(t, ((Number) v).intValue());
+            });
+        }
+
+        public Builder<T> intOr(String name, BiConsumer<T, Integer> setter, int defaultValue) {
+            return field(name, (t, v) -> setter.accept(t, v instanceof Number ? ((Number) v).intValue() : defaultValue));
+        }
+
+        public Builder<T> boolOr(String name, BiConsumer<T, Boolean> setter, boolean defaultValue) {
+            return field(name, (t, v) -> setter.accept(t, v instanceof Boolean ? (Boolean) v : defaultValue));
+        }
+
+        /** Timestamp/Date -> LocalDateTime theo múi giờ hệ thống. */
+        public Builder<T> localDateTime(String name, BiConsumer<T, LocalDateTime> setter) {
+            return field(name, (t, v) -> {
+                LocalDateTime value = toLocalDateTime(v);
+                if (value != null) setter.accept(t, value);
+            });
+        }
+
+        /** Timestamp/Date/số millis -> epoch millis. */
+        public Builder<T> epochMillis(String name, BiConsumer<T, Long> setter) {
+            return field(name, (t, v) -> {
+                Long value = toEpochMillis(v);
+                if (value != null) setter.accept(t, value);
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        public <E> Builder<T> list(String name, BiConsumer<T, List<E>> setter) {
+            return field(name, (t, v) -> {
+                if (v instanceof List) setter.accept(t, (List<E>) v);
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        public Builder<T> map(String name, BiConsumer<T, Map<String, Object>> setter) {
+            return field(name, (t, v) -> {
+                if (v instanceof Map) setter.accept(t, (Map<String, Object>) v);
+            });
+        }
+
+        public DocumentCodec<T> build() {
+            return new DocumentCodec<>(this);
+        }
+    }
+}
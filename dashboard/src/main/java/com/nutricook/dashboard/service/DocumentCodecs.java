@@ -0,0 +1,166 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nutricook.dashboard.entity.Category;
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.entity.Post;
+import com.nutricook.dashboard.entity.Review;
+import com.nutricook.dashboard.entity.User;
+import com.nutricook.dashboard.entity.UserRecipe;
+
+/**
+ * Mapping document Firestore -> entity cho từng collection, khai báo một lần và dùng chung
+ * (FirestoreService, mirror, benchmark).
+ */
+public final class DocumentCodecs {
+
+    private DocumentCodecs() {}
+
+    /** Collection "users". */
+    public static final DocumentCodec<User> USER = DocumentCodec.builder(User::new)
+            .longValue("id", User::setId)
+            .string("username", User::setUsername)
+            .string("password", User::setPassword)
+            .string("email", User::setEmail)
+            .string("fullName", User::setFullName)
+            .string("avatar", User::setAvatar)
+            .field("role", (u, v) -> {
+                if (v instanceof String) {
+                    try {
+                        u.setRole(User.UserRole.valueOf((String) v));
+                    } catch (IllegalArgumentException ignored) {}
+                }
+            })
+            .localDateTime("createdAt", User::setCreatedAt)
+            .localDateTime("updatedAt", User::setUpdatedAt)
+            .build();
+
+    /** Collection "foodItems". */
+    public static final DocumentCodec<FoodItem> FOOD_ITEM = DocumentCodec.builder(FoodItem::new)
+            .longValue("id", FoodItem::setId)
+            .string("name", FoodItem::setName)
+            .string("calories", FoodItem::setCalories)
+            .string("description", FoodItem::setDescription)
+            .string("imageUrl", FoodItem::setImageUrl)
+            .boolOr("available", FoodItem::setAvailable, true)
+            // Đọc rating và reviews
+            .doubleOr("rating", FoodItem::setRating, 0.0)
+            .intOr("reviews", FoodItem::setReviews, 0)
+            .field("categoryId", (f, v) -> {
+                if (v == null) return;
+                Category cat = new Category();
+                Long categoryId = DocumentCodec.toLong(v);
+                if (categoryId != null) cat.setId(categoryId);
+                f.setCategory(cat);
+            })
+            .field("categoryName", (f, v) -> {
+                if (v instanceof String && f.getCategory() != null && f.getCategory().getId() != null) {
+                    f.getCategory().setName((String) v);
+                }
+            })
+            // Đọc thông tin dinh dưỡng
+            .doubleOr("fat", FoodItem::setFat, 0.0)
+            .doubleOr("carbs", FoodItem::setCarbs, 0.0)
+            .doubleOr("protein", FoodItem::setProtein, 0.0)
+            .doubleOr("cholesterol", FoodItem::setCholesterol, 0.0)
+            .doubleOr("sodium", FoodItem::setSodium, 0.0)
+            .doubleOr("vitamin", FoodItem::setVitamin, 0.0)
+            // Đơn vị đo lường, mặc định là gram
+            .field("unit", (f, v) -> f.setUnit(v != null ? String.valueOf(v) : "g"))
+            .build();
+
+    /** Collection "categories". */
+    public static final DocumentCodec<Category> CATEGORY = DocumentCodec.builder(Category::new)
+            .field("id", (c, v) -> {
+                if (v instanceof Number) c.setId(((Number) v).longValue());
+            })
+            .string("name", Category::setName)
+            .string("description", Category::setDescription)
+            .string("icon", Category::setIcon)
+            .string("color", Category::setColor)
+            .localDateTime("createdAt", Category::setCreatedAt)
+            .localDateTime("updatedAt", Category::setUpdatedAt)
+            .build();
+
+    /** Subcollection "users/{userId}/daily_logs" (document ID là dateId yyyy-MM-dd). */
+    public static final DocumentCodec<DailyLog> DAILY_LOG = DocumentCodec.builder(DailyLog::new)
+            .docId(DailyLog::setDateId)
+            .field("dateId", (log, v) -> {
+                if (v instanceof String) log.setDateId((String) v);
+            })
+            .floatValue("calories", DailyLog::setCalories)
+            .floatValue("protein", DailyLog::setProtein)
+            .floatValue("fat", DailyLog::setFat)
+            .floatValue("carb", DailyLog::setCarb)
+            .field("updatedAt", (log, v) -> {
+                // Giống cách cũ: chỉ nhận Timestamp hoặc số millis
+                if (v instanceof com.google.cloud.Timestamp || v instanceof Number) {
+                    log.setUpdatedAt(DocumentCodec.toEpochMillis(v));
+                }
+            })
+            .build();
+
+    /** Collection "posts". */
+    public static final DocumentCodec<Post> POST = DocumentCodec.builder(Post::new)
+            .docId(Post::setId)
+            .string("content", Post::setContent)
+            .<String>list("images", Post::setImages)
+            .string("author.id", Post::setAuthorId)
+            .string("author.email", Post::setAuthorEmail)
+            .string("author.displayName", Post::setAuthorName)
+            .epochMillis("createdAt", Post::setCreatedAt)
+            .intValue("likeCount", Post::setLikeCount)
+            .intValue("commentCount", Post::setCommentCount)
+            .build();
+
+    /** Collection "reviews". */
+    public static final DocumentCodec<Review> REVIEW = DocumentCodec.builder(Review::new)
+            .docId(Review::setId)
+            .string("foodItemId", Review::setFoodItemId)
+            .string("foodItemName", Review::setFoodItemName)
+            .string("comment", Review::setComment)
+            .intValue("rating", Review::setRating)
+            .text("userId", Review::setUserId)
+            .text("userName", Review::setUserName)
+            .text("userEmail", Review::setUserEmail)
+            .epochMillis("createdAt", Review::setCreatedAt)
+            .build();
+
+    /** Collection "userRecipes" (công thức người dùng đăng từ mobile app). */
+    public static final DocumentCodec<UserRecipe> USER_RECIPE = DocumentCodec.builder(UserRecipe::new)
+            .docId(UserRecipe::setDocId)
+            .string("recipeName", UserRecipe::setRecipeName)
+            .string("description", UserRecipe::setDescription)
+            .string("estimatedTime", UserRecipe::setEstimatedTime)
+            .string("servings", UserRecipe::setServings)
+            .string("notes", UserRecipe::setNotes)
+            .string("tips", UserRecipe::setTips)
+            .string("userId", UserRecipe::setUserId)
+            .string("userEmail", UserRecipe::setUserEmail)
+            // imageUrls: bỏ qua phần tử null/rỗng, phần tử không phải String thì toString
+            .field("imageUrls", (r, v) -> {
+                if (!(v instanceof List)) return;
+                List<?> raw = (List<?>) v;
+                List<String> imageUrls = new ArrayList<>(raw.size());
+                for (Object item : raw) {
+                    if (item == null) continue;
+                    String url = item.toString().trim();
+                    if (!url.isEmpty()) imageUrls.add(url);
+                }
+                r.setImageUrls(imageUrls);
+            })
+            .list("ingredients", UserRecipe::setIngredients)
+            .list("cookingSteps", UserRecipe::setCookingSteps)
+            .map("nutritionData", UserRecipe::setNutritionData)
+            .doubleOr("rating", UserRecipe::setRating, 0.0)
+            .intOr("reviewCount", UserRecipe::setReviewCount, 0)
+            // approved và available mặc định true nếu không có
+            .boolOr("approved", UserRecipe::setApproved, true)
+            .boolOr("available", UserRecipe::setAvailable, true)
+            .localDateTime("createdAt", UserRecipe::setCreatedAt)
+            .localDateTime("updatedAt", UserRecipe::setUpdatedAt)
+            .build();
+}
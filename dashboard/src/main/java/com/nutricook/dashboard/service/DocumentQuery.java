@@ -0,0 +1,178 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Mô tả một query trên DocumentStore (độc lập với SDK Firestore): collection hoặc collection group,
+ * các điều kiện lọc, sắp xếp, limit và projection. FirestoreDocumentStore dịch sang Query của Firestore,
+ * InMemoryDocumentStore (dashboard-benchmarks) tự đánh giá trên dữ liệu trong bộ nhớ.
+ *
+ * Field DOCUMENT_ID dùng cho lọc/sắp xếp theo document ID (FieldPath.documentId()).
+ */
+public final class DocumentQuery {
+
+    public static final String DOCUMENT_ID = "__name__";
+    // Firestore giới hạn số phần tử của toán tử "in"
+    public static final int MAX_IN_VALUES = FirestoreQuery.MAX_IN_VALUES;
+
+    public enum Op { EQUAL, NOT_NULL, IN, GREATER_OR_EQUAL, LESS_THAN, LESS_OR_EQUAL }
+
+    public static final class Filter {
+        private final String field;
+        private final Op op;
+        private final Object value;
+
+        Filter(String field, Op op, Object value) {
+            this.field = field;
+            this.op = op;
+            this.value = value;
+        }
+
+        public String getField() { return field; }
+
+        public Op getOp() { return op; }
+
+        public Object getValue() { return value; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Filter)) return false;
+            Filter other = (Filter) o;
+            return field.equals(other.field) && op == other.op && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, op, value);
+        }
+    }
+
+    public static final class Order {
+        private final String field;
+        private final boolean descending;
+
+        Order(String field, boolean descending) {
+            this.field = field;
+            this.descending = descending;
+        }
+
+        public String getField() { return field; }
+
+        public boolean isDescending() { return descending; }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Order && field.equals(((Order) o).field) && descending == ((Order) o).descending;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, descending);
+        }
+    }
+
+    private final String collection;
+    private final boolean collectionGroup;
+    private final List<Filter> filters = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private List<String> select;
+    private int limit;
+
+    private DocumentQuery(String collection, boolean collectionGroup) {
+        this.collection = collection;
+        this.collectionGroup = collectionGroup;
+    }
+
+    /** Collection theo đường dẫn, ví dụ "users" hoặc "users/{uid}/daily_logs". */
+    public static DocumentQuery collection(String path) {
+        return new DocumentQuery(path, false);
+    }
+
+    /** Mọi collection có ID này (ví dụ "daily_logs" của tất cả user). */
+    public static DocumentQuery collectionGroup(String collectionId) {
+        return new DocumentQuery(collectionId, true);
+    }
+
+    public DocumentQuery whereEqualTo(String field, Object value) {
+        filters.add(new Filter(field, Op.EQUAL, value));
+        return this;
+    }
+
+    public DocumentQuery whereNotNull(String field) {
+        filters.add(new Filter(field, Op.NOT_NULL, null));
+        return this;
+    }
+
+    /** Tối đa MAX_IN_VALUES giá trị. */
+    public DocumentQuery whereIn(String field, List<?> values) {
+        filters.add(new Filter(field, Op.IN, List.copyOf(values)));
+        return this;
+    }
+
+    public DocumentQuery whereGreaterThanOrEqualTo(String field, Object value) {
+        filters.add(new Filter(field, Op.GREATER_OR_EQUAL, value));
+        return this;
+    }
+
+    public DocumentQuery whereLessThan(String field, Object value) {
+        filters.add(new Filter(field, Op.LESS_THAN, value));
+        return this;
+    }
+
+    public DocumentQuery whereLessThanOrEqualTo(String field, Object value) {
+        filters.add(new Filter(field, Op.LESS_OR_EQUAL, value));
+        return this;
+    }
+
+    public DocumentQuery orderBy(String field) {
+        orders.add(new Order(field, false));
+        return this;
+    }
+
+    public DocumentQuery orderByDescending(String field) {
+        orders.add(new Order(field, true));
+        return this;
+    }
+
+    public DocumentQuery select(String... fields) {
+        this.select = Arrays.asList(fields);
+        return this;
+    }
+
+    public DocumentQuery limit(int limit) {
+        this.limit = Math.max(0, limit);
+        return this;
+    }
+
+    public String getCollection() { return collection; }
+
+    public boolean isCollectionGroup() { return collectionGroup; }
+
+    public List<Filter> getFilters() { return Collections.unmodifiableList(filters); }
+
+    public List<Order> getOrders() { return Collections.unmodifiableList(orders); }
+
+    /** null = tải cả document. */
+    public List<String> getSelect() { return select; }
+
+    /** 0 = không giới hạn. */
+    public int getLimit() { return limit; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DocumentQuery)) return false;
+        DocumentQuery other = (DocumentQuery) o;
+        return collection.equals(other.collection) && collectionGroup == other.collectionGroup
+                && filters.equals(other.filters) && orders.equals(other.orders)
+                && Objects.equals(select, other.select) && limit == other.limit;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(collection, collectionGroup, filters, orders, select, limit);
+    }
+}
@@ -0,0 +1,34 @@
+package com.nutricook.dashboard.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lớp trừu tượng mỏng trên kho document (collection/query/batch) mà các service dùng.
+ *
+ * FirestoreDocumentStore chạy trên Firestore thật (đọc qua FirestoreReadScope nên vẫn được gộp và có metric);
+ * InMemoryDocumentStore (module dashboard-benchmarks, cùng SyntheticDataGenerator) giữ dữ liệu trong bộ nhớ, có độ
+ * trễ giả lập, cho benchmark không cần project Firebase; ứng dụng luôn chạy trên Firestore (DocumentStoreConfig).
+ */
+public interface DocumentStore {
+
+    /** Số thao tác tối đa trong một batch. */
+    int MAX_BATCH_SIZE = 500;
+
+    /** Document theo đường dẫn ("users/u1"); document không tồn tại trả về StoredDocument có exists() = false. */
+    CompletableFuture<StoredDocument> get(String path);
+
+    CompletableFuture<List<StoredDocument>> query(DocumentQuery query);
+
+    CompletableFuture<Long> count(DocumentQuery query);
+
+    /** Ghi nguyên tử một batch (tối đa 500 thao tác như WriteBatch của Firestore). */
+    CompletableFuture<Void> commit(List<DocumentWrite> writes);
+
+    /**
+     * Kết quả của query nếu đã đọc xong trong request hiện tại (xem FirestoreReadScope.peek), không thì null.
+     */
+    default List<StoredDocument> peek(DocumentQuery query) {
+        return null;
+    }
+}
@@ -0,0 +1,40 @@
+package com.nutricook.dashboard.service;
+
+import java.util.Map;
+
+/**
+ * Một thao tác ghi trong batch của DocumentStore: set (ghi đè cả document), update (chỉ các field,
+ * document phải tồn tại) hoặc delete.
+ */
+public final class DocumentWrite {
+
+    public enum Kind { SET, UPDATE, DELETE }
+
+    private final Kind kind;
+    private final String path;
+    private final Map<String, Object> data;
+
+    private DocumentWrite(Kind kind, String path, Map<String, Object> data) {
+        this.kind = kind;
+        this.path = path;
+        this.data = data;
+    }
+
+    public static DocumentWrite set(String path, Map<String, Object> data) {
+        return new DocumentWrite(Kind.SET, path, data);
+    }
+
+    public static DocumentWrite update(String path, Map<String, Object> fields) {
+        return new DocumentWrite(Kind.UPDATE, path, fields);
+    }
+
+    public static DocumentWrite delete(String path) {
+        return new DocumentWrite(Kind.DELETE, path, null);
+    }
+
+    public Kind getKind() { return kind; }
+
+    public String getPath() { return path; }
+
+    public Map<String, Object> getData() { return data; }
+}
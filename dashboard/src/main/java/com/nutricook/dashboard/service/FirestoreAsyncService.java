@@ -0,0 +1,102 @@
+package com.nutricook.dashboard.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.nutricook.dashboard.entity.AnalyticsData;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Phiên bản bất đồng bộ của FirestoreService: mọi method trả về CompletableFuture để controller
+ * có thể gửi nhiều truy vấn độc lập cùng lúc rồi join, thay vì chờ lần lượt từng cái.
+ *
+ * Các thao tác vốn bất đồng bộ trong SDK (count/aggregate, range query) được chuyển thẳng từ
+ * ApiFuture nên không chiếm thread nào khi chờ. Các thao tác còn lại (duyệt nhiều trang, stream)
+ * chạy trên một pool nhỏ riêng, không dùng thread của Tomcat.
+ */
+@Service
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class FirestoreAsyncService {
+
+    private final FirestoreService firestoreService;
+    private final ExecutorService blockingExecutor;
+
+    public FirestoreAsyncService(FirestoreService firestoreService,
+                                 @Value("${firestore.async.pool-size:8}") int poolSize) {
+        this.firestoreService = firestoreService;
+        AtomicInteger counter = new AtomicInteger();
+        this.blockingExecutor = Executors.newFixedThreadPool(Math.max(1, poolSize), r -> {
+            Thread t = new Thread(r, "firestore-async-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        blockingExecutor.shutdownNow();
+    }
+
+    public CompletableFuture<QuerySnapshot> query(Query query) {
+        return FirestoreReadScope.get(query);
+    }
+
+    public CompletableFuture<DocumentSnapshot> document(DocumentReference ref) {
+        return FirestoreReadScope.get(ref);
+    }
+
+    public CompletableFuture<Long> count(Query query) {
+        return firestoreService.countAsync(query);
+    }
+
+    public CompletableFuture<Long> countUsers() {
+        return firestoreService.countCollectionAsync("users");
+    }
+
+    public CompletableFuture<Long> countPosts() {
+        return firestoreService.countPostsAsync();
+    }
+
+    public CompletableFuture<Long> countReviews() {
+        return firestoreService.countReviewsAsync();
+    }
+
+    public CompletableFuture<Long> countUserRecipes() {
+        return firestoreService.countUserRecipesAsync();
+    }
+
+    public CompletableFuture<Double> averageReviewRating() {
+        return firestoreService.averageReviewRatingAsync();
+    }
+
+    public CompletableFuture<Long> activeUsersCount() {
+        return firestoreService.activeUsersCountAsync();
+    }
+
+    public CompletableFuture<List<AnalyticsData.DailyStats>> dailyStats(int days) {
+        return firestoreService.dailyStatsAsync(days);
+    }
+
+    public CompletableFuture<Long> totalCaloriesTracked() {
+        return firestoreService.totalCaloriesTrackedAsync();
+    }
+
+    public CompletableFuture<List<NutritionStats>> allUsersNutritionStats() {
+        // Chạy trên pool riêng nhưng vẫn trong FirestoreReadScope của request (gộp đọc, metric, budget)
+        return CompletableFuture.supplyAsync(
+                FirestoreReadScope.propagate(firestoreService::getAllUsersNutritionStats), blockingExecutor);
+    }
+}
@@ -0,0 +1,149 @@
+package com.nutricook.dashboard.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.nutricook.dashboard.entity.Category;
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.entity.User;
+
+/**
+ * Cache đọc-xuyên (read-through) trước các lookup Firestore hay bị gọi lặp lại: user theo docId,
+ * calories target của user, danh sách categories và danh sách foods.
+ *
+ * Mỗi vùng có TTL và kích thước tối đa riêng (firestore.cache.*); các method save/delete tương ứng của
+ * FirestoreService xóa entry ngay sau khi ghi. Dữ liệu do mobile app sửa trực tiếp trên Firestore
+ * được làm mới khi hết TTL.
+ */
+@Component
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class FirestoreCache {
+
+    private static final String ALL = "all";
+
+    private final boolean enabled;
+    private final Cache<String, Optional<User>> users;
+    private final Cache<String, Float> caloriesTargets;
+    private final Cache<String, List<Category>> categories;
+    private final Cache<String, List<FoodItem>> foods;
+
+    public FirestoreCache(@Value("${firestore.cache.enabled:true}") boolean enabled,
+                          @Value("${firestore.cache.users.ttl-seconds:60}") long usersTtl,
+                          @Value("${firestore.cache.users.max-size:5000}") long usersMaxSize,
+                          @Value("${firestore.cache.calories-target.ttl-seconds:300}") long caloriesTargetTtl,
+                          @Value("${firestore.cache.catalog.ttl-seconds:300}") long catalogTtl) {
+        this.enabled = enabled;
+        this.users = build(usersTtl, usersMaxSize);
+        this.caloriesTargets = build(caloriesTargetTtl, usersMaxSize);
+        // Danh sách cả collection: mỗi vùng chỉ có một entry
+        this.categories = build(catalogTtl, 1);
+        this.foods = build(catalogTtl, 1);
+    }
+
+    private static <K, V> Cache<K, V> build(long ttlSeconds, long maxSize) {
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(1L, ttlSeconds), TimeUnit.SECONDS)
+                .maximumSize(Math.max(1L, maxSize))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Hàm đọc Firestore có thể ném checked exception như các method của FirestoreService.
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    public User user(String docId, Loader<User> loader) throws Exception {
+        if (!enabled || docId == null) return loader.load();
+        return get(users, docId, () -> Optional.ofNullable(loader.load())).orElse(null);
+    }
+
+    public Float caloriesTarget(String userId, Loader<Float> loader) throws Exception {
+        if (!enabled || userId == null) return loader.load();
+        return get(caloriesTargets, userId, loader::load);
+    }
+
+    public List<Category> categories(Loader<List<Category>> loader) throws Exception {
+        if (!enabled) return loader.load();
+        return get(categories, ALL, () -> List.copyOf(loader.load()));
+    }
+
+    public List<FoodItem> foods(Loader<List<FoodItem>> loader) throws Exception {
+        if (!enabled) return loader.load();
+        return get(foods, ALL, () -> List.copyOf(loader.load()));
+    }
+
+    private static <V> V get(Cache<String, V> cache, String key, Callable<V> loader) throws Exception {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // Trả lại exception gốc của Firestore cho caller
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    // ==========================================================
+    // INVALIDATION (gọi sau khi ghi)
+    // ==========================================================
+
+    public void invalidateUser(String docId) {
+        if (docId == null) return;
+        users.invalidate(docId);
+        caloriesTargets.invalidate(docId);
+    }
+
+    public void invalidateCategories() {
+        categories.invalidateAll();
+    }
+
+    public void invalidateFoods() {
+        foods.invalidateAll();
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+        caloriesTargets.invalidateAll();
+        categories.invalidateAll();
+        foods.invalidateAll();
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("users", stats(users));
+        status.put("caloriesTargets", stats(caloriesTargets));
+        status.put("categories", stats(categories));
+        status.put("foods", stats(foods));
+        return status;
+    }
+
+    private static Map<String, Object> stats(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("size", cache.size());
+        values.put("hits", stats.hitCount());
+        values.put("misses", stats.missCount());
+        values.put("hitRate", stats.hitRate());
+        values.put("evictions", stats.evictionCount());
+        values.put("averageLoadMillis", stats.averageLoadPenalty() / 1_000_000d);
+        return values;
+    }
+}
@@ -0,0 +1,131 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+
+/**
+ * DocumentStore trên Firestore: DocumentQuery được dịch sang Query của SDK; mọi lần đọc đi qua
+ * FirestoreReadScope (gộp trong request, metric, read budget).
+ */
+public class FirestoreDocumentStore implements DocumentStore {
+
+    private final Firestore firestore;
+
+    public FirestoreDocumentStore(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @Override
+    public CompletableFuture<StoredDocument> get(String path) {
+        return FirestoreReadScope.get(firestore.document(path)).thenApply(FirestoreDocumentStore::toStored);
+    }
+
+    @Override
+    public CompletableFuture<List<StoredDocument>> query(DocumentQuery query) {
+        return FirestoreReadScope.get(toQuery(query)).thenApply(FirestoreDocumentStore::toStored);
+    }
+
+    @Override
+    public CompletableFuture<Long> count(DocumentQuery query) {
+        return FirestoreReadScope.count(toQuery(query));
+    }
+
+    @Override
+    public CompletableFuture<Void> commit(List<DocumentWrite> writes) {
+        if (writes.isEmpty()) return CompletableFuture.completedFuture(null);
+        FirestoreReadScope scope = FirestoreReadScope.current();
+        long started = System.nanoTime();
+        WriteBatch batch = firestore.batch();
+        for (DocumentWrite write : writes) {
+            switch (write.getKind()) {
+                case SET:
+                    batch.set(firestore.document(write.getPath()), write.getData());
+                    break;
+                case UPDATE:
+                    batch.update(firestore.document(write.getPath()), write.getData());
+                    break;
+                default:
+                    batch.delete(firestore.document(write.getPath()));
+            }
+        }
+        return FirestoreFutures.toCompletable(batch.commit()).thenAccept(results -> {
+            if (scope != null) {
+                // Như FirestoreReadScope.write: đọc sau đó trong request phải thấy dữ liệu vừa ghi
+                for (DocumentWrite write : writes) scope.forget(firestore.document(write.getPath()).getParent());
+            }
+            FirestoreReadScope.recordWrites(scope, results.size(), System.nanoTime() - started);
+        });
+    }
+
+    @Override
+    public List<StoredDocument> peek(DocumentQuery query) {
+        QuerySnapshot snap = FirestoreReadScope.peek(toQuery(query));
+        return snap != null ? toStored(snap) : null;
+    }
+
+    /**
+     * Query tương ứng của Firestore (cùng DocumentQuery luôn cho Query bằng nhau, nên được gộp trong request).
+     */
+    Query toQuery(DocumentQuery spec) {
+        Query query = spec.isCollectionGroup()
+                ? firestore.collectionGroup(spec.getCollection())
+                : firestore.collection(spec.getCollection());
+        for (DocumentQuery.Filter filter : spec.getFilters()) {
+            FieldPath field = fieldPath(filter.getField());
+            switch (filter.getOp()) {
+                case EQUAL:
+                    query = query.whereEqualTo(field, filter.getValue());
+                    break;
+                case NOT_NULL:
+                    query = query.whereNotEqualTo(field, null);
+                    break;
+                case IN:
+                    query = query.whereIn(field, (List<?>) filter.getValue());
+                    break;
+                case GREATER_OR_EQUAL:
+                    query = query.whereGreaterThanOrEqualTo(field, filter.getValue());
+                    break;
+                case LESS_THAN:
+                    query = query.whereLessThan(field, filter.getValue());
+                    break;
+                default:
+                    query = query.whereLessThanOrEqualTo(field, filter.getValue());
+            }
+        }
+        for (DocumentQuery.Order order : spec.getOrders()) {
+            query = query.orderBy(fieldPath(order.getField()),
+                    order.isDescending() ? Query.Direction.DESCENDING : Query.Direction.ASCENDING);
+        }
+        if (spec.getSelect() != null) {
+            query = query.select(spec.getSelect().toArray(new String[0]));
+        }
+        if (spec.getLimit() > 0) {
+            query = query.limit(spec.getLimit());
+        }
+        return query;
+    }
+
+    private static FieldPath fieldPath(String field) {
+        return DocumentQuery.DOCUMENT_ID.equals(field) ? FieldPath.documentId() : FieldPath.of(field.split("\\."));
+    }
+
+    private static StoredDocument toStored(DocumentSnapshot doc) {
+        return new StoredDocument(doc.getReference().getPath(), doc.exists() ? doc.getData() : null);
+    }
+
+    private static List<StoredDocument> toStored(QuerySnapshot snap) {
+        List<StoredDocument> docs = new ArrayList<>(snap.size());
+        for (DocumentSnapshot doc : snap.getDocuments()) {
+            docs.add(toStored(doc));
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,62 @@
+package com.nutricook.dashboard.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Chuyển ApiFuture của Firestore SDK sang CompletableFuture để có thể ghép (thenCombine, allOf...)
+ * mà không chiếm thread chờ get().
+ */
+public final class FirestoreFutures {
+
+    private FirestoreFutures() {}
+
+    public static <T> CompletableFuture<T> toCompletable(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        // Huỷ phía CompletableFuture thì huỷ luôn RPC bên dưới
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) apiFuture.cancel(true);
+        });
+        return future;
+    }
+
+    /**
+     * Hoàn thành khi tất cả future xong, trả về kết quả theo đúng thứ tự đầu vào.
+     */
+    public static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Chờ kết quả cho các method đồng bộ, bóc lớp ExecutionException/CompletionException
+     * để caller nhận lại exception gốc như trước đây.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.nutricook.dashboard.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.Blob;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.GeoPoint;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Ghi số document đọc/ghi, số byte đọc và độ trễ của các thao tác Firestore vào Micrometer
+ * (registry toàn cục mà Spring Boot Actuator gắn vào), tag theo endpoint đang xử lý (xem FirestoreReadScope;
+ * ngoài request thì endpoint = "background").
+ *
+ * Meter: firestore.documents.read, firestore.documents.written, firestore.read.bytes, firestore.operation
+ * (timer, tag kind = query/document/aggregate/stream/write), firestore.budget.exceeded.
+ */
+public final class FirestoreMetrics {
+
+    static final String BACKGROUND = "background";
+
+    private FirestoreMetrics() {
+    }
+
+    static String endpoint(FirestoreReadScope scope) {
+        return scope != null && scope.getEndpoint() != null ? scope.getEndpoint() : BACKGROUND;
+    }
+
+    static void recordRead(FirestoreReadScope scope, String kind, long documents, long bytes, long elapsedNanos) {
+        Tags tags = Tags.of("endpoint", endpoint(scope));
+        Metrics.counter("firestore.documents.read", tags.and("kind", kind)).increment(documents);
+        if (bytes > 0) {
+            Metrics.summary("firestore.read.bytes", tags).record(bytes);
+        }
+        Metrics.timer("firestore.operation", tags.and("kind", kind)).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (scope != null) {
+            scope.addRead(documents, bytes);
+        }
+    }
+
+    static void recordWrite(FirestoreReadScope scope, long documents, long elapsedNanos) {
+        Tags tags = Tags.of("endpoint", endpoint(scope));
+        Metrics.counter("firestore.documents.written", tags).increment(documents);
+        Metrics.timer("firestore.operation", tags.and("kind", "write")).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (scope != null) {
+            scope.addWritten(documents);
+        }
+    }
+
+    static void recordBudgetExceeded(FirestoreReadScope scope) {
+        Metrics.counter("firestore.budget.exceeded", Tags.of("endpoint", endpoint(scope))).increment();
+    }
+
+    /**
+     * Kích thước ước lượng của document theo cách Firestore tính dung lượng lưu trữ:
+     * tên document + tổng (tên field + giá trị), cộng 32 byte overhead.
+     */
+    static long estimateBytes(DocumentSnapshot doc) {
+        if (doc == null || !doc.exists()) return 0L;
+        long size = doc.getReference().getPath().length() + 1L + 32L;
+        Map<String, Object> data = doc.getData();
+        return data != null ? size + mapBytes(data) : size;
+    }
+
+    private static long mapBytes(Map<?, ?> map) {
+        long size = 0L;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            size += stringBytes(String.valueOf(entry.getKey())) + valueBytes(entry.getValue());
+        }
+        return size;
+    }
+
+    private static long valueBytes(Object value) {
+        if (value == null || value instanceof Boolean) return 1L;
+        if (value instanceof String) return stringBytes((String) value);
+        if (value instanceof Number || value instanceof Timestamp || value instanceof Date) return 8L;
+        if (value instanceof GeoPoint) return 16L;
+        if (value instanceof Blob) return ((Blob) value).toBytes().length;
+        if (value instanceof DocumentReference) return stringBytes(((DocumentReference) value).getPath());
+        if (value instanceof Map) return mapBytes((Map<?, ?>) value);
+        if (value instanceof List) {
+            long size = 0L;
+            for (Object item : (List<?>) value) size += valueBytes(item);
+            return size;
+        }
+        return 8L;
+    }
+
+    private static long stringBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length + 1L;
+    }
+}
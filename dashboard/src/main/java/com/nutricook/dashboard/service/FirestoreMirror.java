@@ -0,0 +1,293 @@
+package com.nutricook.dashboard.service;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.nutricook.dashboard.entity.FirestorePage;
+
+/**
+ * Bản sao trong bộ nhớ của một collection Firestore, được giữ đồng bộ bằng snapshot listener.
+ *
+ * Mỗi document được decode một lần khi có thay đổi và lưu dưới dạng entity đã có kiểu,
+ * đánh chỉ mục theo document ID (và tuỳ chọn theo một khoá phụ). Các thao tác đọc
+ * chỉ chạm vào bộ nhớ nên trả về trong vài micro giây.
+ *
+ * Mirror chỉ được coi là "warm" sau khi nhận snapshot đầy đủ đầu tiên; trước đó (hoặc khi
+ * listener bị lỗi) các method đọc của FirestoreService phải tự đọc trực tiếp từ Firestore.
+ */
+public class FirestoreMirror<T> {
+
+    private static final long RESTART_DELAY_SECONDS = 30;
+
+    private final String collection;
+    private final Function<DocumentSnapshot, T> decoder;
+    private final Comparator<T> order;
+    private final Function<T, Object> secondaryKey;
+
+    // Sắp theo document ID giống thứ tự mặc định của Firestore
+    private final ConcurrentSkipListMap<String, T> byId = new ConcurrentSkipListMap<>();
+    private final Map<Object, T> bySecondaryKey = new ConcurrentHashMap<>();
+
+    // View đã sắp xếp (kèm vị trí theo doc ID để phân trang), chỉ build lại khi có thay đổi (lazy)
+    private volatile SortedView<T> sortedView = new SortedView<>(Collections.emptyList());
+    private volatile boolean dirty = true;
+
+    private volatile Query query;
+    private volatile ListenerRegistration registration;
+    private volatile boolean warm = false;
+    private volatile long lastEventAt = 0L;
+    private volatile long lastSyncLagMillis = -1L;
+    private volatile long eventCount = 0L;
+    private volatile String lastError;
+
+    public FirestoreMirror(String collection,
+                           Function<DocumentSnapshot, T> decoder,
+                           Comparator<T> order,
+                           Function<T, Object> secondaryKey) {
+        this.collection = collection;
+        this.decoder = decoder;
+        this.order = order;
+        this.secondaryKey = secondaryKey;
+    }
+
+    /**
+     * Đăng ký snapshot listener trên query. Listener đầu tiên trả về toàn bộ collection,
+     * các lần sau chỉ chứa document thay đổi.
+     */
+    public synchronized void start(Query query) {
+        stop();
+        this.query = query;
+        registration = query.addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                // Listener lỗi: đánh dấu chưa warm để các method đọc quay lại đọc trực tiếp,
+                // rồi đăng ký lại sau một khoảng chờ (listener Firestore không tự phục hồi)
+                warm = false;
+                lastError = error.getMessage();
+                System.err.println("❌ Mirror listener error on '" + collection + "': " + error.getMessage());
+                scheduleRestart();
+                return;
+            }
+            if (snapshot != null) {
+                apply(snapshot);
+            }
+        });
+    }
+
+    public synchronized void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        query = null;
+        warm = false;
+    }
+
+    private void scheduleRestart() {
+        Query toRestart = query;
+        if (toRestart == null) return;
+        CompletableFuture.delayedExecutor(RESTART_DELAY_SECONDS, TimeUnit.SECONDS).execute(() -> {
+            synchronized (this) {
+                // Chỉ restart nếu chưa ai stop()/start() lại trong lúc chờ
+                if (query == toRestart && !warm) {
+                    System.out.println("🔄 Restarting mirror listener on '" + collection + "'");
+                    byId.clear();
+                    bySecondaryKey.clear();
+                    dirty = true;
+                    start(toRestart);
+                }
+            }
+        });
+    }
+
+    private void apply(QuerySnapshot snapshot) {
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            DocumentSnapshot doc = change.getDocument();
+            String id = doc.getId();
+            T previous = byId.get(id);
+            if (previous != null && secondaryKey != null) {
+                Object oldKey = secondaryKey.apply(previous);
+                if (oldKey != null) bySecondaryKey.remove(oldKey, previous);
+            }
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                byId.remove(id);
+                continue;
+            }
+            T entity;
+            try {
+                entity = decoder.apply(doc);
+            } catch (Exception e) {
+                System.err.println("⚠️ Mirror could not decode " + collection + "/" + id + ": " + e.getMessage());
+                byId.remove(id);
+                continue;
+            }
+            if (entity == null) {
+                byId.remove(id);
+                continue;
+            }
+            byId.put(id, entity);
+            if (secondaryKey != null) {
+                Object key = secondaryKey.apply(entity);
+                if (key != null) bySecondaryKey.put(key, entity);
+            }
+        }
+        dirty = true;
+        long now = System.currentTimeMillis();
+        if (snapshot.getReadTime() != null) {
+            lastSyncLagMillis = Math.max(0L, now - snapshot.getReadTime().toDate().getTime());
+        }
+        lastEventAt = now;
+        eventCount++;
+        lastError = null;
+        if (!warm) {
+            warm = true;
+            System.out.println("✅ Mirror '" + collection + "' warm with " + byId.size() + " documents");
+        }
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public T get(String docId) {
+        return docId != null ? byId.get(docId) : null;
+    }
+
+    public T getBySecondaryKey(Object key) {
+        return key != null ? bySecondaryKey.get(key) : null;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Danh sách entity theo thứ tự của comparator (hoặc theo document ID nếu không có).
+     * Trả về bản sao để caller có thể tự do filter/sort.
+     */
+    public List<T> values() {
+        List<Map.Entry<String, T>> entries = sorted().entries;
+        List<T> out = new ArrayList<>(entries.size());
+        for (Map.Entry<String, T> e : entries) {
+            out.add(e.getValue());
+        }
+        return out;
+    }
+
+    /**
+     * Lấy một trang theo cùng thứ tự với values(), bắt đầu sau document afterDocId.
+     * Trả về null nếu afterDocId không còn trong mirror (caller nên đọc trực tiếp Firestore).
+     */
+    public FirestorePage<T> page(String afterDocId, int limit, Predicate<T> filter) {
+        SortedView<T> view = sorted();
+        int start = 0;
+        if (afterDocId != null) {
+            Integer pos = view.positions.get(afterDocId);
+            if (pos == null) return null;
+            start = pos + 1;
+        }
+        List<T> items = new ArrayList<>();
+        String lastId = null;
+        int i = start;
+        while (i < view.entries.size() && items.size() < limit) {
+            Map.Entry<String, T> e = view.entries.get(i++);
+            lastId = e.getKey();
+            if (filter == null || filter.test(e.getValue())) {
+                items.add(e.getValue());
+            }
+        }
+        return FirestorePage.of(items, i < view.entries.size() ? lastId : null);
+    }
+
+    /**
+     * Một trang theo document ID (cùng thứ tự với Query.orderBy(FieldPath.documentId())), bắt đầu sau
+     * afterDocId. Cursor vẫn dùng được khi afterDocId đã bị xóa và dùng chung được với trang đọc thẳng từ Firestore.
+     */
+    public FirestorePage<T> pageByDocumentId(String afterDocId, int limit, Predicate<T> filter) {
+        Map<String, T> tail = afterDocId != null ? byId.tailMap(afterDocId, false) : byId;
+        List<T> items = new ArrayList<>();
+        String lastId = null;
+        boolean hasMore = false;
+        for (Map.Entry<String, T> e : tail.entrySet()) {
+            if (items.size() >= limit) {
+                hasMore = true;
+                break;
+            }
+            lastId = e.getKey();
+            if (filter == null || filter.test(e.getValue())) {
+                items.add(e.getValue());
+            }
+        }
+        return FirestorePage.of(items, hasMore ? lastId : null);
+    }
+
+    private SortedView<T> sorted() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    dirty = false;
+                    List<Map.Entry<String, T>> copy = new ArrayList<>(byId.size());
+                    for (Map.Entry<String, T> e : byId.entrySet()) {
+                        copy.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()));
+                    }
+                    if (order != null) {
+                        copy.sort((a, b) -> order.compare(a.getValue(), b.getValue()));
+                    }
+                    sortedView = new SortedView<>(copy);
+                }
+            }
+        }
+        return sortedView;
+    }
+
+    private static final class SortedView<T> {
+        final List<Map.Entry<String, T>> entries;
+        final Map<String, Integer> positions;
+
+        SortedView(List<Map.Entry<String, T>> entries) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.positions = new HashMap<>(entries.size() * 2);
+            for (int i = 0; i < entries.size(); i++) {
+                positions.put(entries.get(i).getKey(), i);
+            }
+        }
+    }
+
+    /**
+     * Trạng thái đồng bộ để hiển thị/giám sát: warm, số document, độ trễ đồng bộ
+     * (thời điểm nhận event trừ read time phía server) và thời gian từ event cuối.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("collection", collection);
+        status.put("warm", warm);
+        status.put("documents", byId.size());
+        status.put("events", eventCount);
+        status.put("syncLagMillis", lastSyncLagMillis);
+        status.put("millisSinceLastEvent", lastEventAt > 0 ? System.currentTimeMillis() - lastEventAt : -1L);
+        if (lastError != null) {
+            status.put("lastError", lastError);
+        }
+        return status;
+    }
+}
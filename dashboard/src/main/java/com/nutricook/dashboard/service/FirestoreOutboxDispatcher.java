@@ -0,0 +1,258 @@
+package com.nutricook.dashboard.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.nutricook.dashboard.entity.BulkSyncReport;
+import com.nutricook.dashboard.entity.Category;
+import com.nutricook.dashboard.entity.FirestoreOutboxEvent;
+import com.nutricook.dashboard.entity.FirestoreOutboxState;
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.repository.CategoryRepository;
+import com.nutricook.dashboard.repository.FirestoreOutboxRepository;
+import com.nutricook.dashboard.repository.FirestoreOutboxStateRepository;
+import com.nutricook.dashboard.repository.FoodItemRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Đọc bảng firestore_outbox và đồng bộ các thay đổi lên Firestore ở nền.
+ *
+ * Mỗi lượt lấy tối đa batch-size event đến hạn, gộp các event của cùng một entity thành một lần ghi
+ * (trạng thái hiện tại đọc lại từ MySQL, entity không còn thì xóa document), rồi ghi qua BulkWriter.
+ * Ghi thành công thì xóa event; lỗi thì tăng attempts và hẹn lại theo backoff lũy thừa.
+ * High-water mark (mọi event có id <= mốc đã được gửi) lưu ở firestore_outbox_state.
+ */
+@Service
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class FirestoreOutboxDispatcher {
+
+    private static final String STATE_NAME = "firestore";
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final FirestoreService firestoreService;
+    private final FirestoreOutboxRepository outboxRepository;
+    private final FirestoreOutboxStateRepository stateRepository;
+    private final FoodItemRepository foodItemRepository;
+    private final CategoryRepository categoryRepository;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long maxBackoffSeconds;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private volatile String lastError;
+    private volatile long lastBatchMillis = -1L;
+    private volatile int lastBatchSize = 0;
+    // Id lớn nhất đã đi qua dispatcher (trong tiến trình này), dùng làm mốc khi outbox trống
+    private volatile long maxSeenId = 0L;
+
+    public FirestoreOutboxDispatcher(FirestoreService firestoreService,
+                                     FirestoreOutboxRepository outboxRepository,
+                                     FirestoreOutboxStateRepository stateRepository,
+                                     FoodItemRepository foodItemRepository,
+                                     CategoryRepository categoryRepository,
+                                     @Value("${firestore.outbox.batch-size:200}") int batchSize,
+                                     @Value("${firestore.outbox.poll-interval-ms:1000}") long pollIntervalMillis,
+                                     @Value("${firestore.outbox.max-backoff-seconds:300}") long maxBackoffSeconds) {
+        this.firestoreService = firestoreService;
+        this.outboxRepository = outboxRepository;
+        this.stateRepository = stateRepository;
+        this.foodItemRepository = foodItemRepository;
+        this.categoryRepository = categoryRepository;
+        this.batchSize = Math.max(1, batchSize);
+        this.pollIntervalMillis = Math.max(100L, pollIntervalMillis);
+        this.maxBackoffSeconds = Math.max(1L, maxBackoffSeconds);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "firestore-outbox");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::drainQuietly, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            System.err.println("❌ Error dispatching Firestore outbox: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gửi hết các event đang đến hạn (nhiều batch liên tiếp nếu outbox đang dồn); trả về số entity đã đồng bộ.
+     */
+    public int drain() throws Exception {
+        if (!draining.compareAndSet(false, true)) return 0;
+        try {
+            int dispatched = 0;
+            while (true) {
+                List<FirestoreOutboxEvent> due = outboxRepository.findDue(LocalDateTime.now(), PageRequest.of(0, batchSize));
+                if (due.isEmpty()) break;
+                dispatched += dispatchBatch(due);
+                if (due.size() < batchSize) break;
+            }
+            return dispatched;
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    private int dispatchBatch(List<FirestoreOutboxEvent> due) throws Exception {
+        long startedAt = System.currentTimeMillis();
+        // Gộp theo entity: event sau cùng quyết định (dispatcher luôn gửi trạng thái hiện tại trong MySQL)
+        Map<String, FirestoreOutboxEvent> latest = new LinkedHashMap<>();
+        Map<String, List<FirestoreOutboxEvent>> byAggregate = new HashMap<>();
+        for (FirestoreOutboxEvent event : due) {
+            String key = key(event.getAggregateType(), event.getAggregateId());
+            latest.put(key, event);
+            byAggregate.computeIfAbsent(key, k -> new ArrayList<>()).add(event);
+        }
+
+        CompletableFuture<BulkSyncReport> foods = dispatchFoods(latest.values());
+        CompletableFuture<BulkSyncReport> categories = dispatchCategories(latest.values());
+        Map<String, String> failures = new HashMap<>();
+        collectFailures(FirestoreFutures.await(foods), FirestoreOutboxEvent.FOOD, failures);
+        collectFailures(FirestoreFutures.await(categories), FirestoreOutboxEvent.CATEGORY, failures);
+
+        int succeeded = 0;
+        List<FirestoreOutboxEvent> retries = new ArrayList<>();
+        for (Map.Entry<String, FirestoreOutboxEvent> entry : latest.entrySet()) {
+            FirestoreOutboxEvent event = entry.getValue();
+            String error = failures.get(entry.getKey());
+            if (error == null) {
+                outboxRepository.deleteDispatched(event.getAggregateType(), event.getAggregateId(), event.getId());
+                succeeded++;
+            } else {
+                for (FirestoreOutboxEvent failed : byAggregate.get(entry.getKey())) {
+                    scheduleRetry(failed, error);
+                    retries.add(failed);
+                }
+            }
+        }
+        if (!retries.isEmpty()) {
+            outboxRepository.saveAll(retries);
+            lastError = retries.get(0).getLastError();
+            System.err.println("⚠️ Firestore outbox: " + failures.size() + " entities failed, will retry");
+        }
+        advanceHighWaterMark(due, succeeded);
+
+        lastBatchSize = due.size();
+        lastBatchMillis = System.currentTimeMillis() - startedAt;
+        System.out.println("✅ Firestore outbox: dispatched " + succeeded + " entities (" + due.size()
+                + " events) in " + lastBatchMillis + " ms");
+        return succeeded;
+    }
+
+    private CompletableFuture<BulkSyncReport> dispatchFoods(Iterable<FirestoreOutboxEvent> events) {
+        List<Long> ids = new ArrayList<>();
+        for (FirestoreOutboxEvent event : events) {
+            if (FirestoreOutboxEvent.FOOD.equals(event.getAggregateType())) ids.add(event.getAggregateId());
+        }
+        if (ids.isEmpty()) return CompletableFuture.completedFuture(new BulkSyncReport("foodItems", null, 0));
+        Map<String, Map<String, Object>> upserts = new LinkedHashMap<>();
+        for (FoodItem food : foodItemRepository.findAllWithCategoryByIdIn(ids)) {
+            upserts.put(String.valueOf(food.getId()), FirestoreService.foodData(food));
+        }
+        return firestoreService.bulkWriteAsync("foodItems", upserts, missing(ids, upserts));
+    }
+
+    private CompletableFuture<BulkSyncReport> dispatchCategories(Iterable<FirestoreOutboxEvent> events) {
+        List<Long> ids = new ArrayList<>();
+        for (FirestoreOutboxEvent event : events) {
+            if (FirestoreOutboxEvent.CATEGORY.equals(event.getAggregateType())) ids.add(event.getAggregateId());
+        }
+        if (ids.isEmpty()) return CompletableFuture.completedFuture(new BulkSyncReport("categories", null, 0));
+        Map<String, Map<String, Object>> upserts = new LinkedHashMap<>();
+        for (Category category : categoryRepository.findAllById(ids)) {
+            upserts.put(String.valueOf(category.getId()), FirestoreService.categoryData(category));
+        }
+        return firestoreService.bulkWriteAsync("categories", upserts, missing(ids, upserts));
+    }
+
+    // Entity không còn trong MySQL -> xóa document tương ứng
+    private static List<String> missing(List<Long> ids, Map<String, ?> found) {
+        List<String> deletes = new ArrayList<>();
+        for (Long id : ids) {
+            if (!found.containsKey(String.valueOf(id))) deletes.add(String.valueOf(id));
+        }
+        return deletes;
+    }
+
+    // Document id chính là id MySQL nên map được ngược về entity
+    private static void collectFailures(BulkSyncReport report, String type, Map<String, String> failures) {
+        for (BulkSyncReport.ItemResult item : report.getItems()) {
+            if (!item.isSuccess()) failures.put(type + ":" + item.getId(), item.getError());
+        }
+    }
+
+    private static String key(String type, Long id) {
+        return type + ":" + id;
+    }
+
+    private void scheduleRetry(FirestoreOutboxEvent event, String error) {
+        int attempts = event.getAttempts() + 1;
+        // 2, 4, 8, ... giây, tối đa max-backoff-seconds
+        long backoff = Math.min(maxBackoffSeconds, 1L << Math.min(attempts, 20));
+        event.setAttempts(attempts);
+        event.setNextAttemptAt(LocalDateTime.now().plusSeconds(backoff));
+        event.setLastError(error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+    }
+
+    /**
+     * Mốc = id nhỏ nhất còn trong outbox - 1. Outbox đã trống thì là id lớn nhất từng gửi: event sau một event
+     * phải retry có thể đã gửi ở batch trước, nên không chỉ lấy id của batch cuối.
+     */
+    private void advanceHighWaterMark(List<FirestoreOutboxEvent> batch, int dispatched) {
+        maxSeenId = Math.max(maxSeenId, batch.get(batch.size() - 1).getId());
+        FirestoreOutboxEvent oldest = outboxRepository.findFirstByOrderByIdAsc();
+        long mark = oldest != null ? oldest.getId() - 1 : maxSeenId;
+        FirestoreOutboxState state = stateRepository.findById(STATE_NAME).orElseGet(() -> new FirestoreOutboxState(STATE_NAME));
+        state.setHighWaterMark(Math.max(state.getHighWaterMark() != null ? state.getHighWaterMark() : 0L, mark));
+        state.setDispatchedCount((state.getDispatchedCount() != null ? state.getDispatchedCount() : 0L) + dispatched);
+        state.setLastDispatchAt(LocalDateTime.now());
+        stateRepository.save(state);
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("batchSize", batchSize);
+        status.put("pollIntervalMillis", pollIntervalMillis);
+        status.put("pending", outboxRepository.count());
+        status.put("due", outboxRepository.countByNextAttemptAtLessThanEqual(LocalDateTime.now()));
+        stateRepository.findById(STATE_NAME).ifPresent(state -> {
+            status.put("highWaterMark", state.getHighWaterMark());
+            status.put("dispatchedCount", state.getDispatchedCount());
+            status.put("lastDispatchAt", state.getLastDispatchAt());
+        });
+        status.put("lastBatchSize", lastBatchSize);
+        status.put("lastBatchMillis", lastBatchMillis);
+        status.put("lastError", lastError);
+        return status;
+    }
+}
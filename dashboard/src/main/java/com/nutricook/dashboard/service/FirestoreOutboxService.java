@@ -0,0 +1,83 @@
+package com.nutricook.dashboard.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.nutricook.dashboard.entity.Category;
+import com.nutricook.dashboard.entity.FirestoreOutboxEvent;
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.entity.FoodUpdate;
+import com.nutricook.dashboard.repository.CategoryRepository;
+import com.nutricook.dashboard.repository.FirestoreOutboxRepository;
+import com.nutricook.dashboard.repository.FoodItemRepository;
+import com.nutricook.dashboard.repository.FoodUpdateRepository;
+
+/**
+ * Ghi FoodItem/Category vào MySQL cùng event outbox trong một transaction.
+ *
+ * Admin request chỉ chờ MySQL commit; FirestoreOutboxDispatcher đọc outbox và đồng bộ lên Firestore ở nền,
+ * nên Firestore lỗi hay chậm cũng không làm hai bên lệch nhau vĩnh viễn (event còn đó, sẽ được gửi lại).
+ * Khi firebase.enabled=false thì không ghi outbox.
+ */
+@Service
+public class FirestoreOutboxService {
+
+    private final FoodItemRepository foodItemRepository;
+    private final CategoryRepository categoryRepository;
+    private final FoodUpdateRepository foodUpdateRepository;
+    private final FirestoreOutboxRepository outboxRepository;
+    private final boolean enabled;
+
+    public FirestoreOutboxService(FoodItemRepository foodItemRepository,
+                                  CategoryRepository categoryRepository,
+                                  FoodUpdateRepository foodUpdateRepository,
+                                  FirestoreOutboxRepository outboxRepository,
+                                  @Value("${firebase.enabled:false}") boolean enabled) {
+        this.foodItemRepository = foodItemRepository;
+        this.categoryRepository = categoryRepository;
+        this.foodUpdateRepository = foodUpdateRepository;
+        this.outboxRepository = outboxRepository;
+        this.enabled = enabled;
+    }
+
+    @Transactional
+    public FoodItem saveFood(FoodItem food) {
+        FoodItem saved = foodItemRepository.save(food);
+        enqueue(FirestoreOutboxEvent.FOOD, saved.getId(), FirestoreOutboxEvent.UPSERT);
+        return saved;
+    }
+
+    /**
+     * Xóa món ăn (kèm lịch sử food_updates của nó).
+     */
+    @Transactional
+    public void deleteFood(FoodItem food) {
+        List<FoodUpdate> updates = foodUpdateRepository.findByFoodItem(food);
+        if (!updates.isEmpty()) {
+            foodUpdateRepository.deleteAll(updates);
+        }
+        foodItemRepository.delete(food);
+        enqueue(FirestoreOutboxEvent.FOOD, food.getId(), FirestoreOutboxEvent.DELETE);
+    }
+
+    @Transactional
+    public Category saveCategory(Category category) {
+        Category saved = categoryRepository.save(category);
+        enqueue(FirestoreOutboxEvent.CATEGORY, saved.getId(), FirestoreOutboxEvent.UPSERT);
+        return saved;
+    }
+
+    @Transactional
+    public void deleteCategory(Long id) {
+        categoryRepository.deleteById(id);
+        enqueue(FirestoreOutboxEvent.CATEGORY, id, FirestoreOutboxEvent.DELETE);
+    }
+
+    private void enqueue(String type, Long id, String operation) {
+        if (!enabled || id == null) return;
+        outboxRepository.save(new FirestoreOutboxEvent(type, id, operation));
+    }
+}
@@ -0,0 +1,112 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+
+/**
+ * Builder gọn cho query Firestore có projection: chỉ tải các field cần (select) thay vì cả document
+ * (bio, map nutrition lồng nhau, mảng ảnh...). Kết quả đọc qua FirestoreReadScope nên vẫn được gộp
+ * trong request và có metric.
+ *
+ * Ví dụ: FirestoreQuery.of(firestore.collection("users")).whereNotNull("fcmToken").select("fcmToken").documents()
+ */
+public final class FirestoreQuery {
+
+    // Firestore giới hạn số phần tử của toán tử "in"
+    public static final int MAX_IN_VALUES = 30;
+
+    private Query query;
+
+    private FirestoreQuery(Query query) {
+        this.query = query;
+    }
+
+    public static FirestoreQuery of(Query base) {
+        return new FirestoreQuery(base);
+    }
+
+    /** Chỉ tải các field này (document ID luôn có). */
+    public FirestoreQuery select(String... fields) {
+        query = query.select(fields);
+        return this;
+    }
+
+    /** Chỉ tải các field mà codec decode. */
+    public FirestoreQuery select(DocumentCodec<?> codec) {
+        query = query.select(codec.fieldPaths());
+        return this;
+    }
+
+    public FirestoreQuery whereEqualTo(String field, Object value) {
+        query = query.whereEqualTo(field, value);
+        return this;
+    }
+
+    /** Field tồn tại và khác null. */
+    public FirestoreQuery whereNotNull(String field) {
+        query = query.whereNotEqualTo(field, null);
+        return this;
+    }
+
+    /** Tối đa MAX_IN_VALUES giá trị (xem inChunks). */
+    public FirestoreQuery whereIn(String field, List<?> values) {
+        query = query.whereIn(field, values);
+        return this;
+    }
+
+    /** field trong [from, to); null nghĩa là không giới hạn phía đó. */
+    public FirestoreQuery range(String field, Object from, Object to) {
+        if (from != null) query = query.whereGreaterThanOrEqualTo(field, from);
+        if (to != null) query = query.whereLessThan(field, to);
+        return this;
+    }
+
+    public FirestoreQuery orderBy(String field, Query.Direction direction) {
+        query = query.orderBy(field, direction);
+        return this;
+    }
+
+    public FirestoreQuery orderByDocumentId() {
+        query = query.orderBy(FieldPath.documentId());
+        return this;
+    }
+
+    public FirestoreQuery limit(int limit) {
+        query = query.limit(limit);
+        return this;
+    }
+
+    public Query build() {
+        return query;
+    }
+
+    public CompletableFuture<QuerySnapshot> getAsync() {
+        return FirestoreReadScope.get(query);
+    }
+
+    public List<QueryDocumentSnapshot> documents() throws Exception {
+        return FirestoreFutures.await(getAsync()).getDocuments();
+    }
+
+    /** Chỉ tải các field của codec rồi decode. */
+    public <T> List<T> list(DocumentCodec<T> codec) throws Exception {
+        return codec.decodeAll(FirestoreFutures.await(FirestoreReadScope.get(query.select(codec.fieldPaths()))).getDocuments());
+    }
+
+    /**
+     * Chia danh sách giá trị thành các nhóm tối đa MAX_IN_VALUES phần tử cho whereIn.
+     */
+    public static <V> List<List<V>> inChunks(List<V> values) {
+        List<List<V>> chunks = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += MAX_IN_VALUES) {
+            chunks.add(values.subList(i, Math.min(values.size(), i + MAX_IN_VALUES)));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,376 @@
+package com.nutricook.dashboard.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.AggregateQuery;
+import com.google.cloud.firestore.AggregateQuerySnapshot;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Transaction;
+import com.google.firestore.v1.RunQueryRequest;
+import com.google.firestore.v1.StructuredQuery;
+
+/**
+ * Ngữ cảnh Firestore của một HTTP request: gộp các lần đọc giống hệt nhau, đếm document đọc/ghi
+ * (FirestoreMetrics) và áp read budget của endpoint.
+ *
+ * FirestoreReadScopeInterceptor mở scope ở đầu request (gắn vào thread của request) và đóng khi xong.
+ * Trong scope, mỗi Query/DocumentReference (so sánh bằng equals của SDK) chỉ được gửi một lần; lần gọi sau
+ * nhận lại cùng future (trừ khi lần đọc đó lỗi, hoặc là quét cả collection - xem get(Query)). Future được lấy trên thread của request nên các method *Async gọi từ controller
+ * cũng dùng chung được. Ngoài scope (job nền, scheduler) thì đọc thẳng, metric tag endpoint = "background".
+ */
+public final class FirestoreReadScope {
+
+    private static final ThreadLocal<FirestoreReadScope> CURRENT = new ThreadLocal<>();
+
+    private final String endpoint;
+    // Số document đọc tối đa của request (0 = không giới hạn)
+    private final long readBudget;
+    // true: vượt budget thì từ chối các lần đọc tiếp theo; false: chỉ ghi log
+    private final boolean rejectOverBudget;
+
+    private final Map<Object, CompletableFuture<?>> reads = new ConcurrentHashMap<>();
+    private final AtomicInteger issued = new AtomicInteger();
+    private final AtomicInteger deduplicated = new AtomicInteger();
+    private final AtomicLong documentsRead = new AtomicLong();
+    private final AtomicLong documentsWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicBoolean overBudget = new AtomicBoolean();
+    // Đã từ chối ít nhất một lần đọc (429) trong request này
+    private final AtomicBoolean rejected = new AtomicBoolean();
+
+    private FirestoreReadScope(String endpoint, long readBudget, boolean rejectOverBudget) {
+        this.endpoint = endpoint;
+        this.readBudget = Math.max(0L, readBudget);
+        this.rejectOverBudget = rejectOverBudget;
+    }
+
+    public static FirestoreReadScope open() {
+        return open(null, 0L, false);
+    }
+
+    public static FirestoreReadScope open(String endpoint, long readBudget, boolean rejectOverBudget) {
+        FirestoreReadScope scope = new FirestoreReadScope(endpoint, readBudget, rejectOverBudget);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    public static void close() {
+        CURRENT.remove();
+    }
+
+    public static FirestoreReadScope current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bọc task sẽ chạy trên pool riêng (ThreadLocal không theo sang thread khác): lấy scope của thread gọi,
+     * gắn lại trong task để các lần đọc vẫn được gộp/đếm vào request, xong thì trả thread về như cũ.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        FirestoreReadScope scope = CURRENT.get();
+        if (scope == null) return task;
+        return () -> {
+            FirestoreReadScope previous = CURRENT.get();
+            CURRENT.set(scope);
+            try {
+                return task.get();
+            } finally {
+                if (previous != null) CURRENT.set(previous);
+                else CURRENT.remove();
+            }
+        };
+    }
+
+    // ==========================================================
+    // ĐỌC / GHI CÓ ĐO ĐẾM
+    // ==========================================================
+
+    /**
+     * Quét cả một collection gốc hoặc collection group (không filter, không limit) thì không gộp: giữ snapshot
+     * đó đến hết request tốn bộ nhớ tỉ lệ với cả collection. Query có filter/limit và subcollection của một
+     * document (vd. daily_logs của một user) vẫn được gộp.
+     */
+    public static CompletableFuture<QuerySnapshot> get(Query query) {
+        FirestoreReadScope scope = CURRENT.get();
+        Supplier<CompletableFuture<QuerySnapshot>> loader = () -> metered(scope, "query", query.get(),
+                QuerySnapshot::size, snap -> {
+                    long bytes = 0L;
+                    for (DocumentSnapshot doc : snap.getDocuments()) bytes += FirestoreMetrics.estimateBytes(doc);
+                    return bytes;
+                });
+        if (scope != null && isCollectionScan(query)) return unshared(scope, loader);
+        return read(scope, query, loader);
+    }
+
+    private static boolean isCollectionScan(Query query) {
+        RunQueryRequest request = query.toProto();
+        StructuredQuery structured = request.getStructuredQuery();
+        if (structured.hasLimit() || structured.hasWhere()) return false;
+        return structured.getFrom(0).getAllDescendants() || request.getParent().endsWith("/documents");
+    }
+
+    public static CompletableFuture<DocumentSnapshot> get(DocumentReference ref) {
+        FirestoreReadScope scope = CURRENT.get();
+        return read(scope, ref, () -> metered(scope, "document", ref.get(),
+                // Đọc document không tồn tại vẫn tính 1 lượt đọc
+                doc -> 1L, FirestoreMetrics::estimateBytes));
+    }
+
+    /**
+     * Như get(query) nhưng kết quả không được giữ lại để gộp: dùng khi duyệt lần lượt nhiều trang (export),
+     * mỗi trang chỉ đọc một lần, để scope không giữ mọi trang trong bộ nhớ đến hết request.
+     */
+    public static CompletableFuture<QuerySnapshot> getPage(Query query) {
+        FirestoreReadScope scope = CURRENT.get();
+        return unshared(scope, () -> metered(scope, "query", query.get(),
+                QuerySnapshot::size, snap -> {
+                    long bytes = 0L;
+                    for (DocumentSnapshot doc : snap.getDocuments()) bytes += FirestoreMetrics.estimateBytes(doc);
+                    return bytes;
+                }));
+    }
+
+    /**
+     * Nhiều document trong một lần getAll; mỗi document (kể cả không tồn tại) tính 1 lượt đọc.
+     * Không gộp (danh sách document thường khác nhau giữa các lần gọi).
+     */
+    public static CompletableFuture<List<DocumentSnapshot>> getAll(Firestore firestore, DocumentReference... refs) {
+        FirestoreReadScope scope = CURRENT.get();
+        return unshared(scope, () -> metered(scope, "document", firestore.getAll(refs),
+                docs -> docs.size(), docs -> {
+                    long bytes = 0L;
+                    for (DocumentSnapshot doc : docs) bytes += FirestoreMetrics.estimateBytes(doc);
+                    return bytes;
+                }));
+    }
+
+    /**
+     * Đọc nhiều document trong một transaction (mỗi document tính 1 lượt đọc). Không gộp: transaction có thể
+     * chạy lại và lần chạy lại phải đọc lại dữ liệu mới.
+     */
+    public static CompletableFuture<List<DocumentSnapshot>> getAll(Transaction transaction, DocumentReference... refs) {
+        FirestoreReadScope scope = CURRENT.get();
+        return unshared(scope, () -> metered(scope, "document", transaction.getAll(refs),
+                docs -> docs.size(), docs -> {
+                    long bytes = 0L;
+                    for (DocumentSnapshot doc : docs) bytes += FirestoreMetrics.estimateBytes(doc);
+                    return bytes;
+                }));
+    }
+
+    /**
+     * Aggregate count: Firestore tính 1 lượt đọc cho mỗi 1000 index entry khớp (tối thiểu 1).
+     * Aggregate không được gộp như query thường.
+     */
+    public static CompletableFuture<Long> count(Query query) {
+        FirestoreReadScope scope = CURRENT.get();
+        checkBudget(scope);
+        return metered(scope, "aggregate", query.count().get(), snap -> Math.max(1L, (snap.getCount() + 999L) / 1000L), snap -> 0L)
+                .thenApply(AggregateQuerySnapshot::getCount);
+    }
+
+    /**
+     * Aggregate sum/avg: tính tối thiểu 1 lượt đọc (số index entry không có trong kết quả).
+     */
+    public static CompletableFuture<AggregateQuerySnapshot> aggregate(AggregateQuery query) {
+        FirestoreReadScope scope = CURRENT.get();
+        checkBudget(scope);
+        return metered(scope, "aggregate", query.get(), snap -> 1L, snap -> 0L);
+    }
+
+    /**
+     * Một lần ghi (set/update/delete) đơn lẻ vào ref. Các lần đọc đã giữ của collection chứa ref bị bỏ (lúc gửi
+     * và lúc ghi xong, vì lần đọc gửi trong lúc đang ghi có thể thấy dữ liệu cũ) để đọc sau đó trong request
+     * thấy dữ liệu mới.
+     */
+    public static <T> CompletableFuture<T> write(DocumentReference ref, ApiFuture<T> future) {
+        FirestoreReadScope scope = CURRENT.get();
+        long started = System.nanoTime();
+        if (scope != null) scope.forget(ref.getParent());
+        return FirestoreFutures.toCompletable(future).whenComplete((result, error) -> {
+            if (scope != null) scope.forget(ref.getParent());
+            FirestoreMetrics.recordWrite(scope, error == null ? 1L : 0L, System.nanoTime() - started);
+        });
+    }
+
+    /**
+     * Bỏ các lần đọc đã giữ của một collection: document trong đó, query trên nó và collection group cùng tên.
+     * Gọi sau các lần ghi hàng loạt (batch, BulkWriter) không đi qua write().
+     */
+    public void forget(CollectionReference collection) {
+        DocumentReference owner = collection.getParent();
+        String parent = "/documents" + (owner != null ? "/" + owner.getPath() : "");
+        reads.keySet().removeIf(key -> {
+            if (key instanceof DocumentReference) {
+                return ((DocumentReference) key).getParent().getPath().equals(collection.getPath());
+            }
+            RunQueryRequest request = ((Query) key).toProto();
+            StructuredQuery.CollectionSelector from = request.getStructuredQuery().getFrom(0);
+            return from.getCollectionId().equals(collection.getId())
+                    && (from.getAllDescendants() || request.getParent().endsWith(parent));
+        });
+    }
+
+    /**
+     * Đo một thao tác đọc không đi qua Query.get() (stream collectionGroup...): gọi sau khi đọc xong.
+     */
+    public static void recordStream(FirestoreReadScope scope, long documents, long bytes, long elapsedNanos) {
+        FirestoreMetrics.recordRead(scope, "stream", documents, bytes, elapsedNanos);
+    }
+
+    /**
+     * Đo một lần ghi hàng loạt (BulkWriter/batch): gọi khi đã biết số document thực sự ghi.
+     */
+    public static void recordWrites(FirestoreReadScope scope, long documents, long elapsedNanos) {
+        FirestoreMetrics.recordWrite(scope, documents, elapsedNanos);
+    }
+
+    private static <T> CompletableFuture<T> metered(FirestoreReadScope scope, String kind, ApiFuture<T> future,
+                                                    ToLongFunction<T> documents,
+                                                    ToLongFunction<T> bytes) {
+        long started = System.nanoTime();
+        return FirestoreFutures.toCompletable(future).whenComplete((result, error) -> {
+            if (error == null) {
+                FirestoreMetrics.recordRead(scope, kind, documents.applyAsLong(result), bytes.applyAsLong(result),
+                        System.nanoTime() - started);
+            }
+        });
+    }
+
+    /**
+     * Kết quả của query nếu đã được đọc xong (thành công) trong request hiện tại, không thì null.
+     * Dùng khi một kết quả nhỏ hơn suy ra được từ một lần đọc rộng hơn đã có.
+     */
+    public static QuerySnapshot peek(Query query) {
+        FirestoreReadScope scope = CURRENT.get();
+        if (scope == null) return null;
+        CompletableFuture<?> future = scope.reads.get(query);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) return null;
+        scope.deduplicated.incrementAndGet();
+        return (QuerySnapshot) future.join();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> read(FirestoreReadScope scope, Object key, Supplier<CompletableFuture<T>> loader) {
+        if (scope == null) return loader.get();
+        CompletableFuture<?> existing = scope.reads.get(key);
+        if (existing != null) {
+            scope.deduplicated.incrementAndGet();
+            return (CompletableFuture<T>) existing;
+        }
+        checkBudget(scope);
+        CompletableFuture<T> created = loader.get();
+        existing = scope.reads.putIfAbsent(key, created);
+        if (existing != null) {
+            scope.deduplicated.incrementAndGet();
+            return (CompletableFuture<T>) existing;
+        }
+        scope.issued.incrementAndGet();
+        // Lần đọc lỗi (timeout, UNAVAILABLE...) không được giữ lại: lần gọi sau trong request đọc lại
+        created.whenComplete((result, error) -> {
+            if (error != null) scope.reads.remove(key, created);
+        });
+        return created;
+    }
+
+    private static <T> CompletableFuture<T> unshared(FirestoreReadScope scope, Supplier<CompletableFuture<T>> loader) {
+        checkBudget(scope);
+        if (scope != null) scope.issued.incrementAndGet();
+        return loader.get();
+    }
+
+    // ==========================================================
+    // BUDGET
+    // ==========================================================
+
+    private static void checkBudget(FirestoreReadScope scope) {
+        if (scope != null && scope.rejectOverBudget && scope.isOverBudget()) {
+            scope.rejected.set(true);
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Firestore read budget exceeded for "
+                    + scope.endpoint + ": " + scope.documentsRead.get() + " > " + scope.readBudget + " documents");
+        }
+    }
+
+    /**
+     * Gọi đầu các catch (Exception) bọc lần đọc Firestore: 429 do vượt read budget (kể cả khi bị bọc trong
+     * ExecutionException/CompletionException) phải tới được client, không bị nuốt thành kết quả rỗng/mặc định.
+     */
+    public static void rethrowIfRejected(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof ExecutionException || cause instanceof CompletionException) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof ResponseStatusException) throw (ResponseStatusException) cause;
+    }
+
+    void addRead(long documents, long bytes) {
+        long total = documentsRead.addAndGet(documents);
+        bytesRead.addAndGet(bytes);
+        if (readBudget > 0 && total > readBudget && overBudget.compareAndSet(false, true)) {
+            FirestoreMetrics.recordBudgetExceeded(this);
+            System.err.println("⚠️ Firestore read budget exceeded: " + endpoint + " read " + total
+                    + " documents (budget " + readBudget + ")" + (rejectOverBudget ? ", rejecting further reads" : ""));
+        }
+    }
+
+    void addWritten(long documents) {
+        documentsWritten.addAndGet(documents);
+    }
+
+    public boolean isOverBudget() {
+        return overBudget.get();
+    }
+
+    public boolean isRejected() {
+        return rejected.get();
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getReadBudget() {
+        return readBudget;
+    }
+
+    /** Số lần đọc thực sự gửi lên Firestore trong scope (không tính aggregate). */
+    public int getIssued() {
+        return issued.get();
+    }
+
+    /** Số lần đọc được phục vụ từ một lần đọc trước đó trong cùng scope. */
+    public int getDeduplicated() {
+        return deduplicated.get();
+    }
+
+    public long getDocumentsRead() {
+        return documentsRead.get();
+    }
+
+    public long getDocumentsWritten() {
+        return documentsWritten.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+}
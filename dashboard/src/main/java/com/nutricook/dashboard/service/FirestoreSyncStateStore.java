@@ -0,0 +1,79 @@
+package com.nutricook.dashboard.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bảng MySQL firestore_sync_state: hash nội dung lần cuối đã ghi lên Firestore của từng document
+ * (foodItems, categories) do dashboard đồng bộ. Dùng JdbcTemplate với batch upsert để một lần đồng bộ
+ * cả catalog chỉ tốn vài câu lệnh, không phải một SELECT + INSERT cho mỗi món như JPA merge.
+ * Bảng được tạo trong SchemaInitializer.
+ */
+@Component
+public class FirestoreSyncStateStore {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FirestoreSyncStateStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public ContentHashes find(String collection, String docId) {
+        return findAll(collection, List.of(docId)).get(docId);
+    }
+
+    /**
+     * Hash đã lưu của các document (document chưa từng đồng bộ không có trong kết quả).
+     */
+    public Map<String, ContentHashes> findAll(String collection, Collection<String> docIds) {
+        if (docIds.isEmpty()) return Collections.emptyMap();
+        Map<String, ContentHashes> result = new HashMap<>();
+        List<String> ids = new ArrayList<>(docIds);
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            List<Object> args = new ArrayList<>(chunk.size() + 1);
+            args.add(collection);
+            args.addAll(chunk);
+            jdbcTemplate.query("SELECT doc_id, content_hash, field_hashes FROM firestore_sync_state " +
+                            "WHERE collection_name = ? AND doc_id IN (" + placeholders + ")",
+                    rs -> {
+                        result.put(rs.getString("doc_id"),
+                                ContentHashes.parse(rs.getString("content_hash"), rs.getString("field_hashes")));
+                    }, args.toArray());
+        }
+        return result;
+    }
+
+    public void saveAll(String collection, Map<String, ContentHashes> hashes) {
+        if (hashes.isEmpty()) return;
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> rows = new ArrayList<>(hashes.size());
+        hashes.forEach((docId, h) -> rows.add(new Object[] { collection, docId, h.getContentHash(), h.serializeFields(), now }));
+        jdbcTemplate.batchUpdate("INSERT INTO firestore_sync_state (collection_name, doc_id, content_hash, field_hashes, synced_at) " +
+                "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE content_hash = VALUES(content_hash), " +
+                "field_hashes = VALUES(field_hashes), synced_at = VALUES(synced_at)", rows);
+    }
+
+    /**
+     * Quên hash của các document (đã xóa, hoặc lần ghi lỗi nên không chắc Firestore đang có gì).
+     */
+    public void deleteAll(String collection, Collection<String> docIds) {
+        if (docIds.isEmpty()) return;
+        List<Object[]> rows = new ArrayList<>(docIds.size());
+        for (String docId : docIds) {
+            rows.add(new Object[] { collection, docId });
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM firestore_sync_state WHERE collection_name = ? AND doc_id = ?", rows);
+    }
+}
@@ -0,0 +1,220 @@
+package com.nutricook.dashboard.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nutricook.dashboard.entity.Category;
+import com.nutricook.dashboard.entity.FoodItem;
+
+/**
+ * Phần parse của import nguyên liệu từ JSON (/admin/categories/{id}/ingredients/import): đọc file thành danh sách
+ * Map và chuyển từng phần tử sang FoodItem. Không đụng tới database, nên dùng được cả trong benchmark.
+ *
+ * Chấp nhận cả tên field kiểu snake_case (unit_name, image_url, vitamins.vitamin_a) lẫn camelCase,
+ * giá trị số có thể là số hoặc chuỗi.
+ */
+public final class IngredientJsonImport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<List<Map<String, Object>>> LIST_OF_MAPS = new TypeReference<>() {};
+
+    private IngredientJsonImport() {
+    }
+
+    public static List<Map<String, Object>> parse(byte[] json) throws IOException {
+        return MAPPER.readValue(json, LIST_OF_MAPS);
+    }
+
+    /** Tên nguyên liệu đã trim; null nếu thiếu. */
+    public static String nameOf(Map<String, Object> ingredientData) {
+        String name = getStringOrNumberValue(ingredientData, "name");
+        return name == null || name.trim().isEmpty() ? null : name.trim();
+    }
+
+    /**
+     * FoodItem (chưa lưu) từ một phần tử JSON; {@code name} là kết quả của nameOf.
+     */
+    public static FoodItem toFoodItem(Map<String, Object> ingredientData, String name, Category category) {
+        // Extract calories - handle both String and Number types
+        String calories = getStringOrNumberValue(ingredientData, "calories");
+        if (calories == null || calories.trim().isEmpty()) {
+            calories = "0 kcal";
+        } else {
+            // Remove any whitespace
+            calories = calories.trim();
+            // If it's a number (no "kcal"), add "kcal"
+            if (!calories.toLowerCase().contains("kcal")) {
+                try {
+                    // Try to parse as number
+                    double calValue = Double.parseDouble(calories);
+                    calories = String.format("%.1f", calValue).replace(".0", "").replace(",", ".") + " kcal";
+                } catch (NumberFormatException e) {
+                    // If not a number, add "kcal" anyway
+                    calories = calories + " kcal";
+                }
+            }
+        }
+
+        // Extract unit - support both "unit" and "unit_name"
+        String unit = getStringOrNumberValue(ingredientData, "unit");
+        if (unit == null || unit.trim().isEmpty()) {
+            // Try unit_name as fallback
+            unit = getStringOrNumberValue(ingredientData, "unit_name");
+            if (unit == null || unit.trim().isEmpty()) {
+                unit = "g";
+            }
+        }
+        unit = unit.trim();
+
+        // Extract description - handle both String and Number types
+        String description = getStringOrNumberValue(ingredientData, "description");
+        if (description == null) {
+            description = "";
+        } else {
+            description = description.trim();
+        }
+
+        // Extract image URL - support both "image_url" and "imageUrl"
+        // (đường dẫn local kiểu "assets/images/..." giữ nguyên, xử lý khi đồng bộ lên Firestore)
+        String imageUrl = getStringOrNumberValue(ingredientData, "image_url");
+        if (imageUrl == null || imageUrl.trim().isEmpty()) {
+            imageUrl = getStringOrNumberValue(ingredientData, "imageUrl");
+        }
+        if (imageUrl != null) {
+            imageUrl = imageUrl.trim();
+        }
+
+        FoodItem foodItem = new FoodItem();
+        foodItem.setName(name);
+        foodItem.setCalories(calories);
+        foodItem.setUnit(unit);
+        foodItem.setDescription(description);
+        foodItem.setCategory(category);
+        foodItem.setAvailable(true);
+        if (imageUrl != null && !imageUrl.isEmpty()) {
+            foodItem.setImageUrl(imageUrl);
+        }
+
+        // Extract nutrition values
+        foodItem.setFat(getDoubleValue(ingredientData, "fat", 0.0));
+        foodItem.setCarbs(getDoubleValue(ingredientData, "carbs", 0.0));
+        foodItem.setProtein(getDoubleValue(ingredientData, "protein", 0.0));
+        foodItem.setCholesterol(getDoubleValue(ingredientData, "cholesterol", 0.0));
+        foodItem.setSodium(getDoubleValue(ingredientData, "sodium", 0.0));
+
+        // Extract vitamin details - support both flat format (vitaminA) and nested format (vitamins.vitamin_a)
+        Map<String, Object> vitaminsObject = null;
+        Object vitaminsRaw = ingredientData.get("vitamins");
+        if (vitaminsRaw instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> temp = (Map<String, Object>) vitaminsRaw;
+            vitaminsObject = temp;
+        }
+
+        foodItem.setVitaminA(getVitaminValue(ingredientData, vitaminsObject, "vitaminA", "vitamin_a", 0.0));
+        foodItem.setVitaminB1(getVitaminValue(ingredientData, vitaminsObject, "vitaminB1", "vitamin_b1", 0.0));
+        foodItem.setVitaminB2(getVitaminValue(ingredientData, vitaminsObject, "vitaminB2", "vitamin_b2", 0.0));
+        foodItem.setVitaminB3(getVitaminValue(ingredientData, vitaminsObject, "vitaminB3", "vitamin_b3", 0.0));
+        foodItem.setVitaminB6(getVitaminValue(ingredientData, vitaminsObject, "vitaminB6", "vitamin_b6", 0.0));
+        foodItem.setVitaminB9(getVitaminValue(ingredientData, vitaminsObject, "vitaminB9", "vitamin_b9", 0.0));
+        foodItem.setVitaminB12(getVitaminValue(ingredientData, vitaminsObject, "vitaminB12", "vitamin_b12", 0.0));
+        foodItem.setVitaminC(getVitaminValue(ingredientData, vitaminsObject, "vitaminC", "vitamin_c", 0.0));
+        foodItem.setVitaminD(getVitaminValue(ingredientData, vitaminsObject, "vitaminD", "vitamin_d", 0.0));
+        foodItem.setVitaminE(getVitaminValue(ingredientData, vitaminsObject, "vitaminE", "vitamin_e", 0.0));
+        foodItem.setVitaminK(getVitaminValue(ingredientData, vitaminsObject, "vitaminK", "vitamin_k", 0.0));
+
+        // Calculate total vitamin
+        foodItem.calculateTotalVitamin();
+        return foodItem;
+    }
+
+    /**
+     * Helper method to safely extract Double value from Map
+     */
+    private static Double getDoubleValue(Map<String, Object> map, String key, Double defaultValue) {
+        Double value = getDoubleValue(map, key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Helper method to safely extract Double value from Map (returns null if not found)
+     */
+    private static Double getDoubleValue(Map<String, Object> map, String key) {
+        try {
+            Object value = map.get(key);
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            if (value instanceof String) {
+                String str = ((String) value).trim();
+                if (str.isEmpty()) {
+                    return null;
+                }
+                return Double.parseDouble(str);
+            }
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper method to safely extract String value from Map (handles both String and Number)
+     */
+    private static String getStringOrNumberValue(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Number) {
+            Number num = (Number) value;
+            // Remove trailing zeros if it's a whole number
+            if (num.doubleValue() == num.longValue()) {
+                return String.valueOf(num.longValue());
+            } else {
+                return String.valueOf(num.doubleValue());
+            }
+        }
+        // For other types, convert to string
+        return String.valueOf(value);
+    }
+
+    /**
+     * Helper method to extract vitamin value from either flat format or nested vitamins object
+     */
+    private static Double getVitaminValue(Map<String, Object> ingredientData, Map<String, Object> vitaminsObject,
+                                          String flatKey, String nestedKey, Double defaultValue) {
+        // Try nested format first (vitamins.vitamin_a)
+        if (vitaminsObject != null) {
+            Double nestedValue = getDoubleValue(vitaminsObject, nestedKey);
+            if (nestedValue != null) {
+                return nestedValue;
+            }
+        }
+
+        // Try flat format (vitaminA)
+        Double flatValue = getDoubleValue(ingredientData, flatKey);
+        if (flatValue != null) {
+            return flatValue;
+        }
+
+        // Try nested format with flat key name (vitamins.vitaminA)
+        if (vitaminsObject != null) {
+            Double nestedFlatValue = getDoubleValue(vitaminsObject, flatKey);
+            if (nestedFlatValue != null) {
+                return nestedFlatValue;
+            }
+        }
+
+        return defaultValue != null ? defaultValue : 0.0;
+    }
+}
@@ -0,0 +1,256 @@
+package com.nutricook.dashboard.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sketch KLL (Karnin, Lang, Liberty) ước lượng phân vị của một luồng số float với bộ nhớ cố định.
+ *
+ * Các giá trị được giữ theo tầng: tầng h chứa các phần tử đại diện cho 2^h giá trị gốc. Khi một tầng đầy
+ * thì được sắp xếp và nén lại bằng cách giữ một nửa (xen kẽ, vị trí bắt đầu ngẫu nhiên) lên tầng trên.
+ * Sức chứa giảm dần theo hệ số 2/3 từ tầng cao xuống tầng thấp, nên tổng số phần tử giữ lại không quá ~3k.
+ * Sai số thứ hạng khoảng 1.7% với k = 200 và không phụ thuộc số giá trị.
+ *
+ * Hai sketch gộp (merge) được với nhau mà không mất độ chính xác so với một sketch đọc cả hai luồng, nên lưu
+ * một sketch cho mỗi ngày rồi gộp theo khoảng là đủ. Serialize thành byte[] gọn để lưu trong document.
+ * Không thread-safe.
+ */
+public final class KllSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    private static final double DECAY = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+    private static final byte FORMAT_VERSION = 1;
+
+    private final int k;
+    private final List<Level> levels = new ArrayList<>();
+    private long count;
+    private int retained;
+    private float min = Float.NaN;
+    private float max = Float.NaN;
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    public KllSketch(int k) {
+        if (k < 8) throw new IllegalArgumentException("k quá nhỏ: " + k);
+        this.k = k;
+        levels.add(new Level(capacity(0, 1)));
+    }
+
+    public void update(float value) {
+        if (Float.isNaN(value)) return;
+        levels.get(0).add(value);
+        retained++;
+        count++;
+        if (count == 1 || value < min) min = value;
+        if (count == 1 || value > max) max = value;
+        if (retained >= maxRetained()) compress();
+    }
+
+    /** Gộp {@code other} vào sketch này ({@code other} không bị thay đổi). */
+    public void merge(KllSketch other) {
+        if (other == null || other.count == 0) return;
+        while (levels.size() < other.levels.size()) {
+            levels.add(new Level(k));
+        }
+        for (int h = 0; h < other.levels.size(); h++) {
+            levels.get(h).addAll(other.levels.get(h));
+        }
+        min = count == 0 || other.min < min ? other.min : min;
+        max = count == 0 || other.max > max ? other.max : max;
+        count += other.count;
+        retained += other.retained;
+        while (retained >= maxRetained()) {
+            compress();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public float getMin() {
+        return min;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /** Số phần tử đang giữ (để ước lượng bộ nhớ). */
+    public int getRetained() {
+        return retained;
+    }
+
+    public float quantile(double q) {
+        return quantiles(q)[0];
+    }
+
+    /**
+     * Giá trị ở các phân vị {@code qs} (0..1); sketch rỗng trả về NaN. q = 0 và q = 1 là min/max chính xác.
+     */
+    public float[] quantiles(double... qs) {
+        float[] out = new float[qs.length];
+        if (count == 0) {
+            Arrays.fill(out, Float.NaN);
+            return out;
+        }
+        // Giá trị kèm trọng số 2^h, sắp xếp theo giá trị
+        float[] values = new float[retained];
+        long[] weights = new long[retained];
+        int n = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            Level level = levels.get(h);
+            for (int i = 0; i < level.size; i++) {
+                values[n] = level.values[i];
+                weights[n] = 1L << h;
+                n++;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Float.compare(values[a], values[b]));
+
+        for (int j = 0; j < qs.length; j++) {
+            double q = qs[j];
+            if (q <= 0) {
+                out[j] = min;
+            } else if (q >= 1) {
+                out[j] = max;
+            } else {
+                double rank = q * count;
+                long cumulative = 0;
+                out[j] = max;
+                for (int i = 0; i < n; i++) {
+                    cumulative += weights[order[i]];
+                    if (cumulative >= rank) {
+                        out[j] = values[order[i]];
+                        break;
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private int capacity(int h, int height) {
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(DECAY, height - h - 1)));
+    }
+
+    private int maxRetained() {
+        int total = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            total += capacity(h, levels.size());
+        }
+        return total;
+    }
+
+    /** Nén tầng thấp nhất đang đầy lên tầng trên. */
+    private void compress() {
+        int height = levels.size();
+        for (int h = 0; h < height; h++) {
+            Level level = levels.get(h);
+            if (level.size < capacity(h, height)) continue;
+            if (h + 1 >= levels.size()) levels.add(new Level(k));
+            retained -= level.compactInto(levels.get(h + 1));
+            return;
+        }
+    }
+
+    // ==========================================================
+    // Serialize
+    // ==========================================================
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 8 + 4 + 4 + 4 + 4 * levels.size() + 4 * retained);
+        buffer.put(FORMAT_VERSION);
+        buffer.putInt(k);
+        buffer.putLong(count);
+        buffer.putFloat(min);
+        buffer.putFloat(max);
+        buffer.putInt(levels.size());
+        for (Level level : levels) {
+            buffer.putInt(level.size);
+            for (int i = 0; i < level.size; i++) {
+                buffer.putFloat(level.values[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static KllSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) throw new IllegalArgumentException("Định dạng sketch không hỗ trợ: " + version);
+        KllSketch sketch = new KllSketch(buffer.getInt());
+        sketch.count = buffer.getLong();
+        sketch.min = buffer.getFloat();
+        sketch.max = buffer.getFloat();
+        int height = buffer.getInt();
+        sketch.levels.clear();
+        for (int h = 0; h < height; h++) {
+            int size = buffer.getInt();
+            Level level = new Level(Math.max(size, MIN_CAPACITY));
+            for (int i = 0; i < size; i++) {
+                level.add(buffer.getFloat());
+            }
+            sketch.levels.add(level);
+            sketch.retained += size;
+        }
+        return sketch;
+    }
+
+    private static final class Level {
+        float[] values;
+        int size;
+
+        Level(int capacity) {
+            values = new float[capacity];
+        }
+
+        void add(float value) {
+            if (size == values.length) values = Arrays.copyOf(values, Math.max(MIN_CAPACITY, size * 2));
+            values[size++] = value;
+        }
+
+        void addAll(Level other) {
+            if (size + other.size > values.length) values = Arrays.copyOf(values, size + other.size);
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * Sắp xếp, đẩy một nửa số phần tử (số chẵn) lên {@code target}; nếu lẻ thì giữ lại một phần tử.
+         * Trả về số phần tử giảm đi.
+         */
+        int compactInto(Level target) {
+            int pairs = size / 2;
+            // Phần tử lẻ (thêm vào sau cùng) được giữ lại ở tầng này
+            float leftover = values[size - 1];
+            int sorted = pairs * 2;
+            Arrays.sort(values, 0, sorted);
+            int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+            for (int i = offset; i < sorted; i += 2) {
+                target.add(values[i]);
+            }
+            boolean odd = (size & 1) == 1;
+            size = 0;
+            if (odd) values[size++] = leftover;
+            return pairs;
+        }
+    }
+}
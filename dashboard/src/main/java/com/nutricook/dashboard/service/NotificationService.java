@@ -6,9 +6,6 @@ import com.google.firebase.messaging.Message;
 import com.google.firebase.messaging.Notification;
 import com.google.firebase.messaging.AndroidConfig;
 import com.google.firebase.messaging.AndroidNotification;
-import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.CollectionReference;
-import com.google.cloud.firestore.QuerySnapshot;
 import com.google.api.core.ApiFuture;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
@@ -24,10 +21,10 @@ import java.util.concurrent.ExecutionException;
 public class NotificationService {
 
     private final FirebaseMessaging firebaseMessaging;
-    private final Firestore firestore;
+    private final DocumentStore store;
 
-    public NotificationService(Firestore firestore) {
-        this.firestore = firestore;
+    public NotificationService(DocumentStore store) {
+        this.store = store;
         this.firebaseMessaging = FirebaseMessaging.getInstance();
     }
 
@@ -141,24 +138,22 @@ public class NotificationService {
      */
     private List<String> getAllFcmTokens() throws ExecutionException, InterruptedException {
         List<String> tokens = new ArrayList<>();
-        if (firestore == null) {
+        if (store == null) {
             return tokens;
         }
 
         try {
-            CollectionReference users = firestore.collection("users");
-            QuerySnapshot snapshot = users.get().get();
-
-            snapshot.getDocuments().forEach(doc -> {
-                Map<String, Object> data = doc.getData();
-                if (data != null && data.containsKey("fcmToken")) {
-                    Object token = data.get("fcmToken");
-                    if (token != null && !token.toString().isEmpty()) {
-                        tokens.add(token.toString());
-                    }
+            // Chỉ user có fcmToken, chỉ tải field fcmToken
+            for (StoredDocument doc : FirestoreFutures.await(store.query(DocumentQuery.collection("users")
+                    .whereNotNull("fcmToken")
+                    .select("fcmToken")))) {
+                Object token = doc.get("fcmToken");
+                if (token != null && !token.toString().isEmpty()) {
+                    tokens.add(token.toString());
                 }
-            });
+            }
         } catch (Exception e) {
+            FirestoreReadScope.rethrowIfRejected(e);
             System.err.println("Error getting FCM tokens: " + e.getMessage());
             e.printStackTrace();
         }
@@ -179,16 +174,19 @@ public class NotificationService {
      */
     private List<String> getNewUsersFcmTokens() throws ExecutionException, InterruptedException {
         List<String> tokens = new ArrayList<>();
-        if (firestore == null) {
+        if (store == null) {
             return tokens;
         }
 
         try {
             long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
-            CollectionReference users = firestore.collection("users");
-            QuerySnapshot snapshot = users.get().get();
+            // User không có createdAt vẫn được tính là mới nên không lọc createdAt trên server được;
+            // chỉ lọc user có token và tải 2 field
+            List<StoredDocument> docs = FirestoreFutures.await(store.query(DocumentQuery.collection("users")
+                    .whereNotNull("fcmToken")
+                    .select("fcmToken", "createdAt")));
 
-            snapshot.getDocuments().forEach(doc -> {
+            docs.forEach(doc -> {
                 Map<String, Object> data = doc.getData();
                 if (data != null && data.containsKey("fcmToken")) {
                     // Kiểm tra ngày đăng ký (nếu có)
@@ -217,6 +215,7 @@ public class NotificationService {
                 }
             });
         } catch (Exception e) {
+            FirestoreReadScope.rethrowIfRejected(e);
             System.err.println("Error getting new users FCM tokens: " + e.getMessage());
             e.printStackTrace();
         }
@@ -228,25 +227,27 @@ public class NotificationService {
      * Xóa invalid tokens khỏi Firestore
      */
     private void removeInvalidTokens(List<String> invalidTokens) {
-        if (firestore == null || invalidTokens.isEmpty()) {
+        if (store == null || invalidTokens.isEmpty()) {
             return;
         }
 
         try {
-            CollectionReference users = firestore.collection("users");
-            QuerySnapshot snapshot = users.get().get();
-
-            snapshot.getDocuments().forEach(doc -> {
-                Map<String, Object> data = doc.getData();
-                if (data != null && data.containsKey("fcmToken")) {
-                    String token = data.get("fcmToken").toString();
-                    if (invalidTokens.contains(token)) {
-                        // Xóa fcmToken field
-                        doc.getReference().update("fcmToken", null);
-                        System.out.println("🗑️ Removed invalid token for user: " + doc.getId());
-                    }
+            // Chỉ tìm đúng các user giữ token lỗi (whereIn theo nhóm 30), không quét cả collection;
+            // xóa fcmToken theo batch thay vì từng lệnh update
+            List<DocumentWrite> writes = new ArrayList<>();
+            for (List<String> chunk : FirestoreQuery.inChunks(invalidTokens)) {
+                for (StoredDocument doc : FirestoreFutures.await(store.query(DocumentQuery.collection("users")
+                        .whereIn("fcmToken", chunk)
+                        .select("fcmToken")))) {
+                    Map<String, Object> clear = new HashMap<>();
+                    clear.put("fcmToken", null);
+                    writes.add(DocumentWrite.update(doc.getPath(), clear));
+                    System.out.println("🗑️ Removed invalid token for user: " + doc.getId());
                 }
-            });
+            }
+            for (int i = 0; i < writes.size(); i += DocumentStore.MAX_BATCH_SIZE) {
+                FirestoreFutures.await(store.commit(writes.subList(i, Math.min(writes.size(), i + DocumentStore.MAX_BATCH_SIZE))));
+            }
         } catch (Exception e) {
             System.err.println("Error removing invalid tokens: " + e.getMessage());
             e.printStackTrace();
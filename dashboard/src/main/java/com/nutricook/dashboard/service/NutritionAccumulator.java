@@ -0,0 +1,79 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * Gom DailyLog của một user thành NutritionStats trong một lượt duyệt.
+ *
+ * Log có thể đến theo thứ tự bất kỳ (ví dụ khi stream collectionGroup "daily_logs"), nên chỉ giữ
+ * các tổng cộng dồn và 7 log mới nhất theo dateId, không giữ toàn bộ lịch sử trong bộ nhớ.
+ * Quy tắc tính giống calculateNutritionStats: chỉ ngày có calories > 0 được tính vào trung bình,
+ * đạt mục tiêu khi calories >= 95% target.
+ */
+public class NutritionAccumulator {
+
+    private static final int WEEKLY_DAYS = 7;
+
+    private final float target;
+    private final TreeMap<String, DailyLog> latestLogs = new TreeMap<>();
+
+    private double totalCal, totalPro, totalFat, totalCarb;
+    private int count;
+    private int daysReached;
+    private int logCount;
+
+    public NutritionAccumulator(float target) {
+        this.target = target;
+    }
+
+    public void add(DailyLog log) {
+        if (log == null) return;
+        logCount++;
+
+        String dateId = log.getDateId() != null ? log.getDateId() : "";
+        latestLogs.put(dateId, log);
+        if (latestLogs.size() > WEEKLY_DAYS) {
+            latestLogs.pollFirstEntry();
+        }
+
+        if (log.getCalories() > 0) {
+            totalCal += log.getCalories();
+            totalPro += log.getProtein();
+            totalFat += log.getFat();
+            totalCarb += log.getCarb();
+            count++;
+
+            // Kiểm tra đạt mục tiêu (cho phép sai số 5%)
+            if (log.getCalories() >= target * 0.95f) {
+                daysReached++;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return logCount == 0;
+    }
+
+    /**
+     * Ghi kết quả vào stats (target, weeklyLogs theo thứ tự cũ -> mới, các giá trị trung bình).
+     */
+    public void applyTo(NutritionStats stats) {
+        stats.setCaloriesTarget(target);
+        if (isEmpty()) return;
+
+        stats.setWeeklyLogs(new ArrayList<>(latestLogs.values()));
+        if (count > 0) {
+            stats.setAverageCalories((float) (totalCal / count));
+            stats.setAverageProtein((float) (totalPro / count));
+            stats.setAverageFat((float) (totalFat / count));
+            stats.setAverageCarb((float) (totalCarb / count));
+            stats.setDaysTracked(count);
+            stats.setDaysReachedGoal(daysReached);
+            stats.setGoalAchievementRate((daysReached * 100f) / count);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.nutricook.dashboard.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * Tạo file Excel thống kê calories (/admin/nutrition/export): sheet "Nutrition Data" một dòng cho mỗi NutritionStats,
+ * và nếu có details thì sheet "Daily Logs" một dòng cho mỗi daily log.
+ *
+ * Dùng SXSSFWorkbook: chỉ ROW_WINDOW dòng gần nhất của mỗi sheet nằm trong bộ nhớ, phần còn lại được ghi ra file
+ * tạm (nén), nên bộ nhớ không phụ thuộc số dòng. Độ rộng cột tính từ SAMPLE_ROWS dòng đầu (autoSizeColumn phải đo
+ * lại mọi dòng và không dùng được với dòng đã ghi ra file tạm). Sheet vượt giới hạn số dòng của Excel thì tiếp
+ * sang sheet mới cùng tên kèm số thứ tự.
+ */
+public final class NutritionExcelExport implements NutritionExport.RowWriter {
+
+    static final String[] HEADERS = {"Người dùng", "Email", "Calories TB", "Mục tiêu", "Số ngày", "Đạt mục tiêu", "Tỉ lệ %", "User ID"};
+
+    private static final int ROW_WINDOW = 100;
+    private static final int SAMPLE_ROWS = 500;
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    // Số ký tự tối đa của một cột (Excel giới hạn 255)
+    private static final int MAX_COLUMN_CHARS = 80;
+
+    private final OutputStream out;
+    private final SXSSFWorkbook workbook;
+    private final CellStyle headerStyle;
+    private final SheetWriter summary;
+    private final SheetWriter daily;
+
+    public NutritionExcelExport(OutputStream out, boolean details) {
+        this.out = out;
+        this.workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        headerStyle = workbook.createCellStyle();
+        Font headerFont = workbook.createFont();
+        headerFont.setBold(true);
+        headerStyle.setFont(headerFont);
+        headerStyle.setFillForegroundColor(IndexedColors.GREEN.getIndex());
+        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        // Tạo sheet ngay để thứ tự sheet cố định dù dòng đến theo thứ tự nào
+        summary = new SheetWriter("Nutrition Data", HEADERS);
+        daily = details ? new SheetWriter("Daily Logs", NutritionExport.DAILY_HEADERS) : null;
+    }
+
+    /** Ghi workbook ra {@code out}; không đóng {@code out}. */
+    public static void write(List<NutritionStats> statsList, OutputStream out) throws IOException {
+        try (NutritionExcelExport export = new NutritionExcelExport(out, false)) {
+            for (NutritionStats stats : statsList) {
+                export.stats(stats);
+            }
+        }
+    }
+
+    @Override
+    public void stats(NutritionStats stats) {
+        Row row = summary.nextRow();
+        summary.text(row, 0, NutritionExport.nameOf(stats));
+        summary.text(row, 1, NutritionExport.emailOf(stats));
+        summary.number(row, 2, stats.getAverageCalories());
+        summary.number(row, 3, stats.getCaloriesTarget());
+        summary.number(row, 4, stats.getDaysTracked());
+        summary.number(row, 5, stats.getDaysReachedGoal());
+        summary.number(row, 6, stats.getGoalAchievementRate());
+        summary.text(row, 7, stats.getUserId());
+    }
+
+    @Override
+    public void dailyLog(String userId, DailyLog log) {
+        if (daily == null) return;
+        Row row = daily.nextRow();
+        daily.text(row, 0, userId);
+        daily.text(row, 1, log.getDateId());
+        daily.number(row, 2, log.getCalories());
+        daily.number(row, 3, log.getProtein());
+        daily.number(row, 4, log.getFat());
+        daily.number(row, 5, log.getCarb());
+    }
+
+    /** Ghi workbook ra OutputStream (không đóng nó) rồi xóa file tạm. */
+    @Override
+    public void close() throws IOException {
+        try {
+            summary.applyWidths();
+            if (daily != null) daily.applyWidths();
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /** Workbook chỉ được ghi ra ở close() nên khi abort chưa có byte nào được gửi: chỉ xóa file tạm. */
+    @Override
+    public void abort(Exception cause) throws IOException {
+        workbook.dispose();
+        workbook.close();
+    }
+
+    /**
+     * Ghi tuần tự vào một sheet (và các sheet tiếp theo khi đầy), đo độ rộng cột trên các dòng mẫu.
+     */
+    private final class SheetWriter {
+        private final String name;
+        private final String[] headers;
+        private final int[] widths;
+        private SXSSFSheet sheet;
+        private int part;
+        private int nextRow;
+        private int sampled;
+
+        SheetWriter(String name, String[] headers) {
+            this.name = name;
+            this.headers = headers;
+            this.widths = new int[headers.length];
+            for (int i = 0; i < headers.length; i++) {
+                widths[i] = headers[i].length();
+            }
+            newSheet();
+        }
+
+        private void newSheet() {
+            if (sheet != null) applyWidths();
+            part++;
+            sheet = workbook.createSheet(part == 1 ? name : name + " (" + part + ")");
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(headers[i]);
+                cell.setCellStyle(headerStyle);
+            }
+            // Giữ dòng tiêu đề khi cuộn
+            sheet.createFreezePane(0, 1);
+            nextRow = 1;
+        }
+
+        Row nextRow() {
+            if (nextRow >= MAX_ROWS) newSheet();
+            sampled++;
+            return sheet.createRow(nextRow++);
+        }
+
+        void text(Row row, int column, String value) {
+            row.createCell(column).setCellValue(value);
+            measure(column, value != null ? value.length() : 0);
+        }
+
+        void number(Row row, int column, double value) {
+            row.createCell(column).setCellValue(value);
+            // Excel hiển thị số với tối đa ~10 chữ số ở định dạng General
+            measure(column, Math.min(String.valueOf(value).length(), 11));
+        }
+
+        private void measure(int column, int chars) {
+            if (sampled <= SAMPLE_ROWS && chars > widths[column]) widths[column] = chars;
+        }
+
+        void applyWidths() {
+            for (int i = 0; i < widths.length; i++) {
+                // Đơn vị 1/256 ký tự, thêm 2 ký tự đệm
+                sheet.setColumnWidth(i, Math.min(widths[i] + 2, MAX_COLUMN_CHARS) * 256);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.nutricook.dashboard.service;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * Export thống kê calories (/admin/nutrition/export) dạng luồng: mỗi NutritionStats / daily log được ghi ngay khi
+ * nhận, không giữ danh sách, nên bộ nhớ không tăng theo số user.
+ *
+ * - XLSX: NutritionExcelExport (SXSSF, sheet tổng hợp + sheet log theo ngày nếu có details).
+ * - CSV: một bảng UTF-8 (có BOM để Excel đọc đúng tiếng Việt); CSV chỉ có một bảng nên details=true xuất
+ *   bảng log theo ngày thay cho bảng tổng hợp.
+ * - NDJSON: mỗi dòng một object, {"type":"user",...} rồi {"type":"day",...} nếu có details.
+ *
+ * Export lỗi giữa chừng: CSV kết thúc bằng dòng "#ERROR,<thông báo>", NDJSON bằng {"type":"error",...}.
+ */
+public final class NutritionExport {
+
+    static final String ERROR_MARKER = "#ERROR";
+
+    static final String[] DAILY_HEADERS = {"User ID", "Ngày", "Calories", "Protein", "Fat", "Carb"};
+
+    public enum Format {
+        XLSX("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+        CSV("csv", "text/csv; charset=UTF-8"),
+        NDJSON("ndjson", "application/x-ndjson");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() { return extension; }
+
+        public String getContentType() { return contentType; }
+
+        /** Có ghi bảng tổng hợp theo user không (CSV + details chỉ ghi log theo ngày). */
+        public boolean includesSummary(boolean details) {
+            return this != CSV || !details;
+        }
+
+        /** Format theo tên (xlsx/csv/ndjson); giá trị khác là XLSX. */
+        public static Format of(String name) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(name)) return format;
+            }
+            return XLSX;
+        }
+    }
+
+    /**
+     * Nhận từng dòng export. Lỗi ghi ra OutputStream được ném dưới dạng UncheckedIOException để dùng được
+     * làm callback (Consumer/BiConsumer). close() ghi phần còn lại nhưng không đóng OutputStream gốc.
+     */
+    public interface RowWriter extends Closeable {
+        void stats(NutritionStats stats);
+
+        void dailyLog(String userId, DailyLog log);
+
+        @Override
+        void close() throws IOException;
+
+        /**
+         * Dừng export giữa chừng vì {@code cause} (thay cho close()): CSV/NDJSON ghi thêm một dòng báo lỗi ở cuối
+         * để file không trông như đầy đủ; XLSX chưa ghi gì ra OutputStream nên chỉ xóa file tạm. Không đóng
+         * OutputStream gốc.
+         */
+        void abort(Exception cause) throws IOException;
+    }
+
+    private NutritionExport() {
+    }
+
+    public static RowWriter open(Format format, OutputStream out, boolean details) throws IOException {
+        switch (format) {
+            case CSV: return new CsvWriter(out, details);
+            case NDJSON: return new NdjsonWriter(out, details);
+            default: return new NutritionExcelExport(out, details);
+        }
+    }
+
+    static String nameOf(NutritionStats stats) {
+        return stats.getUserName() != null ? stats.getUserName() : "N/A";
+    }
+
+    static String emailOf(NutritionStats stats) {
+        return stats.getUserEmail() != null ? stats.getUserEmail() : "N/A";
+    }
+
+    static String messageOf(Exception cause) {
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static final class CsvWriter implements RowWriter {
+        private final Writer writer;
+        private final boolean details;
+
+        CsvWriter(OutputStream out, boolean details) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.details = details;
+            writer.write('\uFEFF');
+            writeRow(details ? DAILY_HEADERS : NutritionExcelExport.HEADERS);
+        }
+
+        @Override
+        public void stats(NutritionStats stats) {
+            if (details) return;
+            writeRow(nameOf(stats), emailOf(stats), String.valueOf(stats.getAverageCalories()),
+                    String.valueOf(stats.getCaloriesTarget()), String.valueOf(stats.getDaysTracked()),
+                    String.valueOf(stats.getDaysReachedGoal()), String.valueOf(stats.getGoalAchievementRate()),
+                    stats.getUserId());
+        }
+
+        @Override
+        public void dailyLog(String userId, DailyLog log) {
+            if (!details) return;
+            writeRow(userId, log.getDateId(), String.valueOf(log.getCalories()), String.valueOf(log.getProtein()),
+                    String.valueOf(log.getFat()), String.valueOf(log.getCarb()));
+        }
+
+        private void writeRow(String... values) {
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) writer.write(',');
+                    writer.write(escape(values[i]));
+                }
+                writer.write("\r\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static String escape(String value) {
+            if (value == null) return "";
+            // Ô bắt đầu bằng = + - @ bị Excel/Sheets chạy như công thức (tên/email do user tự đặt): thêm ' để giữ là chữ
+            if (!value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0) value = "'" + value;
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void abort(Exception cause) throws IOException {
+            try {
+                writeRow(ERROR_MARKER, messageOf(cause));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+        }
+    }
+
+    private static final class NdjsonWriter implements RowWriter {
+        private final JsonGenerator json;
+        private final boolean details;
+
+        NdjsonWriter(OutputStream out, boolean details) throws IOException {
+            // Mỗi object một dòng: bỏ dấu cách mặc định giữa các giá trị gốc, tự ghi '\n'
+            this.json = new JsonFactory().setRootValueSeparator(null).createGenerator(out);
+            this.json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.details = details;
+        }
+
+        @Override
+        public void stats(NutritionStats stats) {
+            try {
+                json.writeStartObject();
+                json.writeStringField("type", "user");
+                json.writeStringField("userId", stats.getUserId());
+                json.writeStringField("userName", stats.getUserName());
+                json.writeStringField("userEmail", stats.getUserEmail());
+                json.writeNumberField("averageCalories", stats.getAverageCalories());
+                json.writeNumberField("averageProtein", stats.getAverageProtein());
+                json.writeNumberField("averageFat", stats.getAverageFat());
+                json.writeNumberField("averageCarb", stats.getAverageCarb());
+                json.writeNumberField("caloriesTarget", stats.getCaloriesTarget());
+                json.writeNumberField("daysTracked", stats.getDaysTracked());
+                json.writeNumberField("daysReachedGoal", stats.getDaysReachedGoal());
+                json.writeNumberField("goalAchievementRate", stats.getGoalAchievementRate());
+                json.writeEndObject();
+                json.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void dailyLog(String userId, DailyLog log) {
+            if (!details) return;
+            try {
+                json.writeStartObject();
+                json.writeStringField("type", "day");
+                json.writeStringField("userId", userId);
+                json.writeStringField("dateId", log.getDateId());
+                json.writeNumberField("calories", log.getCalories());
+                json.writeNumberField("protein", log.getProtein());
+                json.writeNumberField("fat", log.getFat());
+                json.writeNumberField("carb", log.getCarb());
+                json.writeEndObject();
+                json.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            json.close();
+        }
+
+        @Override
+        public void abort(Exception cause) throws IOException {
+            try {
+                json.writeStartObject();
+                json.writeStringField("type", "error");
+                json.writeStringField("message", messageOf(cause));
+                json.writeEndObject();
+                json.writeRaw('\n');
+            } finally {
+                json.close();
+            }
+        }
+    }
+}
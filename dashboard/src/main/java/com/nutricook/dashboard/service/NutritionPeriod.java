@@ -0,0 +1,177 @@
+package com.nutricook.dashboard.service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Khoảng thời gian trên trang nutrition (tham số period): tuần/tháng/quý/năm hiện tại (theo lịch, kết thúc hôm nay),
+ * toàn bộ lịch sử, hoặc khoảng tùy chọn [from, to].
+ *
+ * Các khoảng theo lịch trùng ranh giới bucket tuần (thứ Hai - Chủ nhật, ISO) và tháng của NutritionRollup,
+ * nên thống kê lấy được từ vài bucket đã tính sẵn thay vì đọc lại từng daily log.
+ */
+public final class NutritionPeriod {
+
+    public static final NutritionPeriod ALL = new NutritionPeriod("all", null, null);
+
+    private static final DateTimeFormatter LABEL_DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    // Khoảng tối đa để biểu đồ còn vẽ theo ngày / theo tuần
+    private static final long MAX_DAY_POINTS = 31;
+    private static final long MAX_WEEK_POINTS = 26 * 7;
+
+    /**
+     * Độ phân giải của bucket: ngày, tuần ISO (bắt đầu thứ Hai), tháng.
+     */
+    public enum Resolution {
+        DAY, WEEK, MONTH;
+
+        public LocalDate start(LocalDate date) {
+            switch (this) {
+                case WEEK: return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH: return date.withDayOfMonth(1);
+                default: return date;
+            }
+        }
+
+        public LocalDate end(LocalDate date) {
+            switch (this) {
+                case WEEK: return start(date).plusDays(6);
+                case MONTH: return date.with(TemporalAdjusters.lastDayOfMonth());
+                default: return date;
+            }
+        }
+
+        /** Khóa của bucket chứa {@code date}: yyyy-MM-dd, yyyy-'W'ww (tuần ISO) hoặc yyyy-MM. */
+        public String key(LocalDate date) {
+            switch (this) {
+                case WEEK:
+                    return String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+                case MONTH:
+                    return String.format("%d-%02d", date.getYear(), date.getMonthValue());
+                default:
+                    return date.toString();
+            }
+        }
+
+        /** Nhãn ngắn cho trục biểu đồ. */
+        public String label(LocalDate date) {
+            switch (this) {
+                case MONTH: return start(date).format(DateTimeFormatter.ofPattern("MM/yyyy"));
+                default: return start(date).format(DateTimeFormatter.ofPattern("dd/MM"));
+            }
+        }
+    }
+
+    private final String name;
+    private final LocalDate from;
+    private final LocalDate to;
+
+    private NutritionPeriod(String name, LocalDate from, LocalDate to) {
+        this.name = name;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Khoảng ứng với period (week/month/quarter/year/all/custom) tính đến {@code today}.
+     * custom cần from/to dạng yyyy-MM-dd (thiếu một đầu thì lấy hôm nay, đảo ngược thì đổi chỗ);
+     * giá trị không hợp lệ thì dùng tuần hiện tại.
+     */
+    public static NutritionPeriod resolve(String period, String from, String to, LocalDate today) {
+        String key = period != null ? period : "week";
+        switch (key) {
+            case "all":
+                return ALL;
+            case "month":
+                return new NutritionPeriod(key, Resolution.MONTH.start(today), today);
+            case "quarter":
+                return new NutritionPeriod(key, today.with(IsoFields.DAY_OF_QUARTER, 1), today);
+            case "year":
+                return new NutritionPeriod(key, today.withDayOfYear(1), today);
+            case "custom":
+                LocalDate start = parseDate(from);
+                LocalDate end = parseDate(to);
+                if (start != null || end != null) {
+                    if (start == null) start = end;
+                    if (end == null) end = today;
+                    return start.isAfter(end)
+                            ? new NutritionPeriod(key, end, start)
+                            : new NutritionPeriod(key, start, end);
+                }
+                return new NutritionPeriod("week", Resolution.WEEK.start(today), today);
+            default:
+                return new NutritionPeriod("week", Resolution.WEEK.start(today), today);
+        }
+    }
+
+    private static LocalDate parseDate(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return LocalDate.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Ngày đầu (null = không giới hạn). */
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    /** Ngày cuối, bao gồm (null = không giới hạn). */
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public boolean isAll() {
+        return from == null && to == null;
+    }
+
+    public boolean contains(LocalDate date) {
+        return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+    }
+
+    public boolean contains(String dateId) {
+        if (dateId == null) return false;
+        try {
+            return contains(LocalDate.parse(dateId));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Độ phân giải biểu đồ: theo ngày tới 31 ngày, theo tuần tới 26 tuần, dài hơn thì theo tháng.
+     */
+    public Resolution chartResolution() {
+        if (isAll()) return Resolution.MONTH;
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        if (days <= MAX_DAY_POINTS) return Resolution.DAY;
+        return days <= MAX_WEEK_POINTS ? Resolution.WEEK : Resolution.MONTH;
+    }
+
+    public String getLabel() {
+        switch (name) {
+            case "all": return "Toàn bộ";
+            case "month": return "Tháng này";
+            case "quarter": return "Quý này";
+            case "year": return "Năm nay";
+            case "custom": return from.format(LABEL_DATE) + " - " + to.format(LABEL_DATE);
+            default: return "Tuần này";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isAll() ? name : name + "[" + from + ".." + to + "]";
+    }
+}
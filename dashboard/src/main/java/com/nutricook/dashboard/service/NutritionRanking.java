@@ -0,0 +1,234 @@
+package com.nutricook.dashboard.service;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nutricook.dashboard.entity.FirestorePage;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * Bảng xếp hạng NutritionStats của một khoảng thời gian cho danh sách /admin/nutrition.
+ *
+ * Mỗi cặp (filter, thứ tự) có một OrderStatisticTree riêng chỉ chứa các user thỏa filter, nên top-K,
+ * trang theo offset và trang theo keyset đều là O(log n + kích thước trang) thay vì lọc + sắp xếp
+ * toàn bộ user mỗi request. Khi thống kê của một user đổi, update() chỉ xóa/thêm user đó trong các cây.
+ *
+ * NutritionStats đưa vào không được sửa sau đó (khóa sắp xếp đọc trực tiếp từ object).
+ */
+public final class NutritionRanking {
+
+    /**
+     * Bộ lọc của danh sách (giữ nguyên ngưỡng của trang nutrition trước đây).
+     */
+    public enum Filter {
+        ALL("all"),
+        HIGH("high"),
+        LOW("low"),
+        REACHED("reached"),
+        NOT_REACHED("not-reached");
+
+        private final String key;
+
+        Filter(String key) {
+            this.key = key;
+        }
+
+        public String getKey() { return key; }
+
+        public boolean matches(NutritionStats s) {
+            switch (this) {
+                case HIGH: return s.getAverageCalories() > 2500f;
+                case LOW: return s.getAverageCalories() > 0f && s.getAverageCalories() < 1500f;
+                case REACHED: return s.getGoalAchievementRate() >= 80f;
+                case NOT_REACHED: return s.getGoalAchievementRate() < 80f && s.getDaysTracked() > 0;
+                default: return true;
+            }
+        }
+
+        /** Filter theo key; key không hợp lệ thì là ALL. */
+        public static Filter of(String key) {
+            for (Filter filter : values()) {
+                if (filter.key.equals(key)) return filter;
+            }
+            return ALL;
+        }
+    }
+
+    /**
+     * Thứ tự xếp hạng: calories trung bình hoặc tỉ lệ đạt mục tiêu, giảm dần; bằng nhau thì theo userId.
+     */
+    public enum Sort {
+        CALORIES("calories", "Calories TB"),
+        GOAL("goal", "Tỉ lệ đạt mục tiêu");
+
+        private final String key;
+        private final String label;
+        private final Comparator<NutritionStats> comparator;
+
+        Sort(String key, String label) {
+            this.key = key;
+            this.label = label;
+            this.comparator = (a, b) -> {
+                int c = Float.compare(value(b), value(a));
+                return c != 0 ? c : a.getUserId().compareTo(b.getUserId());
+            };
+        }
+
+        public String getKey() { return key; }
+
+        public String getLabel() { return label; }
+
+        public float value(NutritionStats s) {
+            return this == GOAL ? s.getGoalAchievementRate() : s.getAverageCalories();
+        }
+
+        public static Sort of(String key) {
+            for (Sort sort : values()) {
+                if (sort.key.equals(key)) return sort;
+            }
+            return CALORIES;
+        }
+    }
+
+    private final NutritionPeriod period;
+    private final long builtAt;
+    private final Map<String, NutritionStats> byUser = new HashMap<>();
+    private final Map<Filter, Map<Sort, OrderStatisticTree<NutritionStats>>> trees = new EnumMap<>(Filter.class);
+    private long updates;
+
+    public NutritionRanking(NutritionPeriod period, Collection<NutritionStats> stats) {
+        this.period = period;
+        this.builtAt = System.currentTimeMillis();
+        for (Filter filter : Filter.values()) {
+            Map<Sort, OrderStatisticTree<NutritionStats>> bySort = new EnumMap<>(Sort.class);
+            for (Sort sort : Sort.values()) {
+                bySort.put(sort, new OrderStatisticTree<>(sort.comparator));
+            }
+            trees.put(filter, bySort);
+        }
+        for (NutritionStats s : stats) {
+            if (s != null && s.getUserId() != null) insert(s);
+        }
+    }
+
+    public NutritionPeriod getPeriod() {
+        return period;
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /** Số lần cập nhật từng user kể từ khi dựng. */
+    public synchronized long getUpdates() {
+        return updates;
+    }
+
+    public synchronized int size() {
+        return byUser.size();
+    }
+
+    /** Số user thỏa {@code filter}. */
+    public synchronized int count(Filter filter) {
+        return trees.get(filter).get(Sort.CALORIES).size();
+    }
+
+    /**
+     * Thay thống kê của một user; user không còn ngày nào được track trong khoảng thì bị bỏ khỏi bảng.
+     */
+    public synchronized void update(NutritionStats stats) {
+        remove(stats.getUserId());
+        if (stats.getDaysTracked() > 0) insert(stats);
+        updates++;
+    }
+
+    public synchronized void remove(String userId) {
+        NutritionStats old = byUser.remove(userId);
+        if (old == null) return;
+        for (Filter filter : Filter.values()) {
+            if (!filter.matches(old)) continue;
+            for (OrderStatisticTree<NutritionStats> tree : trees.get(filter).values()) {
+                tree.remove(old);
+            }
+        }
+    }
+
+    private void insert(NutritionStats stats) {
+        byUser.put(stats.getUserId(), stats);
+        for (Filter filter : Filter.values()) {
+            if (!filter.matches(stats)) continue;
+            for (OrderStatisticTree<NutritionStats> tree : trees.get(filter).values()) {
+                tree.add(stats);
+            }
+        }
+    }
+
+    /** K user đứng đầu. */
+    public synchronized List<NutritionStats> top(Filter filter, Sort sort, int k) {
+        return trees.get(filter).get(sort).range(0, k);
+    }
+
+    /**
+     * Trang theo offset (hạng bắt đầu từ 0). nextCursor trỏ sau phần tử cuối trang để đọc tiếp bằng keyset.
+     */
+    public synchronized FirestorePage<NutritionStats> page(Filter filter, Sort sort, int offset, int size) {
+        OrderStatisticTree<NutritionStats> tree = trees.get(filter).get(sort);
+        return pageFrom(tree, sort, Math.max(0, offset), size);
+    }
+
+    /**
+     * Trang theo keyset: các user đứng sau cursor (nhận từ nextCursor của trang trước). Thứ hạng của cursor
+     * tính theo khóa (giá trị, userId) nên trang không bị lặp/sót khi bảng thay đổi giữa hai request.
+     */
+    public synchronized FirestorePage<NutritionStats> after(Filter filter, Sort sort, String cursor, int size) {
+        OrderStatisticTree<NutritionStats> tree = trees.get(filter).get(sort);
+        return pageFrom(tree, sort, startAfter(tree, sort, cursor), size);
+    }
+
+    /** Hạng (từ 0) của user đầu tiên sau cursor, để hiển thị "hạng a-b". */
+    public synchronized int rankAfter(Filter filter, Sort sort, String cursor) {
+        return startAfter(trees.get(filter).get(sort), sort, cursor);
+    }
+
+    private static int startAfter(OrderStatisticTree<NutritionStats> tree, Sort sort, String cursor) {
+        NutritionStats key = decodeCursor(sort, cursor);
+        if (key == null) return 0;
+        int from = tree.rank(key);
+        if (from < tree.size() && sort.comparator.compare(tree.get(from), key) == 0) from++;
+        return from;
+    }
+
+    private static FirestorePage<NutritionStats> pageFrom(OrderStatisticTree<NutritionStats> tree, Sort sort,
+                                                          int from, int size) {
+        List<NutritionStats> items = tree.range(from, size);
+        if (items.isEmpty() || from + items.size() >= tree.size()) return new FirestorePage<>(items, null);
+        NutritionStats last = items.get(items.size() - 1);
+        return new FirestorePage<>(items, FirestorePage.encodeCursor(sort.value(last) + ":" + last.getUserId()));
+    }
+
+    /** Cursor "giá trị:userId" thành NutritionStats chỉ có khóa sắp xếp. */
+    private static NutritionStats decodeCursor(Sort sort, String cursor) {
+        String raw = FirestorePage.decodeCursor(cursor);
+        if (raw == null) return null;
+        int colon = raw.indexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("Cursor không hợp lệ: " + cursor);
+        float value;
+        try {
+            value = Float.parseFloat(raw.substring(0, colon));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ: " + cursor);
+        }
+        NutritionStats key = new NutritionStats();
+        key.setUserId(raw.substring(colon + 1));
+        if (sort == Sort.GOAL) {
+            key.setGoalAchievementRate(value);
+        } else {
+            key.setAverageCalories(value);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,155 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Giữ NutritionRanking của các khoảng thời gian đang được xem trên /admin/nutrition.
+ *
+ * Bảng của một khoảng được dựng một lần từ getAllUsersNutritionStats (rollup nếu bật), sau đó:
+ * - Mỗi NutritionStatsChangedEvent của một user: tính lại thống kê của riêng user đó cho từng khoảng đang giữ
+ *   (2 document khi có rollup) rồi cập nhật vị trí trong bảng, trên một worker nền.
+ * - Sau ttl-seconds bảng được dựng lại toàn bộ (bắt thay đổi không qua rollup listener, vd. đổi calories target).
+ * Khóa cache là khoảng đã resolve (gồm ngày), nên "tuần này" tự sang bảng mới khi qua ngày.
+ */
+@Service
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class NutritionRankingService {
+
+    private final NutritionRollupService rollups;
+    private final boolean enabled;
+    private final long ttlSeconds;
+    private final Cache<String, NutritionRanking> rankings;
+    private final ExecutorService worker;
+    // User đang chờ cập nhật: nhiều event liên tiếp của cùng user chỉ tính lại một lần
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private volatile long builds = 0L;
+    private volatile long userUpdates = 0L;
+    private volatile String lastError;
+
+    public NutritionRankingService(NutritionRollupService rollups,
+                                   @Value("${nutrition.ranking.enabled:true}") boolean enabled,
+                                   @Value("${nutrition.ranking.ttl-seconds:300}") long ttlSeconds,
+                                   @Value("${nutrition.ranking.max-periods:16}") long maxPeriods) {
+        this.rollups = rollups;
+        this.enabled = enabled;
+        this.ttlSeconds = Math.max(1L, ttlSeconds);
+        this.rankings = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1L, maxPeriods))
+                .expireAfterWrite(this.ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "nutrition-ranking");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        worker.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Bảng xếp hạng của {@code period}; dựng từ thống kê của mọi user nếu chưa có trong cache.
+     */
+    public NutritionRanking ranking(NutritionPeriod period) throws Exception {
+        if (!enabled) {
+            return build(period);
+        }
+        try {
+            return rankings.get(period.toString(), () -> build(period));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private NutritionRanking build(NutritionPeriod period) {
+        long started = System.currentTimeMillis();
+        List<NutritionStats> stats = rollups.getAllUsersNutritionStats(period);
+        NutritionRanking ranking = new NutritionRanking(period, stats != null ? stats : new ArrayList<>());
+        builds++;
+        System.out.println("✅ Built nutrition ranking " + period + ": " + ranking.size() + " users in "
+                + (System.currentTimeMillis() - started) + " ms");
+        return ranking;
+    }
+
+    @EventListener
+    public void onStatsChanged(NutritionStatsChangedEvent event) {
+        if (!enabled) return;
+        if (event.isAllUsers()) {
+            rankings.invalidateAll();
+            return;
+        }
+        String userId = event.getUserId();
+        if (rankings.size() == 0 || !pending.add(userId)) return;
+        worker.execute(() -> {
+            pending.remove(userId);
+            refreshUser(userId);
+        });
+    }
+
+    private void refreshUser(String userId) {
+        for (NutritionRanking ranking : new ArrayList<>(rankings.asMap().values())) {
+            try {
+                ranking.update(rollups.getNutritionStats(userId, ranking.getPeriod()));
+                userUpdates++;
+            } catch (Exception e) {
+                // Không tính được thì bỏ bảng này, lần đọc sau dựng lại
+                lastError = e.getMessage();
+                rankings.invalidate(ranking.getPeriod().toString());
+                System.err.println("Error updating nutrition ranking for " + userId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        rankings.invalidateAll();
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("ttlSeconds", ttlSeconds);
+        List<Map<String, Object>> periods = new ArrayList<>();
+        for (NutritionRanking ranking : rankings.asMap().values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("period", ranking.getPeriod().toString());
+            item.put("users", ranking.size());
+            item.put("updates", ranking.getUpdates());
+            item.put("builtAt", ranking.getBuiltAt());
+            periods.add(item);
+        }
+        status.put("periods", periods);
+        status.put("builds", builds);
+        status.put("userUpdates", userUpdates);
+        status.put("pendingUsers", pending.size());
+        status.put("lastError", lastError);
+        return status;
+    }
+}
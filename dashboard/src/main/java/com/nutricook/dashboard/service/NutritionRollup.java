@@ -0,0 +1,458 @@
+package com.nutricook.dashboard.service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * Tổng hợp dinh dưỡng của một user, được cập nhật dần khi từng daily_log thay đổi.
+ *
+ * Lưu trên Firestore thành 2 document:
+ * - nutrition_rollups/{userId}: bản tóm tắt nhỏ (tổng cộng dồn, số ngày track, số ngày đạt mục tiêu,
+ *   7 log mới nhất, bucket theo tuần ISO và theo tháng) - trang nutrition chỉ cần đọc document này,
+ *   kể cả khi xem theo tuần/tháng/quý/năm.
+ * - nutrition_rollups/{userId}/ledger/days: giá trị đã cộng vào tổng của từng ngày, để khi một ngày
+ *   thay đổi thì trừ giá trị cũ và cộng giá trị mới mà không phải đọc lại toàn bộ daily_logs.
+ *
+ * Bucket tuần/tháng được cộng/trừ cùng lúc với tổng nên luôn khớp với ledger; khoảng tùy chọn không
+ * khớp ranh giới bucket thì tính từ ledger (độ phân giải ngày).
+ *
+ * Quy tắc tính giống NutritionAccumulator: chỉ ngày có calories > 0 được tính, đạt mục tiêu khi
+ * calories >= 95% target.
+ */
+public class NutritionRollup {
+
+    public static final String COLLECTION = "nutrition_rollups";
+    public static final String LEDGER_COLLECTION = "ledger";
+    public static final String LEDGER_DOC = "days";
+
+    private static final int RECENT_DAYS = 7;
+
+    private float target;
+    private final TreeMap<String, DailyLog> days = new TreeMap<>();
+    private final TreeMap<String, PeriodTotals> weeks = new TreeMap<>();
+    private final TreeMap<String, PeriodTotals> months = new TreeMap<>();
+
+    private double totalCalories, totalProtein, totalFat, totalCarb;
+    private int daysTracked;
+    private int daysReachedGoal;
+
+    public NutritionRollup(float target) {
+        this.target = target;
+    }
+
+    /**
+     * Ghi giá trị mới nhất của một ngày; false nếu không có gì thay đổi.
+     */
+    public boolean put(DailyLog log) {
+        if (log == null || log.getDateId() == null) return false;
+        DailyLog previous = days.get(log.getDateId());
+        if (previous != null && sameValues(previous, log)) return false;
+        if (previous != null) contribute(previous, -1);
+        days.put(log.getDateId(), log);
+        contribute(log, 1);
+        return true;
+    }
+
+    /**
+     * Bỏ một ngày (daily_log bị xóa); false nếu ngày đó chưa có trong rollup.
+     */
+    public boolean remove(String dateId) {
+        DailyLog previous = dateId != null ? days.remove(dateId) : null;
+        if (previous == null) return false;
+        contribute(previous, -1);
+        return true;
+    }
+
+    /**
+     * Đổi calories target (user sửa mục tiêu): đếm lại số ngày đạt từ ledger.
+     */
+    public boolean retarget(float newTarget) {
+        if (Float.compare(newTarget, target) == 0) return false;
+        target = newTarget;
+        daysReachedGoal = 0;
+        for (DailyLog log : days.values()) {
+            if (log.getCalories() > 0 && reached(log)) daysReachedGoal++;
+        }
+        rebuildBuckets();
+        return true;
+    }
+
+    private void rebuildBuckets() {
+        weeks.clear();
+        months.clear();
+        for (DailyLog log : days.values()) {
+            contributeToBuckets(log, 1);
+        }
+    }
+
+    private void contribute(DailyLog log, int sign) {
+        if (log.getCalories() <= 0) return;
+        totalCalories += sign * (double) log.getCalories();
+        totalProtein += sign * (double) log.getProtein();
+        totalFat += sign * (double) log.getFat();
+        totalCarb += sign * (double) log.getCarb();
+        daysTracked += sign;
+        if (reached(log)) daysReachedGoal += sign;
+        contributeToBuckets(log, sign);
+    }
+
+    private void contributeToBuckets(DailyLog log, int sign) {
+        if (log.getCalories() <= 0) return;
+        LocalDate date = parseDate(log.getDateId());
+        if (date == null) return; // dateId sai định dạng không thuộc khoảng thời gian nào
+        boolean reachedGoal = reached(log);
+        addToBucket(weeks, NutritionPeriod.Resolution.WEEK.key(date), log, reachedGoal, sign);
+        addToBucket(months, NutritionPeriod.Resolution.MONTH.key(date), log, reachedGoal, sign);
+    }
+
+    private static void addToBucket(TreeMap<String, PeriodTotals> buckets, String key, DailyLog log,
+                                    boolean reachedGoal, int sign) {
+        PeriodTotals bucket = buckets.computeIfAbsent(key, k -> new PeriodTotals());
+        bucket.add(log, reachedGoal, sign);
+        if (bucket.days == 0) buckets.remove(key);
+    }
+
+    private static LocalDate parseDate(Object dateId) {
+        if (!(dateId instanceof String)) return null;
+        try {
+            return LocalDate.parse((String) dateId);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private boolean reached(DailyLog log) {
+        // Cho phép sai số 5%
+        return log.getCalories() >= target * 0.95f;
+    }
+
+    /** Cùng tập ngày và cùng giá trị từng ngày. */
+    boolean sameDays(NutritionRollup other) {
+        if (days.size() != other.days.size()) return false;
+        for (Map.Entry<String, DailyLog> entry : days.entrySet()) {
+            DailyLog theirs = other.days.get(entry.getKey());
+            if (theirs == null || !sameValues(entry.getValue(), theirs)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Bucket tuần/tháng trong summary đã lưu khớp với bucket của rollup này (sai số {@code tolerance}
+     * trên tổng calories/protein/fat/carb, số ngày phải khớp tuyệt đối).
+     */
+    boolean bucketsMatch(Map<String, Object> summary, double tolerance) {
+        return bucketsMatch(weeks, summary.get("weeks"), tolerance) && bucketsMatch(months, summary.get("months"), tolerance);
+    }
+
+    private static boolean bucketsMatch(TreeMap<String, PeriodTotals> expected, Object stored, double tolerance) {
+        if (!(stored instanceof Map)) return false;
+        Map<?, ?> storedBuckets = (Map<?, ?>) stored;
+        if (storedBuckets.size() != expected.size()) return false;
+        for (Map.Entry<String, PeriodTotals> entry : expected.entrySet()) {
+            Object values = storedBuckets.get(entry.getKey());
+            if (!(values instanceof Map)) return false;
+            PeriodTotals theirs = PeriodTotals.fromMap((Map<?, ?>) values);
+            PeriodTotals ours = entry.getValue();
+            if (theirs.days != ours.days || theirs.reached != ours.reached) return false;
+            if (Math.abs(theirs.calories - ours.calories) > tolerance
+                    || Math.abs(theirs.protein - ours.protein) > tolerance
+                    || Math.abs(theirs.fat - ours.fat) > tolerance
+                    || Math.abs(theirs.carb - ours.carb) > tolerance) return false;
+        }
+        return true;
+    }
+
+    private static boolean sameValues(DailyLog a, DailyLog b) {
+        return Objects.equals(a.getCalories(), b.getCalories())
+                && Objects.equals(a.getProtein(), b.getProtein())
+                && Objects.equals(a.getFat(), b.getFat())
+                && Objects.equals(a.getCarb(), b.getCarb());
+    }
+
+    public float getTarget() { return target; }
+    public int getDaysTracked() { return daysTracked; }
+    public int getDaysReachedGoal() { return daysReachedGoal; }
+    public int getLogCount() { return days.size(); }
+    public double getTotalCalories() { return totalCalories; }
+    public double getTotalProtein() { return totalProtein; }
+    public double getTotalFat() { return totalFat; }
+    public double getTotalCarb() { return totalCarb; }
+
+    /** 7 log mới nhất theo dateId, thứ tự cũ -> mới. */
+    public List<DailyLog> recentLogs() {
+        List<DailyLog> recent = new ArrayList<>(RECENT_DAYS);
+        for (DailyLog log : days.descendingMap().values()) {
+            if (recent.size() == RECENT_DAYS) break;
+            recent.add(0, log);
+        }
+        return recent;
+    }
+
+    // ==========================================================
+    // Chuyển đổi với document Firestore
+    // ==========================================================
+
+    Map<String, Object> toSummary(String userId) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", userId);
+        data.put("caloriesTarget", (double) target);
+        data.put("totalCalories", totalCalories);
+        data.put("totalProtein", totalProtein);
+        data.put("totalFat", totalFat);
+        data.put("totalCarb", totalCarb);
+        data.put("daysTracked", daysTracked);
+        data.put("daysReachedGoal", daysReachedGoal);
+        data.put("logCount", days.size());
+        data.put("firstDateId", days.isEmpty() ? null : days.firstKey());
+        data.put("lastDateId", days.isEmpty() ? null : days.lastKey());
+        data.put("weeks", bucketsToMap(weeks));
+        data.put("months", bucketsToMap(months));
+        List<Map<String, Object>> recent = new ArrayList<>();
+        for (DailyLog log : recentLogs()) {
+            recent.add(logValues(log, true));
+        }
+        data.put("recentLogs", recent);
+        data.put("updatedAt", Timestamp.now());
+        return data;
+    }
+
+    Map<String, Object> toLedger() {
+        Map<String, Object> entries = new LinkedHashMap<>();
+        for (DailyLog log : days.values()) {
+            entries.put(log.getDateId(), logValues(log, false));
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("days", entries);
+        return data;
+    }
+
+    private static Map<String, Object> bucketsToMap(TreeMap<String, PeriodTotals> buckets) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (Map.Entry<String, PeriodTotals> entry : buckets.entrySet()) {
+            out.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return out;
+    }
+
+    private static Map<String, Object> logValues(DailyLog log, boolean withDateId) {
+        Map<String, Object> values = new HashMap<>();
+        if (withDateId) values.put("dateId", log.getDateId());
+        values.put("calories", log.getCalories());
+        values.put("protein", log.getProtein());
+        values.put("fat", log.getFat());
+        values.put("carb", log.getCarb());
+        if (log.getUpdatedAt() != null) values.put("updatedAt", log.getUpdatedAt());
+        return values;
+    }
+
+    /**
+     * Dựng lại rollup đã lưu: tổng và số đếm lấy từ summary, từng ngày lấy từ ledger.
+     */
+    static NutritionRollup fromDocuments(DocumentSnapshot summary, DocumentSnapshot ledger) {
+        NutritionRollup rollup = new NutritionRollup(floatOf(summary.get("caloriesTarget")));
+        rollup.totalCalories = doubleOf(summary.get("totalCalories"));
+        rollup.totalProtein = doubleOf(summary.get("totalProtein"));
+        rollup.totalFat = doubleOf(summary.get("totalFat"));
+        rollup.totalCarb = doubleOf(summary.get("totalCarb"));
+        rollup.daysTracked = (int) doubleOf(summary.get("daysTracked"));
+        rollup.daysReachedGoal = (int) doubleOf(summary.get("daysReachedGoal"));
+        Object entries = ledger.get("days");
+        if (entries instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) entries).entrySet()) {
+                if (!(entry.getValue() instanceof Map)) continue;
+                @SuppressWarnings("unchecked")
+                Map<String, Object> values = (Map<String, Object>) entry.getValue();
+                DailyLog log = DocumentCodecs.DAILY_LOG.decode(String.valueOf(entry.getKey()), values);
+                rollup.days.put(log.getDateId(), log);
+            }
+        }
+        // Bucket dựng lại từ ledger (summary cũ có thể chưa có bucket)
+        rollup.rebuildBuckets();
+        return rollup;
+    }
+
+    /**
+     * Ghi thống kê từ summary đã lưu (chỉ cần 1 document, không cần ledger).
+     */
+    static void applySummary(Map<String, Object> summary, NutritionStats stats) {
+        applySummaryHeader(summary, stats);
+        int tracked = (int) doubleOf(summary.get("daysTracked"));
+        int reachedDays = (int) doubleOf(summary.get("daysReachedGoal"));
+        if (tracked > 0) {
+            stats.setAverageCalories((float) (doubleOf(summary.get("totalCalories")) / tracked));
+            stats.setAverageProtein((float) (doubleOf(summary.get("totalProtein")) / tracked));
+            stats.setAverageFat((float) (doubleOf(summary.get("totalFat")) / tracked));
+            stats.setAverageCarb((float) (doubleOf(summary.get("totalCarb")) / tracked));
+            stats.setDaysTracked(tracked);
+            stats.setDaysReachedGoal(reachedDays);
+            stats.setGoalAchievementRate((reachedDays * 100f) / tracked);
+        }
+    }
+
+    /** Target và 7 log mới nhất (không phụ thuộc khoảng thời gian). */
+    private static void applySummaryHeader(Map<String, Object> summary, NutritionStats stats) {
+        stats.setCaloriesTarget(floatOf(summary.get("caloriesTarget")));
+        Object recent = summary.get("recentLogs");
+        if (recent instanceof List && !((List<?>) recent).isEmpty()) {
+            List<DailyLog> logs = new ArrayList<>();
+            for (Object item : (List<?>) recent) {
+                if (!(item instanceof Map)) continue;
+                @SuppressWarnings("unchecked")
+                Map<String, Object> values = (Map<String, Object>) item;
+                logs.add(DocumentCodecs.DAILY_LOG.decode(null, values));
+            }
+            stats.setWeeklyLogs(logs);
+        }
+    }
+
+    /**
+     * Thống kê trong {@code period} chỉ từ bucket tuần/tháng của summary. Trả về false nếu khoảng không ghép
+     * được từ bucket (cần độ phân giải ngày, tức là cần ledger) hoặc summary chưa có bucket.
+     *
+     * Bucket chỉ được dùng khi phần nằm ngoài khoảng không có log: trước firstDateId hoặc sau lastDateId.
+     * Nhờ vậy tuần/tháng/quý/năm hiện tại luôn ghép được (phần sau hôm nay chưa có log).
+     */
+    static boolean applySummaryPeriod(Map<String, Object> summary, NutritionPeriod period, NutritionStats stats) {
+        if (period.isAll()) {
+            applySummary(summary, stats);
+            return true;
+        }
+        if (!(summary.get("weeks") instanceof Map) || !(summary.get("months") instanceof Map)) return false;
+        LocalDate first = parseDate(summary.get("firstDateId"));
+        LocalDate last = parseDate(summary.get("lastDateId"));
+        applySummaryHeader(summary, stats);
+        if (first == null || last == null) return true; // chưa có log
+
+        boolean openStart = !period.getFrom().isAfter(first);
+        boolean openEnd = !period.getTo().isBefore(last);
+        LocalDate start = openStart ? first : period.getFrom();
+        LocalDate end = openEnd ? last : period.getTo();
+        PeriodTotals total = new PeriodTotals();
+        LocalDate cursor = start;
+        while (!cursor.isAfter(end)) {
+            LocalDate next = null;
+            for (NutritionPeriod.Resolution resolution : BUCKET_RESOLUTIONS) {
+                LocalDate bucketStart = resolution.start(cursor);
+                LocalDate bucketEnd = resolution.end(cursor);
+                boolean headCovered = bucketStart.equals(cursor) || (cursor.equals(start) && openStart);
+                boolean tailCovered = !bucketEnd.isAfter(end) || openEnd;
+                if (headCovered && tailCovered) {
+                    Object buckets = summary.get(resolution == NutritionPeriod.Resolution.MONTH ? "months" : "weeks");
+                    Object bucket = ((Map<?, ?>) buckets).get(resolution.key(cursor));
+                    if (bucket instanceof Map) total.add(PeriodTotals.fromMap((Map<?, ?>) bucket));
+                    next = bucketEnd.plusDays(1);
+                    break;
+                }
+            }
+            if (next == null) return false;
+            cursor = next;
+        }
+        total.applyTo(stats);
+        return true;
+    }
+
+    private static final NutritionPeriod.Resolution[] BUCKET_RESOLUTIONS = {
+            NutritionPeriod.Resolution.MONTH, NutritionPeriod.Resolution.WEEK};
+
+    public void applyTo(NutritionStats stats) {
+        Map<String, Object> summary = toSummary(null);
+        applySummary(summary, stats);
+    }
+
+    /**
+     * Thống kê trong {@code period} từ từng ngày của ledger (đúng với mọi khoảng).
+     */
+    public void applyTo(NutritionStats stats, NutritionPeriod period) {
+        if (period.isAll()) {
+            applyTo(stats);
+            return;
+        }
+        stats.setCaloriesTarget(target);
+        if (!days.isEmpty()) stats.setWeeklyLogs(recentLogs());
+        PeriodTotals total = new PeriodTotals();
+        for (DailyLog log : days.subMap(period.getFrom().toString(), true, period.getTo().toString(), true).values()) {
+            total.add(log, log.getCalories() > 0 && reached(log), 1);
+        }
+        total.applyTo(stats);
+    }
+
+    /**
+     * Tổng của một bucket (tuần/tháng) hoặc một khoảng thời gian; chỉ ngày có calories > 0 được tính.
+     */
+    static final class PeriodTotals {
+        double calories, protein, fat, carb;
+        int days, reached;
+
+        void add(DailyLog log, boolean reachedGoal, int sign) {
+            if (log.getCalories() <= 0) return;
+            calories += sign * (double) log.getCalories();
+            protein += sign * (double) log.getProtein();
+            fat += sign * (double) log.getFat();
+            carb += sign * (double) log.getCarb();
+            days += sign;
+            if (reachedGoal) reached += sign;
+        }
+
+        void add(PeriodTotals other) {
+            calories += other.calories;
+            protein += other.protein;
+            fat += other.fat;
+            carb += other.carb;
+            days += other.days;
+            reached += other.reached;
+        }
+
+        void applyTo(NutritionStats stats) {
+            if (days <= 0) return;
+            stats.setAverageCalories((float) (calories / days));
+            stats.setAverageProtein((float) (protein / days));
+            stats.setAverageFat((float) (fat / days));
+            stats.setAverageCarb((float) (carb / days));
+            stats.setDaysTracked(days);
+            stats.setDaysReachedGoal(reached);
+            stats.setGoalAchievementRate((reached * 100f) / days);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> values = new HashMap<>();
+            values.put("calories", calories);
+            values.put("protein", protein);
+            values.put("fat", fat);
+            values.put("carb", carb);
+            values.put("days", days);
+            values.put("reached", reached);
+            return values;
+        }
+
+        static PeriodTotals fromMap(Map<?, ?> values) {
+            PeriodTotals totals = new PeriodTotals();
+            totals.calories = doubleOf(values.get("calories"));
+            totals.protein = doubleOf(values.get("protein"));
+            totals.fat = doubleOf(values.get("fat"));
+            totals.carb = doubleOf(values.get("carb"));
+            totals.days = (int) doubleOf(values.get("days"));
+            totals.reached = (int) doubleOf(values.get("reached"));
+            return totals;
+        }
+    }
+
+    private static double doubleOf(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0d;
+    }
+
+    private static float floatOf(Object value) {
+        return value instanceof Number ? ((Number) value).floatValue() : FirestoreService.DEFAULT_CALORIES_TARGET;
+    }
+}
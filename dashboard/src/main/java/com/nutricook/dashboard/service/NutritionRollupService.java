@@ -0,0 +1,686 @@
+package com.nutricook.dashboard.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Duy trì NutritionRollup cho từng user và phục vụ thống kê nutrition từ rollup.
+ *
+ * Nguồn cập nhật:
+ * - Listener collectionGroup("daily_logs") lọc theo dateId trong N ngày gần nhất (app chỉ ghi vào các ngày gần đây).
+ *   Mỗi thay đổi được áp dụng bằng transaction trên summary + ledger của user: trừ giá trị cũ, cộng giá trị mới.
+ * - Đối soát định kỳ: tính lại toàn bộ từ daily_logs gốc và sửa các rollup lệch (bắt được cả log bị sửa/xóa
+ *   ngoài cửa sổ listener hoặc trong lúc dashboard không chạy).
+ *
+ * Mọi thao tác ghi chạy trên một thread duy nhất nên không ghi chồng lên nhau. Sau khi rollup của user đổi,
+ * NutritionStatsChangedEvent được phát để bảng xếp hạng cập nhật riêng user đó.
+ * Khi nutrition.rollups.enabled=false thì các method đọc dùng cách tính trực tiếp của FirestoreService
+ * (rebuild/check vẫn gọi được để chuẩn bị dữ liệu trước khi bật).
+ */
+@Service
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class NutritionRollupService {
+
+    private static final long RESTART_DELAY_SECONDS = 30;
+    private static final int MAX_BATCH_WRITES = 500;
+    // Tổng được cộng/trừ dần bằng double nên cho phép sai số nhỏ khi đối soát
+    private static final double SUM_TOLERANCE = 0.01;
+    private static final int MAX_REPORTED_USERS = 50;
+
+    private final Firestore firestore;
+    private final FirestoreService firestoreService;
+    private final ShardedCounterService counters;
+    private final ApplicationEventPublisher events;
+    private final boolean enabled;
+    private final int listenerDays;
+    private final long reconcileIntervalHours;
+    private final ScheduledExecutorService worker;
+
+    private volatile ListenerRegistration registration;
+    private volatile String listenerFromDateId;
+    private volatile long appliedChanges = 0L;
+    private volatile long lastReconcileAt = 0L;
+    private volatile Map<String, Object> lastReport;
+    private volatile String lastError;
+
+    public NutritionRollupService(Firestore firestore,
+                                  FirestoreService firestoreService,
+                                  ShardedCounterService counters,
+                                  ApplicationEventPublisher events,
+                                  @Value("${nutrition.rollups.enabled:false}") boolean enabled,
+                                  @Value("${nutrition.rollups.listener-days:7}") int listenerDays,
+                                  @Value("${nutrition.rollups.reconcile-interval-hours:24}") long reconcileIntervalHours) {
+        this.firestore = firestore;
+        this.firestoreService = firestoreService;
+        this.counters = counters;
+        this.events = events;
+        this.enabled = enabled;
+        this.listenerDays = listenerDays;
+        this.reconcileIntervalHours = reconcileIntervalHours;
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nutrition-rollups");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled || firestore == null) return;
+        System.out.println("🔄 Starting nutrition rollups (listener " + listenerDays + " days, reconcile every "
+                + reconcileIntervalHours + "h)");
+        worker.execute(this::startListener);
+        if (reconcileIntervalHours > 0) {
+            worker.scheduleWithFixedDelay(this::scheduledReconcile,
+                    reconcileIntervalHours, reconcileIntervalHours, TimeUnit.HOURS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        stopListener();
+        worker.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==========================================================
+    // ĐỌC THỐNG KÊ
+    // ==========================================================
+
+    /**
+     * Thống kê nutrition của một user: đọc user + summary trong một lần getAll (2 document).
+     * Rollup chưa có, hoặc user đã đổi calories target, thì được tính lại ngay rồi trả về.
+     */
+    public NutritionStats getNutritionStats(String userId) throws Exception {
+        if (!enabled) {
+            return firestoreService.calculateNutritionStats(userId);
+        }
+        NutritionStats stats = new NutritionStats();
+        stats.setUserId(userId);
+
+        List<DocumentSnapshot> docs = FirestoreReadScope.getAll(firestore,
+                firestore.collection("users").document(userId), summaryRef(userId)).get();
+        Map<String, Object> userData = docs.get(0).exists() ? docs.get(0).getData() : null;
+        FirestoreService.applyUserProfile(stats, userData);
+        float target = FirestoreService.caloriesTargetOf(userData);
+
+        DocumentSnapshot summary = docs.get(1);
+        if (summary.exists() && sameTarget(summary.get("caloriesTarget"), target)) {
+            NutritionRollup.applySummary(summary.getData(), stats);
+        } else {
+            NutritionRollup rollup = onWorker(() -> summary.exists()
+                    ? retargetNow(userId, target)
+                    : rebuildUserNow(userId, target));
+            rollup.applyTo(stats);
+        }
+        return stats;
+    }
+
+    /**
+     * NutritionStats của các user có ít nhất 1 log: 1 query users (projection) + 1 query nutrition_rollups.
+     */
+    public List<NutritionStats> getAllUsersNutritionStats() {
+        return getAllUsersNutritionStats(NutritionPeriod.ALL);
+    }
+
+    /**
+     * Thống kê của một user trong {@code period}. Tuần/tháng/quý/năm hiện tại lấy từ bucket trong summary
+     * (vẫn 2 document); khoảng tùy chọn không khớp ranh giới bucket thì đọc thêm ledger của user.
+     */
+    public NutritionStats getNutritionStats(String userId, NutritionPeriod period) throws Exception {
+        if (period.isAll()) {
+            return getNutritionStats(userId);
+        }
+        if (!enabled) {
+            return firestoreService.calculateNutritionStats(userId, period);
+        }
+        NutritionStats stats = new NutritionStats();
+        stats.setUserId(userId);
+
+        List<DocumentSnapshot> docs = FirestoreReadScope.getAll(firestore,
+                firestore.collection("users").document(userId), summaryRef(userId)).get();
+        Map<String, Object> userData = docs.get(0).exists() ? docs.get(0).getData() : null;
+        FirestoreService.applyUserProfile(stats, userData);
+        float target = FirestoreService.caloriesTargetOf(userData);
+
+        DocumentSnapshot summary = docs.get(1);
+        if (summary.exists() && sameTarget(summary.get("caloriesTarget"), target)) {
+            if (NutritionRollup.applySummaryPeriod(summary.getData(), period, stats)) return stats;
+            DocumentSnapshot ledger = FirestoreReadScope.get(ledgerRef(userId)).get();
+            if (ledger.exists()) {
+                NutritionRollup.fromDocuments(summary, ledger).applyTo(stats, period);
+                return stats;
+            }
+        }
+        NutritionRollup rollup = onWorker(() -> summary.exists()
+                ? retargetNow(userId, target)
+                : rebuildUserNow(userId, target));
+        rollup.applyTo(stats, period);
+        return stats;
+    }
+
+    /**
+     * NutritionStats trong {@code period} của các user có ít nhất 1 ngày được track trong khoảng đó.
+     * Vẫn 1 query users + 1 query nutrition_rollups; ledger chỉ được đọc (một lần getAll) cho các user
+     * mà khoảng tùy chọn không ghép được từ bucket.
+     */
+    public List<NutritionStats> getAllUsersNutritionStats(NutritionPeriod period) {
+        if (!enabled) {
+            return firestoreService.getAllUsersNutritionStats(period);
+        }
+        List<NutritionStats> statsList = new ArrayList<>();
+        try {
+            Map<String, DocumentSnapshot> summaries = new HashMap<>();
+            for (DocumentSnapshot doc : FirestoreReadScope.get(firestore.collection(NutritionRollup.COLLECTION)).get().getDocuments()) {
+                summaries.put(doc.getId(), doc);
+            }
+            QuerySnapshot usersSnap = FirestoreReadScope.get(firestore.collection("users")
+                    .select("fullName", "username", "email", "nutrition")).get();
+            List<String> missing = new ArrayList<>();
+            collectStats(usersSnap.getDocuments(), summaries, period, missing, statsList::add);
+            if (!missing.isEmpty()) {
+                // User mới chưa có rollup: tạo nền, lần sau sẽ có trong danh sách
+                rebuildInBackground(missing);
+            }
+        } catch (Exception e) {
+            FirestoreReadScope.rethrowIfRejected(e);
+            System.err.println("⚠️ Reading nutrition rollups failed, falling back to raw logs: " + e.getMessage());
+            return firestoreService.getAllUsersNutritionStats(period);
+        }
+        return statsList;
+    }
+
+    /**
+     * Như getAllUsersNutritionStats(period) nhưng đọc users theo trang {@code pageSize} (summary của trang đọc bằng
+     * một getAll) và đưa từng NutritionStats cho {@code consumer} ngay khi tính xong, nên bộ nhớ chỉ giữ một trang
+     * dù có bao nhiêu user (dùng cho export). Khi rollup tắt thì đọc log theo từng trang user
+     * (FirestoreService.forEachUserNutritionStats), cũng chỉ giữ một trang.
+     */
+    public void forEachNutritionStats(NutritionPeriod period, int pageSize, Consumer<NutritionStats> consumer)
+            throws Exception {
+        if (!enabled) {
+            firestoreService.forEachUserNutritionStats(period, Math.max(1, Math.min(pageSize, MAX_BATCH_WRITES)), consumer);
+            return;
+        }
+        int limit = Math.max(1, Math.min(pageSize, MAX_BATCH_WRITES));
+        Query users = firestore.collection("users")
+                .select("fullName", "username", "email", "nutrition")
+                .orderBy(FieldPath.documentId())
+                .limit(limit);
+        List<String> missing = new ArrayList<>();
+        while (true) {
+            List<QueryDocumentSnapshot> page = FirestoreReadScope.getPage(users).get().getDocuments();
+            if (page.isEmpty()) break;
+            DocumentReference[] refs = new DocumentReference[page.size()];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = summaryRef(page.get(i).getId());
+            }
+            Map<String, DocumentSnapshot> summaries = new HashMap<>();
+            for (DocumentSnapshot summary : FirestoreReadScope.getAll(firestore, refs).get()) {
+                if (summary.exists()) summaries.put(summary.getId(), summary);
+            }
+            collectStats(page, summaries, period, missing, consumer);
+            if (page.size() < limit) break;
+            users = users.startAfter(page.get(page.size() - 1));
+        }
+        if (!missing.isEmpty()) {
+            rebuildInBackground(missing);
+        }
+    }
+
+    /**
+     * NutritionStats trong {@code period} của các user trong {@code userDocs} có dữ liệu, đưa cho {@code out}.
+     * User chưa có summary được thêm vào {@code missing}; ledger được đọc (một getAll) cho các user mà khoảng
+     * không ghép được từ bucket.
+     */
+    private void collectStats(List<? extends DocumentSnapshot> userDocs, Map<String, DocumentSnapshot> summaries,
+                              NutritionPeriod period, List<String> missing, Consumer<NutritionStats> out)
+            throws Exception {
+        List<NutritionStats> needLedger = new ArrayList<>();
+        for (DocumentSnapshot userDoc : userDocs) {
+            String userId = userDoc.getId();
+            Map<String, Object> userData = userDoc.getData();
+            float target = FirestoreService.caloriesTargetOf(userData);
+            DocumentSnapshot summary = summaries.get(userId);
+            if (summary == null) {
+                missing.add(userId);
+                continue;
+            }
+            NutritionStats stats = new NutritionStats();
+            stats.setUserId(userId);
+            FirestoreService.applyUserProfile(stats, userData);
+            boolean hasData;
+            if (!sameTarget(summary.get("caloriesTarget"), target)) {
+                NutritionRollup rollup = onWorker(() -> retargetNow(userId, target));
+                rollup.applyTo(stats, period);
+                hasData = period.isAll() ? rollup.getLogCount() > 0 : stats.getDaysTracked() > 0;
+            } else if (period.isAll()) {
+                // Toàn bộ lịch sử: giữ cả user chỉ có log 0 calories như trước
+                Object logCount = summary.get("logCount");
+                hasData = logCount instanceof Number && ((Number) logCount).intValue() > 0;
+                if (hasData) NutritionRollup.applySummary(summary.getData(), stats);
+            } else if (NutritionRollup.applySummaryPeriod(summary.getData(), period, stats)) {
+                hasData = stats.getDaysTracked() > 0;
+            } else {
+                needLedger.add(stats);
+                continue;
+            }
+            if (hasData) out.accept(stats);
+        }
+        if (needLedger.isEmpty()) return;
+        DocumentReference[] refs = new DocumentReference[needLedger.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = ledgerRef(needLedger.get(i).getUserId());
+        }
+        List<DocumentSnapshot> ledgers = FirestoreReadScope.getAll(firestore, refs).get();
+        for (int i = 0; i < refs.length; i++) {
+            NutritionStats stats = needLedger.get(i);
+            DocumentSnapshot ledger = ledgers.get(i);
+            if (!ledger.exists()) continue;
+            NutritionRollup.fromDocuments(summaries.get(stats.getUserId()), ledger).applyTo(stats, period);
+            if (stats.getDaysTracked() > 0) out.accept(stats);
+        }
+    }
+
+    private void rebuildInBackground(List<String> userIds) {
+        System.out.println("⚠️ " + userIds.size() + " users have no nutrition rollup yet, rebuilding in background");
+        worker.execute(() -> {
+            for (String userId : userIds) {
+                try {
+                    rebuildUserNow(userId, null);
+                    events.publishEvent(new NutritionStatsChangedEvent(userId));
+                } catch (Exception e) {
+                    System.err.println("Error rebuilding nutrition rollup for " + userId + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private static boolean sameTarget(Object stored, float target) {
+        return stored instanceof Number && Float.compare(((Number) stored).floatValue(), target) == 0;
+    }
+
+    // ==========================================================
+    // REBUILD / ĐỐI SOÁT
+    // ==========================================================
+
+    /**
+     * Tính lại rollup của một user từ toàn bộ daily_logs.
+     */
+    public NutritionRollup rebuildUser(String userId) throws Exception {
+        return onWorker(() -> rebuildUserNow(userId, null));
+    }
+
+    /**
+     * Tính lại rollup của mọi user từ daily_logs gốc (1 stream collectionGroup) và ghi đè toàn bộ;
+     * xóa rollup của user không còn tồn tại.
+     */
+    public Map<String, Object> rebuildAll() throws Exception {
+        return onWorker(() -> {
+            long started = System.currentTimeMillis();
+            Map<String, NutritionRollup> expected = computeFromLogs();
+            List<String> orphaned = new ArrayList<>();
+            for (DocumentSnapshot doc : FirestoreReadScope.get(firestore.collection(NutritionRollup.COLLECTION).select(FieldPath.documentId())).get().getDocuments()) {
+                if (!expected.containsKey(doc.getId())) orphaned.add(doc.getId());
+            }
+            writeRollups(expected, expected.keySet(), orphaned);
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("type", "rebuild");
+            report.put("users", expected.size());
+            report.put("written", expected.size());
+            report.put("deleted", orphaned.size());
+            report.put("tookMs", System.currentTimeMillis() - started);
+            lastReport = report;
+            System.out.println("✅ Rebuilt nutrition rollups: " + report);
+            return report;
+        });
+    }
+
+    /**
+     * So rollup đã lưu (summary + ledger) với kết quả tính lại từ daily_logs gốc.
+     * repair=true thì ghi lại các rollup thiếu/lệch và xóa rollup mồ côi.
+     */
+    public Map<String, Object> checkConsistency(boolean repair) throws Exception {
+        return onWorker(() -> checkConsistencyNow(repair));
+    }
+
+    private Map<String, Object> checkConsistencyNow(boolean repair) throws Exception {
+        long started = System.currentTimeMillis();
+        Map<String, NutritionRollup> expected = computeFromLogs();
+
+        Map<String, DocumentSnapshot> summaries = new HashMap<>();
+        for (DocumentSnapshot doc : FirestoreReadScope.get(firestore.collection(NutritionRollup.COLLECTION)).get().getDocuments()) {
+            summaries.put(doc.getId(), doc);
+        }
+        Map<String, DocumentSnapshot> ledgers = new HashMap<>();
+        for (DocumentSnapshot doc : FirestoreReadScope.get(firestore.collectionGroup(NutritionRollup.LEDGER_COLLECTION)).get().getDocuments()) {
+            DocumentReference owner = doc.getReference().getParent().getParent();
+            if (owner != null && NutritionRollup.COLLECTION.equals(owner.getParent().getId())) {
+                ledgers.put(owner.getId(), doc);
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        List<Map<String, Object>> mismatched = new ArrayList<>();
+        List<String> toWrite = new ArrayList<>();
+        for (Map.Entry<String, NutritionRollup> entry : expected.entrySet()) {
+            String userId = entry.getKey();
+            NutritionRollup rollup = entry.getValue();
+            DocumentSnapshot summary = summaries.get(userId);
+            DocumentSnapshot ledger = ledgers.get(userId);
+            if (summary == null || ledger == null) {
+                // User chưa có log thì thiếu rollup cũng không sai
+                if (rollup.getLogCount() > 0) {
+                    missing.add(userId);
+                    toWrite.add(userId);
+                }
+                continue;
+            }
+            List<String> fields = differences(rollup, summary, NutritionRollup.fromDocuments(summary, ledger));
+            if (!fields.isEmpty()) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("userId", userId);
+                item.put("fields", fields);
+                mismatched.add(item);
+                toWrite.add(userId);
+            }
+        }
+        List<String> orphaned = new ArrayList<>();
+        for (String userId : summaries.keySet()) {
+            if (!expected.containsKey(userId)) orphaned.add(userId);
+        }
+
+        if (repair && (!toWrite.isEmpty() || !orphaned.isEmpty())) {
+            writeRollups(expected, toWrite, orphaned);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("type", repair ? "reconcile" : "check");
+        report.put("users", expected.size());
+        report.put("consistent", expected.size() - missing.size() - mismatched.size());
+        report.put("missingCount", missing.size());
+        report.put("missing", new ArrayList<>(missing.subList(0, Math.min(missing.size(), MAX_REPORTED_USERS))));
+        report.put("mismatchedCount", mismatched.size());
+        report.put("mismatched", new ArrayList<>(mismatched.subList(0, Math.min(mismatched.size(), MAX_REPORTED_USERS))));
+        report.put("orphanedCount", orphaned.size());
+        report.put("repaired", repair ? toWrite.size() + orphaned.size() : 0);
+        report.put("tookMs", System.currentTimeMillis() - started);
+        lastReport = report;
+        System.out.println((mismatched.isEmpty() && missing.isEmpty() ? "✅" : "⚠️")
+                + " Nutrition rollup " + report.get("type") + ": " + report.get("consistent") + "/" + expected.size()
+                + " consistent, " + missing.size() + " missing, " + mismatched.size() + " mismatched, "
+                + orphaned.size() + " orphaned");
+        return report;
+    }
+
+    /**
+     * Các field của rollup đã lưu lệch so với giá trị tính lại (rỗng nếu khớp).
+     */
+    private static List<String> differences(NutritionRollup expected, DocumentSnapshot summary, NutritionRollup stored) {
+        List<String> fields = new ArrayList<>();
+        if (!sameTarget(summary.get("caloriesTarget"), expected.getTarget())) fields.add("caloriesTarget");
+        if (stored.getDaysTracked() != expected.getDaysTracked()) fields.add("daysTracked");
+        if (stored.getDaysReachedGoal() != expected.getDaysReachedGoal()) fields.add("daysReachedGoal");
+        if (!closeTo(stored.getTotalCalories(), expected.getTotalCalories())) fields.add("totalCalories");
+        if (!closeTo(stored.getTotalProtein(), expected.getTotalProtein())) fields.add("totalProtein");
+        if (!closeTo(stored.getTotalFat(), expected.getTotalFat())) fields.add("totalFat");
+        if (!closeTo(stored.getTotalCarb(), expected.getTotalCarb())) fields.add("totalCarb");
+
+        Object logCount = summary.get("logCount");
+        if (!(logCount instanceof Number) || ((Number) logCount).intValue() != expected.getLogCount()) fields.add("logCount");
+
+        // Ledger phải khớp từng ngày, nếu không các lần cập nhật dần sau sẽ trừ sai giá trị
+        if (!stored.sameDays(expected)) fields.add("ledger");
+        // Summary ghi trước khi có bucket tuần/tháng cũng được coi là lệch để đối soát ghi bổ sung
+        if (!expected.bucketsMatch(summary.getData(), SUM_TOLERANCE)) fields.add("buckets");
+        return fields;
+    }
+
+    private static boolean closeTo(double actual, double expected) {
+        return Math.abs(actual - expected) <= SUM_TOLERANCE * Math.max(1d, Math.abs(expected) / 1000d);
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("listenerActive", registration != null);
+        status.put("listenerFromDateId", listenerFromDateId);
+        status.put("appliedChanges", appliedChanges);
+        status.put("lastReconcileAt", lastReconcileAt);
+        status.put("lastReport", lastReport);
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    // ==========================================================
+    // LISTENER + ĐỐI SOÁT ĐỊNH KỲ (chạy trên worker)
+    // ==========================================================
+
+    private void startListener() {
+        if (listenerDays <= 0 || registration != null) return;
+        String fromDateId = LocalDate.now(firestoreService.analyticsZone()).minusDays(listenerDays - 1L).toString();
+        Query query = firestore.collectionGroup("daily_logs").whereGreaterThanOrEqualTo("dateId", fromDateId);
+        listenerFromDateId = fromDateId;
+        registration = query.addSnapshotListener(worker, (snapshot, error) -> {
+            if (error != null) {
+                lastError = error.getMessage();
+                System.err.println("❌ Nutrition rollup listener failed: " + error.getMessage());
+                stopListener();
+                CompletableFuture.delayedExecutor(RESTART_DELAY_SECONDS, TimeUnit.SECONDS, worker)
+                        .execute(this::startListener);
+                return;
+            }
+            if (snapshot != null) {
+                applySnapshot(snapshot);
+                // Từ đây mọi thay đổi calories đều được cộng vào bộ đếm tổng
+                counters.setLive(ShardedCounterService.Counter.TOTAL_CALORIES_TRACKED, true);
+            }
+        });
+    }
+
+    private void stopListener() {
+        counters.setLive(ShardedCounterService.Counter.TOTAL_CALORIES_TRACKED, false);
+        ListenerRegistration current = registration;
+        registration = null;
+        if (current != null) current.remove();
+    }
+
+    private void applySnapshot(QuerySnapshot snapshot) {
+        // Gom thay đổi theo user để mỗi user chỉ tốn 1 transaction cho mỗi snapshot
+        Map<String, List<DocumentChange>> byUser = new LinkedHashMap<>();
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            String userId = FirestoreService.ownerUserId(change.getDocument());
+            if (userId != null) byUser.computeIfAbsent(userId, id -> new ArrayList<>()).add(change);
+        }
+        for (Map.Entry<String, List<DocumentChange>> entry : byUser.entrySet()) {
+            try {
+                applyChanges(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                System.err.println("Error applying nutrition changes for " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Áp dụng thay đổi daily_logs của một user vào summary + ledger trong một transaction.
+     * Luôn ghi giá trị mới nhất của ngày (không phải delta) nên nhận lại cùng thay đổi nhiều lần vẫn đúng.
+     */
+    private void applyChanges(String userId, List<DocumentChange> changes) throws Exception {
+        DocumentReference summaryRef = summaryRef(userId);
+        DocumentReference ledgerRef = ledgerRef(userId);
+        // Thay đổi tổng calories của lần thử transaction cuối cùng (transaction có thể chạy lại)
+        double[] caloriesDelta = new double[1];
+        NutritionRollup applied = firestore.runTransaction(tx -> {
+            List<DocumentSnapshot> docs = FirestoreReadScope.getAll(tx, summaryRef, ledgerRef).get();
+            if (!docs.get(0).exists() || !docs.get(1).exists()) return null;
+            NutritionRollup rollup = NutritionRollup.fromDocuments(docs.get(0), docs.get(1));
+            double caloriesBefore = rollup.getTotalCalories();
+            boolean changed = false;
+            for (DocumentChange change : changes) {
+                DailyLog log = DocumentCodecs.DAILY_LOG.decode(change.getDocument());
+                if (log == null) continue;
+                changed |= change.getType() == DocumentChange.Type.REMOVED
+                        ? rollup.remove(log.getDateId())
+                        : rollup.put(log);
+            }
+            if (changed) {
+                tx.set(summaryRef, rollup.toSummary(userId));
+                tx.set(ledgerRef, rollup.toLedger());
+            }
+            caloriesDelta[0] = rollup.getTotalCalories() - caloriesBefore;
+            return rollup;
+        }).get();
+        if (applied == null) {
+            // Chưa có rollup: tính lại từ toàn bộ log của user
+            rebuildUserNow(userId, null);
+        } else {
+            counters.increment(ShardedCounterService.Counter.TOTAL_CALORIES_TRACKED, caloriesDelta[0]);
+        }
+        appliedChanges += changes.size();
+        events.publishEvent(new NutritionStatsChangedEvent(userId));
+    }
+
+    private void scheduledReconcile() {
+        try {
+            // Khởi động lại listener để cửa sổ dateId dịch theo ngày hiện tại
+            stopListener();
+            startListener();
+            checkConsistencyNow(true);
+            lastReconcileAt = System.currentTimeMillis();
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            System.err.println("❌ Nutrition rollup reconcile failed: " + e.getMessage());
+        }
+    }
+
+    // ==========================================================
+    // TÍNH TOÁN + GHI (chỉ gọi trên worker)
+    // ==========================================================
+
+    private NutritionRollup rebuildUserNow(String userId, Float target) throws Exception {
+        float caloriesTarget = target != null ? target : firestoreService.getUserCaloriesTarget(userId);
+        NutritionRollup rollup = new NutritionRollup(caloriesTarget);
+        for (DailyLog log : firestoreService.getAllUserDailyLogs(userId)) {
+            rollup.put(log);
+        }
+        WriteBatch batch = firestore.batch();
+        batch.set(summaryRef(userId), rollup.toSummary(userId));
+        batch.set(ledgerRef(userId), rollup.toLedger());
+        batch.commit().get();
+        return rollup;
+    }
+
+    private NutritionRollup retargetNow(String userId, float target) throws Exception {
+        DocumentReference summaryRef = summaryRef(userId);
+        DocumentReference ledgerRef = ledgerRef(userId);
+        NutritionRollup rollup = firestore.runTransaction(tx -> {
+            List<DocumentSnapshot> docs = FirestoreReadScope.getAll(tx, summaryRef, ledgerRef).get();
+            if (!docs.get(0).exists() || !docs.get(1).exists()) return null;
+            NutritionRollup current = NutritionRollup.fromDocuments(docs.get(0), docs.get(1));
+            current.retarget(target);
+            tx.set(summaryRef, current.toSummary(userId));
+            return current;
+        }).get();
+        return rollup != null ? rollup : rebuildUserNow(userId, target);
+    }
+
+    /**
+     * Rollup tính lại từ daily_logs gốc cho mọi user hiện có (kể cả user chưa có log).
+     */
+    private Map<String, NutritionRollup> computeFromLogs() throws Exception {
+        Map<String, NutritionRollup> rollups = new HashMap<>();
+        QuerySnapshot usersSnap = FirestoreReadScope.get(firestore.collection("users").select("nutrition")).get();
+        for (DocumentSnapshot userDoc : usersSnap.getDocuments()) {
+            rollups.put(userDoc.getId(), new NutritionRollup(FirestoreService.caloriesTargetOf(userDoc.getData())));
+        }
+        firestoreService.streamAllDailyLogs((userId, log) -> {
+            NutritionRollup rollup = rollups.get(userId);
+            if (rollup != null) rollup.put(log); // log của user đã bị xóa thì bỏ qua
+        });
+        return rollups;
+    }
+
+    private void writeRollups(Map<String, NutritionRollup> rollups, Iterable<String> userIds, List<String> deletes)
+            throws Exception {
+        WriteBatch batch = firestore.batch();
+        int ops = 0;
+        for (String userId : userIds) {
+            NutritionRollup rollup = rollups.get(userId);
+            batch.set(summaryRef(userId), rollup.toSummary(userId));
+            batch.set(ledgerRef(userId), rollup.toLedger());
+            ops += 2;
+            if (ops >= MAX_BATCH_WRITES) {
+                batch.commit().get();
+                batch = firestore.batch();
+                ops = 0;
+            }
+        }
+        for (String userId : deletes) {
+            batch.delete(ledgerRef(userId));
+            batch.delete(summaryRef(userId));
+            ops += 2;
+            if (ops >= MAX_BATCH_WRITES) {
+                batch.commit().get();
+                batch = firestore.batch();
+                ops = 0;
+            }
+        }
+        if (ops > 0) batch.commit().get();
+        events.publishEvent(new NutritionStatsChangedEvent(null));
+    }
+
+    private DocumentReference summaryRef(String userId) {
+        return firestore.collection(NutritionRollup.COLLECTION).document(userId);
+    }
+
+    private DocumentReference ledgerRef(String userId) {
+        return summaryRef(userId).collection(NutritionRollup.LEDGER_COLLECTION).document(NutritionRollup.LEDGER_DOC);
+    }
+
+    private <T> T onWorker(Callable<T> task) throws Exception {
+        try {
+            return worker.submit(task).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.nutricook.dashboard.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.Blob;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.nutricook.dashboard.entity.DailyLog;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Phân phối (p10/p50/p90) calories và macro theo ngày trên toàn bộ user và theo nhóm user, dựa trên KllSketch.
+ *
+ * Mỗi ngày có một document nutrition_sketches/{yyyy-MM-dd} chứa sketch của từng nhóm x chỉ số (chỉ ngày có
+ * calories > 0). Phân phối của một khoảng bất kỳ là gộp các sketch ngày trong khoảng: 365 ngày là 365 document
+ * nhỏ thay vì đọc lại mọi daily_logs. Sketch ngày trong bộ nhớ được cache.
+ *
+ * Nhóm user được xác định tại ngày của log:
+ * - new: tài khoản tạo chưa quá new-user-days ngày tính đến ngày đó.
+ * - active: có ít nhất active-min-days ngày được track trong 7 ngày kết thúc ở ngày đó.
+ *
+ * Sketch không trừ được giá trị nên một ngày luôn được dựng lại toàn bộ từ daily_logs của ngày đó (cộng 6 ngày
+ * trước để xét nhóm active). Worker định kỳ dựng lại refresh-days ngày gần nhất (nơi app còn ghi); lịch sử cũ
+ * dựng một lần bằng POST /api/firestore/nutrition-sketches/rebuild.
+ */
+@Service
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class NutritionSketchService {
+
+    public static final String COLLECTION = "nutrition_sketches";
+    public static final String[] METRICS = {"calories", "protein", "fat", "carb"};
+    public static final double[] QUANTILES = {0.1, 0.5, 0.9};
+
+    private static final String[] METRIC_LABELS = {"Calories (kcal)", "Protein (g)", "Fat (g)", "Carb (g)"};
+    private static final int ACTIVE_WINDOW_DAYS = 7;
+    // Mỗi lượt dựng đọc tối đa 31 ngày log (+ 6 ngày trước) để giới hạn bộ nhớ khi dựng lại cả năm
+    private static final int CHUNK_DAYS = 31;
+
+    /**
+     * Nhóm user của một phân phối.
+     */
+    public enum Cohort {
+        ALL("all", "Tất cả người dùng"),
+        NEW("new", "Người dùng mới"),
+        ACTIVE("active", "Người dùng tích cực");
+
+        private final String key;
+        private final String label;
+
+        Cohort(String key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+
+        public String getKey() { return key; }
+
+        public String getLabel() { return label; }
+
+        public static Cohort of(String key) {
+            for (Cohort cohort : values()) {
+                if (cohort.key.equals(key)) return cohort;
+            }
+            return ALL;
+        }
+    }
+
+    private final DocumentStore store;
+    private final boolean enabled;
+    private final int k;
+    private final int refreshDays;
+    private final long refreshIntervalMinutes;
+    private final int newUserDays;
+    private final int activeMinDays;
+    private final ZoneId zone;
+    private final Cache<String, DaySketches> days;
+    private final ScheduledExecutorService worker;
+
+    private volatile long lastRefreshAt = 0L;
+    private volatile Map<String, Object> lastReport;
+    private volatile String lastError;
+
+    public NutritionSketchService(DocumentStore store,
+                                  @Value("${nutrition.sketches.enabled:false}") boolean enabled,
+                                  @Value("${nutrition.sketches.k:200}") int k,
+                                  @Value("${nutrition.sketches.refresh-days:8}") int refreshDays,
+                                  @Value("${nutrition.sketches.refresh-interval-minutes:60}") long refreshIntervalMinutes,
+                                  @Value("${nutrition.sketches.new-user-days:30}") int newUserDays,
+                                  @Value("${nutrition.sketches.active-min-days:4}") int activeMinDays,
+                                  @Value("${nutrition.sketches.cache-days:800}") long cacheDays,
+                                  @Value("${analytics.timezone:}") String analyticsTimezone) {
+        this.store = store;
+        this.enabled = enabled;
+        this.k = k;
+        this.refreshDays = Math.max(1, refreshDays);
+        this.refreshIntervalMinutes = refreshIntervalMinutes;
+        this.newUserDays = newUserDays;
+        this.activeMinDays = activeMinDays;
+        this.zone = analyticsTimezone == null || analyticsTimezone.isBlank()
+                ? ZoneId.systemDefault() : ZoneId.of(analyticsTimezone.trim());
+        // Ngày cũ không đổi; hết hạn theo chu kỳ refresh để thấy bản dựng lại từ instance khác
+        this.days = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1L, cacheDays))
+                .expireAfterWrite(Math.max(1L, refreshIntervalMinutes), TimeUnit.MINUTES)
+                .build();
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nutrition-sketches");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled || refreshIntervalMinutes <= 0) return;
+        System.out.println("🔄 Starting nutrition sketches (last " + refreshDays + " days every "
+                + refreshIntervalMinutes + " min)");
+        worker.scheduleWithFixedDelay(this::scheduledRefresh, 0, refreshIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void stop() {
+        worker.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    // ==========================================================
+    // ĐỌC PHÂN PHỐI
+    // ==========================================================
+
+    /**
+     * Phân phối của {@code cohort} trong [from, to]: gộp sketch của từng ngày trong khoảng.
+     */
+    public Distribution distribution(LocalDate from, LocalDate to, Cohort cohort) throws Exception {
+        if (from.isAfter(to)) {
+            LocalDate swap = from;
+            from = to;
+            to = swap;
+        }
+        KllSketch[] merged = new KllSketch[METRICS.length];
+        for (int m = 0; m < METRICS.length; m++) {
+            merged[m] = new KllSketch(k);
+        }
+        int built = 0;
+        Map<LocalDate, DaySketches> loaded = loadDays(from, to);
+        for (DaySketches day : loaded.values()) {
+            if (day == DaySketches.MISSING) continue;
+            built++;
+            KllSketch[] sketches = day.cohorts.get(cohort);
+            if (sketches == null) continue;
+            for (int m = 0; m < METRICS.length; m++) {
+                merged[m].merge(sketches[m]);
+            }
+        }
+        return new Distribution(from, to, cohort, loaded.size(), built, merged);
+    }
+
+    /**
+     * Sketch của các ngày trong [from, to] (ngày chưa được dựng là DaySketches.MISSING), cũ -> mới.
+     * Các ngày chưa có trong cache được đọc bằng một query theo khoảng documentId.
+     */
+    private Map<LocalDate, DaySketches> loadDays(LocalDate from, LocalDate to) throws Exception {
+        Map<LocalDate, DaySketches> result = new TreeMap<>();
+        LocalDate firstMissing = null;
+        LocalDate lastMissing = null;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            DaySketches cached = days.getIfPresent(day.toString());
+            result.put(day, cached);
+            if (cached == null) {
+                if (firstMissing == null) firstMissing = day;
+                lastMissing = day;
+            }
+        }
+        if (firstMissing == null) return result;
+
+        List<StoredDocument> docs = FirestoreFutures.await(store.query(DocumentQuery.collection(COLLECTION)
+                .whereGreaterThanOrEqualTo(DocumentQuery.DOCUMENT_ID, firstMissing.toString())
+                .whereLessThanOrEqualTo(DocumentQuery.DOCUMENT_ID, lastMissing.toString())));
+        Map<String, StoredDocument> byId = new HashMap<>();
+        for (StoredDocument doc : docs) {
+            byId.put(doc.getId(), doc);
+        }
+        for (Map.Entry<LocalDate, DaySketches> entry : result.entrySet()) {
+            if (entry.getValue() != null) continue;
+            String dateId = entry.getKey().toString();
+            StoredDocument doc = byId.get(dateId);
+            DaySketches day = doc != null ? DaySketches.decode(doc.getData()) : DaySketches.MISSING;
+            days.put(dateId, day);
+            entry.setValue(day);
+        }
+        return result;
+    }
+
+    // ==========================================================
+    // DỰNG SKETCH
+    // ==========================================================
+
+    /**
+     * Dựng lại sketch của các ngày trong [from, to] từ daily_logs gốc và ghi đè (chạy trên worker).
+     */
+    public Map<String, Object> rebuild(LocalDate from, LocalDate to) throws Exception {
+        LocalDate start = from.isAfter(to) ? to : from;
+        LocalDate end = from.isAfter(to) ? from : to;
+        return onWorker(() -> rebuildNow(start, end));
+    }
+
+    /** Dựng lại refresh-days ngày gần nhất. */
+    public Map<String, Object> refreshRecent() throws Exception {
+        LocalDate today = LocalDate.now(zone);
+        return rebuild(today.minusDays(refreshDays - 1L), today);
+    }
+
+    private void scheduledRefresh() {
+        try {
+            LocalDate today = LocalDate.now(zone);
+            rebuildNow(today.minusDays(refreshDays - 1L), today);
+            lastRefreshAt = System.currentTimeMillis();
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            System.err.println("❌ Nutrition sketch refresh failed: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Object> rebuildNow(LocalDate from, LocalDate to) throws Exception {
+        long started = System.currentTimeMillis();
+        Map<String, LocalDate> createdDates = loadUserCreatedDates();
+        long logs = 0L;
+        int written = 0;
+        for (LocalDate chunkStart = from; !chunkStart.isAfter(to); chunkStart = chunkStart.plusDays(CHUNK_DAYS)) {
+            LocalDate chunkEnd = chunkStart.plusDays(CHUNK_DAYS - 1L);
+            if (chunkEnd.isAfter(to)) chunkEnd = to;
+            Map<LocalDate, DaySketches> built = new TreeMap<>();
+            logs += buildChunk(chunkStart, chunkEnd, createdDates, built);
+
+            List<DocumentWrite> writes = new ArrayList<>(built.size());
+            for (Map.Entry<LocalDate, DaySketches> entry : built.entrySet()) {
+                writes.add(DocumentWrite.set(COLLECTION + "/" + entry.getKey(), entry.getValue().encode(entry.getKey())));
+            }
+            // Tối đa 31 document ~ vài KB mỗi cái: vừa một batch
+            FirestoreFutures.await(store.commit(writes));
+            for (Map.Entry<LocalDate, DaySketches> entry : built.entrySet()) {
+                days.put(entry.getKey().toString(), entry.getValue());
+            }
+            written += writes.size();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("from", from.toString());
+        report.put("to", to.toString());
+        report.put("days", written);
+        report.put("logs", logs);
+        report.put("tookMs", System.currentTimeMillis() - started);
+        lastReport = report;
+        System.out.println("✅ Rebuilt nutrition sketches: " + report);
+        return report;
+    }
+
+    /**
+     * Đọc log của [from - 6, to] (một query collectionGroup theo dateId) và dựng sketch cho từng ngày trong [from, to].
+     * Trả về số log đã đọc.
+     */
+    private long buildChunk(LocalDate from, LocalDate to, Map<String, LocalDate> createdDates,
+                            Map<LocalDate, DaySketches> out) throws Exception {
+        LocalDate readFrom = from.minusDays(ACTIVE_WINDOW_DAYS - 1L);
+        List<StoredDocument> docs = FirestoreFutures.await(store.query(DocumentQuery.collectionGroup("daily_logs")
+                .whereGreaterThanOrEqualTo("dateId", readFrom.toString())
+                .whereLessThanOrEqualTo("dateId", to.toString())));
+
+        // Log theo user, sắp theo ngày
+        Map<String, TreeMap<LocalDate, DailyLog>> byUser = new HashMap<>();
+        for (StoredDocument doc : docs) {
+            if (!"users".equals(doc.getParentCollection())) continue;
+            DailyLog log = DocumentCodecs.DAILY_LOG.decode(doc.getId(), doc.getData());
+            if (log == null || log.getCalories() == null || !(log.getCalories() > 0)) continue;
+            LocalDate date;
+            try {
+                date = LocalDate.parse(log.getDateId() != null ? log.getDateId() : doc.getId());
+            } catch (RuntimeException e) {
+                continue; // dateId sai định dạng
+            }
+            byUser.computeIfAbsent(doc.getParentDocumentId(), id -> new TreeMap<>()).put(date, log);
+        }
+
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            out.put(day, new DaySketches(k));
+        }
+        for (Map.Entry<String, TreeMap<LocalDate, DailyLog>> entry : byUser.entrySet()) {
+            LocalDate created = createdDates.get(entry.getKey());
+            TreeMap<LocalDate, DailyLog> userLogs = entry.getValue();
+            for (Map.Entry<LocalDate, DailyLog> logEntry : userLogs.subMap(from, true, to, true).entrySet()) {
+                LocalDate day = logEntry.getKey();
+                DaySketches sketches = out.get(day);
+                DailyLog log = logEntry.getValue();
+                sketches.add(Cohort.ALL, log);
+                if (created != null && !day.isBefore(created)
+                        && ChronoUnit.DAYS.between(created, day) < newUserDays) {
+                    sketches.add(Cohort.NEW, log);
+                }
+                int tracked = userLogs.subMap(day.minusDays(ACTIVE_WINDOW_DAYS - 1L), true, day, true).size();
+                if (tracked >= activeMinDays) {
+                    sketches.add(Cohort.ACTIVE, log);
+                }
+            }
+        }
+        return docs.size();
+    }
+
+    /** userId -> ngày tạo tài khoản (theo múi giờ analytics); user không có createdAt thì không có trong map. */
+    private Map<String, LocalDate> loadUserCreatedDates() throws Exception {
+        Map<String, LocalDate> created = new HashMap<>();
+        for (StoredDocument doc : FirestoreFutures.await(store.query(DocumentQuery.collection("users").select("createdAt")))) {
+            Instant instant = toInstant(doc.get("createdAt"));
+            if (instant != null) created.put(doc.getId(), instant.atZone(zone).toLocalDate());
+        }
+        return created;
+    }
+
+    private static Instant toInstant(Object value) {
+        if (value instanceof Timestamp) return ((Timestamp) value).toDate().toInstant();
+        if (value instanceof Date) return ((Date) value).toInstant();
+        if (value instanceof Number) return Instant.ofEpochMilli(((Number) value).longValue());
+        return null;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("k", k);
+        status.put("refreshDays", refreshDays);
+        status.put("cachedDays", days.size());
+        status.put("lastRefreshAt", lastRefreshAt);
+        status.put("lastReport", lastReport);
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    private <T> T onWorker(Callable<T> task) throws Exception {
+        try {
+            return worker.submit(task).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    // ==========================================================
+    // KIỂU DỮ LIỆU
+    // ==========================================================
+
+    /**
+     * Sketch của một ngày: mỗi nhóm một mảng sketch theo thứ tự METRICS.
+     */
+    static final class DaySketches {
+        static final DaySketches MISSING = new DaySketches(KllSketch.DEFAULT_K);
+
+        final Map<Cohort, KllSketch[]> cohorts = new EnumMap<>(Cohort.class);
+        private final int k;
+
+        DaySketches(int k) {
+            this.k = k;
+        }
+
+        void add(Cohort cohort, DailyLog log) {
+            KllSketch[] sketches = cohorts.computeIfAbsent(cohort, c -> newSketches(k));
+            sketches[0].update(log.getCalories());
+            sketches[1].update(value(log.getProtein()));
+            sketches[2].update(value(log.getFat()));
+            sketches[3].update(value(log.getCarb()));
+        }
+
+        private static float value(Float v) {
+            return v != null ? v : 0f;
+        }
+
+        private static KllSketch[] newSketches(int k) {
+            KllSketch[] sketches = new KllSketch[METRICS.length];
+            for (int m = 0; m < METRICS.length; m++) {
+                sketches[m] = new KllSketch(k);
+            }
+            return sketches;
+        }
+
+        Map<String, Object> encode(LocalDate date) {
+            Map<String, Object> cohortData = new HashMap<>();
+            for (Map.Entry<Cohort, KllSketch[]> entry : cohorts.entrySet()) {
+                Map<String, Object> values = new HashMap<>();
+                values.put("count", entry.getValue()[0].getCount());
+                for (int m = 0; m < METRICS.length; m++) {
+                    values.put(METRICS[m], Blob.fromBytes(entry.getValue()[m].toBytes()));
+                }
+                cohortData.put(entry.getKey().getKey(), values);
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("dateId", date.toString());
+            data.put("k", k);
+            data.put("cohorts", cohortData);
+            data.put("builtAt", Timestamp.now());
+            return data;
+        }
+
+        static DaySketches decode(Map<String, Object> data) {
+            Object storedK = data.get("k");
+            DaySketches day = new DaySketches(storedK instanceof Number ? ((Number) storedK).intValue() : KllSketch.DEFAULT_K);
+            Object cohortData = data.get("cohorts");
+            if (!(cohortData instanceof Map)) return day;
+            for (Cohort cohort : Cohort.values()) {
+                Object values = ((Map<?, ?>) cohortData).get(cohort.getKey());
+                if (!(values instanceof Map)) continue;
+                KllSketch[] sketches = new KllSketch[METRICS.length];
+                for (int m = 0; m < METRICS.length; m++) {
+                    byte[] bytes = bytesOf(((Map<?, ?>) values).get(METRICS[m]));
+                    sketches[m] = bytes != null ? KllSketch.fromBytes(bytes) : new KllSketch(day.k);
+                }
+                day.cohorts.put(cohort, sketches);
+            }
+            return day;
+        }
+
+        private static byte[] bytesOf(Object value) {
+            if (value instanceof Blob) return ((Blob) value).toBytes();
+            if (value instanceof byte[]) return (byte[]) value;
+            return null;
+        }
+    }
+
+    /**
+     * Phân phối của một nhóm trong một khoảng ngày.
+     */
+    public static final class Distribution {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final Cohort cohort;
+        private final int days;
+        private final int builtDays;
+        private final long count;
+        private final List<MetricQuantiles> metrics = new ArrayList<>();
+
+        Distribution(LocalDate from, LocalDate to, Cohort cohort, int days, int builtDays, KllSketch[] sketches) {
+            this.from = from;
+            this.to = to;
+            this.cohort = cohort;
+            this.days = days;
+            this.builtDays = builtDays;
+            this.count = sketches[0].getCount();
+            for (int m = 0; m < METRICS.length; m++) {
+                metrics.add(new MetricQuantiles(METRICS[m], METRIC_LABELS[m], sketches[m]));
+            }
+        }
+
+        public LocalDate getFrom() { return from; }
+
+        public LocalDate getTo() { return to; }
+
+        public Cohort getCohort() { return cohort; }
+
+        /** Số ngày trong khoảng. */
+        public int getDays() { return days; }
+
+        /** Số ngày đã có sketch (ít hơn getDays() nghĩa là cần dựng lại phần lịch sử còn thiếu). */
+        public int getBuiltDays() { return builtDays; }
+
+        /** Số ngày-log (user x ngày có calories > 0) trong phân phối. */
+        public long getCount() { return count; }
+
+        public List<MetricQuantiles> getMetrics() { return metrics; }
+    }
+
+    /**
+     * p10/p50/p90 và min/max của một chỉ số.
+     */
+    public static final class MetricQuantiles {
+        private final String metric;
+        private final String label;
+        private final float p10, p50, p90, min, max;
+
+        MetricQuantiles(String metric, String label, KllSketch sketch) {
+            this.metric = metric;
+            this.label = label;
+            float[] q = sketch.quantiles(QUANTILES);
+            this.p10 = q[0];
+            this.p50 = q[1];
+            this.p90 = q[2];
+            this.min = sketch.getMin();
+            this.max = sketch.getMax();
+        }
+
+        public String getMetric() { return metric; }
+
+        public String getLabel() { return label; }
+
+        public float getP10() { return p10; }
+
+        public float getP50() { return p50; }
+
+        public float getP90() { return p90; }
+
+        public float getMin() { return min; }
+
+        public float getMax() { return max; }
+    }
+}
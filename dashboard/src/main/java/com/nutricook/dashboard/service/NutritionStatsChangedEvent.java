@@ -0,0 +1,22 @@
+package com.nutricook.dashboard.service;
+
+/**
+ * Phát (qua ApplicationEventPublisher) khi rollup nutrition của một user thay đổi; userId = null nghĩa là
+ * nhiều user đổi cùng lúc (rebuild/đối soát), người nhận nên tính lại toàn bộ.
+ */
+public class NutritionStatsChangedEvent {
+
+    private final String userId;
+
+    public NutritionStatsChangedEvent(String userId) {
+        this.userId = userId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public boolean isAllUsers() {
+        return userId == null;
+    }
+}
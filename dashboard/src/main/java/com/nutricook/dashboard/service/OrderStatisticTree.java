@@ -0,0 +1,169 @@
+package com.nutricook.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Tập có thứ tự (treap) lưu kích thước cây con ở mỗi node, nên ngoài thêm/xóa còn lấy được phần tử thứ i
+ * và thứ hạng của một khóa trong O(log n). Dùng cho bảng xếp hạng: trang theo offset không cần duyệt từ đầu,
+ * trang theo keyset bắt đầu từ thứ hạng của cursor.
+ *
+ * Hai phần tử bằng nhau theo comparator được coi là một (comparator phải phân biệt được mọi phần tử).
+ * Không thread-safe.
+ */
+public final class OrderStatisticTree<T> {
+
+    private final Comparator<? super T> comparator;
+    private final SplittableRandom random = new SplittableRandom(0x5eed);
+    private Node<T> root;
+
+    public OrderStatisticTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /** Thêm {@code value}; trả về false nếu đã có phần tử bằng nó. */
+    public boolean add(T value) {
+        if (contains(value)) return false;
+        Node<T>[] parts = split(root, value);
+        root = merge(merge(parts[0], new Node<>(value, random.nextInt())), parts[1]);
+        return true;
+    }
+
+    /** Xóa phần tử bằng {@code value}; trả về false nếu không có. */
+    public boolean remove(T value) {
+        if (!contains(value)) return false;
+        root = remove(root, value);
+        return true;
+    }
+
+    public boolean contains(T value) {
+        Node<T> node = root;
+        while (node != null) {
+            int c = comparator.compare(value, node.value);
+            if (c == 0) return true;
+            node = c < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /** Phần tử thứ {@code index} (0 = nhỏ nhất). */
+    public T get(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /** Số phần tử nhỏ hơn hẳn {@code key} (key không cần có trong cây). */
+    public int rank(T key) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (comparator.compare(key, node.value) <= 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /** Tối đa {@code limit} phần tử theo thứ tự, bắt đầu từ vị trí {@code from}: O(log n + limit). */
+    public List<T> range(int from, int limit) {
+        List<T> out = new ArrayList<>(Math.max(0, Math.min(limit, size() - from)));
+        if (from >= 0 && limit > 0) collect(root, from, limit, out);
+        return out;
+    }
+
+    private void collect(Node<T> node, int from, int limit, List<T> out) {
+        if (node == null || out.size() >= limit) return;
+        int leftSize = size(node.left);
+        if (from < leftSize) collect(node.left, from, limit, out);
+        if (out.size() >= limit) return;
+        if (from <= leftSize) out.add(node.value);
+        collect(node.right, Math.max(0, from - leftSize - 1), limit, out);
+    }
+
+    /** Tách thành (phần tử &lt; value, phần tử &gt;= value). */
+    private Node<T>[] split(Node<T> node, T value) {
+        @SuppressWarnings("unchecked")
+        Node<T>[] parts = new Node[2];
+        if (node == null) return parts;
+        if (comparator.compare(node.value, value) < 0) {
+            Node<T>[] right = split(node.right, value);
+            node.right = right[0];
+            parts[0] = node.update();
+            parts[1] = right[1];
+        } else {
+            Node<T>[] left = split(node.left, value);
+            node.left = left[1];
+            parts[0] = left[0];
+            parts[1] = node.update();
+        }
+        return parts;
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return left.update();
+        }
+        right.left = merge(left, right.left);
+        return right.update();
+    }
+
+    private Node<T> remove(Node<T> node, T value) {
+        int c = comparator.compare(value, node.value);
+        if (c == 0) return merge(node.left, node.right);
+        if (c < 0) {
+            node.left = remove(node.left, value);
+        } else {
+            node.right = remove(node.right, value);
+        }
+        return node.update();
+    }
+
+    private static int size(Node<?> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static final class Node<T> {
+        final T value;
+        final int priority;
+        Node<T> left;
+        Node<T> right;
+        int size = 1;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        Node<T> update() {
+            size = 1 + size(left) + size(right);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.nutricook.dashboard.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.AggregateField;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Bộ đếm phân mảnh cho tổng calories đã track trên dashboard (aggregate sum trên mọi daily_logs tính 1 lượt đọc
+ * cho mỗi 1000 index entry, còn bộ đếm luôn là 1). Số posts/reviews/user recipes vẫn dùng aggregate count:
+ * mobile app ghi thẳng các collection đó nên không có nguồn increment nào giữ bộ đếm khớp giữa hai lần đếm lại.
+ *
+ * Mỗi bộ đếm là N document counters/{tên}/shards/{i}; increment được cộng dồn trong bộ nhớ rồi định kỳ
+ * ghi dồn (FieldValue.increment) vào một shard ngẫu nhiên, nên không có document nào bị ghi quá nhiều.
+ * Đọc = một aggregate sum trên các shard (1 lượt đọc) cộng phần chưa ghi trong bộ nhớ, bất kể dữ liệu gốc lớn cỡ nào.
+ *
+ * Bộ đếm chỉ "live" khi có nguồn increment đang chạy (listener của NutritionRollupService); không live thì
+ * caller đọc thẳng dữ liệu gốc. Đếm lại định kỳ cũng chỉ cộng phần chênh (FieldValue.increment), không ghi đè
+ * shard, nên increment mà instance khác ghi cùng lúc không bị mất; increment còn trong bộ nhớ của instance
+ * khác (tối đa một chu kỳ flush) có thể bị tính hai lần cho tới lần đếm lại sau.
+ */
+@Service
+@ConditionalOnProperty(name = "firebase.enabled", havingValue = "true")
+public class ShardedCounterService {
+
+    public static final String COLLECTION = "counters";
+
+    public enum Counter {
+        TOTAL_CALORIES_TRACKED("totalCaloriesTracked");
+
+        private final String id;
+
+        Counter(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    private final Firestore firestore;
+    private final int shards;
+    private final long flushIntervalSeconds;
+    private final long recountIntervalMinutes;
+    private final ScheduledExecutorService scheduler;
+
+    // Increment chưa ghi lên Firestore
+    private final Map<Counter, DoubleAdder> pending = new ConcurrentHashMap<>();
+    // Bộ đếm đã chắc chắn có dữ liệu trên Firestore (không cần kiểm tra lại)
+    private final Set<Counter> seeded = ConcurrentHashMap.newKeySet();
+    // Bộ đếm đang có nguồn increment theo dõi mọi thay đổi của dữ liệu gốc
+    private final Set<Counter> live = ConcurrentHashMap.newKeySet();
+    private volatile long lastFlushAt = 0L;
+    private volatile long lastRecountAt = 0L;
+    private volatile String lastError;
+
+    public ShardedCounterService(Firestore firestore,
+                                 @Value("${counters.shards:10}") int shards,
+                                 @Value("${counters.flush-interval-seconds:5}") long flushIntervalSeconds,
+                                 @Value("${counters.recount-interval-minutes:60}") long recountIntervalMinutes) {
+        this.firestore = firestore;
+        this.shards = Math.max(1, shards);
+        this.flushIntervalSeconds = Math.max(1, flushIntervalSeconds);
+        this.recountIntervalMinutes = recountIntervalMinutes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sharded-counters");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        if (firestore == null) return;
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+        if (recountIntervalMinutes > 0) {
+            scheduler.scheduleWithFixedDelay(this::recountAllQuietly, recountIntervalMinutes, recountIntervalMinutes,
+                    TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        // Ghi nốt phần còn trong bộ nhớ trước khi tắt
+        flushQuietly();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Cộng delta vào bộ đếm (ghi lên Firestore ở lần flush kế tiếp).
+     */
+    public void increment(Counter counter, double delta) {
+        if (delta == 0d || Double.isNaN(delta)) return;
+        pending.computeIfAbsent(counter, c -> new DoubleAdder()).add(delta);
+    }
+
+    /**
+     * Đánh dấu bộ đếm có/không còn nguồn increment theo dõi dữ liệu gốc (listener bắt đầu nhận snapshot / lỗi).
+     */
+    public void setLive(Counter counter, boolean value) {
+        if (value) live.add(counter);
+        else live.remove(counter);
+    }
+
+    /**
+     * true nếu bộ đếm đang được cộng dồn mọi thay đổi, tức chỉ trễ tối đa một chu kỳ flush (phần chưa flush
+     * vẫn được cộng khi đọc). false: giữa hai lần đếm lại không có gì cập nhật nó.
+     */
+    public boolean isLive(Counter counter) {
+        return live.contains(counter);
+    }
+
+    public long get(Counter counter) throws Exception {
+        return FirestoreFutures.await(getAsync(counter));
+    }
+
+    public CompletableFuture<Long> getAsync(Counter counter) {
+        CompletableFuture<Double> stored = seeded.contains(counter)
+                ? sumShards(counter)
+                : ensureSeeded(counter).thenCompose(ignored -> sumShards(counter));
+        return stored.thenApply(value -> Math.round(value + pendingValue(counter)));
+    }
+
+    private double pendingValue(Counter counter) {
+        DoubleAdder adder = pending.get(counter);
+        return adder != null ? adder.sum() : 0d;
+    }
+
+    private CompletableFuture<Double> sumShards(Counter counter) {
+        AggregateField sum = AggregateField.sum("count");
+        return FirestoreReadScope.aggregate(shardsCol(counter).aggregate(sum)).thenApply(snap -> {
+            Double value = snap.getDouble(sum);
+            return value != null ? value : 0d;
+        });
+    }
+
+    private CompletableFuture<Void> ensureSeeded(Counter counter) {
+        return FirestoreReadScope.get(counterRef(counter)).thenCompose(doc -> {
+            if (doc.exists()) {
+                seeded.add(counter);
+                return CompletableFuture.completedFuture(null);
+            }
+            // Chưa từng đếm: đếm từ dữ liệu gốc một lần (trên thread của bộ đếm để không chạy song song với flush)
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    recountNow(counter);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Cannot seed counter " + counter.getId() + ": " + e.getMessage(), e);
+                }
+            }, scheduler);
+        });
+    }
+
+    // ==========================================================
+    // FLUSH (write-behind)
+    // ==========================================================
+
+    /**
+     * Ghi toàn bộ increment đang chờ: mỗi bộ đếm một FieldValue.increment vào một shard ngẫu nhiên, chung một batch.
+     */
+    public void flush() throws Exception {
+        Map<Counter, Double> deltas = new HashMap<>();
+        for (Map.Entry<Counter, DoubleAdder> entry : pending.entrySet()) {
+            double delta = entry.getValue().sumThenReset();
+            if (delta != 0d) deltas.put(entry.getKey(), delta);
+        }
+        if (deltas.isEmpty()) return;
+
+        WriteBatch batch = firestore.batch();
+        for (Map.Entry<Counter, Double> entry : deltas.entrySet()) {
+            DocumentReference shard = shardsCol(entry.getKey()).document(String.valueOf(ThreadLocalRandom.current().nextInt(shards)));
+            batch.set(shard, Map.of("count", FieldValue.increment(entry.getValue())), SetOptions.merge());
+        }
+        try {
+            batch.commit().get();
+            lastFlushAt = System.currentTimeMillis();
+        } catch (Exception e) {
+            // Trả lại để lần flush sau ghi tiếp
+            deltas.forEach(this::increment);
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            System.err.println("❌ Error flushing counters: " + e.getMessage());
+        }
+    }
+
+    // ==========================================================
+    // ĐẾM LẠI TỪ DỮ LIỆU GỐC
+    // ==========================================================
+
+    /**
+     * Đếm lại mọi bộ đếm từ dữ liệu gốc bằng aggregate query và cộng phần chênh vào shard.
+     */
+    public Map<String, Object> recountAll() throws Exception {
+        return FirestoreFutures.await(CompletableFuture.supplyAsync(() -> {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (Counter counter : Counter.values()) {
+                try {
+                    values.put(counter.getId(), recountNow(counter));
+                } catch (Exception e) {
+                    values.put(counter.getId(), "error: " + e.getMessage());
+                }
+            }
+            lastRecountAt = System.currentTimeMillis();
+            return values;
+        }, scheduler));
+    }
+
+    private void recountAllQuietly() {
+        for (Counter counter : Counter.values()) {
+            try {
+                recountNow(counter);
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                System.err.println("❌ Error recounting " + counter.getId() + ": " + e.getMessage());
+            }
+        }
+        lastRecountAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Chạy trên thread của bộ đếm (không song song với flush). Increment đang chờ được bỏ trước khi đọc dữ liệu
+     * gốc: thay đổi của chúng đã có trong giá trị đếm lại, còn increment đến sau lần bỏ đó vẫn được giữ để
+     * flush như thường. Shard không bị ghi đè (shard thừa sau khi giảm counters.shards vẫn được cộng vào tổng).
+     */
+    private double recountNow(Counter counter) throws Exception {
+        pending.remove(counter);
+        double value = sourceValue(counter);
+        double stored = FirestoreFutures.await(sumShards(counter));
+
+        WriteBatch batch = firestore.batch();
+        double delta = value - stored;
+        if (delta != 0d) {
+            DocumentReference shard = shardsCol(counter).document(String.valueOf(ThreadLocalRandom.current().nextInt(shards)));
+            batch.set(shard, Map.of("count", FieldValue.increment(delta)), SetOptions.merge());
+        }
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("shards", shards);
+        meta.put("recountedValue", value);
+        meta.put("recountedAt", Timestamp.now());
+        batch.set(counterRef(counter), meta);
+        batch.commit().get();
+        seeded.add(counter);
+        System.out.println("✅ Recounted " + counter.getId() + " = " + value + " (delta " + delta + ")");
+        return value;
+    }
+
+    private double sourceValue(Counter counter) throws Exception {
+        switch (counter) {
+            case TOTAL_CALORIES_TRACKED: {
+                AggregateField sum = AggregateField.sum("calories");
+                Double value = FirestoreFutures.await(FirestoreReadScope.aggregate(
+                        firestore.collectionGroup("daily_logs").aggregate(sum))).getDouble(sum);
+                return value != null ? value : 0d;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown counter: " + counter);
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("shards", shards);
+        Map<String, Double> pendingValues = new LinkedHashMap<>();
+        for (Counter counter : Counter.values()) {
+            pendingValues.put(counter.getId(), pendingValue(counter));
+        }
+        status.put("pending", pendingValues);
+        status.put("seeded", seeded.stream().map(Counter::getId).sorted().toList());
+        status.put("live", live.stream().map(Counter::getId).sorted().toList());
+        status.put("lastFlushAt", lastFlushAt);
+        status.put("lastRecountAt", lastRecountAt);
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    private DocumentReference counterRef(Counter counter) {
+        return firestore.collection(COLLECTION).document(counter.getId());
+    }
+
+    private CollectionReference shardsCol(Counter counter) {
+        return counterRef(counter).collection("shards");
+    }
+}
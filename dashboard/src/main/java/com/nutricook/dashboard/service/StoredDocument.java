@@ -0,0 +1,59 @@
+package com.nutricook.dashboard.service;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Một document đọc từ DocumentStore: ID, đường dẫn đầy đủ ("users/u1/daily_logs/2024-05-01")
+ * và dữ liệu (null nếu document không tồn tại). Dữ liệu chỉ đọc.
+ */
+public final class StoredDocument {
+
+    private final String id;
+    private final String path;
+    private final Map<String, Object> data;
+
+    public StoredDocument(String path, Map<String, Object> data) {
+        this.path = path;
+        this.id = path.substring(path.lastIndexOf('/') + 1);
+        this.data = data != null ? Collections.unmodifiableMap(data) : null;
+    }
+
+    public static StoredDocument missing(String path) {
+        return new StoredDocument(path, null);
+    }
+
+    public String getId() { return id; }
+
+    public String getPath() { return path; }
+
+    public boolean exists() { return data != null; }
+
+    public Map<String, Object> getData() { return data; }
+
+    /** Giá trị field (hỗ trợ đường dẫn có dấu chấm như "nutrition.caloriesTarget"); null nếu không có. */
+    public Object get(String field) {
+        if (data == null) return null;
+        if (field.indexOf('.') < 0) return data.get(field);
+        Object current = data;
+        for (String part : field.split("\\.")) {
+            if (!(current instanceof Map)) return null;
+            current = ((Map<?, ?>) current).get(part);
+        }
+        return current;
+    }
+
+    /**
+     * ID của document cha: "users/u1/daily_logs/2024-05-01" -> "u1"; null nếu là document cấp cao nhất.
+     */
+    public String getParentDocumentId() {
+        String[] segments = path.split("/");
+        return segments.length >= 4 ? segments[segments.length - 3] : null;
+    }
+
+    /** Collection của document cha ("users" trong ví dụ trên); null nếu là document cấp cao nhất. */
+    public String getParentCollection() {
+        String[] segments = path.split("/");
+        return segments.length >= 4 ? segments[segments.length - 4] : null;
+    }
+}
@@ -0,0 +1,192 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.BulkWriterOptions;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+
+/**
+ * Chạy tiếp job xóa cascade từ document cascade_delete_jobs đã lưu khi khởi động: job RUNNING và job FAILED chưa
+ * hết lượt được chạy tiếp (bỏ qua các nhóm đã xong, giữ số đã xóa, tăng số lần chạy), job FAILED đã hết lượt thì không.
+ * Firestore giả ghi lại các query theo đường dẫn, các lần ghi job và các document bị BulkWriter xóa.
+ */
+class CascadeDeleteServiceTest {
+
+    private final Map<String, QueryDocumentSnapshot> persisted = new ConcurrentHashMap<>();
+    private final Map<String, List<Map<String, Object>>> jobWrites = new ConcurrentHashMap<>();
+    private final Set<String> queried = ConcurrentHashMap.newKeySet();
+    private final List<String> bulkDeleted = new CopyOnWriteArrayList<>();
+    private CascadeDeleteService service;
+
+    @BeforeEach
+    void setUp() {
+        persisted.put("u1", job("u1", CascadeDeleteService.STATUS_RUNNING, 1, List.of("dailyLogs", "userRecipes"),
+                Map.of("dailyLogs", 40L, "userRecipes", 3L)));
+        persisted.put("u2", job("u2", CascadeDeleteService.STATUS_FAILED, 2, List.of("dailyLogs"), Map.of("dailyLogs", 7L)));
+        persisted.put("u3", job("u3", CascadeDeleteService.STATUS_FAILED, 5, List.of(), Map.of()));
+
+        Firestore firestore = mock(Firestore.class, invocation -> {
+            if (invocation.getMethod().getName().equals("collection")) {
+                return mock(CollectionReference.class, node(invocation.getArgument(0)));
+            }
+            return RETURNS_DEFAULTS.answer(invocation);
+        });
+        BulkWriter writer = mock(BulkWriter.class);
+        when(writer.delete(any(DocumentReference.class))).thenAnswer(invocation -> {
+            bulkDeleted.add(((DocumentReference) invocation.getArgument(0)).getPath());
+            return ApiFutures.immediateFuture(null);
+        });
+        when(writer.flush()).thenReturn(ApiFutures.immediateFuture(null));
+        when(firestore.bulkWriter(any(BulkWriterOptions.class))).thenReturn(writer);
+
+        service = new CascadeDeleteService(firestore, 100, 2, 500, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void resumesRunningAndFailedJobsFromPersistedState() throws Exception {
+        service.resumePending();
+        Map<String, Object> u1 = awaitDone("u1");
+        Map<String, Object> u2 = awaitDone("u2");
+
+        // Nhóm đã xong trước khi dừng không bị đọc lại; số đã xóa được giữ
+        assertFalse(queried.contains("users/u1/daily_logs"));
+        assertFalse(queried.contains("userRecipes?userId=u1"));
+        assertTrue(queried.contains("foodItems?userId=u1"));
+        assertTrue(queried.contains("userRecipes?userId=u2"));
+        assertEquals(40L, ((Map<?, ?>) u1.get("deleted")).get("dailyLogs"));
+        assertEquals(7L, ((Map<?, ?>) u2.get("deleted")).get("dailyLogs"));
+        assertEquals(Set.of("dailyLogs", "userRecipes", "foodItems", "foodUpdates"),
+                new HashSet<>((Collection<?>) u1.get("completed")));
+        assertEquals(2L, u1.get("attempts"));
+        assertEquals(3L, u2.get("attempts"));
+        assertTrue(bulkDeleted.contains("users/u1"));
+        assertTrue(bulkDeleted.contains("users/u2"));
+
+        // Job lỗi đã chạy đủ cascade-delete.max-attempts lần: để nguyên cho admin xem lỗi
+        assertFalse(jobWrites.containsKey("u3"));
+        assertFalse(bulkDeleted.contains("users/u3"));
+    }
+
+    // ==========================================================
+
+    private Map<String, Object> awaitDone(String userId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            List<Map<String, Object>> writes = jobWrites.get(userId);
+            if (writes != null) {
+                for (Map<String, Object> data : writes) {
+                    if (CascadeDeleteService.STATUS_DONE.equals(data.get("status"))) return data;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("job " + userId + " chưa xong: " + jobWrites.get(userId));
+    }
+
+    /**
+     * Collection/document/query giả theo đường dẫn: query lọc thêm "?field=value" vào đường dẫn, get() của query
+     * job đang chờ trả các job đã lưu, các query khác trả rỗng.
+     */
+    private Answer<Object> node(String path) {
+        return invocation -> {
+            Object[] args = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "collection":
+                    return mock(CollectionReference.class, node(path + "/" + args[0]));
+                case "document":
+                    return mock(DocumentReference.class, node(path + "/" + args[0]));
+                case "getPath":
+                    return path;
+                case "getId":
+                    return path.substring(path.lastIndexOf('/') + 1);
+                case "whereEqualTo":
+                    return mock(Query.class, node(path + "?" + args[0] + "=" + args[1]));
+                case "whereIn":
+                    return mock(Query.class, node(path + "?" + args[0] + " in " + args[1]));
+                case "select":
+                case "orderBy":
+                case "limit":
+                case "startAfter":
+                    return mock(Query.class, node(path));
+                case "get":
+                    return ApiFutures.immediateFuture(read(path));
+                case "set":
+                    String userId = path.substring(path.lastIndexOf('/') + 1);
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> data = (Map<String, Object>) args[0];
+                    jobWrites.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(data);
+                    return ApiFutures.immediateFuture(null);
+                case "update":
+                    return ApiFutures.immediateFuture(null);
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        };
+    }
+
+    private Object read(String path) {
+        String jobs = CascadeDeleteService.COLLECTION;
+        if (path.startsWith(jobs + "/")) {
+            QueryDocumentSnapshot doc = persisted.get(path.substring(jobs.length() + 1));
+            assertNotNull(doc, path);
+            return doc;
+        }
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        if (path.startsWith(jobs + "?status in ")) {
+            when(snapshot.getDocuments()).thenReturn(new ArrayList<>(persisted.values()));
+        } else {
+            queried.add(path);
+            when(snapshot.getDocuments()).thenReturn(List.of());
+        }
+        return snapshot;
+    }
+
+    private static QueryDocumentSnapshot job(String userId, String status, long attempts, List<String> completed,
+                                             Map<String, Long> deleted) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(userId);
+        when(doc.exists()).thenReturn(true);
+        DocumentReference ref = mock(DocumentReference.class);
+        when(ref.getPath()).thenReturn(CascadeDeleteService.COLLECTION + "/" + userId);
+        when(doc.getReference()).thenReturn(ref);
+        when(doc.getString("status")).thenReturn(status);
+        when(doc.getString("error")).thenReturn(CascadeDeleteService.STATUS_FAILED.equals(status) ? "DEADLINE_EXCEEDED" : null);
+        when(doc.get("attempts")).thenReturn(attempts);
+        when(doc.get("completed")).thenReturn(completed);
+        when(doc.get("deleted")).thenReturn(deleted);
+        return doc;
+    }
+}
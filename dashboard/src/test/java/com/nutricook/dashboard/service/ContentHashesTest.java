@@ -0,0 +1,128 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.FieldValue;
+
+/**
+ * Hash nội dung ổn định theo giá trị (không theo thứ tự key, Date = Timestamp cùng thời điểm, phân biệt kiểu số)
+ * và FirestoreService.dirtyFields chỉ chọn field đổi / bị bỏ.
+ */
+class ContentHashesTest {
+
+    @Test
+    void keyOrderDoesNotChangeHash() {
+        Map<String, Object> nestedA = new LinkedHashMap<>();
+        nestedA.put("x", 1);
+        nestedA.put("y", "b");
+        Map<String, Object> a = new LinkedHashMap<>();
+        a.put("name", "Phở");
+        a.put("calories", "450 kcal");
+        a.put("nutrition", nestedA);
+
+        Map<String, Object> nestedB = new LinkedHashMap<>();
+        nestedB.put("y", "b");
+        nestedB.put("x", 1);
+        Map<String, Object> b = new HashMap<>();
+        b.put("nutrition", nestedB);
+        b.put("calories", "450 kcal");
+        b.put("name", "Phở");
+
+        ContentHashes first = ContentHashes.of(a);
+        ContentHashes second = ContentHashes.of(b);
+        assertTrue(second.sameContent(first));
+        assertEquals(first.serializeFields(), second.serializeFields());
+        // Hash không đổi giữa các lần tính
+        assertEquals(first.getContentHash(), ContentHashes.of(a).getContentHash());
+    }
+
+    @Test
+    void numberTypesAreDistinguished() {
+        assertFalse(ContentHashes.of(Map.of("rating", 0)).sameContent(ContentHashes.of(Map.of("rating", 0.0))));
+        assertFalse(ContentHashes.of(Map.of("reviews", 5)).sameContent(ContentHashes.of(Map.of("reviews", 5L))));
+        assertTrue(ContentHashes.of(Map.of("rating", 4.5)).sameContent(ContentHashes.of(Map.of("rating", 4.5))));
+    }
+
+    @Test
+    void dateAndTimestampOfSameInstantHashEqual() {
+        Date date = new Date(1_700_000_000_123L);
+        ContentHashes fromDate = ContentHashes.of(Map.of("createdAt", date));
+        ContentHashes fromTimestamp = ContentHashes.of(Map.of("createdAt", Timestamp.of(date)));
+        assertTrue(fromTimestamp.sameContent(fromDate));
+        assertFalse(ContentHashes.of(Map.of("createdAt", new Date(1_700_000_000_124L))).sameContent(fromDate));
+    }
+
+    @Test
+    void stringsAndListsAreUnambiguous() {
+        // "a,b" trong một phần tử khác với hai phần tử "a" và "b"
+        assertFalse(ContentHashes.of(Map.of("tags", List.of("a,b"))).sameContent(ContentHashes.of(Map.of("tags", List.of("a", "b")))));
+        Map<String, Object> nullValue = new HashMap<>();
+        nullValue.put("v", null);
+        assertFalse(ContentHashes.of(Map.of("v", "null")).sameContent(ContentHashes.of(nullValue)));
+        assertFalse(ContentHashes.of(Map.of("v", "1")).sameContent(ContentHashes.of(Map.of("v", 1))));
+    }
+
+    @Test
+    void volatileFieldsAreIgnored() {
+        ContentHashes before = ContentHashes.of(Map.of("name", "Cơm", "updatedAt", Timestamp.ofTimeSecondsAndNanos(1, 0)));
+        ContentHashes after = ContentHashes.of(Map.of("name", "Cơm", "updatedAt", Timestamp.ofTimeSecondsAndNanos(2, 0)));
+        assertTrue(after.sameContent(before));
+        assertTrue(after.changedFields(before).isEmpty());
+    }
+
+    @Test
+    void changedAndRemovedFields() {
+        ContentHashes previous = ContentHashes.of(Map.of("name", "Cơm", "calories", "200 kcal", "unit", "g"));
+        ContentHashes current = ContentHashes.of(Map.of("name", "Cơm", "calories", "210 kcal", "fat", 1.5));
+        assertEquals(Set.of("calories", "fat"), current.changedFields(previous));
+        assertEquals(Set.of("unit"), current.removedFields(previous));
+        assertEquals(Set.of("name", "calories", "fat"), current.changedFields(null));
+        assertTrue(current.removedFields(null).isEmpty());
+    }
+
+    @Test
+    void parseRoundTripsSerializedFields() {
+        ContentHashes hashes = ContentHashes.of(Map.of("name", "Bún", "calories", "350 kcal", "rating", 4.0));
+        ContentHashes parsed = ContentHashes.parse(hashes.getContentHash(), hashes.serializeFields());
+        assertTrue(hashes.sameContent(parsed));
+        assertTrue(hashes.changedFields(parsed).isEmpty());
+        assertTrue(hashes.removedFields(parsed).isEmpty());
+        assertNotEquals(hashes.getContentHash(), ContentHashes.of(Map.of("name", "Bún")).getContentHash());
+    }
+
+    @Test
+    void dirtyFieldsSelectsChangedRemovedAndVolatileFields() {
+        Map<String, Object> before = Map.of("name", "Cơm", "calories", "200 kcal", "unit", "g", "updatedAt", Timestamp.now());
+        ContentHashes previous = ContentHashes.of(before);
+
+        // Chưa từng đồng bộ: ghi cả document
+        assertNull(FirestoreService.dirtyFields(before, previous, null));
+        // Không đổi (kể cả updatedAt mới): không ghi
+        Map<String, Object> same = new HashMap<>(before);
+        same.put("updatedAt", Timestamp.now());
+        assertTrue(FirestoreService.dirtyFields(same, ContentHashes.of(same), previous).isEmpty());
+
+        Timestamp now = Timestamp.now();
+        Map<String, Object> after = Map.of("name", "Cơm", "calories", "250 kcal", "fat", 2.0, "updatedAt", now);
+        Map<String, Object> dirty = FirestoreService.dirtyFields(after, ContentHashes.of(after), previous);
+        assertEquals(Set.of("calories", "fat", "unit", "updatedAt"), dirty.keySet());
+        assertEquals("250 kcal", dirty.get("calories"));
+        assertEquals(2.0, dirty.get("fat"));
+        assertEquals(FieldValue.delete(), dirty.get("unit"));
+        assertEquals(now, dirty.get("updatedAt"));
+    }
+}
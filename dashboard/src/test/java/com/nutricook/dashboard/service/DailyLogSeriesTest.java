@@ -0,0 +1,243 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * DailyLogSeries (prefix sum theo block 16 ngày) so với cộng trực tiếp từng ngày trên cùng dữ liệu, qua các chuỗi
+ * put/remove/prepend/setTarget ngẫu nhiên. Giá trị log là số nguyên nên tổng double khớp tuyệt đối.
+ */
+class DailyLogSeriesTest {
+
+    private static final LocalDate ORIGIN = LocalDate.of(2024, 6, 1);
+
+    @Test
+    void randomOperationsMatchBruteForce() {
+        for (long seed = 1; seed <= 20; seed++) {
+            Random random = new Random(seed);
+            float target = 1800f + random.nextInt(600);
+            DailyLogSeries series = new DailyLogSeries(target);
+            TreeMap<LocalDate, float[]> expected = new TreeMap<>();
+            for (int step = 0; step < 600; step++) {
+                int op = random.nextInt(10);
+                if (op < 5) {
+                    // Append / ghi đè quanh cuối, có khoảng trống
+                    LocalDate date = expected.isEmpty() ? ORIGIN
+                            : expected.lastKey().plusDays(random.nextInt(40) - 5);
+                    put(series, expected, date, random);
+                } else if (op < 7) {
+                    // Ngày trước ngày đầu tiên: prepend
+                    LocalDate date = expected.isEmpty() ? ORIGIN
+                            : expected.firstKey().minusDays(1 + random.nextInt(50));
+                    put(series, expected, date, random);
+                } else if (op < 9 && !expected.isEmpty()) {
+                    // Sửa hoặc xóa một ngày bất kỳ trong khoảng (có thể là ngày trống)
+                    LocalDate date = randomDay(random, expected);
+                    if (random.nextBoolean()) {
+                        put(series, expected, date, random);
+                    } else {
+                        series.remove(date);
+                        expected.remove(date);
+                    }
+                } else if (random.nextInt(5) == 0) {
+                    target = 1500f + random.nextInt(1000);
+                    series.setTarget(target);
+                }
+                if (step % 20 == 0) assertWindows(series, expected, target, random);
+            }
+            assertWindows(series, expected, target, random);
+            assertEquals(expected.size(), series.getLogCount());
+        }
+    }
+
+    @Test
+    void appendsAcrossBlockBoundariesWithGaps() {
+        DailyLogSeries series = new DailyLogSeries(2000f);
+        TreeMap<LocalDate, float[]> expected = new TreeMap<>();
+        Random random = new Random(99);
+        // Khoảng trống đúng 16, 15, 17, 32 ngày để block đóng khi đi qua ô trống
+        int[] gaps = {1, 16, 15, 17, 32, 1, 1, 48, 3};
+        LocalDate date = ORIGIN;
+        for (int gap : gaps) {
+            date = date.plusDays(gap);
+            put(series, expected, date, random);
+            assertWindows(series, expected, 2000f, random);
+        }
+        assertEquals(date.toEpochDay() - ORIGIN.plusDays(1).toEpochDay() + 1, series.getDays());
+    }
+
+    @Test
+    void prependThenEditKeepsPrefixConsistent() {
+        DailyLogSeries series = new DailyLogSeries(2000f);
+        TreeMap<LocalDate, float[]> expected = new TreeMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 100; i++) put(series, expected, ORIGIN.plusDays(i), random);
+        // Prepend không trùng bội số 16, rồi sửa/xóa ở block đầu và block cuối
+        put(series, expected, ORIGIN.minusDays(37), random);
+        assertWindows(series, expected, 2000f, random);
+        put(series, expected, ORIGIN.minusDays(37), random);
+        series.remove(ORIGIN.plusDays(99));
+        expected.remove(ORIGIN.plusDays(99));
+        put(series, expected, ORIGIN.minusDays(20), random);
+        assertWindows(series, expected, 2000f, random);
+    }
+
+    @Test
+    void windowEdges() {
+        DailyLogSeries series = new DailyLogSeries(2000f);
+        assertEquals(0, series.window(null, null).getDays());
+        assertEquals(0, series.window(ORIGIN, ORIGIN).getDays());
+
+        series.put(ORIGIN, 2000f, 1f, 1f, 1f);
+        series.put(ORIGIN.plusDays(31), 1000f, 1f, 1f, 1f);
+        assertEquals(2, series.window(null, null).getDays());
+        assertEquals(1, series.window(null, null).getDaysReachedGoal());
+        // Đầu cuối bao gồm
+        assertEquals(1, series.window(ORIGIN, ORIGIN).getDays());
+        assertEquals(1, series.window(ORIGIN.plusDays(31), ORIGIN.plusDays(31)).getDays());
+        // Ngoài khoảng dữ liệu
+        assertEquals(0, series.window(ORIGIN.minusDays(10), ORIGIN.minusDays(1)).getDays());
+        assertEquals(0, series.window(ORIGIN.plusDays(32), ORIGIN.plusDays(400)).getDays());
+        assertEquals(2, series.window(ORIGIN.minusDays(1000), ORIGIN.plusDays(1000)).getDays());
+        // from > to
+        assertEquals(0, series.window(ORIGIN.plusDays(31), ORIGIN).getDays());
+        assertEquals(3000d, series.window(ORIGIN.minusDays(1), null).getTotalCalories());
+    }
+
+    @Test
+    void applyToMatchesAccumulator() {
+        DailyLogSeries series = new DailyLogSeries(2100f);
+        TreeMap<LocalDate, float[]> expected = new TreeMap<>();
+        Random random = new Random(17);
+        for (int i = 0; i < 200; i++) put(series, expected, ORIGIN.plusDays(random.nextInt(400) - 100), random);
+
+        NutritionAccumulator accumulator = new NutritionAccumulator(2100f);
+        for (Map.Entry<LocalDate, float[]> entry : expected.entrySet()) {
+            float[] v = entry.getValue();
+            accumulator.add(new DailyLog(entry.getKey().toString(), v[0], v[1], v[2], v[3], null));
+        }
+        NutritionStats want = new NutritionStats();
+        accumulator.applyTo(want);
+        NutritionStats got = new NutritionStats();
+        series.applyTo(got);
+        assertEquals(want.getDaysTracked(), got.getDaysTracked());
+        assertEquals(want.getDaysReachedGoal(), got.getDaysReachedGoal());
+        assertEquals(want.getAverageCalories(), got.getAverageCalories());
+        assertEquals(want.getAverageProtein(), got.getAverageProtein());
+        assertEquals(want.getAverageFat(), got.getAverageFat());
+        assertEquals(want.getAverageCarb(), got.getAverageCarb());
+        assertEquals(want.getGoalAchievementRate(), got.getGoalAchievementRate());
+        assertEquals(dateIds(want.getWeeklyLogs()), dateIds(got.getWeeklyLogs()));
+    }
+
+    @Test
+    void bytesPerUserDay() {
+        for (int days : new int[] {365, 1825, 3650}) {
+            DailyLogSeries series = new DailyLogSeries(2000f);
+            for (int i = 0; i < days; i++) series.put(ORIGIN.plusDays(i), 1800f, 80f, 60f, 220f);
+            // Trong lúc append mảng tăng 1.5 lần nên phần dư tối đa nửa mảng
+            double appending = (double) series.estimatedBytes() / days;
+            assertTrue(appending < 29, days + " days while appending: " + appending + " B/day");
+            series.trim(0);
+            // 4 float (16 B) + 1 bit + prefix 40 B / 16 ngày (2.5 B) ~ 18.6 B/ngày, cộng header mảng
+            double trimmed = (double) series.estimatedBytes() / days;
+            assertTrue(trimmed >= 18.6 && trimmed < 21, days + " days after trim: " + trimmed + " B/day");
+        }
+    }
+
+    // ==========================================================
+
+    private static void put(DailyLogSeries series, TreeMap<LocalDate, float[]> expected, LocalDate date, Random random) {
+        // Khoảng 1/6 số ngày có calories = 0 (có log nhưng không được tính)
+        float[] v = {random.nextInt(6) == 0 ? 0f : 1000 + random.nextInt(2000),
+                random.nextInt(150), random.nextInt(90), random.nextInt(300)};
+        series.put(date, v[0], v[1], v[2], v[3]);
+        expected.put(date, v);
+    }
+
+    private static LocalDate randomDay(Random random, TreeMap<LocalDate, float[]> expected) {
+        long first = expected.firstKey().toEpochDay();
+        long last = expected.lastKey().toEpochDay();
+        return LocalDate.ofEpochDay(first + (long) (random.nextDouble() * (last - first + 1)));
+    }
+
+    private static void assertWindows(DailyLogSeries series, TreeMap<LocalDate, float[]> expected, float target,
+                                      Random random) {
+        assertWindow(series, expected, target, null, null);
+        if (expected.isEmpty()) return;
+        LocalDate first = expected.firstKey();
+        LocalDate last = expected.lastKey();
+        assertWindow(series, expected, target, first, last);
+        assertWindow(series, expected, target, first.minusDays(3), null);
+        assertWindow(series, expected, target, null, last.plusDays(3));
+        for (int i = 0; i < 25; i++) {
+            LocalDate a = randomDay(random, expected).plusDays(random.nextInt(11) - 5);
+            LocalDate b = a.plusDays(random.nextInt(70) - 5);
+            assertWindow(series, expected, target, a, b);
+        }
+        // logs/latest/dailyCalories đọc cùng các cột
+        assertEquals(new ArrayList<>(expected.keySet()), dates(series.logs(null, null)));
+        List<LocalDate> tail = new ArrayList<>(expected.descendingKeySet()).subList(0, Math.min(7, expected.size()));
+        java.util.Collections.reverse(tail);
+        assertEquals(tail, dates(series.latest(7)));
+        float[] calories = new float[40];
+        for (int d = 0; d < calories.length; d++) {
+            float[] v = expected.get(last.minusDays(calories.length - 1 - d));
+            calories[d] = v != null ? v[0] : 0f;
+        }
+        assertArrayEquals(calories, series.dailyCalories(last, calories.length));
+    }
+
+    private static void assertWindow(DailyLogSeries series, TreeMap<LocalDate, float[]> expected, float target,
+                                     LocalDate from, LocalDate to) {
+        double cal = 0, pro = 0, fat = 0, carb = 0;
+        int days = 0, reached = 0;
+        for (Map.Entry<LocalDate, float[]> entry : expected.entrySet()) {
+            LocalDate date = entry.getKey();
+            if ((from != null && date.isBefore(from)) || (to != null && date.isAfter(to))) continue;
+            float[] v = entry.getValue();
+            if (v[0] <= 0) continue;
+            cal += v[0];
+            pro += v[1];
+            fat += v[2];
+            carb += v[3];
+            days++;
+            if (v[0] >= target * 0.95f) reached++;
+        }
+        DailyLogSeries.Window w = series.window(from, to);
+        String range = from + ".." + to;
+        assertEquals(days, w.getDays(), range);
+        assertEquals(reached, w.getDaysReachedGoal(), range);
+        assertEquals(cal, w.getTotalCalories(), range);
+        assertEquals(pro, w.getTotalProtein(), range);
+        assertEquals(fat, w.getTotalFat(), range);
+        assertEquals(carb, w.getTotalCarb(), range);
+    }
+
+    private static List<LocalDate> dates(List<DailyLog> logs) {
+        List<LocalDate> out = new ArrayList<>();
+        for (DailyLog log : logs) out.add(LocalDate.parse(log.getDateId()));
+        return out;
+    }
+
+    private static List<String> dateIds(List<DailyLog> logs) {
+        List<String> out = new ArrayList<>();
+        if (logs != null) {
+            for (DailyLog log : logs) out.add(log.getDateId());
+        }
+        return out;
+    }
+}
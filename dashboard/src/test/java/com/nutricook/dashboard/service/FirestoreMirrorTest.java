@@ -0,0 +1,197 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.nutricook.dashboard.entity.FirestorePage;
+
+/**
+ * FirestoreMirror nhận snapshot từ listener giả: áp thay đổi (thêm/sửa/xóa), chỉ mục khóa phụ khi khóa đổi,
+ * thứ tự và phân trang page(), và trở lại "chưa warm" khi listener lỗi.
+ */
+class FirestoreMirrorTest {
+
+    /** Entity thử: tên + điểm, khóa phụ là mã số. */
+    private record Item(String name, int score, Long code) {
+    }
+
+    private final AtomicReference<EventListener<QuerySnapshot>> listener = new AtomicReference<>();
+    private FirestoreMirror<Item> mirror;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        Query query = mock(Query.class);
+        when(query.addSnapshotListener(any(EventListener.class))).thenAnswer(invocation -> {
+            listener.set(invocation.getArgument(0));
+            return mock(ListenerRegistration.class);
+        });
+        // Điểm giảm dần, trùng điểm thì theo tên
+        Comparator<Item> order = Comparator.comparingInt(Item::score).reversed().thenComparing(Item::name);
+        mirror = new FirestoreMirror<>("items", doc -> {
+            Object name = doc.get("name");
+            if ("bad".equals(name)) throw new IllegalStateException("không decode được");
+            if (name == null) return null;
+            return new Item((String) name, ((Number) doc.get("score")).intValue(), (Long) doc.get("code"));
+        }, order, Item::code);
+        mirror.start(query);
+    }
+
+    @Test
+    void notWarmUntilFirstSnapshot() {
+        assertFalse(mirror.isWarm());
+        emit(added("a", "An", 5, 1L));
+        assertTrue(mirror.isWarm());
+        assertEquals(1, mirror.size());
+        assertEquals("An", mirror.get("a").name());
+    }
+
+    @Test
+    void appliesAddModifyRemove() {
+        emit(added("a", "An", 5, 1L), added("b", "Bình", 7, 2L), added("c", "Chi", 3, 3L));
+        assertEquals(List.of("Bình", "An", "Chi"), names(mirror.values()));
+
+        emit(modified("a", "An", 9, 1L), removed("c"));
+        assertEquals(List.of("An", "Bình"), names(mirror.values()));
+        assertNull(mirror.get("c"));
+        assertNull(mirror.getBySecondaryKey(3L));
+        assertEquals(2, mirror.size());
+    }
+
+    @Test
+    void secondaryIndexFollowsKeyChanges() {
+        emit(added("a", "An", 5, 1L), added("b", "Bình", 7, 2L));
+        assertSame(mirror.get("a"), mirror.getBySecondaryKey(1L));
+
+        // Khóa phụ đổi: khóa cũ bị bỏ khỏi chỉ mục
+        emit(modified("a", "An", 5, 10L));
+        assertNull(mirror.getBySecondaryKey(1L));
+        assertEquals("An", mirror.getBySecondaryKey(10L).name());
+
+        // Document không decode được / decode ra null: bị bỏ khỏi cả hai chỉ mục
+        emit(modified("a", "bad", 5, 10L), modified("b", null, 0, 2L));
+        assertNull(mirror.get("a"));
+        assertNull(mirror.getBySecondaryKey(10L));
+        assertNull(mirror.get("b"));
+        assertNull(mirror.getBySecondaryKey(2L));
+        assertEquals(0, mirror.size());
+    }
+
+    @Test
+    void pagesFollowOrderAndCursor() {
+        List<DocumentChange> changes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) changes.add(added("d" + i, "N" + i, i % 4, (long) i));
+        emit(changes.toArray(new DocumentChange[0]));
+        List<String> all = names(mirror.values());
+
+        FirestorePage<Item> first = mirror.page(null, 4, null);
+        assertEquals(all.subList(0, 4), names(first.getItems()));
+        assertTrue(first.isHasNext());
+
+        // Cursor là doc ID của phần tử cuối; trang sau tiếp tục ngay sau nó
+        List<String> collected = new ArrayList<>(names(first.getItems()));
+        FirestorePage<Item> page = first;
+        while (page.isHasNext()) {
+            page = mirror.page(FirestorePage.decodeCursor(page.getNextCursor()), 4, null);
+            collected.addAll(names(page.getItems()));
+        }
+        assertEquals(all, collected);
+
+        // Filter áp trên từng trang quét; cursor vẫn tiến theo phần tử đã quét
+        FirestorePage<Item> filtered = mirror.page(null, 5, item -> item.score() >= 2);
+        for (Item item : filtered.getItems()) assertTrue(item.score() >= 2);
+
+        // Cursor không còn trong mirror: null để caller đọc thẳng Firestore
+        emit(removed("d3"));
+        assertNull(mirror.page("d3", 4, null));
+    }
+
+    @Test
+    void pagesByDocumentIdSurviveDeletedCursor() {
+        List<DocumentChange> changes = new ArrayList<>();
+        for (int i = 0; i < 7; i++) changes.add(added("d" + i, "N" + i, 7 - i, (long) i));
+        emit(changes.toArray(new DocumentChange[0]));
+
+        FirestorePage<Item> first = mirror.pageByDocumentId(null, 3, null);
+        assertEquals(List.of("N0", "N1", "N2"), names(first.getItems()));
+        assertEquals("d2", FirestorePage.decodeCursor(first.getNextCursor()));
+
+        // Khác page(): document mốc đã bị xóa vẫn tiếp tục được theo thứ tự ID
+        emit(removed("d2"));
+        FirestorePage<Item> second = mirror.pageByDocumentId("d2", 3, null);
+        assertEquals(List.of("N3", "N4", "N5"), names(second.getItems()));
+        FirestorePage<Item> last = mirror.pageByDocumentId("d5", 3, null);
+        assertEquals(List.of("N6"), names(last.getItems()));
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    void listenerErrorMarksCold() {
+        emit(added("a", "An", 5, 1L));
+        FirestoreException error = mock(FirestoreException.class);
+        when(error.getMessage()).thenReturn("PERMISSION_DENIED");
+        listener.get().onEvent(null, error);
+        assertFalse(mirror.isWarm());
+        assertEquals(false, mirror.status().get("warm"));
+        assertEquals("PERMISSION_DENIED", mirror.status().get("lastError"));
+    }
+
+    // ==========================================================
+
+    private void emit(DocumentChange... changes) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocumentChanges()).thenReturn(List.of(changes));
+        listener.get().onEvent(snapshot, null);
+    }
+
+    private static DocumentChange added(String id, String name, int score, Long code) {
+        return change(DocumentChange.Type.ADDED, id, name, score, code);
+    }
+
+    private static DocumentChange modified(String id, String name, int score, Long code) {
+        return change(DocumentChange.Type.MODIFIED, id, name, score, code);
+    }
+
+    private static DocumentChange removed(String id) {
+        return change(DocumentChange.Type.REMOVED, id, null, 0, null);
+    }
+
+    private static DocumentChange change(DocumentChange.Type type, String id, String name, int score, Long code) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.get("name")).thenReturn(name);
+        when(doc.get("score")).thenReturn(score);
+        when(doc.get("code")).thenReturn(code);
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getType()).thenReturn(type);
+        when(change.getDocument()).thenReturn(doc);
+        return change;
+    }
+
+    private static List<String> names(List<Item> items) {
+        List<String> out = new ArrayList<>();
+        for (Item item : items) out.add(item.name());
+        return out;
+    }
+}
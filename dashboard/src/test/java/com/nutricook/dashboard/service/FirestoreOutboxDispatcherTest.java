@@ -0,0 +1,246 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+
+import com.nutricook.dashboard.entity.BulkSyncReport;
+import com.nutricook.dashboard.entity.Category;
+import com.nutricook.dashboard.entity.FirestoreOutboxEvent;
+import com.nutricook.dashboard.entity.FirestoreOutboxState;
+import com.nutricook.dashboard.entity.FoodItem;
+import com.nutricook.dashboard.repository.CategoryRepository;
+import com.nutricook.dashboard.repository.FirestoreOutboxRepository;
+import com.nutricook.dashboard.repository.FirestoreOutboxStateRepository;
+import com.nutricook.dashboard.repository.FoodItemRepository;
+
+/**
+ * FirestoreOutboxDispatcher với repository giả lập bảng outbox trong bộ nhớ và bulkWriteAsync được stub:
+ * gộp event theo entity, retry chỉ các entity lỗi theo backoff, high-water mark không vượt event chưa gửi.
+ */
+class FirestoreOutboxDispatcherTest {
+
+    private static final long MAX_BACKOFF_SECONDS = 5;
+
+    private final TreeMap<Long, FirestoreOutboxEvent> outbox = new TreeMap<>();
+    private final FirestoreOutboxState[] state = new FirestoreOutboxState[1];
+    // Document id ghi lỗi theo collection ("foodItems:1")
+    private final Set<String> failing = new HashSet<>();
+    private long nextId = 1;
+
+    private FirestoreService firestoreService;
+    private FirestoreOutboxRepository outboxRepository;
+    private FirestoreOutboxStateRepository stateRepository;
+    private FoodItemRepository foodItemRepository;
+    private CategoryRepository categoryRepository;
+    private FirestoreOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        outboxRepository = mock(FirestoreOutboxRepository.class);
+        when(outboxRepository.findDue(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            Pageable page = invocation.getArgument(1);
+            List<FirestoreOutboxEvent> due = new ArrayList<>();
+            for (FirestoreOutboxEvent event : outbox.values()) {
+                if (due.size() == page.getPageSize()) break;
+                if (!event.getNextAttemptAt().isAfter(now)) due.add(event);
+            }
+            return due;
+        });
+        when(outboxRepository.deleteDispatched(anyString(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            String type = invocation.getArgument(0);
+            Long aggregateId = invocation.getArgument(1);
+            long maxId = invocation.getArgument(2);
+            int before = outbox.size();
+            outbox.values().removeIf(e -> e.getAggregateType().equals(type) && e.getAggregateId().equals(aggregateId)
+                    && e.getId() <= maxId);
+            return before - outbox.size();
+        });
+        when(outboxRepository.findFirstByOrderByIdAsc()).thenAnswer(invocation ->
+                outbox.isEmpty() ? null : outbox.firstEntry().getValue());
+        when(outboxRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        stateRepository = mock(FirestoreOutboxStateRepository.class);
+        when(stateRepository.findById(anyString())).thenAnswer(invocation -> Optional.ofNullable(state[0]));
+        when(stateRepository.save(any())).thenAnswer(invocation -> state[0] = invocation.getArgument(0));
+
+        foodItemRepository = mock(FoodItemRepository.class);
+        when(foodItemRepository.findAllWithCategoryByIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<FoodItem> foods = new ArrayList<>();
+            for (Long id : (Collection<Long>) invocation.getArgument(0)) {
+                if (id >= 100) continue; // id >= 100: đã bị xóa khỏi MySQL
+                FoodItem food = new FoodItem("Món " + id, "100 kcal", "", null);
+                food.setId(id);
+                foods.add(food);
+            }
+            return foods;
+        });
+        categoryRepository = mock(CategoryRepository.class);
+        when(categoryRepository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            List<Category> categories = new ArrayList<>();
+            for (Long id : (Iterable<Long>) invocation.getArgument(0)) {
+                Category category = new Category("Nhóm " + id, "", "", "");
+                category.setId(id);
+                categories.add(category);
+            }
+            return categories;
+        });
+
+        firestoreService = mock(FirestoreService.class);
+        when(firestoreService.bulkWriteAsync(anyString(), anyMap(), anyCollection())).thenAnswer(invocation -> {
+            String collection = invocation.getArgument(0);
+            Map<String, Map<String, Object>> upserts = invocation.getArgument(1);
+            Collection<String> deletes = invocation.getArgument(2);
+            List<BulkSyncReport.ItemResult> items = new ArrayList<>();
+            for (String id : upserts.keySet()) items.add(result(collection, id, BulkSyncReport.ItemResult.SET));
+            for (String id : deletes) items.add(result(collection, id, BulkSyncReport.ItemResult.DELETE));
+            return CompletableFuture.completedFuture(new BulkSyncReport(collection, items, 0));
+        });
+
+        dispatcher = new FirestoreOutboxDispatcher(firestoreService, outboxRepository, stateRepository,
+                foodItemRepository, categoryRepository, 200, 1000, MAX_BACKOFF_SECONDS);
+    }
+
+    private BulkSyncReport.ItemResult result(String collection, String id, String action) {
+        return failing.contains(collection + ":" + id)
+                ? new BulkSyncReport.ItemResult(id, action, "UNAVAILABLE")
+                : BulkSyncReport.ItemResult.ok(id, action);
+    }
+
+    private FirestoreOutboxEvent enqueue(String type, long aggregateId) {
+        FirestoreOutboxEvent event = new FirestoreOutboxEvent(type, aggregateId, FirestoreOutboxEvent.UPSERT);
+        event.setId(nextId++);
+        event.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        outbox.put(event.getId(), event);
+        return event;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void eventsOfOneAggregateCollapseIntoOneWrite() throws Exception {
+        enqueue(FirestoreOutboxEvent.FOOD, 1);
+        enqueue(FirestoreOutboxEvent.FOOD, 1);
+        enqueue(FirestoreOutboxEvent.FOOD, 2);
+        enqueue(FirestoreOutboxEvent.FOOD, 1);
+        enqueue(FirestoreOutboxEvent.CATEGORY, 7);
+        enqueue(FirestoreOutboxEvent.FOOD, 100);
+
+        assertEquals(4, dispatcher.drain());
+
+        ArgumentCaptor<Map<String, Map<String, Object>>> upserts = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Collection<String>> deletes = ArgumentCaptor.forClass(Collection.class);
+        verify(firestoreService, times(1)).bulkWriteAsync(eq("foodItems"), upserts.capture(), deletes.capture());
+        assertEquals(Set.of("1", "2"), upserts.getValue().keySet());
+        // Món không còn trong MySQL thì xóa document
+        assertEquals(List.of("100"), new ArrayList<>(deletes.getValue()));
+        verify(firestoreService, times(1)).bulkWriteAsync(eq("categories"), anyMap(), anyCollection());
+
+        // Một lần xóa cho mỗi entity, gồm mọi event <= event mới nhất của entity đó
+        verify(outboxRepository).deleteDispatched(FirestoreOutboxEvent.FOOD, 1L, 4L);
+        verify(outboxRepository).deleteDispatched(FirestoreOutboxEvent.FOOD, 2L, 3L);
+        verify(outboxRepository).deleteDispatched(FirestoreOutboxEvent.CATEGORY, 7L, 5L);
+        verify(outboxRepository).deleteDispatched(FirestoreOutboxEvent.FOOD, 100L, 6L);
+        assertTrue(outbox.isEmpty());
+        assertEquals(6L, state[0].getHighWaterMark());
+        assertEquals(4L, state[0].getDispatchedCount());
+    }
+
+    @Test
+    void partialFailureRetriesOnlyFailedAggregates() throws Exception {
+        FirestoreOutboxEvent first = enqueue(FirestoreOutboxEvent.FOOD, 1);
+        enqueue(FirestoreOutboxEvent.FOOD, 2);
+        FirestoreOutboxEvent second = enqueue(FirestoreOutboxEvent.FOOD, 1);
+        enqueue(FirestoreOutboxEvent.CATEGORY, 7);
+        failing.add("foodItems:1");
+
+        LocalDateTime before = LocalDateTime.now();
+        assertEquals(2, dispatcher.drain());
+
+        assertEquals(Set.of(first.getId(), second.getId()), outbox.keySet());
+        verify(outboxRepository, never()).deleteDispatched(eq(FirestoreOutboxEvent.FOOD), eq(1L), anyLong());
+        verify(outboxRepository).saveAll(List.of(first, second));
+        for (FirestoreOutboxEvent event : List.of(first, second)) {
+            assertEquals(1, event.getAttempts());
+            assertEquals("UNAVAILABLE", event.getLastError());
+            assertTrue(event.getNextAttemptAt().isAfter(before.plusSeconds(1)));
+        }
+        // Chưa đến hạn nên lượt drain tiếp theo không gửi lại
+        assertEquals(0, dispatcher.drain());
+        verify(firestoreService, times(1)).bulkWriteAsync(eq("foodItems"), anyMap(), anyCollection());
+    }
+
+    @Test
+    void backoffDoublesUpToMaximum() throws Exception {
+        FirestoreOutboxEvent event = enqueue(FirestoreOutboxEvent.FOOD, 1);
+        failing.add("foodItems:1");
+        long[] expected = {2, 4, 5, 5};
+        for (int attempt = 0; attempt < expected.length; attempt++) {
+            event.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+            LocalDateTime before = LocalDateTime.now();
+            dispatcher.drain();
+            LocalDateTime after = LocalDateTime.now();
+            assertEquals(attempt + 1, event.getAttempts());
+            assertTrue(!event.getNextAttemptAt().isBefore(before.plusSeconds(expected[attempt])), "attempt " + attempt);
+            assertTrue(!event.getNextAttemptAt().isAfter(after.plusSeconds(expected[attempt])), "attempt " + attempt);
+        }
+        // Hết lỗi thì gửi được và xóa khỏi outbox
+        failing.clear();
+        event.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        assertEquals(1, dispatcher.drain());
+        assertTrue(outbox.isEmpty());
+    }
+
+    @Test
+    void highWaterMarkNeverPassesUndeliveredEvent() throws Exception {
+        for (long id = 1; id <= 5; id++) enqueue(FirestoreOutboxEvent.FOOD, id);
+        failing.add("foodItems:2");
+
+        dispatcher.drain();
+        assertEquals(Set.of(2L), outbox.keySet());
+        assertEquals(1L, state[0].getHighWaterMark());
+
+        // Event mới sau event lỗi: mốc vẫn dừng trước event lỗi
+        for (long id = 10; id <= 12; id++) enqueue(FirestoreOutboxEvent.FOOD, id);
+        dispatcher.drain();
+        assertEquals(1L, state[0].getHighWaterMark());
+        assertTrue(state[0].getHighWaterMark() < outbox.firstKey());
+
+        // Event lỗi gửi được thì mốc lên tới event cuối
+        failing.clear();
+        outbox.get(2L).setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        dispatcher.drain();
+        assertTrue(outbox.isEmpty());
+        assertEquals(8L, state[0].getHighWaterMark());
+        assertNull(outboxRepository.findFirstByOrderByIdAsc());
+    }
+}
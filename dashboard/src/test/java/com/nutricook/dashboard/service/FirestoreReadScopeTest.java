@@ -0,0 +1,181 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+
+/**
+ * Gộp đọc trong FirestoreReadScope với Query thật của SDK (chỉ get() được giả lập, không có kết nối):
+ * query có filter/limit và subcollection được gộp, quét cả collection gốc/collection group thì không,
+ * lần đọc lỗi không được giữ lại, ghi vào một collection bỏ các lần đọc đã giữ của collection đó, và 429 khi vượt
+ * read budget không bị nuốt trong các lớp bọc ExecutionException/CompletionException.
+ */
+class FirestoreReadScopeTest {
+
+    private static Firestore firestore;
+    private FirestoreReadScope scope;
+
+    @BeforeAll
+    static void createClient() {
+        firestore = FirestoreOptions.newBuilder()
+                .setProjectId("test-project")
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+    }
+
+    @AfterAll
+    static void closeClient() throws Exception {
+        firestore.close();
+    }
+
+    @BeforeEach
+    void openScope() {
+        scope = FirestoreReadScope.open("GET /test", 0L, false);
+    }
+
+    @AfterEach
+    void closeScope() {
+        FirestoreReadScope.close();
+    }
+
+    @Test
+    void filteredAndSubcollectionQueriesAreShared() {
+        Query filtered = succeeding(firestore.collection("posts").whereEqualTo("authorId", "u1"));
+        CompletableFuture<QuerySnapshot> first = FirestoreReadScope.get(filtered);
+        assertSame(first, FirestoreReadScope.get(filtered));
+        verify(filtered, times(1)).get();
+
+        Query history = succeeding(firestore.collection("users").document("u1").collection("daily_logs"));
+        FirestoreReadScope.get(history).join();
+        FirestoreReadScope.get(history).join();
+        verify(history, times(1)).get();
+
+        assertEquals(2, scope.getIssued());
+        assertEquals(2, scope.getDeduplicated());
+    }
+
+    @Test
+    void collectionScansAreNotShared() {
+        Query posts = succeeding(firestore.collection("posts"));
+        Query logs = succeeding(firestore.collectionGroup("daily_logs"));
+        for (int i = 0; i < 2; i++) {
+            FirestoreReadScope.get(posts).join();
+            FirestoreReadScope.get(logs).join();
+        }
+        verify(posts, times(2)).get();
+        verify(logs, times(2)).get();
+        assertEquals(4, scope.getIssued());
+        assertEquals(0, scope.getDeduplicated());
+        // Không giữ lại nên cũng không peek được
+        assertNull(FirestoreReadScope.peek(posts));
+    }
+
+    @Test
+    void failedReadIsRetried() throws Exception {
+        Query query = spy(firestore.collection("posts").limit(10));
+        doReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("UNAVAILABLE")))
+                .doReturn(ApiFutures.immediateFuture(mock(QuerySnapshot.class)))
+                .when(query).get();
+
+        assertThrows(ExecutionException.class, () -> FirestoreReadScope.get(query).get());
+        FirestoreReadScope.get(query).get();
+        verify(query, times(2)).get();
+
+        // Lần đọc thành công thì được giữ như thường
+        FirestoreReadScope.get(query).get();
+        verify(query, times(2)).get();
+        assertEquals(1, scope.getDeduplicated());
+    }
+
+    @Test
+    void writeClearsReadsOfItsCollection() {
+        Query posts = succeeding(firestore.collection("posts").whereEqualTo("authorId", "u1"));
+        Query users = succeeding(firestore.collection("users").limit(5));
+        Query logs = succeeding(firestore.collection("users").document("u1").collection("daily_logs").limit(5));
+        DocumentReference post = spy(firestore.collection("posts").document("p2"));
+        doReturn(ApiFutures.immediateFuture(mock(DocumentSnapshot.class))).when(post).get();
+        FirestoreReadScope.get(posts).join();
+        FirestoreReadScope.get(users).join();
+        FirestoreReadScope.get(logs).join();
+        FirestoreReadScope.get(post).join();
+
+        FirestoreReadScope.write(firestore.collection("posts").document("p1"), ApiFutures.immediateFuture("ok")).join();
+        FirestoreReadScope.get(posts).join();
+        FirestoreReadScope.get(post).join();
+        verify(posts, times(2)).get();
+        verify(post, times(2)).get();
+        // Collection khác (kể cả subcollection của users) vẫn được giữ
+        FirestoreReadScope.get(users).join();
+        FirestoreReadScope.get(logs).join();
+        verify(users, times(1)).get();
+        verify(logs, times(1)).get();
+
+        // Ghi vào subcollection chỉ bỏ query của subcollection đó
+        scope.forget(firestore.collection("users").document("u1").collection("daily_logs"));
+        FirestoreReadScope.get(logs).join();
+        FirestoreReadScope.get(users).join();
+        verify(logs, times(2)).get();
+        verify(users, times(1)).get();
+    }
+
+    @Test
+    void rejectedReadIsRethrownThroughWrappers() {
+        FirestoreReadScope.close();
+        FirestoreReadScope rejecting = FirestoreReadScope.open("GET /test", 1L, true);
+        QuerySnapshot large = mock(QuerySnapshot.class);
+        when(large.size()).thenReturn(2);
+        Query posts = spy(firestore.collection("posts").limit(2));
+        doReturn(ApiFutures.immediateFuture(large)).when(posts).get();
+        FirestoreReadScope.get(posts).join();
+        assertFalse(rejecting.isRejected());
+
+        ResponseStatusException rejected = assertThrows(ResponseStatusException.class,
+                () -> FirestoreReadScope.get(firestore.collection("users").limit(1)));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getStatusCode());
+        assertTrue(rejecting.isRejected());
+
+        // catch (Exception) quanh await/get: 429 bị bọc vẫn được ném lại, lỗi khác thì không
+        assertThrows(ResponseStatusException.class, () -> FirestoreReadScope.rethrowIfRejected(
+                new ExecutionException(new CompletionException(rejected))));
+        FirestoreReadScope.rethrowIfRejected(new ExecutionException(new IllegalStateException("UNAVAILABLE")));
+    }
+
+    // ==========================================================
+
+    private static Query succeeding(Query query) {
+        Query spied = spy(query);
+        doReturn(ApiFutures.immediateFuture(mock(QuerySnapshot.class))).when(spied).get();
+        return spied;
+    }
+}
@@ -0,0 +1,159 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.nutricook.dashboard.entity.FirestorePage;
+import com.nutricook.dashboard.entity.Post;
+
+/**
+ * Phân trang posts khi đọc thẳng Firestore: collection trộn createdAt kiểu Timestamp, số millis và thiếu hẳn
+ * field. Query giả làm như Firestore (sắp theo document ID, startAfter theo ID, limit) và ghi lại các orderBy
+ * để chắc không còn sắp theo createdAt; đi hết các trang phải gặp mỗi post đúng một lần.
+ */
+class FirestoreServicePagingTest {
+
+    private final TreeMap<String, Map<String, Object>> posts = new TreeMap<>();
+    private final List<Object> orderings = new ArrayList<>();
+    private FirestoreService service;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 23; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("content", "post " + i);
+            switch (i % 3) {
+                case 0 -> data.put("createdAt", Timestamp.ofTimeSecondsAndNanos(1_700_000_000L + i, 0));
+                case 1 -> data.put("createdAt", 1_700_000_000_000L + i * 1000L);
+                default -> { /* thiếu createdAt */ }
+            }
+            posts.put(String.format("p%02d", i), data);
+        }
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference col = mock(CollectionReference.class, query(null, Integer.MAX_VALUE));
+        when(firestore.collection("posts")).thenReturn(col);
+        service = new FirestoreService(firestore, false, "UTC", true, null, null, null, null, null, null, 1, 500, 10000);
+    }
+
+    @Test
+    void pagesEveryPostOnceRegardlessOfCreatedAtType() throws Exception {
+        Set<String> seen = new HashSet<>();
+        List<String> order = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            FirestorePage<Post> page = service.getPostsPage(5, cursor);
+            for (Post post : page.getItems()) {
+                assertTrue(seen.add(post.getId()), "lặp post " + post.getId());
+                order.add(post.getId());
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(posts.keySet(), seen);
+        assertEquals(new ArrayList<>(posts.keySet()), order);
+        assertEquals(5, pages);
+        for (Object field : orderings) assertEquals(FieldPath.documentId(), field);
+        assertFalse(orderings.isEmpty());
+    }
+
+    @Test
+    void cursorSurvivesDeletedAnchor() throws Exception {
+        FirestorePage<Post> first = service.getPostsPage(4, null);
+        String anchor = FirestorePage.decodeCursor(first.getNextCursor());
+        posts.remove(anchor);
+
+        FirestorePage<Post> second = service.getPostsPage(4, first.getNextCursor());
+        assertEquals(List.of("p04", "p05", "p06", "p07"), ids(second.getItems()));
+    }
+
+    @Test
+    void lastPageHasNoCursor() throws Exception {
+        FirestorePage<Post> page = service.getPostsPage(100, null);
+        assertEquals(posts.size(), page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    // ==========================================================
+
+    /** Query giả: startAfter(docId) + limit trên TreeMap posts; các method khác trả về mặc định của Mockito. */
+    private Answer<Object> query(String afterId, int limit) {
+        return invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "orderBy":
+                    orderings.add(invocation.getArgument(0));
+                    return mock(Query.class, query(afterId, limit));
+                case "startAfter":
+                    Object arg = invocation.getArgument(0);
+                    if (arg instanceof Object[]) arg = ((Object[]) arg)[0];
+                    return mock(Query.class, query((String) arg, limit));
+                case "limit":
+                    return mock(Query.class, query(afterId, invocation.getArgument(0)));
+                case "get":
+                    return ApiFutures.immediateFuture(snapshot(afterId, limit));
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        };
+    }
+
+    private QuerySnapshot snapshot(String afterId, int limit) {
+        Map<String, Map<String, Object>> tail = afterId != null ? posts.tailMap(afterId, false) : posts;
+        List<QueryDocumentSnapshot> docs = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> entry : tail.entrySet()) {
+            if (docs.size() >= limit) break;
+            docs.add(document(entry.getKey(), entry.getValue()));
+        }
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(docs);
+        when(snapshot.size()).thenReturn(docs.size());
+        return snapshot;
+    }
+
+    private static QueryDocumentSnapshot document(String id, Map<String, Object> data) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.exists()).thenReturn(true);
+        when(doc.getData()).thenReturn(data);
+        DocumentReference ref = mock(DocumentReference.class);
+        when(ref.getPath()).thenReturn("posts/" + id);
+        when(doc.getReference()).thenReturn(ref);
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            when(doc.get(FieldPath.of(field.getKey()))).thenReturn(field.getValue());
+        }
+        return doc;
+    }
+
+    private static List<String> ids(List<Post> items) {
+        List<String> out = new ArrayList<>();
+        for (Post post : items) out.add(post.getId());
+        return out;
+    }
+}
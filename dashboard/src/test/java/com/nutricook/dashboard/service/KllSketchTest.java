@@ -0,0 +1,184 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Sai số thứ hạng của KllSketch trên phân phối biết trước (hoán vị của 0..n-1 nên thứ hạng đúng của v là v+1),
+ * gộp so với một sketch đọc cả luồng, min/max chính xác và serialize.
+ */
+class KllSketchTest {
+
+    private static final double RANK_ERROR = 0.017;
+
+    @Test
+    void rankErrorWithinBoundAtDefaultK() {
+        int n = 100_000;
+        for (long seed = 1; seed <= 5; seed++) {
+            KllSketch sketch = new KllSketch();
+            for (int v : permutation(n, new Random(seed))) sketch.update(v);
+            assertEquals(n, sketch.getCount());
+            assertTrue(sketch.getRetained() <= 3 * KllSketch.DEFAULT_K, "retained " + sketch.getRetained());
+            assertMaxRankError(sketch, n);
+        }
+    }
+
+    @Test
+    void skewedDistribution() {
+        // Giá trị lặp nhiều (log-normal làm tròn): thứ hạng đúng lấy từ mảng đã sắp xếp
+        int n = 50_000;
+        Random random = new Random(7);
+        float[] values = new float[n];
+        KllSketch sketch = new KllSketch();
+        for (int i = 0; i < n; i++) {
+            values[i] = Math.round(Math.exp(7 + 0.4 * random.nextGaussian()));
+            sketch.update(values[i]);
+        }
+        java.util.Arrays.sort(values);
+        for (int q = 1; q < 100; q++) {
+            float estimate = sketch.quantile(q / 100.0);
+            // Khoảng thứ hạng [lo, hi] của giá trị ước lượng (có thể trùng nhiều phần tử)
+            int lo = lowerBound(values, estimate);
+            int hi = lowerBound(values, Math.nextUp(estimate));
+            double target = q / 100.0 * n;
+            double error = target < lo ? (lo - target) / n : target > hi ? (target - hi) / n : 0;
+            assertTrue(error <= RANK_ERROR, "q=" + q + " error=" + error);
+        }
+    }
+
+    @Test
+    void mergeMatchesSingleStream() {
+        int n = 120_000;
+        int[] data = permutation(n, new Random(11));
+        KllSketch single = new KllSketch();
+        KllSketch merged = new KllSketch();
+        // Các phần dài ngắn khác nhau, như sketch theo từng ngày
+        int from = 0;
+        Random random = new Random(3);
+        while (from < n) {
+            int to = Math.min(n, from + 1 + random.nextInt(20_000));
+            KllSketch part = new KllSketch();
+            for (int i = from; i < to; i++) {
+                part.update(data[i]);
+                single.update(data[i]);
+            }
+            long partCount = part.getCount();
+            merged.merge(part);
+            assertEquals(partCount, part.getCount());
+            from = to;
+        }
+        assertEquals(single.getCount(), merged.getCount());
+        assertEquals(single.getMin(), merged.getMin());
+        assertEquals(single.getMax(), merged.getMax());
+        assertTrue(merged.getRetained() <= 3 * KllSketch.DEFAULT_K, "retained " + merged.getRetained());
+        assertMaxRankError(single, n);
+        assertMaxRankError(merged, n);
+        for (int q = 1; q < 100; q++) {
+            double gap = Math.abs(single.quantile(q / 100.0) - merged.quantile(q / 100.0)) / n;
+            assertTrue(gap <= 2 * RANK_ERROR, "q=" + q + " gap=" + gap);
+        }
+
+        // Gộp với sketch rỗng / vào sketch rỗng
+        KllSketch empty = new KllSketch();
+        merged.merge(empty);
+        assertEquals(n, merged.getCount());
+        empty.merge(single);
+        assertEquals(single.getCount(), empty.getCount());
+        assertEquals(single.getMin(), empty.getMin());
+        assertEquals(single.getMax(), empty.getMax());
+    }
+
+    @Test
+    void extremesAreExact() {
+        KllSketch sketch = new KllSketch();
+        Random random = new Random(5);
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int i = 0; i < 80_000; i++) {
+            float v = (float) (random.nextGaussian() * 500 + 2000);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            sketch.update(v);
+        }
+        sketch.update(Float.NaN);
+        assertEquals(80_000, sketch.getCount());
+        assertEquals(min, sketch.quantile(0));
+        assertEquals(max, sketch.quantile(1));
+        assertEquals(min, sketch.getMin());
+        assertEquals(max, sketch.getMax());
+
+        KllSketch one = new KllSketch();
+        one.update(42f);
+        assertArrayEquals(new float[] {42f, 42f, 42f}, one.quantiles(0, 0.5, 1));
+        assertTrue(Float.isNaN(new KllSketch().quantile(0.5)));
+    }
+
+    @Test
+    void bytesRoundTrip() {
+        KllSketch sketch = new KllSketch(64);
+        Random random = new Random(9);
+        for (int i = 0; i < 30_000; i++) sketch.update(random.nextInt(5000));
+
+        double[] qs = {0, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1};
+        byte[] bytes = sketch.toBytes();
+        KllSketch copy = KllSketch.fromBytes(bytes);
+        assertEquals(sketch.getK(), copy.getK());
+        assertEquals(sketch.getCount(), copy.getCount());
+        assertEquals(sketch.getRetained(), copy.getRetained());
+        assertArrayEquals(sketch.quantiles(qs), copy.quantiles(qs));
+        assertArrayEquals(bytes, copy.toBytes());
+
+        // Bản đọc lại vẫn cập nhật và gộp được
+        for (int i = 0; i < 10_000; i++) copy.update(random.nextInt(5000));
+        copy.merge(KllSketch.fromBytes(bytes));
+        assertEquals(70_000, copy.getCount());
+        // k nhỏ: làm tròn lên và sức chứa tối thiểu 2 của các tầng thấp cộng thêm vài phần tử
+        assertTrue(copy.getRetained() <= 3 * 64 + 16, "retained " + copy.getRetained());
+
+        KllSketch empty = KllSketch.fromBytes(new KllSketch().toBytes());
+        assertTrue(empty.isEmpty());
+        assertTrue(Float.isNaN(empty.quantile(0.5)));
+        empty.update(1f);
+        assertEquals(1f, empty.quantile(0.5));
+
+        bytes[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> KllSketch.fromBytes(bytes));
+    }
+
+    // ==========================================================
+
+    private static void assertMaxRankError(KllSketch sketch, int n) {
+        for (int q = 1; q < 100; q++) {
+            float v = sketch.quantile(q / 100.0);
+            double error = Math.abs((v + 1) / (double) n - q / 100.0);
+            assertTrue(error <= RANK_ERROR, "q=" + q + " value=" + v + " error=" + error);
+        }
+    }
+
+    private static int[] permutation(int n, Random random) {
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) out[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = out[i];
+            out[i] = out[j];
+            out[j] = t;
+        }
+        return out;
+    }
+
+    private static int lowerBound(float[] sorted, float value) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
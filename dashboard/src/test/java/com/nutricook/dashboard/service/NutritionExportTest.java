@@ -0,0 +1,85 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * Export dừng giữa chừng: CSV/NDJSON kết thúc bằng dòng báo lỗi sau các dòng đã ghi, XLSX không ghi gì ra.
+ * Ô CSV trông như công thức được thêm ' ở đầu.
+ */
+class NutritionExportTest {
+
+    @Test
+    void csvAbortAppendsErrorRow() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NutritionExport.RowWriter writer = NutritionExport.open(NutritionExport.Format.CSV, out, true);
+        writer.dailyLog("u1", new DailyLog("2025-01-02", 1800f, 80f, 60f, 200f, null));
+        writer.abort(new IllegalStateException("Firestore unavailable, retry later"));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].startsWith("u1,2025-01-02,"));
+        assertEquals("#ERROR,\"Firestore unavailable, retry later\"", lines[2]);
+    }
+
+    @Test
+    void csvNeutralizesFormulaCells() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NutritionExport.RowWriter writer = NutritionExport.open(NutritionExport.Format.CSV, out, false);
+        NutritionStats stats = new NutritionStats();
+        stats.setUserId("+u1");
+        stats.setUserName("=HYPERLINK(\"http://evil\",\"x\")");
+        stats.setUserEmail("@evil");
+        writer.stats(stats);
+        writer.close();
+
+        String row = out.toString(StandardCharsets.UTF_8).split("\r\n")[1];
+        assertTrue(row.startsWith("\"'=HYPERLINK(\"\"http://evil\"\",\"\"x\"\")\",'@evil,"), row);
+        assertTrue(row.endsWith(",'+u1"), row);
+    }
+
+    @Test
+    void ndjsonAbortAppendsErrorObject() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NutritionExport.RowWriter writer = NutritionExport.open(NutritionExport.Format.NDJSON, out, false);
+        NutritionStats stats = new NutritionStats();
+        stats.setUserId("u1");
+        stats.setAverageCalories(1800f);
+        stats.setAverageProtein(80f);
+        stats.setAverageFat(60f);
+        stats.setAverageCarb(200f);
+        stats.setCaloriesTarget(2000f);
+        stats.setDaysTracked(3);
+        stats.setDaysReachedGoal(1);
+        stats.setGoalAchievementRate(33.3f);
+        writer.stats(stats);
+        writer.abort(new RuntimeException());
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        ObjectMapper mapper = new ObjectMapper();
+        assertEquals("user", mapper.readTree(lines[0]).get("type").asText());
+        JsonNode error = mapper.readTree(lines[1]);
+        assertEquals("error", error.get("type").asText());
+        assertEquals("RuntimeException", error.get("message").asText());
+    }
+
+    @Test
+    void xlsxAbortWritesNothing() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NutritionExport.RowWriter writer = NutritionExport.open(NutritionExport.Format.XLSX, out, true);
+        writer.dailyLog("u1", new DailyLog("2025-01-02", 1800f, 80f, 60f, 200f, null));
+        writer.abort(new IllegalStateException("boom"));
+        assertEquals(0, out.size());
+    }
+}
@@ -0,0 +1,194 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.nutricook.dashboard.entity.FirestorePage;
+import com.nutricook.dashboard.entity.NutritionStats;
+import com.nutricook.dashboard.service.NutritionRanking.Filter;
+import com.nutricook.dashboard.service.NutritionRanking.Sort;
+
+/**
+ * NutritionRanking so với lọc + sắp xếp toàn bộ danh sách: thứ tự khi trùng giá trị (theo userId), trang offset,
+ * và trang keyset không lặp/sót user khi bảng được cập nhật giữa hai request.
+ */
+class NutritionRankingTest {
+
+    @Test
+    void ordersMatchFullSortWithTies() {
+        Random random = new Random(1);
+        Map<String, NutritionStats> current = new HashMap<>();
+        // Giá trị lấy từ tập nhỏ nên có rất nhiều user trùng calories / tỉ lệ đạt
+        for (int i = 0; i < 300; i++) put(current, stats("u" + i, 1000 + 250 * random.nextInt(8), 10 * random.nextInt(11)));
+        NutritionRanking ranking = new NutritionRanking(NutritionPeriod.ALL, current.values());
+
+        for (int step = 0; step < 400; step++) {
+            String userId = "u" + random.nextInt(350);
+            if (random.nextInt(5) == 0) {
+                ranking.remove(userId);
+                current.remove(userId);
+            } else {
+                NutritionStats s = stats(userId, 1000 + 250 * random.nextInt(8), 10 * random.nextInt(11));
+                ranking.update(s);
+                put(current, s);
+            }
+            if (step % 40 == 0) assertMatchesFullSort(ranking, current, random);
+        }
+        assertMatchesFullSort(ranking, current, random);
+        assertEquals(current.size(), ranking.size());
+    }
+
+    @Test
+    void tiesBreakByUserId() {
+        List<NutritionStats> stats = List.of(stats("c", 2000, 50), stats("a", 2000, 50), stats("b", 2000, 90),
+                stats("d", 3000, 50));
+        NutritionRanking ranking = new NutritionRanking(NutritionPeriod.ALL, stats);
+        assertEquals(List.of("d", "a", "b", "c"), ids(ranking.top(Filter.ALL, Sort.CALORIES, 10)));
+        assertEquals(List.of("b", "a", "c", "d"), ids(ranking.top(Filter.ALL, Sort.GOAL, 10)));
+
+        // Trang 1 kết thúc giữa nhóm trùng giá trị: trang 2 tiếp tục đúng user kế tiếp
+        FirestorePage<NutritionStats> first = ranking.page(Filter.ALL, Sort.CALORIES, 0, 2);
+        assertEquals(List.of("d", "a"), ids(first.getItems()));
+        FirestorePage<NutritionStats> second = ranking.after(Filter.ALL, Sort.CALORIES, first.getNextCursor(), 2);
+        assertEquals(List.of("b", "c"), ids(second.getItems()));
+        assertNull(second.getNextCursor());
+        assertEquals(2, ranking.rankAfter(Filter.ALL, Sort.CALORIES, first.getNextCursor()));
+    }
+
+    @Test
+    void keysetPagingStableAcrossUpdates() {
+        Random random = new Random(7);
+        for (int round = 0; round < 30; round++) {
+            Map<String, NutritionStats> current = new HashMap<>();
+            for (int i = 0; i < 120; i++) put(current, stats("u" + i, 1000 + 100 * random.nextInt(20), 10 * random.nextInt(11)));
+            NutritionRanking ranking = new NutritionRanking(NutritionPeriod.ALL, current.values());
+            Filter filter = Filter.values()[random.nextInt(Filter.values().length)];
+            Sort sort = Sort.values()[random.nextInt(Sort.values().length)];
+
+            Set<String> seen = new HashSet<>();
+            // User đã đổi thống kê có thể xuất hiện lại ở vị trí mới sau cursor; user không đổi thì không
+            Set<String> moved = new HashSet<>();
+            FirestorePage<NutritionStats> page = ranking.page(filter, sort, 0, 10);
+            NutritionStats lastSeen = null;
+            while (true) {
+                for (NutritionStats s : page.getItems()) {
+                    assertTrue(seen.add(s.getUserId()) || moved.contains(s.getUserId()), "lặp user " + s.getUserId());
+                }
+                if (!page.getItems().isEmpty()) lastSeen = page.getItems().get(page.getItems().size() - 1);
+                if (page.getNextCursor() == null) break;
+
+                // Giữa hai request: vài user đổi thống kê, bị xóa hoặc mới xuất hiện
+                for (int i = 0; i < 3; i++) {
+                    String userId = "u" + random.nextInt(140);
+                    moved.add(userId);
+                    if (random.nextInt(4) == 0) {
+                        ranking.remove(userId);
+                        current.remove(userId);
+                    } else {
+                        NutritionStats s = stats(userId, 1000 + 100 * random.nextInt(20), 10 * random.nextInt(11));
+                        ranking.update(s);
+                        put(current, s);
+                    }
+                }
+
+                String cursor = page.getNextCursor();
+                page = ranking.after(filter, sort, cursor, 10);
+                // Trang keyset = các user đứng sau khóa của cursor trong bảng hiện tại
+                List<NutritionStats> all = fullSort(current, filter, sort);
+                List<String> want = new ArrayList<>();
+                for (NutritionStats s : all) {
+                    if (comparator(sort).compare(s, lastSeen) > 0 && want.size() < 10) want.add(s.getUserId());
+                }
+                assertEquals(want, ids(page.getItems()), filter + "/" + sort);
+                assertEquals(all.size() - ranking.rankAfter(filter, sort, cursor),
+                        countAfter(all, sort, lastSeen));
+            }
+        }
+    }
+
+    @Test
+    void invalidCursorRejected() {
+        NutritionRanking ranking = new NutritionRanking(NutritionPeriod.ALL, List.of(stats("a", 2000, 50)));
+        assertEquals(1, ranking.after(Filter.ALL, Sort.CALORIES, null, 10).getSize());
+        assertThrows(IllegalArgumentException.class,
+                () -> ranking.after(Filter.ALL, Sort.CALORIES, FirestorePage.encodeCursor("abc"), 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> ranking.after(Filter.ALL, Sort.CALORIES, FirestorePage.encodeCursor("x:a"), 10));
+    }
+
+    // ==========================================================
+
+    private static NutritionStats stats(String userId, float averageCalories, float goalRate) {
+        NutritionStats s = new NutritionStats();
+        s.setUserId(userId);
+        s.setAverageCalories(averageCalories);
+        s.setGoalAchievementRate(goalRate);
+        s.setDaysTracked(goalRate == 0 && averageCalories == 1000 ? 0 : 10);
+        return s;
+    }
+
+    /** Giống update(): user không còn ngày nào được track thì bị bỏ. */
+    private static void put(Map<String, NutritionStats> current, NutritionStats s) {
+        if (s.getDaysTracked() > 0) {
+            current.put(s.getUserId(), s);
+        } else {
+            current.remove(s.getUserId());
+        }
+    }
+
+    private static Comparator<NutritionStats> comparator(Sort sort) {
+        return Comparator.comparing((NutritionStats s) -> -sort.value(s)).thenComparing(NutritionStats::getUserId);
+    }
+
+    private static List<NutritionStats> fullSort(Map<String, NutritionStats> current, Filter filter, Sort sort) {
+        List<NutritionStats> out = new ArrayList<>();
+        for (NutritionStats s : current.values()) {
+            if (filter.matches(s)) out.add(s);
+        }
+        out.sort(comparator(sort));
+        return out;
+    }
+
+    private static int countAfter(List<NutritionStats> sorted, Sort sort, NutritionStats key) {
+        int n = 0;
+        for (NutritionStats s : sorted) {
+            if (comparator(sort).compare(s, key) > 0) n++;
+        }
+        return n;
+    }
+
+    private static void assertMatchesFullSort(NutritionRanking ranking, Map<String, NutritionStats> current,
+                                              Random random) {
+        for (Filter filter : Filter.values()) {
+            List<NutritionStats> all = fullSort(current, filter, Sort.CALORIES);
+            assertEquals(all.size(), ranking.count(filter));
+            for (Sort sort : Sort.values()) {
+                List<String> want = ids(fullSort(current, filter, sort));
+                assertEquals(want, ids(ranking.top(filter, sort, Integer.MAX_VALUE)), filter + "/" + sort);
+                int offset = random.nextInt(want.size() + 1);
+                FirestorePage<NutritionStats> page = ranking.page(filter, sort, offset, 15);
+                assertEquals(want.subList(offset, Math.min(offset + 15, want.size())), ids(page.getItems()));
+                assertEquals(offset + 15 < want.size(), page.getNextCursor() != null);
+            }
+        }
+    }
+
+    private static List<String> ids(List<NutritionStats> stats) {
+        List<String> out = new ArrayList<>();
+        for (NutritionStats s : stats) out.add(s.getUserId());
+        return out;
+    }
+}
@@ -0,0 +1,293 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.nutricook.dashboard.entity.DailyLog;
+import com.nutricook.dashboard.entity.NutritionStats;
+
+/**
+ * NutritionRollup cập nhật dần (put/remove/retarget) phải cho cùng kết quả với NutritionAccumulator
+ * chạy lại trên toàn bộ log hiện có. Giá trị log là số nguyên nên tổng double khớp tuyệt đối.
+ */
+class NutritionRollupTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 12, 20);
+    private static final int DAY_SPAN = 80;
+
+    @Test
+    void randomEditsAndDeletesMatchAccumulator() {
+        Random random = new Random(7);
+        NutritionRollup rollup = new NutritionRollup(2000f);
+        TreeMap<String, DailyLog> logs = new TreeMap<>();
+        for (int step = 0; step < 2000; step++) {
+            String dateId = FIRST_DAY.plusDays(random.nextInt(DAY_SPAN)).toString();
+            if (random.nextInt(4) == 0) {
+                assertEquals(logs.remove(dateId) != null, rollup.remove(dateId));
+            } else {
+                DailyLog log = randomLog(random, dateId);
+                DailyLog previous = logs.put(dateId, log);
+                boolean changed = rollup.put(log);
+                assertEquals(previous == null || !sameValues(previous, log), changed);
+            }
+            if (step % 50 == 0) assertMatches(rollup, logs, 2000f);
+        }
+        assertMatches(rollup, logs, 2000f);
+    }
+
+    @Test
+    void putSameValuesIsNoOp() {
+        NutritionRollup rollup = new NutritionRollup(2000f);
+        assertTrue(rollup.put(log("2025-01-06", 1900f)));
+        assertFalse(rollup.put(log("2025-01-06", 1900f)));
+        assertFalse(rollup.remove("2025-01-07"));
+        assertEquals(1, rollup.getDaysTracked());
+        assertEquals(1, rollup.getDaysReachedGoal());
+    }
+
+    @Test
+    void zeroCalorieDaysAreLoggedButNotTracked() {
+        NutritionRollup rollup = new NutritionRollup(2000f);
+        rollup.put(log("2025-01-06", 0f));
+        rollup.put(log("2025-01-07", 1500f));
+        assertEquals(2, rollup.getLogCount());
+        assertEquals(1, rollup.getDaysTracked());
+        assertEquals(1500d, rollup.getTotalCalories());
+        // Sửa ngày đang tính về 0 thì bỏ khỏi tổng
+        rollup.put(log("2025-01-07", 0f));
+        assertEquals(0, rollup.getDaysTracked());
+        assertEquals(0d, rollup.getTotalCalories());
+    }
+
+    @Test
+    void retargetRecountsReachedDaysAndBuckets() {
+        Random random = new Random(11);
+        NutritionRollup rollup = new NutritionRollup(2000f);
+        TreeMap<String, DailyLog> logs = new TreeMap<>();
+        for (int i = 0; i < DAY_SPAN; i++) {
+            DailyLog log = randomLog(random, FIRST_DAY.plusDays(i).toString());
+            logs.put(log.getDateId(), log);
+            rollup.put(log);
+        }
+        assertFalse(rollup.retarget(2000f));
+        assertTrue(rollup.retarget(1600f));
+        assertMatches(rollup, logs, 1600f);
+        // Sửa/xóa sau khi đổi target dùng target mới
+        rollup.put(log(FIRST_DAY.toString(), 1550f));
+        logs.put(FIRST_DAY.toString(), log(FIRST_DAY.toString(), 1550f));
+        rollup.remove(FIRST_DAY.plusDays(3).toString());
+        logs.remove(FIRST_DAY.plusDays(3).toString());
+        assertMatches(rollup, logs, 1600f);
+    }
+
+    @Test
+    void bucketAlignedPeriodsAreStitchedFromSummary() {
+        NutritionRollup rollup = new NutritionRollup(2000f);
+        TreeMap<String, DailyLog> logs = fill(rollup, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 3, 31));
+        Map<String, Object> summary = rollup.toSummary("u1");
+
+        // Tháng trọn vẹn, tuần ISO trọn vẹn, hai tháng liền nhau, vài tuần liền nhau
+        assertStitched(summary, rollup, logs, custom("2025-02-01", "2025-02-28"));
+        assertStitched(summary, rollup, logs, custom("2025-01-13", "2025-01-19"));
+        assertStitched(summary, rollup, logs, custom("2025-01-01", "2025-02-28"));
+        assertStitched(summary, rollup, logs, custom("2025-01-06", "2025-02-02"));
+        // Tuần ISO bắt đầu giữa tháng trước: 2025-02-24 (thứ Hai) .. 2025-03-31
+        assertStitched(summary, rollup, logs, custom("2025-02-24", "2025-03-31"));
+    }
+
+    @Test
+    void unalignedPeriodsInsideDataNeedLedger() {
+        NutritionRollup rollup = new NutritionRollup(2000f);
+        fill(rollup, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 3, 31));
+        Map<String, Object> summary = rollup.toSummary("u1");
+
+        // Bắt đầu giữa tuần, hoặc kết thúc giữa tuần khi còn log phía sau
+        assertFalse(NutritionRollup.applySummaryPeriod(summary, custom("2025-01-15", "2025-01-26"), new NutritionStats()));
+        assertFalse(NutritionRollup.applySummaryPeriod(summary, custom("2025-01-13", "2025-01-22"), new NutritionStats()));
+        assertFalse(NutritionRollup.applySummaryPeriod(summary, custom("2025-02-10", "2025-02-10"), new NutritionStats()));
+    }
+
+    @Test
+    void openStartAndOpenEndCoverPartialBuckets() {
+        NutritionRollup rollup = new NutritionRollup(2000f);
+        // Log từ thứ Tư 2025-01-08 đến thứ Hai 2025-01-20
+        TreeMap<String, DailyLog> logs = fill(rollup, LocalDate.of(2025, 1, 8), LocalDate.of(2025, 1, 20));
+        Map<String, Object> summary = rollup.toSummary("u1");
+
+        // Đầu khoảng trước log đầu tiên: không cần bucket tuần 2025-W02 trọn vẹn
+        assertStitched(summary, rollup, logs, custom("2025-01-05", "2025-01-19"));
+        // Cuối khoảng sau log cuối cùng: tuần 2025-W04 chỉ có 2025-01-20
+        assertStitched(summary, rollup, logs, custom("2025-01-13", "2025-01-31"));
+        // Cả hai đầu mở: tháng này (tính đến hôm nay) bao hết log
+        assertStitched(summary, rollup, logs, custom("2024-12-01", "2025-02-15"));
+        // Đầu mở nhưng cuối giữa tuần, còn log phía sau
+        assertFalse(NutritionRollup.applySummaryPeriod(summary, custom("2025-01-01", "2025-01-15"), new NutritionStats()));
+        // Khoảng không có log nào
+        NutritionStats empty = new NutritionStats();
+        assertTrue(NutritionRollup.applySummaryPeriod(summary, custom("2025-02-03", "2025-02-09"), empty));
+        assertEquals(0, empty.getDaysTracked());
+    }
+
+    @Test
+    void stitchingStaysCorrectAfterEdits() {
+        Random random = new Random(3);
+        NutritionRollup rollup = new NutritionRollup(1800f);
+        TreeMap<String, DailyLog> logs = fill(rollup, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 2, 28));
+        for (int i = 0; i < 200; i++) {
+            String dateId = LocalDate.of(2025, 1, 1).plusDays(random.nextInt(59)).toString();
+            if (random.nextBoolean()) {
+                logs.remove(dateId);
+                rollup.remove(dateId);
+            } else {
+                DailyLog log = randomLog(random, dateId);
+                logs.put(dateId, log);
+                rollup.put(log);
+            }
+        }
+        Map<String, Object> summary = rollup.toSummary("u1");
+        assertStitched(summary, rollup, logs, custom("2025-01-01", "2025-01-31"));
+        assertStitched(summary, rollup, logs, custom("2025-01-06", "2025-02-28"));
+    }
+
+    @Test
+    void fromDocumentsRoundTrip() {
+        Random random = new Random(5);
+        NutritionRollup rollup = new NutritionRollup(2100f);
+        TreeMap<String, DailyLog> logs = new TreeMap<>();
+        for (int i = 0; i < 300; i++) {
+            DailyLog log = randomLog(random, FIRST_DAY.plusDays(random.nextInt(DAY_SPAN)).toString());
+            logs.put(log.getDateId(), log);
+            rollup.put(log);
+        }
+        Map<String, Object> summary = rollup.toSummary("u1");
+        NutritionRollup restored = NutritionRollup.fromDocuments(snapshot(summary), snapshot(rollup.toLedger()));
+
+        assertTrue(restored.sameDays(rollup));
+        assertTrue(restored.bucketsMatch(summary, 0d));
+        assertEquals(rollup.getTarget(), restored.getTarget());
+        assertEquals(rollup.getTotalCalories(), restored.getTotalCalories());
+        assertEquals(rollup.getTotalProtein(), restored.getTotalProtein());
+        assertEquals(rollup.getDaysTracked(), restored.getDaysTracked());
+        assertEquals(rollup.getDaysReachedGoal(), restored.getDaysReachedGoal());
+        assertMatches(restored, logs, 2100f);
+
+        // Tiếp tục cập nhật trên bản dựng lại
+        String dateId = logs.firstKey();
+        restored.remove(dateId);
+        logs.remove(dateId);
+        assertMatches(restored, logs, 2100f);
+    }
+
+    // ==========================================================
+
+    private static void assertMatches(NutritionRollup rollup, TreeMap<String, DailyLog> logs, float target) {
+        NutritionStats expected = accumulate(logs, target, NutritionPeriod.ALL);
+        NutritionStats actual = new NutritionStats();
+        rollup.applyTo(actual);
+        assertSameStats(expected, actual);
+        assertEquals(dateIds(expected.getWeeklyLogs()), dateIds(actual.getWeeklyLogs()));
+        assertEquals(logs.size(), rollup.getLogCount());
+
+        NutritionPeriod[] periods = {
+                custom("2024-12-20", "2024-12-31"), custom("2025-01-01", "2025-01-31"),
+                custom("2025-01-15", "2025-02-03"), custom("2025-03-01", "2025-03-09")};
+        for (NutritionPeriod period : periods) {
+            NutritionStats inPeriod = new NutritionStats();
+            rollup.applyTo(inPeriod, period);
+            assertSameStats(accumulate(logs, target, period), inPeriod);
+        }
+    }
+
+    private static void assertStitched(Map<String, Object> summary, NutritionRollup rollup,
+                                       TreeMap<String, DailyLog> logs, NutritionPeriod period) {
+        NutritionStats stitched = new NutritionStats();
+        assertTrue(NutritionRollup.applySummaryPeriod(summary, period, stitched), period.toString());
+        NutritionStats expected = accumulate(logs, rollup.getTarget(), period);
+        assertSameStats(expected, stitched);
+        NutritionStats fromLedger = new NutritionStats();
+        rollup.applyTo(fromLedger, period);
+        assertSameStats(expected, fromLedger);
+    }
+
+    private static NutritionStats accumulate(TreeMap<String, DailyLog> logs, float target, NutritionPeriod period) {
+        NutritionAccumulator accumulator = new NutritionAccumulator(target);
+        for (DailyLog log : logs.values()) {
+            if (period.isAll() || period.contains(log.getDateId())) accumulator.add(log);
+        }
+        NutritionStats stats = new NutritionStats();
+        accumulator.applyTo(stats);
+        return stats;
+    }
+
+    private static void assertSameStats(NutritionStats expected, NutritionStats actual) {
+        assertEquals(expected.getCaloriesTarget(), actual.getCaloriesTarget());
+        assertEquals(expected.getDaysTracked(), actual.getDaysTracked());
+        assertEquals(expected.getDaysReachedGoal(), actual.getDaysReachedGoal());
+        assertEquals(expected.getAverageCalories(), actual.getAverageCalories());
+        assertEquals(expected.getAverageProtein(), actual.getAverageProtein());
+        assertEquals(expected.getAverageFat(), actual.getAverageFat());
+        assertEquals(expected.getAverageCarb(), actual.getAverageCarb());
+        assertEquals(expected.getGoalAchievementRate(), actual.getGoalAchievementRate());
+    }
+
+    private static TreeMap<String, DailyLog> fill(NutritionRollup rollup, LocalDate from, LocalDate to) {
+        Random random = new Random(from.toEpochDay());
+        TreeMap<String, DailyLog> logs = new TreeMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            DailyLog log = randomLog(random, day.toString());
+            logs.put(log.getDateId(), log);
+            rollup.put(log);
+        }
+        return logs;
+    }
+
+    private static DailyLog randomLog(Random random, String dateId) {
+        // Khoảng 1/8 số ngày có calories = 0 (không được tính)
+        float calories = random.nextInt(8) == 0 ? 0f : 1200 + random.nextInt(1300);
+        return new DailyLog(dateId, calories, (float) random.nextInt(150), (float) random.nextInt(90),
+                (float) random.nextInt(300), null);
+    }
+
+    private static DailyLog log(String dateId, float calories) {
+        return new DailyLog(dateId, calories, 50f, 40f, 200f, null);
+    }
+
+    private static NutritionPeriod custom(String from, String to) {
+        return NutritionPeriod.resolve("custom", from, to, LocalDate.of(2025, 6, 1));
+    }
+
+    private static boolean sameValues(DailyLog a, DailyLog b) {
+        return a.getCalories().equals(b.getCalories()) && a.getProtein().equals(b.getProtein())
+                && a.getFat().equals(b.getFat()) && a.getCarb().equals(b.getCarb());
+    }
+
+    private static List<String> dateIds(List<DailyLog> logs) {
+        List<String> ids = new ArrayList<>();
+        if (logs != null) {
+            for (DailyLog log : logs) ids.add(log.getDateId());
+        }
+        return ids;
+    }
+
+    private static DocumentSnapshot snapshot(Map<String, Object> data) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        assertNotNull(data);
+        when(snapshot.get(anyString())).thenAnswer(invocation -> data.get(invocation.<String>getArgument(0)));
+        return snapshot;
+    }
+}
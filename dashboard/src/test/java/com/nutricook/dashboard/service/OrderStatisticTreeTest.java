@@ -0,0 +1,97 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * OrderStatisticTree so với TreeSet (danh sách đã sắp xếp) qua chuỗi thêm/xóa xen kẽ ngẫu nhiên: get, rank,
+ * range và kích thước cây con phải khớp sau mỗi bước.
+ */
+class OrderStatisticTreeTest {
+
+    @Test
+    void interleavedAddRemoveMatchesSortedSet() {
+        for (long seed = 1; seed <= 10; seed++) {
+            Random random = new Random(seed);
+            OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int step = 0; step < 3000; step++) {
+                int value = random.nextInt(500);
+                if (random.nextInt(3) > 0) {
+                    assertEquals(expected.add(value), tree.add(value));
+                } else {
+                    assertEquals(expected.remove(value), tree.remove(value));
+                }
+                assertEquals(expected.size(), tree.size());
+                if (step % 50 == 0) assertSameOrder(tree, expected, random);
+            }
+            assertSameOrder(tree, expected, random);
+        }
+    }
+
+    @Test
+    void reverseComparatorAndDrainToEmpty() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.reverseOrder());
+        for (int i = 0; i < 100; i++) tree.add(i);
+        assertEquals(99, tree.get(0));
+        assertEquals(0, tree.get(99));
+        // Số phần tử lớn hơn hẳn 40 theo thứ tự giảm dần
+        assertEquals(59, tree.rank(40));
+        assertEquals(List.of(59, 58, 57), tree.range(40, 3));
+
+        for (int i = 0; i < 100; i += 2) assertTrue(tree.remove(i));
+        for (int i = 1; i < 100; i += 2) assertTrue(tree.remove(i));
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.rank(5));
+        assertTrue(tree.range(0, 10).isEmpty());
+        assertFalse(tree.remove(5));
+    }
+
+    @Test
+    void rangeAndGetBounds() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+        for (int i = 0; i < 10; i++) tree.add(i * 10);
+        assertEquals(List.of(80, 90), tree.range(8, 5));
+        assertTrue(tree.range(10, 5).isEmpty());
+        assertTrue(tree.range(3, 0).isEmpty());
+        assertTrue(tree.range(-1, 3).isEmpty());
+        assertFalse(tree.add(30));
+        assertEquals(10, tree.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(10));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(-1));
+        // Khóa không có trong cây
+        assertEquals(4, tree.rank(35));
+        assertEquals(0, tree.rank(-5));
+        assertEquals(10, tree.rank(1000));
+    }
+
+    // ==========================================================
+
+    private static void assertSameOrder(OrderStatisticTree<Integer> tree, TreeSet<Integer> expected, Random random) {
+        List<Integer> sorted = new ArrayList<>(expected);
+        assertEquals(sorted, tree.range(0, Integer.MAX_VALUE));
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(sorted.get(i), tree.get(i));
+            assertEquals(i, tree.rank(sorted.get(i)));
+        }
+        for (int i = 0; i < 20; i++) {
+            int key = random.nextInt(520) - 10;
+            assertEquals(expected.headSet(key, false).size(), tree.rank(key), "rank " + key);
+            assertEquals(expected.contains(key), tree.contains(key));
+            int from = random.nextInt(sorted.size() + 2);
+            int limit = random.nextInt(40);
+            List<Integer> want = sorted.subList(Math.min(from, sorted.size()), Math.min(from + limit, sorted.size()));
+            assertEquals(want, tree.range(from, limit), "range " + from + "+" + limit);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.nutricook.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.AggregateField;
+import com.google.cloud.firestore.AggregateQuery;
+import com.google.cloud.firestore.AggregateQuerySnapshot;
+import com.google.cloud.firestore.CollectionGroup;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import com.nutricook.dashboard.service.ShardedCounterService.Counter;
+
+/**
+ * ShardedCounterService trên Firestore giả (shard = số trong TreeMap, batch áp các FieldValue.increment khi commit):
+ * flush ghi đúng một lần phần đang chờ và giữ lại khi commit lỗi; đếm lại chỉ cộng phần chênh, không ghi đè
+ * shard của instance khác và không làm mất increment đến trong lúc đếm.
+ */
+class ShardedCounterServiceTest {
+
+    private static final Counter CALORIES = Counter.TOTAL_CALORIES_TRACKED;
+
+    private final TreeMap<String, Double> shards = new TreeMap<>();
+    private final List<WriteBatch> commits = new ArrayList<>();
+    private double source;
+    private Runnable onSourceRead = () -> { };
+    private boolean failCommit;
+    private ShardedCounterService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference countersCol = mock(CollectionReference.class);
+        DocumentReference counterRef = mock(DocumentReference.class);
+        CollectionReference shardsCol = mock(CollectionReference.class);
+        when(firestore.collection(ShardedCounterService.COLLECTION)).thenReturn(countersCol);
+        when(countersCol.document(CALORIES.getId())).thenReturn(counterRef);
+        when(counterRef.collection("shards")).thenReturn(shardsCol);
+        when(shardsCol.document(anyString())).thenAnswer(invocation -> {
+            DocumentReference shard = mock(DocumentReference.class);
+            when(shard.getId()).thenReturn(invocation.getArgument(0));
+            return shard;
+        });
+        DocumentSnapshot meta = mock(DocumentSnapshot.class);
+        when(meta.exists()).thenReturn(true);
+        when(meta.getReference()).thenReturn(counterRef);
+        when(counterRef.getPath()).thenReturn(ShardedCounterService.COLLECTION + "/" + CALORIES.getId());
+        when(counterRef.get()).thenReturn(ApiFutures.immediateFuture(meta));
+
+        AggregateQuery shardSum = aggregate(() -> shards.values().stream().mapToDouble(Double::doubleValue).sum());
+        when(shardsCol.aggregate(any(AggregateField.class))).thenReturn(shardSum);
+        CollectionGroup dailyLogs = mock(CollectionGroup.class);
+        AggregateQuery sourceSum = aggregate(() -> {
+            onSourceRead.run();
+            return source;
+        });
+        when(dailyLogs.aggregate(any(AggregateField.class))).thenReturn(sourceSum);
+        when(firestore.collectionGroup("daily_logs")).thenReturn(dailyLogs);
+        when(firestore.batch()).thenAnswer(invocation -> batch());
+
+        service = new ShardedCounterService(firestore, 4, 60, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.clear();
+        service.stop();
+    }
+
+    @Test
+    void flushWritesPendingOnce() throws Exception {
+        service.increment(CALORIES, 100);
+        service.increment(CALORIES, 50.5);
+        assertEquals(151L, service.get(CALORIES));
+        assertEquals(0d, total());
+
+        service.flush();
+        assertEquals(150.5, total());
+        assertEquals(151L, service.get(CALORIES));
+        assertEquals(1, commits.size());
+
+        // Không còn gì chờ: không gửi batch rỗng, không cộng lại lần nữa
+        service.flush();
+        assertEquals(1, commits.size());
+        assertEquals(150.5, total());
+    }
+
+    @Test
+    void failedFlushKeepsIncrements() throws Exception {
+        service.increment(CALORIES, 80);
+        failCommit = true;
+        assertThrows(ExecutionException.class, () -> service.flush());
+        assertEquals(0d, total());
+        assertEquals(80L, service.get(CALORIES));
+
+        failCommit = false;
+        service.increment(CALORIES, 20);
+        service.flush();
+        assertEquals(100d, total());
+        assertEquals(100L, service.get(CALORIES));
+    }
+
+    @Test
+    void recountAddsDeltaWithoutOverwritingShards() throws Exception {
+        service.increment(CALORIES, 30);
+        service.flush();
+        // Shard do instance khác ghi
+        shards.merge("3", 200d, Double::sum);
+        // Increment chưa flush: thay đổi của nó đã có trong dữ liệu gốc
+        service.increment(CALORIES, 40);
+        source = 500;
+
+        assertEquals(500d, service.recountAll().get(CALORIES.getId()));
+        assertEquals(500d, total());
+        assertEquals(500L, service.get(CALORIES));
+        // Phần chênh (270) được cộng vào một shard; shard của instance khác không bị ghi đè
+        assertTrue(shards.get("3") >= 200d);
+
+        // Đã khớp: đếm lại lần nữa không ghi shard nào
+        int shardWrites = commits.size();
+        service.recountAll();
+        assertEquals(shardWrites, commits.size());
+        assertEquals(500d, total());
+    }
+
+    @Test
+    void incrementsDuringRecountAreKept() throws Exception {
+        source = 1000;
+        // Thay đổi đến sau khi đã đọc dữ liệu gốc: không có trong giá trị đếm lại nên phải được giữ để flush
+        onSourceRead = () -> service.increment(CALORIES, 25);
+        service.recountAll();
+        onSourceRead = () -> { };
+
+        assertEquals(1000d, total());
+        assertEquals(1025L, service.get(CALORIES));
+        service.flush();
+        assertEquals(1025d, total());
+    }
+
+    @Test
+    void liveFlagFollowsSource() {
+        assertFalse(service.isLive(CALORIES));
+        service.setLive(CALORIES, true);
+        assertTrue(service.isLive(CALORIES));
+        service.setLive(CALORIES, false);
+        assertFalse(service.isLive(CALORIES));
+    }
+
+    // ==========================================================
+
+    private double total() {
+        return shards.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    private static AggregateQuery aggregate(Supplier<Double> value) {
+        AggregateQuery query = mock(AggregateQuery.class);
+        when(query.get()).thenAnswer(invocation -> {
+            AggregateQuerySnapshot snapshot = mock(AggregateQuerySnapshot.class);
+            when(snapshot.getDouble(any(AggregateField.class))).thenReturn(value.get());
+            return ApiFutures.immediateFuture(snapshot);
+        });
+        return query;
+    }
+
+    /** Batch giả: gom các increment vào shard, chỉ áp khi commit thành công. */
+    @SuppressWarnings("unchecked")
+    private WriteBatch batch() {
+        WriteBatch batch = mock(WriteBatch.class);
+        Map<String, Double> staged = new TreeMap<>();
+        when(batch.set(any(DocumentReference.class), anyMap(), any(SetOptions.class))).thenAnswer(invocation -> {
+            Map<String, Object> data = invocation.getArgument(1);
+            String id = ((DocumentReference) invocation.getArgument(0)).getId();
+            staged.merge(id, operand((FieldValue) data.get("count")), Double::sum);
+            return batch;
+        });
+        when(batch.commit()).thenAnswer(invocation -> {
+            if (failCommit) return ApiFutures.immediateFailedFuture(new IllegalStateException("UNAVAILABLE"));
+            staged.forEach((id, delta) -> shards.merge(id, delta, Double::sum));
+            if (!staged.isEmpty()) commits.add(batch);
+            return ApiFutures.immediateFuture(List.of());
+        });
+        return batch;
+    }
+
+    /** Giá trị của FieldValue.increment (SDK không công khai). */
+    private static double operand(FieldValue value) throws Exception {
+        Field field = value.getClass().getDeclaredField("operand");
+        field.setAccessible(true);
+        return ((Number) field.get(value)).doubleValue();
+    }
+}